@@ -0,0 +1,92 @@
+package completablefuture;
+
+import juc.CompletableFuture;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Attaches an aggregate to n incomplete futures, completes them all and joins the
+ * aggregate, for n from 10^3 to 10^6. Compares the tree-based allOf/anyOf with the
+ * counted variants, and shows the cost of inCompletionOrder. Reports the best time of a
+ * few rounds and the bytes allocated per source future, beyond the futures themselves.
+ */
+public class AggregateBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 100_000, 1_000_000};
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile Object sink;
+
+    interface Aggregation {
+        Object attachAndJoin(CompletableFuture<Integer>[] futures);
+    }
+
+    public static void main(String[] args) {
+        for (int n : SIZES) {
+            System.out.println("n = " + n);
+            run("allOf (tree)", n, fs -> {
+                CompletableFuture<Void> all = CompletableFuture.allOf(fs);
+                completeAll(fs);
+                return all.join();
+            });
+            run("allOfCounted", n, fs -> {
+                CompletableFuture<Void> all = CompletableFuture.allOfCounted(fs);
+                completeAll(fs);
+                return all.join();
+            });
+            run("allOfInto", n, fs -> {
+                CompletableFuture<Integer[]> all = CompletableFuture.allOfInto(new Integer[fs.length], fs);
+                completeAll(fs);
+                return all.join();
+            });
+            run("anyOf (tree)", n, fs -> {
+                CompletableFuture<Object> any = CompletableFuture.anyOf(fs);
+                completeAll(fs);
+                return any.join();
+            });
+            run("anyOfCounted", n, fs -> {
+                CompletableFuture<Object> any = CompletableFuture.anyOfCounted(fs);
+                completeAll(fs);
+                return any.join();
+            });
+            run("inCompletionOrder", n, fs -> {
+                List<CompletableFuture<Integer>> ordered = CompletableFuture.inCompletionOrder(Arrays.asList(fs));
+                completeAll(fs);
+                long sum = 0;
+                for (CompletableFuture<Integer> f : ordered) {
+                    sum += f.join();
+                }
+                return sum;
+            });
+        }
+    }
+
+    private static void completeAll(CompletableFuture<Integer>[] futures) {
+        for (int i = 0; i < futures.length; i++) {
+            futures[i].complete(i);
+        }
+    }
+
+    private static void run(String name, int n, Aggregation aggregation) {
+        long tid = Thread.currentThread().getId();
+        long bestNanos = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Integer>[] futures = (CompletableFuture<Integer>[]) new CompletableFuture<?>[n];
+            for (int i = 0; i < n; i++) {
+                futures[i] = new CompletableFuture<>();
+            }
+            long bytes = THREADS.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            sink = aggregation.attachAndJoin(futures);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, THREADS.getThreadAllocatedBytes(tid) - bytes);
+        }
+        System.out.printf("  %-18s %9.3fms %7.1f B/future%n",
+                name, bestNanos / 1e6, (double) bestBytes / n);
+    }
+}
@@ -0,0 +1,100 @@
+package completablefuture;
+
+import juc.BatchingCompletionService;
+import juc.CompletionService;
+import juc.ExecutorCompletionService;
+import juc.ExecutorService;
+import juc.Executors;
+import juc.Future;
+import juc.TimeUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scatter-gather of many tiny tasks on a fixed pool: submits a round of tasks, then
+ * collects all their results. Compares take() on an ExecutorCompletionService with a
+ * BatchingCompletionService used one result at a time, with takeBatch, and with
+ * takeBatch plus coalescing (batches of 64 or every 50 micros). Reports the best
+ * round time and the average number of results handed over per retrieval call.
+ */
+public class BatchingCompletionBenchmark {
+    private static final int TASKS = 100_000;
+    private static final int ROUNDS = 5;
+    private static final int THREADS = 4;
+
+    static volatile long sink;
+
+    interface Gather {
+        /** Collects TASKS results from cs and returns the number of retrieval calls. */
+        int gather(CompletionService<Integer> cs) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            run("ECS take", () -> new ExecutorCompletionService<>(pool),
+                    BatchingCompletionBenchmark::takeEach, pool);
+            run("batching take", () -> new BatchingCompletionService<>(pool),
+                    BatchingCompletionBenchmark::takeEach, pool);
+            run("batching takeBatch", () -> new BatchingCompletionService<>(pool),
+                    BatchingCompletionBenchmark::takeBatches, pool);
+            run("coalesced 64/50us", () -> new BatchingCompletionService<>(
+                            pool, 64, 50, TimeUnit.MICROSECONDS),
+                    BatchingCompletionBenchmark::takeBatches, pool);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("(sink = " + sink + ")");
+    }
+
+    interface ServiceFactory {
+        CompletionService<Integer> create();
+    }
+
+    private static void run(String name, ServiceFactory factory, Gather gather,
+                            ExecutorService pool) throws Exception {
+        long bestNanos = Long.MAX_VALUE;
+        int calls = 0;
+        for (int r = 0; r < ROUNDS + 1; r++) { // first round is warm-up
+            CompletionService<Integer> cs = factory.create();
+            long start = System.nanoTime();
+            for (int i = 0; i < TASKS; i++) {
+                int x = i;
+                cs.submit(() -> x * 31);
+            }
+            calls = gather.gather(cs);
+            if (r > 0) {
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+        }
+        System.out.printf("%-20s %8.2fms %7.1f results/call%n",
+                name, bestNanos / 1e6, (double) TASKS / calls);
+    }
+
+    private static int takeEach(CompletionService<Integer> cs) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < TASKS; i++) {
+            sum += cs.take().get();
+        }
+        sink += sum;
+        return TASKS;
+    }
+
+    private static int takeBatches(CompletionService<Integer> cs) throws Exception {
+        BatchingCompletionService<Integer> bcs = (BatchingCompletionService<Integer>) cs;
+        List<Future<Integer>> batch = new ArrayList<>(1024);
+        long sum = 0;
+        int calls = 0;
+        for (int received = 0; received < TASKS; ) {
+            received += bcs.takeBatch(batch, 1024);
+            calls++;
+            for (Future<Integer> f : batch) {
+                sum += f.get();
+            }
+            batch.clear();
+        }
+        sink += sum;
+        return calls;
+    }
+}
@@ -0,0 +1,81 @@
+package completablefuture;
+
+import juc.CompletableFuture;
+import juc.ScheduledFuture;
+import juc.ScheduledThreadPoolExecutor;
+import juc.TimeUnit;
+import juc.TimeoutException;
+
+/**
+ * Arms a timeout on each of a million in-flight futures and then completes 99% of them
+ * early, the usual shape of request timeouts. Compares orTimeout (shared timer wheel,
+ * timer cancelled on completion) with the old pattern of one ScheduledThreadPoolExecutor
+ * task per future, cancelled from whenComplete. Prints the time to arm and complete
+ * everything and the heap still in use while the remaining 1% wait to time out.
+ */
+public class OrTimeoutBenchmark {
+    private static final int FUTURES = 1_000_000;
+    private static final int ROUNDS = 3;
+    private static final long TIMEOUT_MILLIS = 200;
+
+    public static void main(String[] args) throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        for (int r = 0; r < ROUNDS; r++) {
+            run("orTimeout", OrTimeoutBenchmark::armWithWheel);
+            run("STPE schedule+cancel", f -> armWithScheduler(scheduler, f));
+        }
+        scheduler.shutdown();
+    }
+
+    interface Arm {
+        void arm(CompletableFuture<Integer> f);
+    }
+
+    private static void armWithWheel(CompletableFuture<Integer> f) {
+        f.orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void armWithScheduler(ScheduledThreadPoolExecutor scheduler,
+                                         CompletableFuture<Integer> f) {
+        ScheduledFuture<?> timeout = scheduler.schedule(
+                () -> f.completeExceptionally(new TimeoutException()),
+                TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        f.whenComplete((v, ex) -> timeout.cancel(false));
+    }
+
+    private static void run(String name, Arm arm) throws InterruptedException {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Integer>[] futures = (CompletableFuture<Integer>[]) new CompletableFuture<?>[FUTURES];
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < FUTURES; i++) {
+            CompletableFuture<Integer> f = new CompletableFuture<>();
+            arm.arm(f);
+            futures[i] = f;
+        }
+        for (int i = 0; i < FUTURES; i++) {
+            if (i % 100 != 0) {
+                futures[i].complete(i);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.gc();
+        long retained = usedHeap() - heapBefore;
+        Thread.sleep(TIMEOUT_MILLIS * 2);
+        int timedOut = 0;
+        for (CompletableFuture<Integer> f : futures) {
+            if (f.isCompletedExceptionally()) {
+                timedOut++;
+            }
+        }
+        System.out.printf("%-22s arm+complete=%7.1fms (%5.0fns/future) retained=%6.1fMB timedOut=%d%n",
+                name, elapsed / 1e6, (double) elapsed / FUTURES,
+                retained / (1024.0 * 1024.0), timedOut);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
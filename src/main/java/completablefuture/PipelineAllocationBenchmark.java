@@ -0,0 +1,80 @@
+package completablefuture;
+
+import juc.CompletableFuture;
+import juc.CompletionPipeline;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures bytes allocated per stage for a chain of synchronous thenApply calls versus
+ * the same stages fused into one CompletionPipeline. Each iteration attaches the stages
+ * to an incomplete future and then completes it, so every stage goes through the
+ * completion stack as in real code. Uses HotSpot's per-thread allocation counter.
+ */
+public class PipelineAllocationBenchmark {
+    private static final int[] STAGES = {1, 4, 16, 64};
+    private static final int ITERATIONS = 200_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile long sink;
+
+    public static void main(String[] args) {
+        for (int n : STAGES) {
+            CompletionPipeline<Integer, Integer> pipeline = CompletionPipeline.start();
+            for (int i = 0; i < n; i++) {
+                pipeline = pipeline.thenApply(x -> x + 1);
+            }
+            CompletionPipeline<Integer, Integer> fused = pipeline;
+            int stages = n;
+
+            // warm up both paths before measuring
+            measure(() -> chained(stages));
+            measure(() -> fused(fused));
+
+            long baseline = measure(PipelineAllocationBenchmark::baseline);
+            long chained = measure(() -> chained(stages));
+            long pipelined = measure(() -> fused(fused));
+            System.out.printf("stages=%3d chained=%6.1f B/stage pipeline=%6.1f B/stage (per op: %d vs %d bytes)%n",
+                    n,
+                    (double) (chained - baseline) / n,
+                    (double) (pipelined - baseline) / n,
+                    chained - baseline, pipelined - baseline);
+        }
+        System.out.println("(sink = " + sink + ")");
+    }
+
+    /** Returns the average bytes allocated per call of op. */
+    private static long measure(Runnable op) {
+        long tid = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return (THREADS.getThreadAllocatedBytes(tid) - before) / ITERATIONS;
+    }
+
+    private static void baseline() {
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        source.complete(0);
+        sink += source.join();
+    }
+
+    private static void chained(int stages) {
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        CompletableFuture<Integer> f = source;
+        for (int i = 0; i < stages; i++) {
+            f = f.thenApply(x -> x + 1);
+        }
+        source.complete(0);
+        sink += f.join();
+    }
+
+    private static void fused(CompletionPipeline<Integer, Integer> pipeline) {
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        CompletableFuture<Integer> f = source.thenPipeline(pipeline);
+        source.complete(0);
+        sink += f.join();
+    }
+}
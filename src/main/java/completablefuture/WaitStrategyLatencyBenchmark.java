@@ -0,0 +1,80 @@
+package completablefuture;
+
+import juc.CompletableFuture;
+import juc.CompletableFuture.WaitStrategy;
+
+import java.util.Arrays;
+
+/**
+ * Hand-off latency of CompletableFuture.join(WaitStrategy): a producer thread completes
+ * futures one at a time, each with its System.nanoTime(), a few microseconds after the
+ * consumer has started waiting, and the consumer records how long the wake-up took.
+ * Prints percentiles and a power-of-two histogram per strategy. Spinning strategies need
+ * a spare core for the consumer to show their advantage.
+ */
+public class WaitStrategyLatencyBenchmark {
+    private static final int HANDOFFS = 100_000;
+    private static final int WARMUP = 20_000;
+    private static final long GAP_NANOS = 5_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            run(strategy); // warm-up pass
+            long[] latencies = run(strategy);
+            report(strategy, latencies);
+        }
+    }
+
+    private static long[] run(WaitStrategy strategy) throws InterruptedException {
+        int n = HANDOFFS + WARMUP;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Long>[] futures = (CompletableFuture<Long>[]) new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++) {
+            futures[i] = new CompletableFuture<>();
+        }
+        long[] latencies = new long[HANDOFFS];
+        Thread consumer = new Thread(() -> {
+            for (int i = 0; i < n; i++) {
+                long sent = futures[i].join(strategy);
+                long latency = System.nanoTime() - sent;
+                if (i >= WARMUP) {
+                    latencies[i - WARMUP] = latency;
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < n; i++) {
+            // give the consumer time to start waiting on futures[i]
+            long until = System.nanoTime() + GAP_NANOS;
+            while (System.nanoTime() < until) {
+                // busy-wait; sleeping would be far coarser than the gap
+            }
+            futures[i].complete(System.nanoTime());
+        }
+        consumer.join();
+        return latencies;
+    }
+
+    private static void report(WaitStrategy strategy, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s p50=%6dns p90=%6dns p99=%7dns p99.9=%8dns max=%9dns%n",
+                strategy, percentile(sorted, 0.50), percentile(sorted, 0.90),
+                percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[sorted.length - 1]);
+        int[] buckets = new int[64];
+        for (long latency : latencies) {
+            buckets[63 - Long.numberOfLeadingZeros(Math.max(latency, 1))]++;
+        }
+        StringBuilder histogram = new StringBuilder("           ");
+        for (int b = 0; b < buckets.length; b++) {
+            if (buckets[b] != 0) {
+                histogram.append(String.format("<%dns:%d ", 2L << b, buckets[b]));
+            }
+        }
+        System.out.println(histogram);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, (long) (p * sorted.length))];
+    }
+}
@@ -0,0 +1,129 @@
+package forkjoinpool;
+
+import juc.AdaptiveRecursiveTask;
+import juc.ForkJoinPool;
+import juc.RecursiveTask;
+
+/**
+ * Compares hand-tuned split thresholds (like the "workLoad > 16" in MyRecursiveTask)
+ * with AdaptiveRecursiveTask, for element costs from a few nanoseconds to microseconds.
+ * A fixed threshold is only good for one granularity; the adaptive task should stay
+ * close to the best fixed threshold for every row.
+ */
+public class AdaptiveRecursiveTaskBenchmark {
+    private static final int SIZE = 1 << 20;
+    private static final int[] THRESHOLDS = {16, 1024, 65536};
+    private static final int[] SPINS_PER_ELEMENT = {1, 16, 256, 4096};
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        ForkJoinPool pool = new ForkJoinPool();
+        long[] array = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            array[i] = i;
+        }
+        for (int spins : SPINS_PER_ELEMENT) {
+            int size = Math.max(SIZE / spins, 1024); // keep each row's total work comparable
+            StringBuilder row = new StringBuilder("spins/element=" + spins);
+            for (int threshold : THRESHOLDS) {
+                long nanos = best(pool, () -> new FixedSum(array, 0, size, spins, threshold));
+                row.append(String.format(", fixed(%d)=%.2fms", threshold, nanos / 1e6));
+            }
+            long nanos = best(pool, () -> new AdaptiveSum(array, 0, size, spins));
+            row.append(String.format(", adaptive=%.2fms", nanos / 1e6));
+            System.out.println(row);
+        }
+        pool.shutdown();
+    }
+
+    private static long best(ForkJoinPool pool, java.util.function.Supplier<RecursiveTask<Long>> task) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            pool.invoke(task.get());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static long work(long x, int spins) {
+        for (int i = 0; i < spins; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x;
+    }
+
+    @SuppressWarnings("serial")
+    static class FixedSum extends RecursiveTask<Long> {
+        final long[] array;
+        final int lo, hi, spins, threshold;
+
+        FixedSum(long[] array, int lo, int hi, int spins, int threshold) {
+            this.array = array;
+            this.lo = lo;
+            this.hi = hi;
+            this.spins = spins;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Long compute() {
+            if (hi - lo <= threshold) {
+                long sum = 0;
+                for (int i = lo; i < hi; i++) {
+                    sum += work(array[i], spins);
+                }
+                return sum;
+            }
+            int mid = (lo + hi) >>> 1;
+            FixedSum right = new FixedSum(array, mid, hi, spins, threshold);
+            right.fork();
+            long left = new FixedSum(array, lo, mid, spins, threshold).compute();
+            return left + right.join();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class AdaptiveSum extends AdaptiveRecursiveTask<Long> {
+        final long[] array;
+        final int lo, spins;
+        int hi;
+
+        AdaptiveSum(long[] array, int lo, int hi, int spins) {
+            this.array = array;
+            this.lo = lo;
+            this.hi = hi;
+            this.spins = spins;
+        }
+
+        @Override
+        protected long estimatedSize() {
+            return hi - lo;
+        }
+
+        @Override
+        protected AdaptiveSum trySplit() {
+            int mid = (lo + hi) >>> 1;
+            if (mid == lo) {
+                return null;
+            }
+            AdaptiveSum right = new AdaptiveSum(array, mid, hi, spins);
+            hi = mid;
+            return right;
+        }
+
+        @Override
+        protected Long computeDirectly() {
+            long sum = 0;
+            for (int i = lo; i < hi; i++) {
+                sum += work(array[i], spins);
+            }
+            return sum;
+        }
+
+        @Override
+        protected Long combine(Long left, Long right) {
+            return left + right;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package forkjoinpool;
+
+import juc.ParallelArrayOps;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares ParallelArrayOps against plain sequential loops (and Arrays.sort) on long[]
+ * and double[] of growing sizes. Each operation is run on a fresh copy and the best of
+ * a few rounds is printed, so JIT warm-up doesn't dominate the small sizes.
+ */
+public class ParallelArrayOpsBenchmark {
+    private static final int[] SIZES = {1 << 12, 1 << 16, 1 << 20, 1 << 23};
+    private static final int ROUNDS = 7;
+    private static final int BUCKETS = 64;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        for (int n : SIZES) {
+            long[] longs = random.longs(n).toArray();
+            double[] doubles = random.doubles(n).toArray();
+            System.out.println("n = " + n);
+
+            report("sort(long[])",
+                    time(longs, Arrays::sort),
+                    time(longs, ParallelArrayOps::sort));
+            report("sort(double[])",
+                    time(doubles, Arrays::sort),
+                    time(doubles, ParallelArrayOps::sort));
+            report("prefix(long[], sum)",
+                    time(longs, a -> {
+                        for (int i = 1; i < a.length; i++) {
+                            a[i] += a[i - 1];
+                        }
+                    }),
+                    time(longs, a -> ParallelArrayOps.prefix(a, Long::sum)));
+            report("map(long[])",
+                    time(longs, a -> {
+                        for (int i = 0; i < a.length; i++) {
+                            a[i] = a[i] * 31 + 7;
+                        }
+                    }),
+                    time(longs, a -> ParallelArrayOps.map(a, x -> x * 31 + 7)));
+            report("reduce(double[], max)",
+                    time(doubles, a -> {
+                        double max = Double.NEGATIVE_INFINITY;
+                        for (double x : a) {
+                            max = Math.max(max, x);
+                        }
+                        sink += max;
+                    }),
+                    time(doubles, a -> sink += ParallelArrayOps.reduce(a, Double.NEGATIVE_INFINITY, Math::max)));
+            report("filter(long[], even)",
+                    time(longs, a -> sink += Arrays.stream(a).filter(x -> (x & 1) == 0).toArray().length),
+                    time(longs, a -> sink += ParallelArrayOps.filter(a, x -> (x & 1) == 0).length));
+            report("partition(long[], even)",
+                    time(longs, a -> {
+                        long[] w = new long[a.length];
+                        int t = 0;
+                        for (long x : a) {
+                            if ((x & 1) == 0) {
+                                w[t++] = x;
+                            }
+                        }
+                        for (long x : a) {
+                            if ((x & 1) != 0) {
+                                w[t++] = x;
+                            }
+                        }
+                        System.arraycopy(w, 0, a, 0, a.length);
+                    }),
+                    time(longs, a -> sink += ParallelArrayOps.partition(a, x -> (x & 1) == 0)));
+            report("histogram(double[])",
+                    time(doubles, a -> {
+                        long[] counts = new long[BUCKETS];
+                        for (double x : a) {
+                            counts[(int) (x * BUCKETS)]++;
+                        }
+                        sink += counts[0];
+                    }),
+                    time(doubles, a -> sink += ParallelArrayOps.histogram(a, BUCKETS, x -> (int) (x * BUCKETS))[0]));
+        }
+        System.out.println("(sink = " + sink + ")");
+    }
+
+    /** Keeps results alive so the JIT can't drop the measured work. */
+    static volatile long sink;
+
+    interface LongArrayOp {
+        void apply(long[] a);
+    }
+
+    interface DoubleArrayOp {
+        void apply(double[] a);
+    }
+
+    private static long time(long[] source, LongArrayOp op) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long[] a = source.clone();
+            long start = System.nanoTime();
+            op.apply(a);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static long time(double[] source, DoubleArrayOp op) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            double[] a = source.clone();
+            long start = System.nanoTime();
+            op.apply(a);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void report(String name, long sequentialNanos, long parallelNanos) {
+        System.out.printf("  %-24s sequential=%9.3fms parallel=%9.3fms speedup=%.2fx%n",
+                name, sequentialNanos / 1e6, parallelNanos / 1e6,
+                (double) sequentialNanos / parallelNanos);
+    }
+}
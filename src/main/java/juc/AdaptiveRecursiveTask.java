@@ -0,0 +1,267 @@
+package juc;
+
+/**
+ * A {@link RecursiveTask} that decides at run time whether to split
+ * off and fork more subtasks or to compute the remaining work
+ * sequentially, instead of relying on a hand-tuned threshold such as
+ * {@code if (size > 16)}.
+ * 一个在运行时决定是继续拆分并fork更多子任务，还是顺序计算剩余工作的{@link RecursiveTask}，
+ * 而不是依赖诸如{@code if (size > 16)}这样手工调优的阈值。
+ *
+ * <p>Two signals are combined. The first is
+ * {@link ForkJoinTask#getSurplusQueuedTaskCount}: while the current
+ * worker already holds more than a few queued tasks beyond what
+ * other workers are likely to steal, splitting further only adds
+ * overhead. The second is per-task timing: each sequential leaf
+ * records how long it took per unit of work, and the running
+ * estimate (shared by all subtasks of the same root) is used to stop
+ * splitting once a piece is predicted to finish within the target
+ * leaf time, so that tiny pieces are not forked even when other
+ * workers are idle.
+ * 结合了两个信号。第一个是{@link ForkJoinTask#getSurplusQueuedTaskCount}：
+ * 当当前工作线程已经持有比其他工作线程可能窃取的任务多出几个排队任务时，进一步拆分只会增加开销。
+ * 第二个是每个任务的计时：每个顺序执行的叶子任务记录每单位工作所花的时间，
+ * 运行中的估计值（由同一根任务的所有子任务共享）用于在预测某一块能在目标叶子时间内完成时停止拆分，
+ * 这样即使其他工作线程空闲，也不会fork非常小的块。
+ *
+ * <p>Subclasses describe their work as a splittable range, in the
+ * manner of a {@link java.util.Spliterator}: {@link #trySplit} moves
+ * part of this task's remaining work into a new task,
+ * {@link #computeDirectly} processes what is left, and
+ * {@link #combine} merges the results. For example, a sum over an
+ * array:
+ * 子类以类似{@link java.util.Spliterator}的方式将其工作描述为可拆分的范围：
+ * {@link #trySplit}将此任务剩余工作的一部分移到一个新任务中，
+ * {@link #computeDirectly}处理剩余部分，{@link #combine}合并结果。例如，对数组求和：
+ *
+ * <pre> {@code
+ * class Sum extends AdaptiveRecursiveTask<Long> {
+ *   final long[] array; final int lo; int hi;
+ *   Sum(long[] array, int lo, int hi) {
+ *     this.array = array; this.lo = lo; this.hi = hi;
+ *   }
+ *   protected long estimatedSize() { return hi - lo; }
+ *   protected Sum trySplit() {
+ *     int mid = (lo + hi) >>> 1;
+ *     if (mid == lo) return null;
+ *     Sum right = new Sum(array, mid, hi);
+ *     hi = mid;
+ *     return right;
+ *   }
+ *   protected Long computeDirectly() {
+ *     long sum = 0;
+ *     for (int i = lo; i < hi; ++i) sum += array[i];
+ *     return sum;
+ *   }
+ *   protected Long combine(Long left, Long right) { return left + right; }
+ * }}</pre>
+ *
+ * @param <V> the type of the result of the task
+ */
+public abstract class AdaptiveRecursiveTask<V> extends RecursiveTask<V> {
+    private static final long serialVersionUID = -1874126532470187052L;
+
+    /**
+     * Default time, in nanoseconds, that a sequential leaf should
+     * take. Per-task fork/join overhead is on the order of a
+     * microsecond, so leaves of a few tens of microseconds keep that
+     * overhead small while still leaving plenty of stealable tasks.
+     * 顺序执行的叶子任务应花费的默认时间（以纳秒为单位）。
+     * 每个任务的fork/join开销约为一微秒，因此几十微秒的叶子任务既能使该开销很小，又能留下足够多可窃取的任务。
+     */
+    static final long DEFAULT_TARGET_LEAF_NANOS = 50L * 1000L;
+
+    /**
+     * Stop splitting while the current worker holds more than this
+     * many surplus queued tasks. Small values suffice, as explained in
+     * {@link ForkJoinTask#getSurplusQueuedTaskCount}.
+     * 当当前工作线程持有的多余排队任务数超过此值时停止拆分。
+     * 如{@link ForkJoinTask#getSurplusQueuedTaskCount}中所述，较小的值就足够了。
+     */
+    static final int MAX_SURPLUS = 3;
+
+    /**
+     * Fixed-point shift for the nanos-per-unit estimate, so that
+     * work units much cheaper than a nanosecond are still tracked.
+     * 每单位纳秒估计值的定点移位，使得比一纳秒便宜得多的工作单元仍能被跟踪。
+     */
+    private static final int COST_SHIFT = 8;
+
+    /**
+     * Timing state shared by a root task and all tasks split from it.
+     * Updates are racy on purpose: losing an occasional sample only
+     * slows convergence of the estimate, which is cheaper than
+     * synchronizing every leaf.
+     * 由根任务及其拆分出的所有任务共享的计时状态。
+     * 更新有意地存在竞争：偶尔丢失一个样本只会减慢估计值的收敛，这比同步每个叶子任务更划算。
+     */
+    static final class Tuning {
+        final long targetNanos;
+        volatile long scaledNanosPerUnit; // 0 until first leaf is timed
+
+        Tuning(long targetNanos) {
+            this.targetNanos = targetNanos;
+        }
+
+        /**
+         * Folds a leaf's timing into the estimate, as an exponentially
+         * weighted moving average giving 1/4 weight to the new sample.
+         */
+        void record(long units, long nanos) {
+            if (units > 0L && nanos > 0L) {
+                long sample = (nanos << COST_SHIFT) / units;
+                long c = scaledNanosPerUnit;
+                scaledNanosPerUnit = (c == 0L) ? Math.max(sample, 1L) :
+                        Math.max(c + ((sample - c) >> 2), 1L);
+            }
+        }
+
+        /**
+         * Returns true if work of the given size is predicted to take
+         * less than the target leaf time.
+         */
+        boolean isSmall(long units) {
+            long c = scaledNanosPerUnit;
+            return c != 0L &&
+                    units < ((targetNanos << COST_SHIFT) / c);
+        }
+    }
+
+    /**
+     * Requested leaf time; only used when this task is a root.
+     */
+    private final long targetLeafNanos;
+
+    /**
+     * Shared timing state, set when this task starts (roots) or when
+     * it is forked by its parent (subtasks).
+     */
+    transient Tuning tuning;
+
+    /**
+     * Link to the next (older) task forked by the same parent, so
+     * that forked tasks can be joined without allocating a list.
+     */
+    transient AdaptiveRecursiveTask<V> nextForked;
+
+    /**
+     * Creates a task using the default target leaf time.
+     * 使用默认目标叶子时间创建任务。
+     */
+    protected AdaptiveRecursiveTask() {
+        this.targetLeafNanos = DEFAULT_TARGET_LEAF_NANOS;
+    }
+
+    /**
+     * Creates a task that, when invoked as a root, aims for
+     * sequential leaves taking about the given time. The value is
+     * ignored for tasks returned by {@link #trySplit}, which inherit
+     * the setting of their root.
+     * 创建一个任务，当它作为根任务调用时，目标是使顺序叶子任务花费大约给定的时间。
+     * 对于由{@link #trySplit}返回的任务，该值被忽略，它们继承其根任务的设置。
+     *
+     * @param targetLeafTime the target time for a sequential leaf
+     * @param unit the time unit of the targetLeafTime argument
+     * @throws IllegalArgumentException if targetLeafTime is not positive
+     * @throws NullPointerException if unit is null
+     */
+    protected AdaptiveRecursiveTask(long targetLeafTime, TimeUnit unit) {
+        long nanos = unit.toNanos(targetLeafTime);
+        if (nanos <= 0L)
+            throw new IllegalArgumentException();
+        this.targetLeafNanos = nanos;
+    }
+
+    /**
+     * Returns an estimate of the number of units of work remaining in
+     * this task, used to decide whether it is worth splitting and to
+     * scale the timing estimate.
+     * 返回此任务中剩余工作单元数的估计值，用于决定是否值得拆分以及缩放计时估计。
+     *
+     * @return the estimated number of units of remaining work
+     */
+    protected abstract long estimatedSize();
+
+    /**
+     * Moves part of this task's remaining work (typically about half)
+     * into a new task, which will be forked, and returns it. This task
+     * keeps the rest. The results are later combined as
+     * {@code combine(resultOfThis, resultOfSplit)}, so the returned
+     * task should cover the work that follows this task's remaining
+     * work when order matters.
+     * 将此任务剩余工作的一部分（通常约一半）移到一个新任务中（新任务会被fork）并返回它。
+     * 此任务保留其余部分。结果稍后以{@code combine(resultOfThis, resultOfSplit)}的方式合并，
+     * 因此当顺序重要时，返回的任务应覆盖此任务剩余工作之后的工作。
+     *
+     * @return the split off task, or {@code null} if this task cannot
+     * be split further
+     */
+    protected abstract AdaptiveRecursiveTask<V> trySplit();
+
+    /**
+     * Sequentially computes all work remaining in this task.
+     * 顺序计算此任务中剩余的所有工作。
+     *
+     * @return the result of the remaining work
+     */
+    protected abstract V computeDirectly();
+
+    /**
+     * Combines the results of two adjacent pieces of work.
+     * 合并两块相邻工作的结果。
+     *
+     * @param left the result of the earlier piece
+     * @param right the result of the later piece
+     * @return the combined result
+     */
+    protected abstract V combine(V left, V right);
+
+    /**
+     * Returns the current estimate of the time taken per unit of work,
+     * shared by all tasks split from the same root, or zero if no
+     * sequential leaf has completed yet. This method is designed to
+     * aid monitoring and tuning.
+     * 返回当前每单位工作所花时间的估计值（由同一根任务拆分出的所有任务共享），
+     * 如果还没有顺序叶子任务完成，则返回零。此方法旨在帮助监控和调优。
+     *
+     * @return the estimated nanoseconds per unit of work, or zero
+     */
+    public final double getEstimatedNanosPerUnit() {
+        Tuning tn = tuning;
+        return (tn == null) ? 0.0 :
+                (double) tn.scaledNanosPerUnit / (1L << COST_SHIFT);
+    }
+
+    /**
+     * Splits and forks while it looks worthwhile, computes the rest
+     * directly, then joins the forked tasks, newest first, which is
+     * the order in which they are most likely still in the local
+     * queue.
+     * 在看起来值得时进行拆分和fork，直接计算剩余部分，然后按最新优先的顺序合并被fork的任务，
+     * 这也是它们最可能仍在本地队列中的顺序。
+     */
+    protected final V compute() {
+        Tuning tn = tuning;
+        if (tn == null)
+            tuning = tn = new Tuning(targetLeafNanos);
+        AdaptiveRecursiveTask<V> forked = null, t;
+        long n;
+        while ((n = estimatedSize()) > 1L && !tn.isSmall(n) &&
+                getSurplusQueuedTaskCount() <= MAX_SURPLUS &&
+                (t = trySplit()) != null) {
+            t.tuning = tn;
+            t.nextForked = forked;
+            forked = t;
+            t.fork();
+        }
+        long start = System.nanoTime();
+        V result = computeDirectly();
+        tn.record(n, System.nanoTime() - start);
+        while ((t = forked) != null) {
+            result = combine(result, t.join());
+            forked = t.nextForked;
+            t.nextForked = null;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package juc;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link CompletableFuture} bound to an {@link Executor}, which it and
+ * all futures derived from it use both as the default for async
+ * methods and, depending on a cost hint, for dependent actions that a
+ * plain CompletableFuture would run in whatever thread completes it.
+ * 一个绑定到{@link Executor}的{@link CompletableFuture}，它及其派生的所有future都将该执行器用作异步方法的默认执行器，
+ * 并且根据开销提示，也用于那些普通CompletableFuture会在完成它的任意线程中运行的依赖操作。
+ *
+ * <p>Each future has an <em>inline cost limit</em>. Dependent actions
+ * attached with a cost hint, such as {@link #thenApply(Function, long)},
+ * run inline, like those of a plain CompletableFuture, only if the hint
+ * does not exceed the limit, and are otherwise submitted to the
+ * executor. Actions attached without a hint are taken to be cheap and
+ * run inline, unless the limit is {@link #INLINE_NONE}, in which case
+ * no dependent ever runs inline.
+ * Hints are in arbitrary units chosen by the application, for example
+ * estimated nanoseconds.
+ * 每个future都有一个<em>内联开销上限</em>。带开销提示附加的依赖操作（例如{@link #thenApply(Function, long)}），
+ * 仅当提示不超过上限时才像普通CompletableFuture的依赖操作那样内联运行，否则提交给执行器。
+ * 不带提示附加的操作被视为廉价操作而内联运行，除非上限为{@link #INLINE_NONE}，此时任何依赖操作都不会内联运行。
+ * 提示的单位由应用程序任意选择，例如估计的纳秒数。
+ *
+ * <p>For example, to keep an I/O selector thread that completes
+ * responses from running anything but trivial callbacks:
+ * 例如，要让完成响应的I/O selector线程只运行简单的回调：
+ *
+ * <pre> {@code
+ * AffinityCompletableFuture<Response> f =
+ *     new AffinityCompletableFuture<>(workers, 1_000);
+ * f.thenApply(Response::status, 10)            // inline
+ *  .thenAccept(metrics::record, 100);          // inline
+ * f.thenApply(Response::parseBody, 50_000);    // on workers
+ * // ... later, in the selector thread:
+ * f.complete(response);
+ * }</pre>
+ *
+ * @param <T> The result type returned by this future's {@code join}
+ *            and {@code get} methods
+ */
+public class AffinityCompletableFuture<T> extends CompletableFuture<T> {
+
+    /**
+     * Inline cost limit under which every dependent action runs
+     * inline, as in a plain CompletableFuture.
+     * 所有依赖操作都内联运行（与普通CompletableFuture相同）的内联开销上限。
+     */
+    public static final long INLINE_ALL = Long.MAX_VALUE;
+
+    /**
+     * Inline cost limit under which no dependent action runs inline.
+     * 没有任何依赖操作内联运行的内联开销上限。
+     */
+    public static final long INLINE_NONE = -1L;
+
+    private final Executor executor;
+    private final long inlineCostLimit;
+
+    /**
+     * Creates a new incomplete future that uses the given executor for
+     * async methods and runs all dependent actions inline.
+     * 创建一个新的未完成future，它将给定执行器用于异步方法，并内联运行所有依赖操作。
+     *
+     * @param executor the executor
+     * @throws NullPointerException if executor is null
+     */
+    public AffinityCompletableFuture(Executor executor) {
+        this(executor, INLINE_ALL);
+    }
+
+    /**
+     * Creates a new incomplete future that uses the given executor for
+     * async methods and for dependent actions whose cost hint exceeds
+     * the given limit.
+     * 创建一个新的未完成future，它将给定执行器用于异步方法，以及开销提示超过给定上限的依赖操作。
+     *
+     * @param executor        the executor
+     * @param inlineCostLimit the largest cost hint of an action that may
+     *                        run inline, or {@link #INLINE_NONE}
+     * @throws NullPointerException if executor is null
+     */
+    public AffinityCompletableFuture(Executor executor, long inlineCostLimit) {
+        if (executor == null)
+            throw new NullPointerException();
+        this.executor = executor;
+        this.inlineCostLimit = inlineCostLimit;
+    }
+
+    /**
+     * Returns a new future bound to the given executor that is
+     * completed with the same outcome as the given stage. Use this to
+     * move dependents of a stage obtained elsewhere off the thread
+     * that completes it.
+     * 返回一个绑定到给定执行器的新future，它以与给定阶段相同的结果完成。
+     * 用它可以将从别处获得的阶段的依赖操作移出完成该阶段的线程。
+     *
+     * @param stage           the stage
+     * @param executor        the executor
+     * @param inlineCostLimit the largest cost hint of an action that may
+     *                        run inline, or {@link #INLINE_NONE}
+     * @param <U>             the type of the value
+     * @return the new future
+     * @throws NullPointerException if stage or executor is null
+     */
+    public static <U> AffinityCompletableFuture<U> bind(CompletionStage<U> stage,
+                                                        Executor executor,
+                                                        long inlineCostLimit) {
+        AffinityCompletableFuture<U> d =
+                new AffinityCompletableFuture<U>(executor, inlineCostLimit);
+        stage.whenComplete((v, ex) -> {
+            if (ex == null)
+                d.complete(v);
+            else
+                d.completeExceptionally(ex);
+        });
+        return d;
+    }
+
+    /**
+     * Returns a new incomplete future bound to the same executor and
+     * inline cost limit as this one.
+     */
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new AffinityCompletableFuture<U>(executor, inlineCostLimit);
+    }
+
+    /**
+     * Returns the executor this future is bound to.
+     */
+    @Override
+    public Executor defaultExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the executor this future is bound to if the inline cost
+     * limit is {@link #INLINE_NONE}, else {@code null}.
+     */
+    @Override
+    public Executor dependentExecutor() {
+        return (inlineCostLimit < 0L) ? executor : null;
+    }
+
+    /**
+     * Returns the inline cost limit of this future.
+     * 返回此future的内联开销上限。
+     *
+     * @return the inline cost limit
+     */
+    public long getInlineCostLimit() {
+        return inlineCostLimit;
+    }
+
+    /**
+     * Casts a dependent of this future, created by newIncompleteFuture.
+     */
+    private static <U> AffinityCompletableFuture<U> bound(CompletableFuture<U> f) {
+        return (AffinityCompletableFuture<U>) f;
+    }
+
+    /**
+     * Returns true if an action with the given cost hint may run
+     * inline.
+     */
+    private boolean inline(long cost) {
+        return inlineCostLimit >= 0L && cost <= inlineCostLimit;
+    }
+
+    /**
+     * Like {@link #thenApply(Function)}, running the function inline
+     * only if the cost hint does not exceed the inline cost limit.
+     * 类似于{@link #thenApply(Function)}，仅当开销提示不超过内联开销上限时才内联运行函数。
+     *
+     * @param fn   the function to use to compute the value of the
+     *             returned CompletableFuture
+     * @param cost the estimated cost of the function
+     * @param <U>  the function's return type
+     * @return the new future
+     */
+    public <U> AffinityCompletableFuture<U> thenApply(Function<? super T, ? extends U> fn,
+                                              long cost) {
+        return bound(inline(cost) ? thenApply(fn) : thenApplyAsync(fn, executor));
+    }
+
+    /**
+     * Like {@link #thenAccept(Consumer)}, running the action inline
+     * only if the cost hint does not exceed the inline cost limit.
+     * 类似于{@link #thenAccept(Consumer)}，仅当开销提示不超过内联开销上限时才内联运行操作。
+     *
+     * @param action the action to perform before completing the
+     *               returned CompletableFuture
+     * @param cost   the estimated cost of the action
+     * @return the new future
+     */
+    public AffinityCompletableFuture<Void> thenAccept(Consumer<? super T> action, long cost) {
+        return bound(inline(cost) ? thenAccept(action) : thenAcceptAsync(action, executor));
+    }
+
+    /**
+     * Like {@link #thenRun(Runnable)}, running the action inline only
+     * if the cost hint does not exceed the inline cost limit.
+     * 类似于{@link #thenRun(Runnable)}，仅当开销提示不超过内联开销上限时才内联运行操作。
+     *
+     * @param action the action to perform before completing the
+     *               returned CompletableFuture
+     * @param cost   the estimated cost of the action
+     * @return the new future
+     */
+    public AffinityCompletableFuture<Void> thenRun(Runnable action, long cost) {
+        return bound(inline(cost) ? thenRun(action) : thenRunAsync(action, executor));
+    }
+
+    /**
+     * Like {@link #thenCompose(Function)}, running the function inline
+     * only if the cost hint does not exceed the inline cost limit.
+     * 类似于{@link #thenCompose(Function)}，仅当开销提示不超过内联开销上限时才内联运行函数。
+     *
+     * @param fn   the function returning a new CompletionStage
+     * @param cost the estimated cost of the function
+     * @param <U>  the type of the returned CompletionStage's result
+     * @return the new future
+     */
+    public <U> AffinityCompletableFuture<U> thenCompose(
+            Function<? super T, ? extends CompletionStage<U>> fn, long cost) {
+        return bound(inline(cost) ? thenCompose(fn) : thenComposeAsync(fn, executor));
+    }
+
+    /**
+     * Like {@link #whenComplete(BiConsumer)}, running the action
+     * inline only if the cost hint does not exceed the inline cost
+     * limit.
+     * 类似于{@link #whenComplete(BiConsumer)}，仅当开销提示不超过内联开销上限时才内联运行操作。
+     *
+     * @param action the action to perform
+     * @param cost   the estimated cost of the action
+     * @return the new future
+     */
+    public AffinityCompletableFuture<T> whenComplete(
+            BiConsumer<? super T, ? super Throwable> action, long cost) {
+        return bound(inline(cost) ? whenComplete(action) : whenCompleteAsync(action, executor));
+    }
+
+    /**
+     * Like {@link #handle(BiFunction)}, running the function inline
+     * only if the cost hint does not exceed the inline cost limit.
+     * 类似于{@link #handle(BiFunction)}，仅当开销提示不超过内联开销上限时才内联运行函数。
+     *
+     * @param fn   the function to use to compute the value of the
+     *             returned CompletableFuture
+     * @param cost the estimated cost of the function
+     * @param <U>  the function's return type
+     * @return the new future
+     */
+    public <U> AffinityCompletableFuture<U> handle(
+            BiFunction<? super T, Throwable, ? extends U> fn, long cost) {
+        return bound(inline(cost) ? handle(fn) : handleAsync(fn, executor));
+    }
+}
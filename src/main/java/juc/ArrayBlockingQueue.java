@@ -694,6 +694,44 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * Inserts as many of the elements of the given collection as
+     * there is room for, in the order of its iterator, without
+     * waiting. This is the converse of {@link #drainTo}: the elements
+     * are inserted in one acquisition of the lock, so inserting a
+     * batch costs much less than offering its elements one by one.
+     * 按照给定集合迭代器的顺序，在不等待的情况下插入该集合中尽可能多的元素（在容量允许的范围内）。
+     * 这是{@link #drainTo}的逆操作：元素在一次获取锁的过程中被插入，因此插入一批元素的开销比逐个offer其元素要小得多。
+     *
+     * @param c the collection of elements to insert
+     * @return the number of elements inserted, which are the first
+     *         that many elements of the collection
+     * @throws NullPointerException     if the collection or any of its
+     *                                  elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this queue
+     */
+    public int offerAll(Collection<? extends E> c) {
+        checkNotNull(c);
+        if (c == this)
+            throw new IllegalArgumentException();
+        Object[] a = c.toArray();
+        for (Object x : a)
+            checkNotNull(x);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int k = Math.min(a.length, items.length - count);
+            for (int i = 0; i < k; ++i) {
+                @SuppressWarnings("unchecked")
+                E x = (E) a[i];
+                enqueue(x);
+            }
+            return k;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * @throws UnsupportedOperationException {@inheritDoc}
      * @throws ClassCastException            {@inheritDoc}
@@ -0,0 +1,430 @@
+package juc;
+
+import juc.locks.Condition;
+import juc.locks.ReentrantLock;
+import sun.misc2.Unsafe;
+import unsafeTest.GetUnsafeFromReflect;
+
+import java.util.Collection;
+
+/**
+ * A {@link CompletionService} that lets consumers retrieve completed
+ * tasks in batches, and can hold back wake-ups until a batch is worth
+ * delivering.
+ * 一个允许消费者批量获取已完成任务的{@link CompletionService}，并且可以推迟唤醒直到一批任务值得交付。
+ *
+ * <p>Unlike {@link ExecutorCompletionService}, which wraps each task in
+ * a second future and puts every completion through a
+ * {@link LinkedBlockingQueue}, completed tasks here push themselves
+ * onto a lock-free stack, and consumers detach the whole stack at
+ * once. {@link #drainTo} and {@link #takeBatch} hand out everything
+ * available in one call.
+ * 与{@link ExecutorCompletionService}不同（它将每个任务包装在第二个future中，并使每次完成都经过一个{@link LinkedBlockingQueue}），
+ * 这里已完成的任务将自己压入一个无锁栈，消费者一次性摘下整个栈。
+ * {@link #drainTo}和{@link #takeBatch}在一次调用中交出所有可用的任务。
+ *
+ * <p>With coalescing, configured by a batch size <em>N</em> and a
+ * maximum delay <em>T</em>, blocking retrieval methods return only once
+ * <em>N</em> completed tasks are available, or the oldest available
+ * one completed at least <em>T</em> ago; completing threads signal a
+ * waiting consumer at most twice per batch. Non-blocking methods
+ * ({@link #poll()}, {@link #drainTo}) always return whatever is
+ * available. Tasks are returned in the order they completed.
+ * 使用合并时（通过批大小<em>N</em>和最大延迟<em>T</em>配置），阻塞的获取方法仅在有<em>N</em>个已完成任务可用，
+ * 或者最早可用的任务完成已至少<em>T</em>时间时才返回；完成任务的线程每批最多唤醒等待的消费者两次。
+ * 非阻塞方法（{@link #poll()}、{@link #drainTo}）总是返回当前可用的任务。任务按其完成的顺序返回。
+ *
+ * <p>Tasks are always run as {@link FutureTask}s; the
+ * {@code newTaskFor} methods of an {@link AbstractExecutorService} are
+ * not used.
+ * 任务总是作为{@link FutureTask}运行；不使用{@link AbstractExecutorService}的{@code newTaskFor}方法。
+ *
+ * @param <V> the type of values the tasks of this service produce
+ */
+public class BatchingCompletionService<V> implements CompletionService<V> {
+    /*
+     * Completed tasks form a Treiber stack. Each node records the
+     * size of the stack it tops and when the bottom node was pushed,
+     * so that whether a batch is due can be decided from the head
+     * alone. Consumers, serialized by a lock, swap out the stack,
+     * reverse it into a FIFO "ready" list and hand out from there.
+     *
+     * A completing thread signals only when it makes the stack one
+     * (a timed wait can start) or batchSize deep, and only if some
+     * consumer is waiting. Consumers announce themselves in
+     * "waiters" before rechecking the stack, so one side always sees
+     * the other.
+     */
+
+    private final Executor executor;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    private volatile QueueingTask head;   // stack of completed tasks
+    private volatile int waiters;         // consumers in await, written under lock
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private QueueingTask readyHead, readyTail; // guarded by lock
+
+    /**
+     * FutureTask that pushes itself onto the completed stack when
+     * done.
+     */
+    private final class QueueingTask extends FutureTask<V> {
+        QueueingTask next;
+        int count;          // size of stack with this on top
+        long firstNanos;    // push time of bottom node, if coalescing
+
+        QueueingTask(Callable<V> callable) {
+            super(callable);
+        }
+
+        QueueingTask(Runnable runnable, V result) {
+            super(runnable, result);
+        }
+
+        protected void done() {
+            enqueue(this);
+        }
+    }
+
+    /**
+     * Creates a service that delivers each completed task as soon as
+     * it is available.
+     * 创建一个在每个已完成任务可用时立即交付它的服务。
+     *
+     * @param executor the executor to use
+     * @throws NullPointerException if executor is {@code null}
+     */
+    public BatchingCompletionService(Executor executor) {
+        this(executor, 1, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a service whose blocking retrieval methods wait until
+     * {@code batchSize} completed tasks are available, or the oldest
+     * of them completed at least {@code maxDelay} ago.
+     * 创建一个服务，其阻塞获取方法会一直等待，直到有{@code batchSize}个已完成任务可用，
+     * 或者其中最早的任务完成已至少{@code maxDelay}时间。
+     *
+     * @param executor  the executor to use
+     * @param batchSize the number of completed tasks that makes a batch
+     * @param maxDelay  the longest time a completed task is held back
+     * @param unit      the time unit of the maxDelay argument
+     * @throws NullPointerException     if executor or unit is {@code null}
+     * @throws IllegalArgumentException if batchSize is less than one,
+     *                                  maxDelay is negative, or batchSize
+     *                                  is greater than one and maxDelay
+     *                                  is zero
+     */
+    public BatchingCompletionService(Executor executor, int batchSize,
+                                     long maxDelay, TimeUnit unit) {
+        if (executor == null || unit == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(maxDelay);
+        if (batchSize < 1 || nanos < 0L || (batchSize > 1 && nanos == 0L))
+            throw new IllegalArgumentException();
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = nanos;
+    }
+
+    public Future<V> submit(Callable<V> task) {
+        if (task == null) throw new NullPointerException();
+        QueueingTask f = new QueueingTask(task);
+        executor.execute(f);
+        return f;
+    }
+
+    public Future<V> submit(Runnable task, V result) {
+        if (task == null) throw new NullPointerException();
+        QueueingTask f = new QueueingTask(task, result);
+        executor.execute(f);
+        return f;
+    }
+
+    public Future<V> take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            awaitBatch(false, 0L);
+            return nextReady();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Future<V> poll() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return nextReady();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Future<V> poll(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            awaitBatch(true, nanos);
+            return nextReady();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all available completed tasks and adds them to the
+     * given collection, in completion order, without waiting.
+     * 移除所有可用的已完成任务并按完成顺序将它们添加到给定集合中，不等待。
+     *
+     * @param c the collection to transfer tasks into
+     * @return the number of tasks transferred
+     * @throws NullPointerException if c is null
+     */
+    public int drainTo(Collection<? super Future<V>> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of available completed tasks
+     * and adds them to the given collection, in completion order,
+     * without waiting.
+     * 移除至多给定数量的可用已完成任务并按完成顺序将它们添加到给定集合中，不等待。
+     *
+     * @param c           the collection to transfer tasks into
+     * @param maxElements the maximum number of tasks to transfer
+     * @return the number of tasks transferred
+     * @throws NullPointerException if c is null
+     */
+    public int drainTo(Collection<? super Future<V>> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return transferTo(c, maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a batch of completed tasks is available, then
+     * removes at most the given number of them and adds them to the
+     * given collection, in completion order.
+     * 等待直到有一批已完成任务可用，然后移除其中至多给定数量的任务，并按完成顺序将它们添加到给定集合中。
+     *
+     * @param c           the collection to transfer tasks into
+     * @param maxElements the maximum number of tasks to transfer
+     * @return the number of tasks transferred, at least one unless
+     * maxElements is not positive
+     * @throws InterruptedException if interrupted while waiting
+     * @throws NullPointerException if c is null
+     */
+    public int takeBatch(Collection<? super Future<V>> c, int maxElements)
+            throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            awaitBatch(false, 0L);
+            return transferTo(c, maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits if necessary up to the specified wait time for a batch of
+     * completed tasks, then removes at most the given number of
+     * available tasks and adds them to the given collection, in
+     * completion order. On timeout, transfers whatever is available.
+     * 如有必要，最多等待指定的等待时间以获得一批已完成任务，然后移除至多给定数量的可用任务，
+     * 并按完成顺序将它们添加到给定集合中。超时时转移当前可用的任务。
+     *
+     * @param c           the collection to transfer tasks into
+     * @param maxElements the maximum number of tasks to transfer
+     * @param timeout     how long to wait before giving up, in units of
+     *                    {@code unit}
+     * @param unit        a {@code TimeUnit} determining how to interpret
+     *                    the {@code timeout} parameter
+     * @return the number of tasks transferred
+     * @throws InterruptedException if interrupted while waiting
+     * @throws NullPointerException if c is null
+     */
+    public int takeBatch(Collection<? super Future<V>> c, int maxElements,
+                         long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            awaitBatch(true, nanos);
+            return transferTo(c, maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pushes a completed task, signalling a waiting consumer if this
+     * starts or completes a batch.
+     */
+    final void enqueue(QueueingTask t) {
+        QueueingTask h;
+        int c;
+        long first = 0L;
+        do {
+            h = head;
+            if (h == null) {
+                c = 1;
+                if (maxDelayNanos != 0L && first == 0L)
+                    first = System.nanoTime();
+                t.firstNanos = first;
+            } else {
+                c = h.count + 1;
+                t.firstNanos = h.firstNanos;
+            }
+            t.count = c;
+            t.next = h;
+        } while (!U.compareAndSwapObject(this, HEAD, h, t));
+        if ((c == 1 || c == batchSize) && waiters > 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns 0 if a batch can be delivered now, -1 if nothing is
+     * available, else the nanoseconds until the pending tasks become
+     * a batch by age. Call only when holding lock.
+     */
+    private long batchDelay() {
+        QueueingTask h;
+        if (readyHead != null)
+            return 0L;
+        if ((h = head) == null)
+            return -1L;
+        if (h.count >= batchSize)
+            return 0L;
+        long d = h.firstNanos + maxDelayNanos - System.nanoTime();
+        return (d <= 0L) ? 0L : d;
+    }
+
+    /**
+     * Waits until a batch can be delivered or, if timed, the time
+     * runs out. Call only when holding lock.
+     */
+    private void awaitBatch(boolean timed, long nanos)
+            throws InterruptedException {
+        long d;
+        while ((d = batchDelay()) != 0L) {
+            if (timed && nanos <= 0L)
+                return;
+            waiters = waiters + 1;
+            try {
+                if ((d = batchDelay()) == 0L) // recheck after announcing
+                    return;
+                if (d < 0L && !timed)
+                    available.await();
+                else {
+                    long wait = (d < 0L) ? nanos : timed ? Math.min(d, nanos) : d;
+                    long left = available.awaitNanos(wait);
+                    if (timed)
+                        nanos -= wait - left;
+                }
+            } finally {
+                waiters = waiters - 1;
+            }
+        }
+    }
+
+    /**
+     * Moves the completed stack, in completion order, to the end of
+     * the ready list. Call only when holding lock.
+     */
+    private void transfer() {
+        @SuppressWarnings("unchecked")
+        QueueingTask t = (QueueingTask) U.getAndSetObject(this, HEAD, null);
+        QueueingTask first = null, last = t;
+        while (t != null) { // reverse
+            QueueingTask n = t.next;
+            t.next = first;
+            first = t;
+            t = n;
+        }
+        if (first != null) {
+            if (readyTail == null)
+                readyHead = first;
+            else
+                readyTail.next = first;
+            readyTail = last;
+        }
+    }
+
+    /**
+     * Removes and returns the first ready task, or null if none.
+     * Call only when holding lock.
+     */
+    private QueueingTask nextReady() {
+        QueueingTask t;
+        if (readyHead == null)
+            transfer();
+        if ((t = readyHead) != null) {
+            if ((readyHead = t.next) == null)
+                readyTail = null;
+            t.next = null;
+            if (readyHead != null && waiters > 0)
+                available.signal(); // let the next consumer have the rest
+        }
+        return t;
+    }
+
+    /**
+     * Moves up to max ready tasks to c. Call only when holding lock.
+     */
+    private int transferTo(Collection<? super Future<V>> c, int max) {
+        int n = 0;
+        if (readyHead == null)
+            transfer();
+        QueueingTask t;
+        while (n < max && (t = readyHead) != null) {
+            if ((readyHead = t.next) == null)
+                readyTail = null;
+            t.next = null;
+            c.add(t);
+            ++n;
+        }
+        if (readyHead != null && waiters > 0)
+            available.signal();
+        return n;
+    }
+
+    // Unsafe mechanics
+    private static final Unsafe U;
+    private static final long HEAD;
+
+    static {
+        try {
+            U = GetUnsafeFromReflect.getUnsafe();
+            HEAD = U.objectFieldOffset
+                    (BatchingCompletionService.class.getDeclaredField("head"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
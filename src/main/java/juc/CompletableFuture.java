@@ -125,6 +125,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     volatile Object result;       // Either the result or boxed AltResult
     volatile Completion stack;    // Top of Treiber stack of dependent actions
+    volatile Completion upstream; // Source completion if propagating cancels
 
     final boolean internalComplete(Object r) { // CAS from null to r
         return UNSAFE.compareAndSwapObject(this, RESULT, null, r);
@@ -481,7 +482,8 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         }
 
         final boolean isLive() {
-            return dep != null;
+            juc.CompletableFuture<V> d;
+            return (d = dep) != null && d.result == null;
         }
     }
 
@@ -495,6 +497,21 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         }
     }
 
+    /**
+     * Pushes the given completion unless done, in which case (or if
+     * done while pushing) tries to fire it right away. For
+     * completions that are not UniCompletions and so are not
+     * otherwise started by their creator.
+     */
+    final void unipush(Completion c) {
+        if (c != null) {
+            while (result == null && !tryPushStack(c))
+                lazySetNext(c, null); // clear on failure
+            if (result != null)
+                c.tryFire(SYNC);
+        }
+    }
+
     /**
      * Post-processing by dependent after successful UniCompletion
      * tryFire.  Tries to clean stack of source a, and then either runs
@@ -571,9 +588,75 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     private <V> juc.CompletableFuture<V> uniApplyStage(
             Executor e, Function<? super T, ? extends V> f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
+        juc.CompletableFuture<V> d = newIncompleteFuture();
         if (e != null || !d.uniApply(this, f, null)) {
             UniApply<T, V> c = new UniApply<T, V>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
+            push(c);
+            c.tryFire(SYNC);
+        }
+        return d;
+    }
+
+    @SuppressWarnings("serial")
+    static final class UniPipeline<T, V> extends UniCompletion<T, V> {
+        CompletionPipeline<? super T, ? extends V> fn;
+
+        UniPipeline(Executor executor, juc.CompletableFuture<V> dep,
+                    juc.CompletableFuture<T> src,
+                    CompletionPipeline<? super T, ? extends V> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+
+        final juc.CompletableFuture<V> tryFire(int mode) {
+            juc.CompletableFuture<V> d;
+            juc.CompletableFuture<T> a;
+            if ((d = dep) == null ||
+                    !d.uniPipeline(a = src, fn, mode > 0 ? null : this))
+                return null;
+            dep = null;
+            src = null;
+            fn = null;
+            return d.postFire(a, mode);
+        }
+    }
+
+    final <S> boolean uniPipeline(juc.CompletableFuture<S> a,
+                                  CompletionPipeline<? super S, ? extends T> p,
+                                  UniPipeline<S, T> c) {
+        Object r;
+        Throwable x;
+        if (a == null || (r = a.result) == null || p == null)
+            return false;
+        tryComplete:
+        if (result == null) {
+            if (r instanceof AltResult) {
+                if ((x = ((AltResult) r).ex) != null) {
+                    completeThrowable(x, r);
+                    break tryComplete;
+                }
+                r = null;
+            }
+            try {
+                if (c != null && !c.claim())
+                    return false;
+                @SuppressWarnings("unchecked") S s = (S) r;
+                completeValue(p.run(s));
+            } catch (Throwable ex) {
+                completeThrowable(ex);
+            }
+        }
+        return true;
+    }
+
+    private <V> juc.CompletableFuture<V> uniPipelineStage(
+            Executor e, CompletionPipeline<? super T, ? extends V> p) {
+        if (p == null) throw new NullPointerException();
+        juc.CompletableFuture<V> d = newIncompleteFuture();
+        if (e != null || !d.uniPipeline(this, p, null)) {
+            UniPipeline<T, V> c = new UniPipeline<T, V>(e, d, this, p);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -634,9 +717,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     private juc.CompletableFuture<Void> uniAcceptStage(Executor e,
                                                        Consumer<? super T> f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.uniAccept(this, f, null)) {
             UniAccept<T> c = new UniAccept<T>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -689,9 +773,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     private juc.CompletableFuture<Void> uniRunStage(Executor e, Runnable f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.uniRun(this, f, null)) {
             UniRun<T> c = new UniRun<T>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -758,9 +843,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     private juc.CompletableFuture<T> uniWhenCompleteStage(
             Executor e, BiConsumer<? super T, ? super Throwable> f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<T> d = new juc.CompletableFuture<T>();
+        juc.CompletableFuture<T> d = newIncompleteFuture();
         if (e != null || !d.uniWhenComplete(this, f, null)) {
             UniWhenComplete<T> c = new UniWhenComplete<T>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -822,9 +908,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     private <V> juc.CompletableFuture<V> uniHandleStage(
             Executor e, BiFunction<? super T, Throwable, ? extends V> f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
+        juc.CompletableFuture<V> d = newIncompleteFuture();
         if (e != null || !d.uniHandle(this, f, null)) {
             UniHandle<T, V> c = new UniHandle<T, V>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -835,17 +922,18 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     static final class UniExceptionally<T> extends UniCompletion<T, T> {
         Function<? super Throwable, ? extends T> fn;
 
-        UniExceptionally(juc.CompletableFuture<T> dep, juc.CompletableFuture<T> src,
+        UniExceptionally(Executor executor, juc.CompletableFuture<T> dep,
+                         juc.CompletableFuture<T> src,
                          Function<? super Throwable, ? extends T> fn) {
-            super(null, dep, src);
+            super(executor, dep, src);
             this.fn = fn;
         }
 
-        final juc.CompletableFuture<T> tryFire(int mode) { // never ASYNC
-            // assert mode != ASYNC;
+        final juc.CompletableFuture<T> tryFire(int mode) {
             juc.CompletableFuture<T> d;
             juc.CompletableFuture<T> a;
-            if ((d = dep) == null || !d.uniExceptionally(a = src, fn, this))
+            if ((d = dep) == null ||
+                    !d.uniExceptionally(a = src, fn, mode > 0 ? null : this))
                 return null;
             dep = null;
             src = null;
@@ -877,11 +965,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     }
 
     private juc.CompletableFuture<T> uniExceptionallyStage(
-            Function<Throwable, ? extends T> f) {
+            Executor e, Function<Throwable, ? extends T> f) {
         if (f == null) throw new NullPointerException();
-        juc.CompletableFuture<T> d = new juc.CompletableFuture<T>();
-        if (!d.uniExceptionally(this, f, null)) {
-            UniExceptionally<T> c = new UniExceptionally<T>(d, this, f);
+        juc.CompletableFuture<T> d = newIncompleteFuture();
+        if (e != null || !d.uniExceptionally(this, f, null)) {
+            UniExceptionally<T> c = new UniExceptionally<T>(e, d, this, f);
+            if (upstream != null) d.upstream = c;
             push(c);
             c.tryFire(SYNC);
         }
@@ -962,6 +1051,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
                 juc.CompletableFuture<T> g = f.apply(s).toCompletableFuture();
                 if (g.result == null || !uniRelay(g)) {
                     UniRelay<T> copy = new UniRelay<T>(this, g);
+                    if (upstream != null) upstream = copy; // now waiting on g
                     g.push(copy);
                     copy.tryFire(SYNC);
                     if (result == null)
@@ -979,11 +1069,13 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         if (f == null) throw new NullPointerException();
         Object r;
         Throwable x;
+        juc.CompletableFuture<V> d = newIncompleteFuture();
         if (e == null && (r = result) != null) {
             // try to return function result directly
             if (r instanceof AltResult) {
                 if ((x = ((AltResult) r).ex) != null) {
-                    return new juc.CompletableFuture<V>(encodeThrowable(x, r));
+                    d.result = encodeThrowable(x, r);
+                    return d;
                 }
                 r = null;
             }
@@ -992,18 +1084,21 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
                 juc.CompletableFuture<V> g = f.apply(t).toCompletableFuture();
                 Object s = g.result;
                 if (s != null)
-                    return new juc.CompletableFuture<V>(encodeRelay(s));
-                juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
-                UniRelay<V> copy = new UniRelay<V>(d, g);
-                g.push(copy);
-                copy.tryFire(SYNC);
+                    d.result = encodeRelay(s);
+                else {
+                    UniRelay<V> copy = new UniRelay<V>(d, g);
+                    if (upstream != null) d.upstream = copy;
+                    g.push(copy);
+                    copy.tryFire(SYNC);
+                }
                 return d;
             } catch (Throwable ex) {
-                return new juc.CompletableFuture<V>(encodeThrowable(ex));
+                d.result = encodeThrowable(ex);
+                return d;
             }
         }
-        juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
         UniCompose<T, V> c = new UniCompose<T, V>(e, d, this, f);
+        if (upstream != null) d.upstream = c;
         push(c);
         c.tryFire(SYNC);
         return d;
@@ -1047,7 +1142,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
         final boolean isLive() {
             BiCompletion<?, ?, ?> c;
-            return (c = base) != null && c.dep != null;
+            return (c = base) != null && c.isLive();
         }
     }
 
@@ -1151,9 +1246,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<U> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
+        juc.CompletableFuture<V> d = newIncompleteFuture();
         if (e != null || !d.biApply(this, b, f, null)) {
             BiApply<T, U, V> c = new BiApply<T, U, V>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             bipush(b, c);
             c.tryFire(SYNC);
         }
@@ -1231,9 +1327,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<U> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.biAccept(this, b, f, null)) {
             BiAccept<T, U> c = new BiAccept<T, U>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             bipush(b, c);
             c.tryFire(SYNC);
         }
@@ -1297,9 +1394,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<?> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.biRun(this, b, f, null)) {
             BiRun<T, ?> c = new BiRun<>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             bipush(b, c);
             c.tryFire(SYNC);
         }
@@ -1454,9 +1552,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<U> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<V> d = new juc.CompletableFuture<V>();
+        juc.CompletableFuture<V> d = newIncompleteFuture();
         if (e != null || !d.orApply(this, b, f, null)) {
             OrApply<T, U, V> c = new OrApply<T, U, V>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             orpush(b, c);
             c.tryFire(SYNC);
         }
@@ -1526,9 +1625,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<U> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.orAccept(this, b, f, null)) {
             OrAccept<T, U> c = new OrAccept<T, U>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             orpush(b, c);
             c.tryFire(SYNC);
         }
@@ -1591,9 +1691,10 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         juc.CompletableFuture<?> b;
         if (f == null || (b = o.toCompletableFuture()) == null)
             throw new NullPointerException();
-        juc.CompletableFuture<Void> d = new juc.CompletableFuture<Void>();
+        juc.CompletableFuture<Void> d = newIncompleteFuture();
         if (e != null || !d.orRun(this, b, f, null)) {
             OrRun<T, ?> c = new OrRun<>(e, d, this, b, f);
+            if (upstream != null || b.upstream != null) d.upstream = c;
             orpush(b, c);
             c.tryFire(SYNC);
         }
@@ -1653,6 +1754,173 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return d;
     }
 
+    /* ------------- Counted aggregates -------------- */
+
+    /*
+     * allOf and anyOf build a balanced tree of BiRelay/OrRelay
+     * completions with one intermediate future per internal node.
+     * The counted forms below instead push one small Completion
+     * (AggregateCompletion) onto each source, all sharing a single
+     * Aggregate that decides what each arrival means: a countdown
+     * for allOf, a race for anyOf, a ticket dispenser for
+     * inCompletionOrder. No intermediate futures are created, and
+     * completing a source costs a single CAS on the shared state.
+     */
+
+    /**
+     * Shared state of a counted aggregate.
+     */
+    abstract static class Aggregate {
+        /**
+         * Records the arrival of a source result, returning the
+         * dependent completed as a consequence, if any.
+         */
+        abstract juc.CompletableFuture<?> arrive(Object r);
+
+        /**
+         * Returns true if arrivals may still have an effect.
+         */
+        abstract boolean isLive();
+    }
+
+    /**
+     * Completion pushed onto each source of an Aggregate.
+     */
+    @SuppressWarnings("serial")
+    static final class AggregateCompletion extends Completion {
+        Aggregate agg;
+        juc.CompletableFuture<?> src;
+
+        AggregateCompletion(Aggregate agg, juc.CompletableFuture<?> src) {
+            this.agg = agg;
+            this.src = src;
+        }
+
+        final juc.CompletableFuture<?> tryFire(int mode) {
+            Aggregate g;
+            juc.CompletableFuture<?> a, d;
+            Object r;
+            if ((g = agg) == null || (a = src) == null ||
+                    (r = a.result) == null ||
+                    !compareAndSetForkJoinTaskTag((short) 0, (short) 1))
+                return null;
+            agg = null;
+            src = null;
+            if ((d = g.arrive(r)) == null || d.stack == null)
+                return null;
+            if (mode < 0)
+                return d;
+            d.postComplete();
+            return null;
+        }
+
+        final boolean isLive() {
+            Aggregate g = agg;
+            return g != null && g.isLive();
+        }
+    }
+
+    /**
+     * Pushes an AggregateCompletion for g onto each source.
+     */
+    static void aggregate(Aggregate g, juc.CompletableFuture<?>[] cfs) {
+        for (juc.CompletableFuture<?> a : cfs) {
+            if (a == null)
+                throw new NullPointerException();
+        }
+        for (juc.CompletableFuture<?> a : cfs)
+            a.unipush(new AggregateCompletion(g, a));
+    }
+
+    /**
+     * Countdown for allOfCounted and allOfInto. The outcome is
+     * decided only when the count reaches zero, by scanning the
+     * sources in order, so that the exception reported is the same
+     * (lowest-indexed) one as allOf would report.
+     */
+    static final class AllOfAggregate extends Aggregate {
+        final juc.CompletableFuture<?>[] cfs;
+        final juc.CompletableFuture<Object> dep;
+        final Object[] results;          // null if not collecting
+        volatile int count;
+
+        AllOfAggregate(juc.CompletableFuture<?>[] cfs,
+                       juc.CompletableFuture<Object> dep, Object[] results) {
+            this.cfs = cfs;
+            this.dep = dep;
+            this.results = results;
+            this.count = cfs.length;
+        }
+
+        final juc.CompletableFuture<?> arrive(Object r) {
+            if (UNSAFE.getAndAddInt(this, COUNT, -1) != 1)
+                return null;
+            juc.CompletableFuture<?>[] as = cfs;
+            Object[] rs = results;
+            for (int i = 0; i < as.length; ++i) {
+                Object x = as[i].result;
+                if (x instanceof AltResult) {
+                    Throwable ex;
+                    if ((ex = ((AltResult) x).ex) != null) {
+                        dep.completeThrowable(ex, x);
+                        return dep;
+                    }
+                    x = null;
+                }
+                if (rs != null)
+                    rs[i] = x;
+            }
+            dep.completeValue(rs);
+            return dep;
+        }
+
+        final boolean isLive() {
+            return dep.result == null;
+        }
+    }
+
+    /**
+     * First arrival wins, for anyOfCounted.
+     */
+    static final class AnyOfAggregate extends Aggregate {
+        final juc.CompletableFuture<Object> dep;
+
+        AnyOfAggregate(juc.CompletableFuture<Object> dep) {
+            this.dep = dep;
+        }
+
+        final juc.CompletableFuture<?> arrive(Object r) {
+            return dep.completeRelay(r) ? dep : null;
+        }
+
+        final boolean isLive() {
+            return dep.result == null;
+        }
+    }
+
+    /**
+     * Relays the i-th arrival to the i-th output, for
+     * inCompletionOrder.
+     */
+    static final class InOrderAggregate extends Aggregate {
+        final juc.CompletableFuture<?>[] outs;
+        volatile int next;
+
+        InOrderAggregate(juc.CompletableFuture<?>[] outs) {
+            this.outs = outs;
+        }
+
+        final juc.CompletableFuture<?> arrive(Object r) {
+            juc.CompletableFuture<?> d =
+                    outs[UNSAFE.getAndAddInt(this, NEXT_INDEX, 1)];
+            return d.completeRelay(r) ? d : null;
+        }
+
+        final boolean isLive() {
+            return true;
+        }
+    }
+
     /* ------------- Zero-input Async forms -------------- */
 
     @SuppressWarnings("serial")
@@ -1816,15 +2084,84 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         }
     }
 
+    /**
+     * Strategies for waiting in {@link #get()} and {@link #join()}
+     * until a CompletableFuture completes. They trade CPU time (and,
+     * for the spinning strategies, a whole core per waiter) for
+     * hand-off latency.
+     * 在{@link #get()}和{@link #join()}中等待CompletableFuture完成的策略。
+     * 它们以CPU时间（对于自旋策略，每个等待者占用一整个核心）换取交接延迟。
+     */
+    public enum WaitStrategy {
+        /**
+         * Spins briefly on multiprocessors, then parks. The default.
+         * 在多处理器上短暂自旋，然后park。默认策略。
+         */
+        ADAPTIVE,
+        /**
+         * Spins without yielding or parking until complete. Lowest
+         * latency; only for waiters with a dedicated core.
+         * 不让出也不park，一直自旋直到完成。延迟最低；仅适用于拥有专用核心的等待者。
+         */
+        BUSY_SPIN,
+        /**
+         * Spins briefly, then repeatedly yields until complete,
+         * without ever parking.
+         * 短暂自旋，然后反复让出直到完成，从不park。
+         */
+        SPIN_YIELD,
+        /**
+         * Parks right away, without spinning. Cheapest in CPU time.
+         * 不自旋，立即park。CPU时间开销最小。
+         */
+        PARK
+    }
+
+    /**
+     * Number of spins before yielding in SPIN_YIELD.
+     */
+    static final int YIELD_SPINS = 1 << 8;
+
     /**
      * Returns raw result after waiting, or null if interruptible and
      * interrupted.
      */
-    private Object waitingGet(boolean interruptible) {
+    private Object waitingGet(boolean interruptible, WaitStrategy strategy) {
         Signaller q = null;
         boolean queued = false;
-        int spins = -1;
+        int spins = (strategy == WaitStrategy.PARK) ? 0 : -1;
         Object r;
+        if (upstream != null) {
+            // Push before spinning, so cancelIfAbandoned sees the waiter
+            q = new Signaller(interruptible, 0L, 0L);
+            while (result == null && !(queued = tryPushStack(q)))
+                lazySetNext(q, null); // clear on failure
+        }
+        if (strategy == WaitStrategy.BUSY_SPIN ||
+                strategy == WaitStrategy.SPIN_YIELD) {
+            boolean yield = (strategy == WaitStrategy.SPIN_YIELD);
+            spins = YIELD_SPINS;
+            try {
+                while ((r = result) == null) {
+                    if (interruptible && Thread.interrupted())
+                        return null;
+                    if (!yield)
+                        continue;
+                    if (spins > 0)
+                        --spins;
+                    else
+                        Thread.yield();
+                }
+            } finally {
+                if (q != null) {
+                    q.thread = null;
+                    if (result == null)
+                        cleanStack();
+                }
+            }
+            postComplete();
+            return r;
+        }
         while ((r = result) == null) {
             if (spins < 0)
                 spins = (Runtime.getRuntime().availableProcessors() > 1) ?
@@ -2007,7 +2344,8 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      */
     public T get() throws InterruptedException, ExecutionException {
         Object r;
-        return reportGet((r = result) == null ? waitingGet(true) : r);
+        return reportGet((r = result) == null ?
+                waitingGet(true, defaultWaitStrategy()) : r);
     }
 
     /**
@@ -2030,6 +2368,61 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return reportGet((r = result) == null ? timedGet(nanos) : r);
     }
 
+    /**
+     * Like {@link #get()}, but waits using the given strategy rather
+     * than this future's {@link #defaultWaitStrategy}.
+     * 类似于{@link #get()}，但使用给定的策略而不是此future的{@link #defaultWaitStrategy}进行等待。
+     *
+     * @param strategy the wait strategy
+     * @return the result value
+     * @throws CancellationException if this future was cancelled
+     * @throws ExecutionException    if this future completed exceptionally
+     * @throws InterruptedException  if the current thread was interrupted
+     *                               while waiting
+     * @throws NullPointerException  if strategy is null
+     */
+    public T get(WaitStrategy strategy)
+            throws InterruptedException, ExecutionException {
+        if (strategy == null) throw new NullPointerException();
+        Object r;
+        return reportGet((r = result) == null ?
+                waitingGet(true, strategy) : r);
+    }
+
+    /**
+     * Like {@link #join()}, but waits using the given strategy rather
+     * than this future's {@link #defaultWaitStrategy}.
+     * 类似于{@link #join()}，但使用给定的策略而不是此future的{@link #defaultWaitStrategy}进行等待。
+     *
+     * @param strategy the wait strategy
+     * @return the result value
+     * @throws CancellationException if the computation was cancelled
+     * @throws CompletionException   if this future completed
+     *                               exceptionally or a completion computation threw an exception
+     * @throws NullPointerException  if strategy is null
+     */
+    public T join(WaitStrategy strategy) {
+        if (strategy == null) throw new NullPointerException();
+        Object r;
+        return reportJoin((r = result) == null ?
+                waitingGet(false, strategy) : r);
+    }
+
+    /**
+     * Returns the strategy used by {@link #get()} and {@link #join()}
+     * to wait for completion. This class uses
+     * {@link WaitStrategy#ADAPTIVE}; subclasses may override this
+     * method to choose another strategy for all waits on their
+     * futures, as {@link #defaultExecutor} does for async execution.
+     * 返回{@link #get()}和{@link #join()}用于等待完成的策略。此类使用{@link WaitStrategy#ADAPTIVE}；
+     * 子类可以覆盖此方法，为其future上的所有等待选择另一种策略，就像{@link #defaultExecutor}对异步执行所做的那样。
+     *
+     * @return the wait strategy
+     */
+    public WaitStrategy defaultWaitStrategy() {
+        return WaitStrategy.ADAPTIVE;
+    }
+
     /**
      * Returns the result value when complete, or throws an
      * (unchecked) exception if completed exceptionally. To better
@@ -2046,7 +2439,8 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      */
     public T join() {
         Object r;
-        return reportJoin((r = result) == null ? waitingGet(false) : r);
+        return reportJoin((r = result) == null ?
+                waitingGet(false, defaultWaitStrategy()) : r);
     }
 
     /**
@@ -2095,12 +2489,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public <U> juc.CompletableFuture<U> thenApply(
             Function<? super T, ? extends U> fn) {
-        return uniApplyStage(null, fn);
+        return uniApplyStage(syncExecutor(), fn);
     }
 
     public <U> juc.CompletableFuture<U> thenApplyAsync(
             Function<? super T, ? extends U> fn) {
-        return uniApplyStage(asyncPool, fn);
+        return uniApplyStage(screenExecutor(defaultExecutor()), fn);
     }
 
     public <U> juc.CompletableFuture<U> thenApplyAsync(
@@ -2109,11 +2503,11 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     }
 
     public juc.CompletableFuture<Void> thenAccept(Consumer<? super T> action) {
-        return uniAcceptStage(null, action);
+        return uniAcceptStage(syncExecutor(), action);
     }
 
     public juc.CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action) {
-        return uniAcceptStage(asyncPool, action);
+        return uniAcceptStage(screenExecutor(defaultExecutor()), action);
     }
 
     public juc.CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action,
@@ -2122,11 +2516,11 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     }
 
     public juc.CompletableFuture<Void> thenRun(Runnable action) {
-        return uniRunStage(null, action);
+        return uniRunStage(syncExecutor(), action);
     }
 
     public juc.CompletableFuture<Void> thenRunAsync(Runnable action) {
-        return uniRunStage(asyncPool, action);
+        return uniRunStage(screenExecutor(defaultExecutor()), action);
     }
 
     public juc.CompletableFuture<Void> thenRunAsync(Runnable action,
@@ -2134,16 +2528,71 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return uniRunStage(screenExecutor(executor), action);
     }
 
+    /**
+     * Returns a new CompletableFuture that, when this one completes
+     * normally, is completed with the result of running all stages of
+     * the given pipeline on this future's result, as a single
+     * dependent action. This has the same outcome as the equivalent
+     * chain of {@code thenApply}, {@code thenAccept} and {@code thenRun}
+     * calls, without allocating a future and a completion per stage.
+     * 返回一个新的CompletableFuture，当此future正常完成时，以单个依赖操作的形式在此future的结果上运行给定管道的所有阶段，
+     * 并以其结果完成。其结果与等价的{@code thenApply}、{@code thenAccept}和{@code thenRun}调用链相同，
+     * 但不会为每个阶段分配一个future和一个completion。
+     *
+     * @param pipeline the stages to run
+     * @param <U>      the pipeline's result type
+     * @return the new CompletableFuture
+     * @throws NullPointerException if pipeline is null
+     */
+    public <U> juc.CompletableFuture<U> thenPipeline(
+            CompletionPipeline<? super T, ? extends U> pipeline) {
+        return uniPipelineStage(syncExecutor(), pipeline);
+    }
+
+    /**
+     * Returns a new CompletableFuture that, when this one completes
+     * normally, runs all stages of the given pipeline in this stage's
+     * default asynchronous execution facility.
+     * 返回一个新的CompletableFuture，当此future正常完成时，使用此阶段的默认异步执行设施运行给定管道的所有阶段。
+     *
+     * @param pipeline the stages to run
+     * @param <U>      the pipeline's result type
+     * @return the new CompletableFuture
+     * @throws NullPointerException if pipeline is null
+     */
+    public <U> juc.CompletableFuture<U> thenPipelineAsync(
+            CompletionPipeline<? super T, ? extends U> pipeline) {
+        return uniPipelineStage(screenExecutor(defaultExecutor()), pipeline);
+    }
+
+    /**
+     * Returns a new CompletableFuture that, when this one completes
+     * normally, runs all stages of the given pipeline using the given
+     * executor.
+     * 返回一个新的CompletableFuture，当此future正常完成时，使用给定的执行器运行给定管道的所有阶段。
+     *
+     * @param pipeline the stages to run
+     * @param executor the executor to use for asynchronous execution
+     * @param <U>      the pipeline's result type
+     * @return the new CompletableFuture
+     * @throws NullPointerException if pipeline or executor is null
+     */
+    public <U> juc.CompletableFuture<U> thenPipelineAsync(
+            CompletionPipeline<? super T, ? extends U> pipeline,
+            Executor executor) {
+        return uniPipelineStage(screenExecutor(executor), pipeline);
+    }
+
     public <U, V> juc.CompletableFuture<V> thenCombine(
             CompletionStage<? extends U> other,
             BiFunction<? super T, ? super U, ? extends V> fn) {
-        return biApplyStage(null, other, fn);
+        return biApplyStage(syncExecutor(), other, fn);
     }
 
     public <U, V> juc.CompletableFuture<V> thenCombineAsync(
             CompletionStage<? extends U> other,
             BiFunction<? super T, ? super U, ? extends V> fn) {
-        return biApplyStage(asyncPool, other, fn);
+        return biApplyStage(screenExecutor(defaultExecutor()), other, fn);
     }
 
     public <U, V> juc.CompletableFuture<V> thenCombineAsync(
@@ -2155,13 +2604,13 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     public <U> juc.CompletableFuture<Void> thenAcceptBoth(
             CompletionStage<? extends U> other,
             BiConsumer<? super T, ? super U> action) {
-        return biAcceptStage(null, other, action);
+        return biAcceptStage(syncExecutor(), other, action);
     }
 
     public <U> juc.CompletableFuture<Void> thenAcceptBothAsync(
             CompletionStage<? extends U> other,
             BiConsumer<? super T, ? super U> action) {
-        return biAcceptStage(asyncPool, other, action);
+        return biAcceptStage(screenExecutor(defaultExecutor()), other, action);
     }
 
     public <U> juc.CompletableFuture<Void> thenAcceptBothAsync(
@@ -2172,12 +2621,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public juc.CompletableFuture<Void> runAfterBoth(CompletionStage<?> other,
                                                     Runnable action) {
-        return biRunStage(null, other, action);
+        return biRunStage(syncExecutor(), other, action);
     }
 
     public juc.CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other,
                                                          Runnable action) {
-        return biRunStage(asyncPool, other, action);
+        return biRunStage(screenExecutor(defaultExecutor()), other, action);
     }
 
     public juc.CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other,
@@ -2188,12 +2637,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public <U> juc.CompletableFuture<U> applyToEither(
             CompletionStage<? extends T> other, Function<? super T, U> fn) {
-        return orApplyStage(null, other, fn);
+        return orApplyStage(syncExecutor(), other, fn);
     }
 
     public <U> juc.CompletableFuture<U> applyToEitherAsync(
             CompletionStage<? extends T> other, Function<? super T, U> fn) {
-        return orApplyStage(asyncPool, other, fn);
+        return orApplyStage(screenExecutor(defaultExecutor()), other, fn);
     }
 
     public <U> juc.CompletableFuture<U> applyToEitherAsync(
@@ -2204,12 +2653,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public juc.CompletableFuture<Void> acceptEither(
             CompletionStage<? extends T> other, Consumer<? super T> action) {
-        return orAcceptStage(null, other, action);
+        return orAcceptStage(syncExecutor(), other, action);
     }
 
     public juc.CompletableFuture<Void> acceptEitherAsync(
             CompletionStage<? extends T> other, Consumer<? super T> action) {
-        return orAcceptStage(asyncPool, other, action);
+        return orAcceptStage(screenExecutor(defaultExecutor()), other, action);
     }
 
     public juc.CompletableFuture<Void> acceptEitherAsync(
@@ -2220,12 +2669,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public juc.CompletableFuture<Void> runAfterEither(CompletionStage<?> other,
                                                       Runnable action) {
-        return orRunStage(null, other, action);
+        return orRunStage(syncExecutor(), other, action);
     }
 
     public juc.CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other,
                                                            Runnable action) {
-        return orRunStage(asyncPool, other, action);
+        return orRunStage(screenExecutor(defaultExecutor()), other, action);
     }
 
     public juc.CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other,
@@ -2236,12 +2685,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public <U> juc.CompletableFuture<U> thenCompose(
             Function<? super T, ? extends CompletionStage<U>> fn) {
-        return uniComposeStage(null, fn);
+        return uniComposeStage(syncExecutor(), fn);
     }
 
     public <U> juc.CompletableFuture<U> thenComposeAsync(
             Function<? super T, ? extends CompletionStage<U>> fn) {
-        return uniComposeStage(asyncPool, fn);
+        return uniComposeStage(screenExecutor(defaultExecutor()), fn);
     }
 
     public <U> juc.CompletableFuture<U> thenComposeAsync(
@@ -2252,12 +2701,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public juc.CompletableFuture<T> whenComplete(
             BiConsumer<? super T, ? super Throwable> action) {
-        return uniWhenCompleteStage(null, action);
+        return uniWhenCompleteStage(syncExecutor(), action);
     }
 
     public juc.CompletableFuture<T> whenCompleteAsync(
             BiConsumer<? super T, ? super Throwable> action) {
-        return uniWhenCompleteStage(asyncPool, action);
+        return uniWhenCompleteStage(screenExecutor(defaultExecutor()), action);
     }
 
     public juc.CompletableFuture<T> whenCompleteAsync(
@@ -2267,12 +2716,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
 
     public <U> juc.CompletableFuture<U> handle(
             BiFunction<? super T, Throwable, ? extends U> fn) {
-        return uniHandleStage(null, fn);
+        return uniHandleStage(syncExecutor(), fn);
     }
 
     public <U> juc.CompletableFuture<U> handleAsync(
             BiFunction<? super T, Throwable, ? extends U> fn) {
-        return uniHandleStage(asyncPool, fn);
+        return uniHandleStage(screenExecutor(defaultExecutor()), fn);
     }
 
     public <U> juc.CompletableFuture<U> handleAsync(
@@ -2308,7 +2757,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      */
     public juc.CompletableFuture<T> exceptionally(
             Function<Throwable, ? extends T> fn) {
-        return uniExceptionallyStage(fn);
+        return uniExceptionallyStage(syncExecutor(), fn);
     }
 
     /* ------------- Arbitrary-arity constructions -------------- */
@@ -2359,38 +2808,251 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return orTree(cfs, 0, cfs.length - 1);
     }
 
-    /* ------------- Control and status methods -------------- */
-
     /**
-     * If not already completed, completes this CompletableFuture with
-     * a {@link CancellationException}. Dependent CompletableFutures
-     * that have not already completed will also complete
-     * exceptionally, with a {@link CompletionException} caused by
-     * this {@code CancellationException}.
+     * Returns a new CompletableFuture that is completed when all of
+     * the given CompletableFutures complete, with the same outcome as
+     * {@link #allOf}. Instead of a tree of intermediate futures, this
+     * uses one small completion per source and a shared countdown,
+     * which is considerably cheaper for large numbers of futures.
+     * 返回一个新的CompletableFuture，当所有给定的CompletableFuture都完成时完成，其结果与{@link #allOf}相同。
+     * 它不使用中间future构成的树，而是为每个源使用一个小的completion和一个共享的倒计数，
+     * 对于大量的future来说开销要小得多。
      *
-     * @param mayInterruptIfRunning this value has no effect in this
-     *                              implementation because interrupts are not used to control
-     *                              processing.
-     * @return {@code true} if this task is now cancelled
+     * @param cfs the CompletableFutures
+     * @return a new CompletableFuture that is completed when all of the
+     * given CompletableFutures complete
+     * @throws NullPointerException if the array or any of its elements are
+     *                              {@code null}
      */
-    public boolean cancel(boolean mayInterruptIfRunning) {
-        boolean cancelled = (result == null) &&
-                internalComplete(new AltResult(new CancellationException()));
-        postComplete();
-        return cancelled || isCancelled();
+    public static juc.CompletableFuture<Void> allOfCounted(juc.CompletableFuture<?>... cfs) {
+        juc.CompletableFuture<Object> d = new juc.CompletableFuture<Object>();
+        if (cfs.length == 0)
+            d.result = NIL;
+        else
+            aggregate(new AllOfAggregate(cfs, d, null), cfs);
+        @SuppressWarnings("unchecked") juc.CompletableFuture<Void> v =
+                (juc.CompletableFuture<Void>) (juc.CompletableFuture<?>) d;
+        return v;
     }
 
     /**
-     * Returns {@code true} if this CompletableFuture was cancelled
-     * before it completed normally.
+     * Returns a new CompletableFuture that is completed when all of
+     * the given CompletableFutures complete. If all complete normally,
+     * their results are stored in the given array, in the same order,
+     * and the returned CompletableFuture is completed with that array.
+     * Otherwise it completes exceptionally as {@link #allOfCounted}
+     * does, and the contents of the array are unspecified.
+     * 返回一个新的CompletableFuture，当所有给定的CompletableFuture都完成时完成。
+     * 如果全部正常完成，它们的结果按相同顺序存入给定数组，返回的CompletableFuture以该数组完成。
+     * 否则它像{@link #allOfCounted}一样异常完成，此时数组的内容是未指定的。
      *
-     * @return {@code true} if this CompletableFuture was cancelled
-     * before it completed normally
+     * @param results the array to hold the results
+     * @param cfs     the CompletableFutures
+     * @param <T>     the element type of the results
+     * @return a new CompletableFuture that is completed with
+     * {@code results} when all of the given CompletableFutures complete
+     * @throws NullPointerException     if either array or any of the
+     *                                  futures are {@code null}
+     * @throws IllegalArgumentException if results is shorter than cfs
      */
-    public boolean isCancelled() {
-        Object r;
-        return ((r = result) instanceof AltResult) &&
-                (((AltResult) r).ex instanceof CancellationException);
+    @SafeVarargs
+    @SuppressWarnings("varargs") // cfs is only read, as CompletableFuture<?>s
+    public static <T> juc.CompletableFuture<T[]> allOfInto(
+            T[] results, juc.CompletableFuture<? extends T>... cfs) {
+        if (results.length < cfs.length)
+            throw new IllegalArgumentException();
+        juc.CompletableFuture<Object> d = new juc.CompletableFuture<Object>();
+        if (cfs.length == 0)
+            d.result = results;
+        else
+            aggregate(new AllOfAggregate(cfs, d, results), cfs);
+        @SuppressWarnings("unchecked") juc.CompletableFuture<T[]> v =
+                (juc.CompletableFuture<T[]>) (juc.CompletableFuture<?>) d;
+        return v;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when any of
+     * the given CompletableFutures complete, with the same outcome as
+     * {@link #anyOf}, using one small completion per source instead
+     * of a tree of intermediate futures.
+     * 返回一个新的CompletableFuture，当任意一个给定的CompletableFuture完成时完成，结果与{@link #anyOf}相同，
+     * 它为每个源使用一个小的completion，而不是中间future构成的树。
+     *
+     * @param cfs the CompletableFutures
+     * @return a new CompletableFuture that is completed with the
+     * result or exception of any of the given CompletableFutures when
+     * one completes
+     * @throws NullPointerException if the array or any of its elements are
+     *                              {@code null}
+     */
+    public static juc.CompletableFuture<Object> anyOfCounted(juc.CompletableFuture<?>... cfs) {
+        juc.CompletableFuture<Object> d = new juc.CompletableFuture<Object>();
+        aggregate(new AnyOfAggregate(d), cfs);
+        return d;
+    }
+
+    /**
+     * Returns a list of new CompletableFutures, one per given future,
+     * such that the first element is completed with the outcome of
+     * whichever given future completes first, the second with the
+     * outcome of the one completing second, and so on. Consumers can
+     * thus process results as they arrive, in a plain loop over the
+     * returned list, without polling.
+     * 返回一个新的CompletableFuture列表，每个给定的future对应一个，使得第一个元素以最先完成的给定future的结果完成，
+     * 第二个元素以第二个完成的future的结果完成，依此类推。
+     * 因此消费者可以在对返回列表的简单循环中按到达顺序处理结果，而无需轮询。
+     *
+     * @param cfs the CompletableFutures
+     * @param <T> the result type
+     * @return an unmodifiable list of futures, completed in order
+     * @throws NullPointerException if the list or any of its elements are
+     *                              {@code null}
+     */
+    public static <T> java.util.List<juc.CompletableFuture<T>> inCompletionOrder(
+            java.util.List<? extends juc.CompletableFuture<? extends T>> cfs) {
+        juc.CompletableFuture<?>[] as =
+                cfs.toArray(new juc.CompletableFuture<?>[0]);
+        @SuppressWarnings("unchecked") juc.CompletableFuture<T>[] outs =
+                (juc.CompletableFuture<T>[]) new juc.CompletableFuture<?>[as.length];
+        for (int i = 0; i < outs.length; ++i)
+            outs[i] = new juc.CompletableFuture<T>();
+        aggregate(new InOrderAggregate(outs), as);
+        return java.util.Collections.unmodifiableList(java.util.Arrays.asList(outs));
+    }
+
+    /* ------------- Control and status methods -------------- */
+
+    /**
+     * If not already completed, completes this CompletableFuture with
+     * a {@link CancellationException}. Dependent CompletableFutures
+     * that have not already completed will also complete
+     * exceptionally, with a {@link CompletionException} caused by
+     * this {@code CancellationException}.
+     *
+     * @param mayInterruptIfRunning this value has no effect in this
+     *                              implementation because interrupts are not used to control
+     *                              processing.
+     * @return {@code true} if this task is now cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = (result == null) &&
+                internalComplete(new AltResult(new CancellationException()));
+        postComplete();
+        if (cancelled && upstream != null)
+            cancelUpstream();
+        return cancelled || isCancelled();
+    }
+
+    /**
+     * Enables upstream cancellation propagation for this future and
+     * for the dependent futures subsequently created from it (and
+     * from those, transitively) by the single- and two-input stage
+     * methods, including both the source and the returned stage of
+     * {@code thenCompose}. When such a dependent is cancelled, each
+     * of its sources that also propagates cancellation, and is not
+     * yet complete, is cancelled in turn if none of its other
+     * dependents is still live: all are cancelled or otherwise done,
+     * and no thread is waiting in {@code get} or {@code join}.
+     * Cancelling the last interested consumer of a graph thus cancels
+     * its roots, which producers can observe (for example with
+     * {@link #isCancelled} or a {@code whenComplete} action) to
+     * abandon work nobody is waiting for.
+     * 为此future以及随后由单输入和双输入阶段方法从它（以及传递地从那些future）创建的依赖future
+     * （包括{@code thenCompose}的源和返回的阶段）启用向上游的取消传播。
+     * 当这样的依赖被取消时，它的每个同样传播取消且尚未完成的源，如果其其他依赖都不再活跃
+     * （全部已取消或以其他方式完成，并且没有线程在{@code get}或{@code join}中等待），则依次被取消。
+     * 因此取消一个图中最后一个感兴趣的消费者会取消它的根，生产者可以观察到这一点
+     * （例如通过{@link #isCancelled}或一个{@code whenComplete}操作）从而放弃无人等待的工作。
+     *
+     * <p>Propagation is best-effort: a dependent attached to a source
+     * while it is being cancelled may see the cancellation. It does
+     * not pass through {@link #allOf}, {@link #anyOf} or their
+     * counted forms, nor into futures created before this method was
+     * called.
+     * 传播是尽力而为的：在源被取消的同时附加到它上面的依赖可能会看到取消。
+     * 它不会穿过{@link #allOf}、{@link #anyOf}或它们的计数形式，也不会传到调用此方法之前创建的future中。
+     *
+     * @return this CompletableFuture
+     */
+    public juc.CompletableFuture<T> propagateCancellation() {
+        if (upstream == null)
+            UNSAFE.compareAndSwapObject(this, UPSTREAM, null, PROPAGATE);
+        return this;
+    }
+
+    /**
+     * Inert Completion, never pushed, marking a propagating future
+     * that has no source completion of its own.
+     */
+    @SuppressWarnings("serial")
+    static final class Propagate extends Completion {
+        final juc.CompletableFuture<?> tryFire(int ignore) {
+            return null;
+        }
+
+        final boolean isLive() {
+            return false;
+        }
+    }
+
+    static final Completion PROPAGATE = new Propagate();
+
+    /**
+     * Cancels in turn each abandoned source of this just-cancelled
+     * future. Single-source chains are walked iteratively, so long
+     * chains do not overflow the stack; second sources recurse.
+     */
+    final void cancelUpstream() {
+        for (juc.CompletableFuture<?> d = this; d != null; ) {
+            Completion c = d.upstream;
+            juc.CompletableFuture<?> a = null, b;
+            d.upstream = PROPAGATE; // unlink from graph
+            if (c instanceof UniCompletion) {
+                a = ((UniCompletion<?, ?>) c).src;
+                if (c instanceof BiCompletion &&
+                        (b = ((BiCompletion<?, ?, ?>) c).snd) != null &&
+                        b != a && b.cancelIfAbandoned())
+                    b.cancelUpstream();
+            }
+            d = (a != null && a.cancelIfAbandoned()) ? a : null;
+        }
+    }
+
+    /**
+     * Cancels this future, without propagating further, if it
+     * propagates cancellation, is incomplete and, after cleaning its
+     * stack, has no live dependents other than timeout cancellers.
+     * Threads waiting in get or join, spinning or not, are live
+     * Signallers on the stack.
+     *
+     * @return true if this call cancelled this future
+     */
+    final boolean cancelIfAbandoned() {
+        if (result != null || upstream == null)
+            return false;
+        cleanStack();
+        for (Completion p = stack; p != null; p = p.next) {
+            if (p.isLive() && !(p instanceof Canceller))
+                return false;
+        }
+        boolean cancelled =
+                internalComplete(new AltResult(new CancellationException()));
+        postComplete();
+        return cancelled;
+    }
+
+    /**
+     * Returns {@code true} if this CompletableFuture was cancelled
+     * before it completed normally.
+     *
+     * @return {@code true} if this CompletableFuture was cancelled
+     * before it completed normally
+     */
+    public boolean isCancelled() {
+        Object r;
+        return ((r = result) instanceof AltResult) &&
+                (((AltResult) r).ex instanceof CancellationException);
     }
 
     /**
@@ -2478,11 +3140,723 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
                                 "[Completed normally]"));
     }
 
+    /**
+     * Returns a new incomplete CompletableFuture of the type to be
+     * returned by a CompletionStage method. Subclasses should
+     * normally override this method to return an instance of the
+     * same class as this CompletableFuture, so that dependents keep
+     * the subclass's behavior, such as its {@link #defaultExecutor}.
+     * The default implementation returns an instance of class
+     * CompletableFuture.
+     * 返回一个新的未完成的CompletableFuture，其类型由CompletionStage方法返回。
+     * 子类通常应覆盖此方法以返回与此CompletableFuture相同类的实例，
+     * 使依赖项保持子类的行为，例如其{@link #defaultExecutor}。默认实现返回CompletableFuture类的实例。
+     *
+     * @param <U> the type of the value
+     * @return a new CompletableFuture
+     */
+    public <U> juc.CompletableFuture<U> newIncompleteFuture() {
+        return new juc.CompletableFuture<U>();
+    }
+
+    /**
+     * Returns the default Executor used for async methods that do not
+     * specify an Executor. This class uses the {@link
+     * ForkJoinPool#commonPool()} if it supports more than one
+     * parallel thread, or else an Executor using one thread per async
+     * task.  This method may be overridden in subclasses to return
+     * an Executor that provides at least one independent thread.
+     * 返回用于未指定Executor的异步方法的默认Executor。
+     * 如果{@link ForkJoinPool#commonPool()}支持多于一个并行线程，则此类使用它，否则使用每个异步任务一个线程的Executor。
+     * 子类可以覆盖此方法以返回至少提供一个独立线程的Executor。
+     *
+     * @return the executor
+     */
+    public Executor defaultExecutor() {
+        return asyncPool;
+    }
+
+    /**
+     * Returns the Executor used to run dependent actions attached by
+     * the methods without an {@code Async} suffix, or {@code null}
+     * to run them, as this class does, in the thread that completes
+     * this CompletableFuture (or in the caller if already complete).
+     * Subclasses may override this method so that, for example,
+     * futures completed by I/O threads never run callbacks on them.
+     * 返回用于运行由不带{@code Async}后缀的方法所附加的依赖操作的Executor，
+     * 或者返回{@code null}以像此类一样在完成此CompletableFuture的线程中（如果已经完成则在调用者中）运行它们。
+     * 子类可以覆盖此方法，例如使由I/O线程完成的future永远不会在这些线程上运行回调。
+     *
+     * @return the executor, or {@code null} to run dependents inline
+     */
+    public Executor dependentExecutor() {
+        return null;
+    }
+
+    /**
+     * Screens the result of dependentExecutor, keeping null (inline).
+     */
+    private Executor syncExecutor() {
+        Executor e;
+        return ((e = dependentExecutor()) == null) ? null : screenExecutor(e);
+    }
+
+    /**
+     * Exceptionally completes this CompletableFuture with
+     * a {@link TimeoutException} if not otherwise completed
+     * before the given timeout.
+     * 如果在给定的超时之前没有以其他方式完成，则以{@link TimeoutException}异常完成此CompletableFuture。
+     *
+     * <p>The timeout is tracked by a shared timer wheel rather than a
+     * thread or a scheduled task per future, and is cancelled as soon
+     * as this future completes, so abandoned timeouts do not pile up
+     * until they would have expired.
+     * 超时由一个共享的时间轮跟踪，而不是每个future一个线程或一个调度任务，
+     * 并且一旦此future完成就会被取消，因此被放弃的超时不会一直堆积到它们本应到期的时候。
+     *
+     * @param timeout how long to wait before completing exceptionally
+     *                with a TimeoutException, in units of {@code unit}
+     * @param unit    a {@code TimeUnit} determining how to interpret the
+     *                {@code timeout} parameter
+     * @return this CompletableFuture
+     */
+    public juc.CompletableFuture<T> orTimeout(long timeout, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        if (result == null)
+            unipush(new Canceller(Delayer.delay(new Timeout(this), timeout, unit)));
+        return this;
+    }
+
+    /**
+     * Completes this CompletableFuture with the given value if not
+     * otherwise completed before the given timeout.
+     * 如果在给定的超时之前没有以其他方式完成，则以给定值完成此CompletableFuture。
+     *
+     * @param value   the value to use upon timeout
+     * @param timeout how long to wait before completing normally
+     *                with the given value, in units of {@code unit}
+     * @param unit    a {@code TimeUnit} determining how to interpret the
+     *                {@code timeout} parameter
+     * @return this CompletableFuture
+     */
+    public juc.CompletableFuture<T> completeOnTimeout(T value, long timeout,
+                                                      TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        if (result == null)
+            unipush(new Canceller(Delayer.delay(
+                    new DelayedCompleter<T>(this, value), timeout, unit)));
+        return this;
+    }
+
+    /**
+     * Returns a new Executor that submits a task to the given base
+     * executor after the given delay (or no delay if non-positive).
+     * Each delay commences upon invocation of the returned executor's
+     * {@code execute} method.
+     * 返回一个新的Executor，它在给定的延迟之后（如果延迟非正则没有延迟）将任务提交给给定的基础执行器。
+     * 每次延迟从调用返回的执行器的{@code execute}方法时开始。
+     *
+     * @param delay    how long to delay, in units of {@code unit}
+     * @param unit     a {@code TimeUnit} determining how to interpret the
+     *                 {@code delay} parameter
+     * @param executor the base executor
+     * @return the new delayed executor
+     */
+    public static Executor delayedExecutor(long delay, TimeUnit unit,
+                                           Executor executor) {
+        if (unit == null || executor == null)
+            throw new NullPointerException();
+        return new DelayedExecutor(delay, unit, executor);
+    }
+
+    /**
+     * Returns a new Executor that submits a task to the default
+     * executor after the given delay (or no delay if non-positive).
+     * Each delay commences upon invocation of the returned executor's
+     * {@code execute} method.
+     * 返回一个新的Executor，它在给定的延迟之后（如果延迟非正则没有延迟）将任务提交给默认执行器。
+     *
+     * @param delay how long to delay, in units of {@code unit}
+     * @param unit  a {@code TimeUnit} determining how to interpret the
+     *              {@code delay} parameter
+     * @return the new delayed executor
+     */
+    public static Executor delayedExecutor(long delay, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        return new DelayedExecutor(delay, unit, asyncPool);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * outcome of the first attempt that succeeds, making attempts
+     * with the given supplier until one succeeds or
+     * {@code maxAttempts} have failed, waiting an exponentially
+     * increasing, jittered backoff between attempts. If all attempts
+     * fail, the returned future completes exceptionally with the
+     * exception of the last one. The first attempt is made in the
+     * calling thread, and later ones in the default asynchronous
+     * execution facility.
+     * 返回一个新的CompletableFuture，它以第一个成功的尝试的结果完成：使用给定的supplier进行尝试，
+     * 直到某次成功或{@code maxAttempts}次尝试都失败，在两次尝试之间等待一个指数增长且带抖动的退避时间。
+     * 如果所有尝试都失败，返回的future以最后一次尝试的异常异常完成。
+     * 第一次尝试在调用线程中进行，之后的尝试在默认的异步执行设施中进行。
+     *
+     * <p>Attempt {@code k} (counting from one) is retried after a delay
+     * chosen uniformly between half and all of
+     * {@code min(maxBackoff, initialBackoff * 2^(k-1))}, so that
+     * callers failing together do not retry together. Backoffs are
+     * tracked by the same shared timer wheel as {@link #orTimeout},
+     * with no thread or scheduled task per attempt. Completing or
+     * cancelling the returned future stops further attempts and
+     * cancels the one in progress, if it is a CompletableFuture.
+     * 第{@code k}次（从1开始计数）尝试之后的重试延迟在{@code min(maxBackoff, initialBackoff * 2^(k-1))}
+     * 的一半到全部之间均匀选取，这样一起失败的调用者不会一起重试。
+     * 退避由与{@link #orTimeout}相同的共享时间轮跟踪，每次尝试不需要线程或调度任务。
+     * 完成或取消返回的future会停止后续尝试，并取消正在进行的尝试（如果它是CompletableFuture）。
+     *
+     * @param attempt        a supplier that starts an attempt and returns
+     *                       the stage that completes with its outcome
+     * @param maxAttempts    the maximum number of attempts, including
+     *                       the first
+     * @param initialBackoff the backoff after the first failure, in
+     *                       units of {@code unit}
+     * @param maxBackoff     the longest backoff, in units of {@code unit}
+     * @param unit           a {@code TimeUnit} determining how to interpret
+     *                       the backoff parameters
+     * @param <U>            the type of the value
+     * @return the new CompletableFuture
+     * @throws NullPointerException     if attempt or unit is null
+     * @throws IllegalArgumentException if maxAttempts is less than one,
+     *                                  initialBackoff is negative, or
+     *                                  maxBackoff is less than initialBackoff
+     */
+    public static <U> juc.CompletableFuture<U> retry(
+            Supplier<? extends CompletionStage<U>> attempt, int maxAttempts,
+            long initialBackoff, long maxBackoff, TimeUnit unit) {
+        return retry(attempt, null, maxAttempts, initialBackoff, maxBackoff,
+                unit, asyncPool);
+    }
+
+    /**
+     * Like {@link #retry(Supplier, int, long, long, TimeUnit)}, but
+     * retries only failures whose cause satisfies the given predicate,
+     * completing the returned future with any other failure at once,
+     * and makes attempts after the first in the given executor.
+     * 类似于{@link #retry(Supplier, int, long, long, TimeUnit)}，但只重试其原因满足给定谓词的失败，
+     * 任何其他失败都立即使返回的future完成，并在给定的执行器中进行第一次之后的尝试。
+     *
+     * @param attempt        a supplier that starts an attempt and returns
+     *                       the stage that completes with its outcome
+     * @param retryIf        a predicate on the cause of a failure that
+     *                       returns true if it may be retried, or
+     *                       {@code null} to retry all failures
+     * @param maxAttempts    the maximum number of attempts, including
+     *                       the first
+     * @param initialBackoff the backoff after the first failure, in
+     *                       units of {@code unit}
+     * @param maxBackoff     the longest backoff, in units of {@code unit}
+     * @param unit           a {@code TimeUnit} determining how to interpret
+     *                       the backoff parameters
+     * @param executor       the executor to use for attempts after the
+     *                       first
+     * @param <U>            the type of the value
+     * @return the new CompletableFuture
+     * @throws NullPointerException     if attempt, unit or executor is null
+     * @throws IllegalArgumentException if maxAttempts is less than one,
+     *                                  initialBackoff is negative, or
+     *                                  maxBackoff is less than initialBackoff
+     */
+    public static <U> juc.CompletableFuture<U> retry(
+            Supplier<? extends CompletionStage<U>> attempt,
+            Predicate<? super Throwable> retryIf, int maxAttempts,
+            long initialBackoff, long maxBackoff, TimeUnit unit,
+            Executor executor) {
+        if (attempt == null || unit == null || executor == null)
+            throw new NullPointerException();
+        long initial = unit.toNanos(initialBackoff);
+        long max = unit.toNanos(maxBackoff);
+        if (maxAttempts < 1 || initial < 0L || max < initial)
+            throw new IllegalArgumentException();
+        return new Attempts<U>(attempt, retryIf, maxAttempts, -1L,
+                initial, max, screenExecutor(executor)).begin();
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * outcome of the first of several hedged attempts to succeed.
+     * The first attempt is made at once, in the calling thread; each
+     * time the given delay passes without the latest attempt
+     * completing, another is started in the default asynchronous
+     * execution facility, up to {@code maxAttempts} in all. An attempt
+     * that fails starts the next one at once. When one attempt
+     * succeeds, those still running are cancelled, if they are
+     * CompletableFutures. If all attempts fail, the returned future
+     * completes exceptionally with the exception of the last one to
+     * fail.
+     * 返回一个新的CompletableFuture，它以若干对冲尝试中第一个成功的尝试的结果完成。
+     * 第一次尝试立即在调用线程中进行；每当给定的延迟过去而最近的尝试仍未完成时，就在默认的异步执行设施中开始另一次尝试，
+     * 总共最多{@code maxAttempts}次。失败的尝试会立即开始下一次尝试。
+     * 当某次尝试成功时，仍在运行的尝试（如果是CompletableFuture）会被取消。
+     * 如果所有尝试都失败，返回的future以最后一个失败的尝试的异常异常完成。
+     *
+     * <p>Hedging trades extra load for tail latency: with a delay near
+     * the typical latency's high percentile, only the slowest few
+     * calls are duplicated. Delays are tracked by the same shared
+     * timer wheel as {@link #orTimeout}.
+     * 对冲以额外的负载换取尾延迟：当延迟接近典型延迟的高百分位时，只有最慢的少数调用会被复制。
+     * 延迟由与{@link #orTimeout}相同的共享时间轮跟踪。
+     *
+     * @param attempt     a supplier that starts an attempt and returns
+     *                    the stage that completes with its outcome
+     * @param maxAttempts the maximum number of attempts, including the
+     *                    first
+     * @param hedgeDelay  how long to wait for an attempt before starting
+     *                    another, in units of {@code unit}
+     * @param unit        a {@code TimeUnit} determining how to interpret
+     *                    the {@code hedgeDelay} parameter
+     * @param <U>         the type of the value
+     * @return the new CompletableFuture
+     * @throws NullPointerException     if attempt or unit is null
+     * @throws IllegalArgumentException if maxAttempts is less than one or
+     *                                  hedgeDelay is negative
+     */
+    public static <U> juc.CompletableFuture<U> hedge(
+            Supplier<? extends CompletionStage<U>> attempt, int maxAttempts,
+            long hedgeDelay, TimeUnit unit) {
+        return hedge(attempt, maxAttempts, hedgeDelay, unit, asyncPool);
+    }
+
+    /**
+     * Like {@link #hedge(Supplier, int, long, TimeUnit)}, but makes
+     * attempts after the first in the given executor.
+     * 类似于{@link #hedge(Supplier, int, long, TimeUnit)}，但在给定的执行器中进行第一次之后的尝试。
+     *
+     * @param attempt     a supplier that starts an attempt and returns
+     *                    the stage that completes with its outcome
+     * @param maxAttempts the maximum number of attempts, including the
+     *                    first
+     * @param hedgeDelay  how long to wait for an attempt before starting
+     *                    another, in units of {@code unit}
+     * @param unit        a {@code TimeUnit} determining how to interpret
+     *                    the {@code hedgeDelay} parameter
+     * @param executor    the executor to use for attempts after the first
+     * @param <U>         the type of the value
+     * @return the new CompletableFuture
+     * @throws NullPointerException     if attempt, unit or executor is null
+     * @throws IllegalArgumentException if maxAttempts is less than one or
+     *                                  hedgeDelay is negative
+     */
+    public static <U> juc.CompletableFuture<U> hedge(
+            Supplier<? extends CompletionStage<U>> attempt, int maxAttempts,
+            long hedgeDelay, TimeUnit unit, Executor executor) {
+        if (attempt == null || unit == null || executor == null)
+            throw new NullPointerException();
+        long delay = unit.toNanos(hedgeDelay);
+        if (maxAttempts < 1 || delay < 0L)
+            throw new IllegalArgumentException();
+        return new Attempts<U>(attempt, null, maxAttempts, delay,
+                0L, 0L, screenExecutor(executor)).begin();
+    }
+
+    /**
+     * Starts an action if a permit is available from the given
+     * semaphore, releasing the permit when the stage the action
+     * returns completes; otherwise returns a future completed
+     * exceptionally with a {@link RejectedExecutionException} without
+     * waiting. Limiting concurrency by shedding excess calls, rather
+     * than queueing them behind slow ones, bounds the latency of those
+     * that are admitted; combine with {@link #retry} to back off and
+     * try again.
+     * 如果给定的信号量有可用的许可，则开始一个操作，并在该操作返回的阶段完成时释放许可；
+     * 否则不等待，返回一个以{@link RejectedExecutionException}异常完成的future。
+     * 通过丢弃多余的调用而不是让它们排在慢调用之后来限制并发，可以约束被接纳的调用的延迟；
+     * 与{@link #retry}结合可以退避后重试。
+     *
+     * <pre> {@code
+     * CompletableFuture<Response> r = CompletableFuture.retry(
+     *     () -> CompletableFuture.withPermit(inFlight, () -> client.send(request)),
+     *     e -> e instanceof RejectedExecutionException,
+     *     5, 1, 50, TimeUnit.MILLISECONDS, executor);
+     * }</pre>
+     *
+     * @param permits the semaphore limiting concurrent actions
+     * @param action  a supplier that starts the action and returns the
+     *                stage that completes with its outcome
+     * @param <U>     the type of the value
+     * @return the action's stage as a CompletableFuture, or a future
+     * completed exceptionally if no permit was available or
+     * the action threw an exception
+     * @throws NullPointerException if permits or action is null
+     */
+    public static <U> juc.CompletableFuture<U> withPermit(
+            Semaphore permits, Supplier<? extends CompletionStage<U>> action) {
+        if (permits == null || action == null)
+            throw new NullPointerException();
+        if (!permits.tryAcquire())
+            return new juc.CompletableFuture<U>(encodeThrowable(
+                    new RejectedExecutionException("no permit available")));
+        juc.CompletableFuture<U> f;
+        try {
+            f = action.get().toCompletableFuture();
+        } catch (Throwable ex) {
+            permits.release();
+            return new juc.CompletableFuture<U>(encodeThrowable(ex));
+        }
+        f.unipush(new PermitReleaser(permits));
+        return f;
+    }
+
+    /**
+     * Singleton delay scheduler, used only for starting and
+     * cancelling tasks.
+     */
+    static final class Delayer {
+        /**
+         * One tick is a millisecond: timeouts are rarely shorter, and
+         * 512 buckets cover half a second per revolution.
+         */
+        static final TimerWheel delayer = new TimerWheel(
+                TimeUnit.MILLISECONDS.toNanos(1L), 512,
+                "CompletableFutureDelayScheduler");
+
+        static TimerWheel.Timer delay(Runnable command, long delay,
+                                      TimeUnit unit) {
+            return delayer.schedule(command, unit.toNanos(delay));
+        }
+    }
+
+    static final class DelayedExecutor implements Executor {
+        final long delay;
+        final TimeUnit unit;
+        final Executor executor;
+
+        DelayedExecutor(long delay, TimeUnit unit, Executor executor) {
+            this.delay = delay;
+            this.unit = unit;
+            this.executor = executor;
+        }
+
+        public void execute(Runnable r) {
+            if (r == null)
+                throw new NullPointerException();
+            Delayer.delay(new TaskSubmitter(executor, r), delay, unit);
+        }
+    }
+
+    /**
+     * Action to submit user task
+     */
+    static final class TaskSubmitter implements Runnable {
+        final Executor executor;
+        final Runnable action;
+
+        TaskSubmitter(Executor executor, Runnable action) {
+            this.executor = executor;
+            this.action = action;
+        }
+
+        public void run() {
+            executor.execute(action);
+        }
+    }
+
+    /**
+     * Action to completeExceptionally on timeout
+     */
+    static final class Timeout implements Runnable {
+        final juc.CompletableFuture<?> f;
+
+        Timeout(juc.CompletableFuture<?> f) {
+            this.f = f;
+        }
+
+        public void run() {
+            if (f != null && !f.isDone())
+                f.completeExceptionally(new TimeoutException());
+        }
+    }
+
+    /**
+     * Action to complete on timeout
+     */
+    static final class DelayedCompleter<U> implements Runnable {
+        final juc.CompletableFuture<U> f;
+        final U u;
+
+        DelayedCompleter(juc.CompletableFuture<U> f, U u) {
+            this.f = f;
+            this.u = u;
+        }
+
+        public void run() {
+            if (f != null)
+                f.complete(u);
+        }
+    }
+
+    /**
+     * Completion that cancels a timer when its future completes
+     * first. Pushed directly onto the stack, so unlike a whenComplete
+     * action it does not allocate a dependent future.
+     */
+    @SuppressWarnings("serial")
+    static final class Canceller extends Completion {
+        TimerWheel.Timer timer;
+
+        Canceller(TimerWheel.Timer timer) {
+            this.timer = timer;
+        }
+
+        final juc.CompletableFuture<?> tryFire(int ignore) {
+            TimerWheel.Timer t;
+            if ((t = timer) != null) {
+                timer = null;
+                t.cancel();
+            }
+            return null;
+        }
+
+        final boolean isLive() {
+            return timer != null;
+        }
+    }
+
+    /**
+     * State of one retry or hedge call, pushed onto the future it
+     * completes so that completing or cancelling that future stops
+     * further attempts. Attempts are numbered from zero and started
+     * by claiming their number with a CAS on "started", so that when
+     * a hedge timer and a failure race to start the next attempt,
+     * only one does. A later schedule cancels the earlier, by then
+     * stale, timer. Cancelling losers is best-effort: an attempt
+     * started just as the call completes may be left running.
+     */
+    @SuppressWarnings("serial")
+    static final class Attempts<U> extends Completion {
+        final juc.CompletableFuture<U> dep;
+        final Supplier<? extends CompletionStage<U>> supplier;
+        final Predicate<? super Throwable> retryIf; // null to retry all
+        final int maxAttempts;
+        final long hedgeNanos;                      // negative if retrying
+        final long backoffNanos, maxBackoffNanos;
+        final Executor executor;
+        final juc.CompletableFuture<?>[] inflight;  // by attempt if hedging
+        volatile int started;
+        volatile int failed;
+        volatile TimerWheel.Timer timer;
+
+        Attempts(Supplier<? extends CompletionStage<U>> supplier,
+                 Predicate<? super Throwable> retryIf, int maxAttempts,
+                 long hedgeNanos, long backoffNanos, long maxBackoffNanos,
+                 Executor executor) {
+            this.dep = new juc.CompletableFuture<U>();
+            this.supplier = supplier;
+            this.retryIf = retryIf;
+            this.maxAttempts = maxAttempts;
+            this.hedgeNanos = hedgeNanos;
+            this.backoffNanos = backoffNanos;
+            this.maxBackoffNanos = maxBackoffNanos;
+            this.executor = executor;
+            this.inflight = new juc.CompletableFuture<?>[
+                    (hedgeNanos < 0L) ? 1 : maxAttempts];
+        }
+
+        juc.CompletableFuture<U> begin() {
+            dep.unipush(this);
+            new Attempt<U>(this, 0).tryFire(SYNC);
+            return dep;
+        }
+
+        /**
+         * Stops further attempts once dep is done.
+         */
+        final juc.CompletableFuture<?> tryFire(int ignore) {
+            TimerWheel.Timer t;
+            if ((t = timer) != null) {
+                timer = null;
+                t.cancel();
+            }
+            for (juc.CompletableFuture<?> f : inflight) {
+                if (f != null && f.result == null)
+                    f.cancel(false);
+            }
+            return null;
+        }
+
+        final boolean isLive() {
+            return dep.result == null;
+        }
+
+        /**
+         * Starts the given attempt, which has claimed its number.
+         */
+        void start(Attempt<U> a) {
+            int k = a.index;
+            juc.CompletableFuture<?> f;
+            if (dep.result != null)
+                return;
+            try {
+                f = supplier.get().toCompletableFuture();
+            } catch (Throwable ex) {
+                failed(k, ex, null);
+                return;
+            }
+            inflight[(hedgeNanos < 0L) ? 0 : k] = f;
+            if (hedgeNanos >= 0L && k + 1 < maxAttempts)
+                schedule(new Attempt<U>(this, k + 1), hedgeNanos);
+            a.src = f;
+            f.unipush(a);
+            if (dep.result != null && f.result == null)
+                f.cancel(false);
+        }
+
+        /**
+         * Handles the outcome r of attempt k.
+         */
+        void attemptDone(int k, Object r) {
+            Throwable x;
+            if (dep.result != null)
+                return;
+            if (!(r instanceof AltResult) || (x = ((AltResult) r).ex) == null) {
+                if (dep.completeRelay(r))
+                    dep.postComplete();
+            } else
+                failed(k, x, r);
+        }
+
+        /**
+         * Completes dep with failure x of attempt k (with encoding r,
+         * if known), unless another attempt may still succeed.
+         */
+        void failed(int k, Throwable x, Object r) {
+            Throwable cause = x;
+            boolean again;
+            if (x instanceof CompletionException && x.getCause() != null)
+                cause = x.getCause();
+            int n = UNSAFE.getAndAddInt(this, FAILED, 1) + 1;
+            try {
+                again = n < maxAttempts &&
+                        (retryIf == null || retryIf.test(cause));
+            } catch (Throwable ex) {
+                again = false;
+                x = ex;
+                r = null;
+            }
+            if (!again) {
+                if (dep.completeThrowable(x, r))
+                    dep.postComplete();
+            } else if (hedgeNanos >= 0L) {
+                int s;
+                if ((s = started) < maxAttempts)
+                    executor.execute(new Attempt<U>(this, s));
+            } else
+                schedule(new Attempt<U>(this, k + 1), backoff(k));
+        }
+
+        /**
+         * Returns the jittered backoff after failed attempt k.
+         */
+        long backoff(int k) {
+            long b = backoffNanos, max = maxBackoffNanos;
+            for (int i = 0; i < k && b < max; ++i)
+                b = (b > (max >>> 1)) ? max : b << 1;
+            long half = Math.min(b, max) >>> 1;
+            return (half == 0L) ? half :
+                    half + ThreadLocalRandom.current().nextLong(half + 1L);
+        }
+
+        /**
+         * Submits attempt a to the executor after the given delay.
+         */
+        void schedule(Attempt<U> a, long nanos) {
+            TimerWheel.Timer t = Delayer.delayer.schedule(
+                    new TaskSubmitter(executor, a), nanos);
+            TimerWheel.Timer p = timer;
+            timer = t;
+            if (p != null)
+                p.cancel();
+            if (dep.result != null)
+                t.cancel();
+        }
+
+        final boolean casStarted(int cmp, int val) {
+            return UNSAFE.compareAndSwapInt(this, STARTED, cmp, val);
+        }
+    }
+
+    /**
+     * One attempt of a retry or hedge call: first run to start the
+     * attempt, then pushed onto the attempt's future to report its
+     * outcome. Reports once, claimed with the FJ tag.
+     */
+    @SuppressWarnings("serial")
+    static final class Attempt<U> extends Completion {
+        final Attempts<U> owner;
+        final int index;
+        juc.CompletableFuture<?> src;   // null until started
+
+        Attempt(Attempts<U> owner, int index) {
+            this.owner = owner;
+            this.index = index;
+        }
+
+        final juc.CompletableFuture<?> tryFire(int mode) {
+            juc.CompletableFuture<?> a;
+            Object r;
+            if ((a = src) == null) {
+                if (owner.casStarted(index, index + 1))
+                    owner.start(this);
+            } else if ((r = a.result) != null &&
+                    compareAndSetForkJoinTaskTag((short) 0, (short) 1))
+                owner.attemptDone(index, r);
+            return null;
+        }
+
+        final boolean isLive() {
+            return src != null && getForkJoinTaskTag() == 0 &&
+                    owner.dep.result == null;
+        }
+    }
+
+    /**
+     * Completion that releases a semaphore permit when its future
+     * completes.
+     */
+    @SuppressWarnings("serial")
+    static final class PermitReleaser extends Completion {
+        Semaphore permits;
+
+        PermitReleaser(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        final juc.CompletableFuture<?> tryFire(int ignore) {
+            if (permits != null && compareAndSetForkJoinTaskTag((short) 0, (short) 1)) {
+                Semaphore s = permits;
+                permits = null;
+                s.release();
+            }
+            return null;
+        }
+
+        final boolean isLive() {
+            return permits != null;
+        }
+    }
+
     // Unsafe mechanics
     private static final Unsafe UNSAFE;
     private static final long RESULT;
     private static final long STACK;
+    private static final long UPSTREAM;
     private static final long NEXT;
+    private static final long COUNT;
+    private static final long NEXT_INDEX;
+    private static final long STARTED;
+    private static final long FAILED;
 
     static {
         try {
@@ -2491,8 +3865,17 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
             Class<?> k = juc.CompletableFuture.class;
             RESULT = u.objectFieldOffset(k.getDeclaredField("result"));
             STACK = u.objectFieldOffset(k.getDeclaredField("stack"));
+            UPSTREAM = u.objectFieldOffset(k.getDeclaredField("upstream"));
             NEXT = u.objectFieldOffset
                     (Completion.class.getDeclaredField("next"));
+            COUNT = u.objectFieldOffset
+                    (AllOfAggregate.class.getDeclaredField("count"));
+            NEXT_INDEX = u.objectFieldOffset
+                    (InOrderAggregate.class.getDeclaredField("next"));
+            STARTED = u.objectFieldOffset
+                    (Attempts.class.getDeclaredField("started"));
+            FAILED = u.objectFieldOffset
+                    (Attempts.class.getDeclaredField("failed"));
         } catch (Exception x) {
             throw new Error(x);
         }
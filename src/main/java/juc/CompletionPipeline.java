@@ -0,0 +1,171 @@
+package juc;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An immutable sequence of synchronous stages that a
+ * {@link CompletableFuture} runs as a single dependent action. Attaching
+ * a pipeline of <em>n</em> stages with
+ * {@link CompletableFuture#thenPipeline} allocates one dependent future
+ * and one completion, where the equivalent chain of <em>n</em>
+ * {@code thenApply}/{@code thenAccept}/{@code thenRun} calls allocates
+ * <em>n</em> of each.
+ * 一个不可变的同步阶段序列，{@link CompletableFuture}将其作为单个依赖操作运行。
+ * 使用{@link CompletableFuture#thenPipeline}附加一个包含<em>n</em>个阶段的管道只分配一个依赖future和一个completion，
+ * 而等价的<em>n</em>次{@code thenApply}/{@code thenAccept}/{@code thenRun}调用链会各分配<em>n</em>个。
+ *
+ * <p>Pipelines are built once, typically into a static field, and can
+ * then be attached to any number of futures:
+ * 管道只需构建一次（通常放在一个静态字段中），然后可以附加到任意数量的future上：
+ *
+ * <pre> {@code
+ * static final CompletionPipeline<byte[], Response> HANDLE =
+ *     CompletionPipeline.<byte[]>start()
+ *         .thenApply(Request::parse)
+ *         .thenApply(Request::validate)
+ *         .thenApply(Handler::process);
+ *
+ * CompletableFuture<Response> response = bytes.thenPipeline(HANDLE);
+ * }</pre>
+ *
+ * <p>Outcomes are the same as for the corresponding chain: if the
+ * source completes exceptionally, or a stage throws an exception, the
+ * remaining stages are skipped and the dependent future completes
+ * exceptionally with a {@link CompletionException} holding the
+ * exception as its cause. The difference is that the intermediate
+ * results are not observable as futures, so no other action can be
+ * attached between two stages.
+ * 结果与对应的调用链相同：如果源异常完成，或某个阶段抛出异常，则跳过其余阶段，
+ * 依赖future以一个将该异常作为其原因的{@link CompletionException}异常完成。
+ * 不同之处在于中间结果不能作为future被观察到，因此不能在两个阶段之间附加其他操作。
+ *
+ * @param <T> the type of the input of the first stage
+ * @param <R> the type of the result of the last stage
+ */
+public final class CompletionPipeline<T, R> {
+    /*
+     * Stages are kept in a plain array with a parallel array of kinds
+     * rather than being composed with Function.andThen, which would
+     * allocate a wrapper per stage and deepen the stack on every run.
+     * Building copies the arrays, so a pipeline can be shared freely
+     * while a longer one is derived from it.
+     */
+
+    static final byte APPLY = 0;
+    static final byte ACCEPT = 1;
+    static final byte RUN = 2;
+
+    private static final CompletionPipeline<Object, Object> EMPTY =
+            new CompletionPipeline<Object, Object>(new Object[0], new byte[0]);
+
+    private final Object[] stages;
+    private final byte[] kinds;
+
+    private CompletionPipeline(Object[] stages, byte[] kinds) {
+        this.stages = stages;
+        this.kinds = kinds;
+    }
+
+    /**
+     * Returns a pipeline with no stages, which passes its input
+     * through unchanged.
+     * 返回一个没有阶段的管道，它原样传递其输入。
+     *
+     * @param <T> the type of the input
+     * @return the empty pipeline
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletionPipeline<T, T> start() {
+        return (CompletionPipeline<T, T>) (CompletionPipeline<?, ?>) EMPTY;
+    }
+
+    /**
+     * Returns a new pipeline that, after the stages of this one,
+     * applies the given function to the result.
+     * 返回一个新的管道，它在此管道的阶段之后将给定函数应用于结果。
+     *
+     * @param fn  the function to apply
+     * @param <U> the function's return type
+     * @return the new pipeline
+     * @throws NullPointerException if fn is null
+     */
+    public <U> CompletionPipeline<T, U> thenApply(Function<? super R, ? extends U> fn) {
+        return append(fn, APPLY);
+    }
+
+    /**
+     * Returns a new pipeline that, after the stages of this one,
+     * performs the given action on the result.
+     * 返回一个新的管道，它在此管道的阶段之后对结果执行给定操作。
+     *
+     * @param action the action to perform
+     * @return the new pipeline
+     * @throws NullPointerException if action is null
+     */
+    public CompletionPipeline<T, Void> thenAccept(Consumer<? super R> action) {
+        return append(action, ACCEPT);
+    }
+
+    /**
+     * Returns a new pipeline that, after the stages of this one,
+     * runs the given action.
+     * 返回一个新的管道，它在此管道的阶段之后运行给定操作。
+     *
+     * @param action the action to run
+     * @return the new pipeline
+     * @throws NullPointerException if action is null
+     */
+    public CompletionPipeline<T, Void> thenRun(Runnable action) {
+        return append(action, RUN);
+    }
+
+    /**
+     * Returns the number of stages in this pipeline.
+     * 返回此管道中的阶段数。
+     *
+     * @return the number of stages
+     */
+    public int stageCount() {
+        return stages.length;
+    }
+
+    private <U> CompletionPipeline<T, U> append(Object stage, byte kind) {
+        if (stage == null)
+            throw new NullPointerException();
+        int n = stages.length;
+        Object[] ss = Arrays.copyOf(stages, n + 1);
+        byte[] ks = Arrays.copyOf(kinds, n + 1);
+        ss[n] = stage;
+        ks[n] = kind;
+        return new CompletionPipeline<T, U>(ss, ks);
+    }
+
+    /**
+     * Runs all stages on the given input, returning the result of the
+     * last one; exceptions thrown by a stage propagate to the caller.
+     */
+    @SuppressWarnings("unchecked")
+    final R run(T input) {
+        Object v = input;
+        final Object[] ss = stages;
+        final byte[] ks = kinds;
+        for (int i = 0; i < ss.length; ++i) {
+            switch (ks[i]) {
+                case APPLY:
+                    v = ((Function<Object, Object>) ss[i]).apply(v);
+                    break;
+                case ACCEPT:
+                    ((Consumer<Object>) ss[i]).accept(v);
+                    v = null;
+                    break;
+                default:
+                    ((Runnable) ss[i]).run();
+                    v = null;
+                    break;
+            }
+        }
+        return (R) v;
+    }
+}
@@ -234,6 +234,53 @@ public class Executors {
                                       threadFactory);
     }
 
+    /**
+     * Creates an executor that starts a new thread, made by the given
+     * factory, for each task. The number of threads is unbounded, and
+     * threads are not reused. Invoking {@code shutdownNow} interrupts
+     * the threads running tasks. Such an executor suits tasks that
+     * spend most of their time blocked, given cheap threads, such as
+     * those of {@link #newVirtualThreadPerTaskExecutor}.
+     *
+     * @param threadFactory the factory to use when creating new threads
+     * @return the newly created executor
+     * @throws NullPointerException if threadFactory is null
+     */
+    public static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        return new ThreadPerTaskExecutor(threadFactory);
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each
+     * task, if the running JVM supports virtual threads (Java 21 and
+     * later), as if by {@link #newThreadPerTaskExecutor} with a
+     * factory from {@code Thread.ofVirtual().factory()}. Blocking
+     * tasks then cost little more than their stacks, so that tens of
+     * thousands of them may block at once. On older JVMs, or if
+     * virtual threads are otherwise unavailable, the executor is a
+     * {@linkplain #newCachedThreadPool() cached thread pool} of
+     * platform threads instead.
+     *
+     * @return the newly created executor
+     * @see #hasVirtualThreads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        ThreadFactory factory = VirtualThreads.FACTORY;
+        return (factory != null) ? new ThreadPerTaskExecutor(factory) :
+            newCachedThreadPool();
+    }
+
+    /**
+     * Returns {@code true} if the running JVM supports virtual threads,
+     * so that {@link #newVirtualThreadPerTaskExecutor} starts a virtual
+     * thread per task rather than returning a cached thread pool.
+     *
+     * @return {@code true} if virtual threads are available
+     */
+    public static boolean hasVirtualThreads() {
+        return VirtualThreads.FACTORY != null;
+    }
+
     /**
      * Creates a single-threaded executor that can schedule commands
      * to run after a given delay, or to execute periodically.
@@ -658,6 +705,122 @@ public class Executors {
         }
     }
 
+    /**
+     * Holder of the virtual thread factory, looked up reflectively
+     * so that this class still runs on JVMs without virtual threads.
+     */
+    static final class VirtualThreads {
+        /** A factory of virtual threads, or null if unsupported */
+        static final ThreadFactory FACTORY = load();
+
+        private static ThreadFactory load() {
+            final java.util.concurrent.ThreadFactory f;
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                f = (java.util.concurrent.ThreadFactory)
+                    Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // absent, or a preview feature that is not enabled
+                return null;
+            }
+            return new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    return f.newThread(r);
+                }
+            };
+        }
+    }
+
+    /**
+     * An executor that runs each task in a new thread. Threads are
+     * kept in a set from just before they start until their task
+     * completes, so that shutdownNow can interrupt them and the
+     * executor terminates once the set is empty after shutdown. A
+     * thread is added before the run state is rechecked, so that
+     * either execute sees the shutdown and backs out, or shutdown
+     * sees the thread.
+     */
+    static final class ThreadPerTaskExecutor extends AbstractExecutorService {
+        private static final int RUNNING    = 0;
+        private static final int SHUTDOWN   = 1;
+        private static final int TERMINATED = 2;
+
+        private final ThreadFactory factory;
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private final CountDownLatch termination = new CountDownLatch(1);
+
+        ThreadPerTaskExecutor(ThreadFactory factory) {
+            if (factory == null)
+                throw new NullPointerException();
+            this.factory = factory;
+        }
+
+        public void execute(final Runnable command) {
+            if (command == null)
+                throw new NullPointerException();
+            if (state.get() != RUNNING)
+                throw new RejectedExecutionException();
+            Thread t = factory.newThread(new Runnable() {
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        threads.remove(Thread.currentThread());
+                        tryTerminate();
+                    }
+                }
+            });
+            if (t == null)
+                throw new RejectedExecutionException();
+            threads.add(t);
+            if (state.get() != RUNNING) {
+                threads.remove(t);
+                tryTerminate();
+                throw new RejectedExecutionException();
+            }
+            try {
+                t.start();
+            } catch (Throwable ex) {
+                threads.remove(t);
+                tryTerminate();
+                throw new RejectedExecutionException(ex);
+            }
+        }
+
+        private void tryTerminate() {
+            if (state.get() == SHUTDOWN && threads.isEmpty() &&
+                state.compareAndSet(SHUTDOWN, TERMINATED))
+                termination.countDown();
+        }
+
+        public void shutdown() {
+            state.compareAndSet(RUNNING, SHUTDOWN);
+            tryTerminate();
+        }
+
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            for (Thread t : threads)
+                t.interrupt();
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return state.get() != RUNNING;
+        }
+
+        public boolean isTerminated() {
+            return state.get() == TERMINATED;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+            return termination.await(timeout, unit);
+        }
+    }
+
     /**
      * A wrapper class that exposes only the ExecutorService methods
      * of an ExecutorService implementation.
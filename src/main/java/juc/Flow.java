@@ -0,0 +1,194 @@
+package juc;
+
+/**
+ * Interrelated interfaces and static methods for establishing
+ * flow-controlled components in which {@link Publisher Publishers}
+ * produce items consumed by one or more {@link Subscriber
+ * Subscribers}, each managed by a {@link Subscription
+ * Subscription}.
+ * 相互关联的接口和静态方法，用于建立流控组件，其中{@link Publisher Publishers}生产的元素由一个或多个
+ * {@link Subscriber Subscribers}消费，每个Subscriber由一个{@link Subscription Subscription}管理。
+ *
+ * <p>These interfaces correspond to the reactive-streams
+ * specification. They apply in both concurrent and distributed
+ * asynchronous settings: All (seven) methods are defined in
+ * {@code void} "one-way" message style. Communication relies on a
+ * simple form of flow control (method {@link Subscription#request})
+ * that can be used to avoid resource management problems that may
+ * otherwise occur in "push" based systems.
+ * 这些接口对应于reactive-streams规范。它们适用于并发和分布式的异步环境：所有（七个）方法都以{@code void}
+ * "单向"消息风格定义。通信依赖于一种简单形式的流控（方法{@link Subscription#request}），
+ * 它可以用来避免在基于"推"的系统中可能出现的资源管理问题。
+ *
+ * <p>Subscriber method invocations for a given Subscription are
+ * strictly ordered: {@code onSubscribe} first, then zero or more
+ * {@code onNext}, then at most one of {@code onError} or
+ * {@code onComplete}, never concurrently. Items are sent only as
+ * requested: a Subscriber calls {@code request(n)} to allow up to
+ * {@code n} more {@code onNext} calls, so a slow Subscriber is never
+ * flooded and a Publisher can tell when to buffer, drop or block.
+ * 对于给定的Subscription，Subscriber方法的调用是严格有序的：首先是{@code onSubscribe}，
+ * 然后是零个或多个{@code onNext}，然后至多一个{@code onError}或{@code onComplete}，从不并发。
+ * 元素仅按请求发送：Subscriber调用{@code request(n)}以允许至多{@code n}次额外的{@code onNext}调用，
+ * 因此慢的Subscriber永远不会被淹没，而Publisher可以知道何时缓冲、丢弃或阻塞。
+ *
+ * @see SubmissionPublisher
+ */
+public final class Flow {
+
+    private Flow() {
+    } // uninstantiable
+
+    /**
+     * A producer of items (and related control messages) received by
+     * Subscribers. Each current {@link Subscriber} receives the same
+     * items (via method {@code onNext}) in the same order, unless
+     * drops or errors are encountered. If a Publisher encounters an
+     * error that does not allow items to be issued to a Subscriber,
+     * that Subscriber receives {@code onError}, and then receives no
+     * further messages. Otherwise, when it is known that no further
+     * messages will be issued to it, a subscriber receives
+     * {@code onComplete}.
+     * 被Subscriber接收的元素（及相关控制消息）的生产者。每个当前的{@link Subscriber}以相同的顺序接收相同的元素
+     * （通过方法{@code onNext}），除非遇到丢弃或错误。如果Publisher遇到不允许向某个Subscriber发布元素的错误，
+     * 该Subscriber会收到{@code onError}，之后不再收到任何消息。否则，当已知不会再向它发布消息时，
+     * subscriber会收到{@code onComplete}。
+     *
+     * @param <T> the published item type
+     */
+    @FunctionalInterface
+    public static interface Publisher<T> {
+        /**
+         * Adds the given Subscriber if possible. If already
+         * subscribed, or the attempt to subscribe fails due to policy
+         * violations or errors, the Subscriber's {@code onError}
+         * method is invoked with an {@link IllegalStateException}.
+         * Otherwise, the Subscriber's {@code onSubscribe} method is
+         * invoked with a new {@link Subscription}.
+         * 如果可能，添加给定的Subscriber。如果已经订阅，或者订阅尝试由于策略违规或错误而失败，
+         * 则以{@link IllegalStateException}调用Subscriber的{@code onError}方法。
+         * 否则，以一个新的{@link Subscription}调用Subscriber的{@code onSubscribe}方法。
+         *
+         * @param subscriber the subscriber
+         * @throws NullPointerException if subscriber is null
+         */
+        public void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of messages. The methods in this interface are
+     * invoked in strict sequential order for each {@link
+     * Subscription}.
+     * 消息的接收者。对于每个{@link Subscription}，此接口中的方法按严格的顺序调用。
+     *
+     * @param <T> the subscribed item type
+     */
+    public static interface Subscriber<T> {
+        /**
+         * Method invoked prior to invoking any other Subscriber
+         * methods for the given Subscription. If this method throws
+         * an exception, resulting behavior is not guaranteed, but may
+         * cause the Subscription not to be established or to be
+         * cancelled.
+         * 在为给定Subscription调用任何其他Subscriber方法之前调用的方法。
+         * 如果此方法抛出异常，结果行为不受保证，但可能导致Subscription未建立或被取消。
+         *
+         * @param subscription a new subscription
+         */
+        public void onSubscribe(Subscription subscription);
+
+        /**
+         * Method invoked with a Subscription's next item. If this
+         * method throws an exception, resulting behavior is not
+         * guaranteed, but may cause the Subscription to be cancelled.
+         * 以Subscription的下一个元素调用的方法。如果此方法抛出异常，结果行为不受保证，但可能导致Subscription被取消。
+         *
+         * @param item the item
+         */
+        public void onNext(T item);
+
+        /**
+         * Method invoked upon an unrecoverable error encountered by a
+         * Publisher or Subscription, after which no other Subscriber
+         * methods are invoked by the Subscription.
+         * 当Publisher或Subscription遇到不可恢复的错误时调用的方法，此后Subscription不再调用其他Subscriber方法。
+         *
+         * @param throwable the exception
+         */
+        public void onError(Throwable throwable);
+
+        /**
+         * Method invoked when it is known that no additional
+         * Subscriber method invocations will occur for a Subscription
+         * that is not already terminated by error, after which no
+         * other Subscriber methods are invoked by the Subscription.
+         * 当已知对于一个尚未因错误而终止的Subscription不会再有额外的Subscriber方法调用时调用的方法，
+         * 此后Subscription不再调用其他Subscriber方法。
+         */
+        public void onComplete();
+    }
+
+    /**
+     * Message control linking a {@link Publisher} and {@link
+     * Subscriber}. Subscribers receive items only when requested,
+     * and may cancel at any time. The methods in this interface are
+     * intended to be invoked only by their Subscribers; usages in
+     * other contexts have undefined effects.
+     * 连接{@link Publisher}和{@link Subscriber}的消息控制。Subscriber仅在请求时接收元素，并且可以随时取消。
+     * 此接口中的方法仅供其Subscriber调用；在其他上下文中的使用效果未定义。
+     */
+    public static interface Subscription {
+        /**
+         * Adds the given number {@code n} of items to the current
+         * unfulfilled demand for this subscription. If {@code n} is
+         * less than or equal to zero, the Subscriber will receive an
+         * {@code onError} signal with an {@link
+         * IllegalArgumentException} argument. Otherwise, the
+         * Subscriber will receive up to {@code n} additional {@code
+         * onNext} invocations (or fewer if terminated).
+         * 将给定数量{@code n}的元素添加到此订阅当前未满足的需求中。如果{@code n}小于或等于零，
+         * Subscriber将收到一个参数为{@link IllegalArgumentException}的{@code onError}信号。
+         * 否则，Subscriber将收到至多{@code n}次额外的{@code onNext}调用（如果终止则更少）。
+         *
+         * @param n the increment of demand; a value of {@code
+         *          Long.MAX_VALUE} may be considered as effectively unbounded
+         */
+        public void request(long n);
+
+        /**
+         * Causes the Subscriber to (eventually) stop receiving
+         * messages. Implementation is best-effort -- additional
+         * messages may be received after invoking this method.
+         * A cancelled subscription need not ever receive an
+         * {@code onComplete} or {@code onError} signal.
+         * 使Subscriber（最终）停止接收消息。实现是尽力而为的——调用此方法后可能还会收到额外的消息。
+         * 已取消的订阅不必收到{@code onComplete}或{@code onError}信号。
+         */
+        public void cancel();
+    }
+
+    /**
+     * A component that acts as both a Subscriber and Publisher.
+     * 一个同时充当Subscriber和Publisher的组件。
+     *
+     * @param <T> the subscribed item type
+     * @param <R> the published item type
+     */
+    public static interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Returns a default value for Publisher or Subscriber buffering,
+     * that may be used in the absence of other constraints.
+     * 返回Publisher或Subscriber缓冲的默认值，可在没有其他约束时使用。
+     *
+     * @return the buffer size value
+     * @implNote The current value returned is 256.
+     */
+    public static int defaultBufferSize() {
+        return DEFAULT_BUFFER_SIZE;
+    }
+
+}
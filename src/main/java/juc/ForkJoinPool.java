@@ -984,6 +984,37 @@ public class ForkJoinPool extends AbstractExecutorService {
         }
     }
 
+    /**
+     * Policies applied by a pool constructed with a bound on queued
+     * external submissions (see {@link #ForkJoinPool(int,
+     * ForkJoinWorkerThreadFactory, UncaughtExceptionHandler, boolean,
+     * int, SubmissionPolicy, long, TimeUnit)}) when a submission
+     * arrives while the bound is reached.
+     * 在构造时为外部提交的排队任务数设置了上限的池，当提交到达时上限已满所采用的策略。
+     */
+    public enum SubmissionPolicy {
+        /**
+         * Waits until queued submissions drop below the bound.  If
+         * the submitting thread is interrupted while waiting, the
+         * task is rejected and the interrupt status is preserved.
+         * 等待直到排队的提交数降到上限以下。
+         * 如果提交线程在等待时被中断，则拒绝该任务并保留中断状态。
+         */
+        BLOCK,
+        /**
+         * Like {@link #BLOCK}, but rejects the task if space does not
+         * become available within the pool's submission timeout.
+         * 与BLOCK类似，但如果在池的提交超时时间内仍没有空间，则拒绝该任务。
+         */
+        TIMED,
+        /**
+         * Runs the task directly in the submitting thread, which
+         * also naturally slows down the producer.
+         * 直接在提交线程中运行该任务，这也自然地减慢了生产者的速度。
+         */
+        CALLER_RUNS
+    }
+
     /**
      * Class for artificial tasks that are used to replace the target
      * of local joins if they are removed from an interior queue slot
@@ -1677,6 +1708,19 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     private static final int SEED_INCREMENT = 0x9e3779b9;
 
+    /**
+     * Initial and maximum park times (in nanoseconds) for external
+     * submitters waiting for space under a submission bound.  Workers
+     * do not signal waiting submitters (that would add overhead to
+     * every poll), so submitters re-check with exponential backoff
+     * instead, starting short to keep hand-off latency low.
+     * 在提交上限下等待空间的外部提交者的初始和最大park时间（以纳秒为单位）。
+     * 工作线程不会通知等待的提交者（那会给每次poll增加开销），
+     * 因此提交者使用指数退避重新检查，初始时间较短以保持较低的交接延迟。
+     */
+    private static final long MIN_SUBMIT_PARK = 1L << 10;  // ~1us
+    private static final long MAX_SUBMIT_PARK = 1L << 20;  // ~1ms
+
     /*
      * Bits and masks for field ctl, packed with 4 16 bit subfields:
      * AC: Number of active running workers minus target parallelism
@@ -1763,6 +1807,9 @@ public class ForkJoinPool extends AbstractExecutorService {
     final UncaughtExceptionHandler ueh;  // per-worker UEH
     final String workerNamePrefix;       // to create worker name string
     volatile AtomicLong stealCounter;    // also used as sync monitor
+    final int submissionBound;           // max queued submissions, 0 if unbounded
+    final SubmissionPolicy submissionPolicy; // action when bound reached
+    final long submissionTimeout;        // nanos to wait under TIMED policy
 
     /**
      * Acquires the runState lock; returns current (locked) runState.
@@ -1997,9 +2044,7 @@ public class ForkJoinPool extends AbstractExecutorService {
             } else                                      // don't need replacement
                 break;
         }
-        if (ex == null)                               // help clean on way out
-            ForkJoinTask.helpExpungeStaleExceptions();
-        else                                          // rethrow
+        if (ex != null)                               // rethrow
             ForkJoinTask.rethrow(ex);
     }
 
@@ -2891,6 +2936,8 @@ public class ForkJoinPool extends AbstractExecutorService {
         WorkQueue[] ws;
         WorkQueue q;
         int m;
+        if (submissionBound > 0 && !awaitSubmissionSpace(task))
+            return;                               // run by caller
         int r = ThreadLocalRandom.getProbe();
         int rs = runState;
         if ((ws = workQueues) != null && (m = (ws.length - 1)) >= 0 &&
@@ -2913,6 +2960,63 @@ public class ForkJoinPool extends AbstractExecutorService {
         externalSubmit(task);
     }
 
+    /**
+     * Applies the submission policy of a bounded pool before an
+     * external push. The count of queued submissions is a sum over
+     * the shared queues, so the bound is approximate under races,
+     * which is fine for its purpose of limiting memory growth.
+     * Submissions by this pool's own workers are never throttled,
+     * since blocking them could prevent the very progress they wait
+     * for.
+     * 在外部push之前应用有界池的提交策略。
+     * 排队的提交数是对所有共享队列求和得到的，因此在竞争下上限是近似的，这足以达到限制内存增长的目的。
+     * 此池自己的工作线程的提交永远不会被限制，因为阻塞它们可能会阻止它们所等待的进展。
+     *
+     * @param task the task. Caller must ensure non-null.
+     * @return true if the task should be pushed, false if it was
+     * instead run by the caller
+     * @throws RejectedExecutionException if the pool is shut down,
+     * or the wait timed out or was interrupted
+     */
+    private boolean awaitSubmissionSpace(ForkJoinTask<?> task) {
+        int bound = submissionBound;
+        Thread t;
+        if (getQueuedSubmissionCount() < bound ||
+                ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread &&
+                        ((ForkJoinWorkerThread) t).pool == this))
+            return true;
+        SubmissionPolicy policy = submissionPolicy;
+        if (policy == SubmissionPolicy.CALLER_RUNS) {
+            if (runState < 0)
+                throw new RejectedExecutionException();
+            task.doExec();
+            return false;
+        }
+        long deadline = (policy == SubmissionPolicy.TIMED) ?
+                System.nanoTime() + submissionTimeout : 0L;
+        for (long delay = MIN_SUBMIT_PARK; ; ) {
+            if (runState < 0 || getQueuedSubmissionCount() < bound)
+                return true;                      // externalSubmit rejects if shut down
+            long nanos = delay;
+            if (deadline != 0L) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L)
+                    throw new RejectedExecutionException
+                            ("Timed out waiting for submission space");
+                if (remaining < nanos)
+                    nanos = remaining;
+            }
+            if (Thread.interrupted()) {
+                t.interrupt();
+                throw new RejectedExecutionException
+                        ("Interrupted waiting for submission space");
+            }
+            U.park(false, nanos);
+            if (delay < MAX_SUBMIT_PARK)
+                delay <<= 1;
+        }
+    }
+
     /**
      * Returns common pool queue for an external thread.
      * 返回外部线程的公共池队列。
@@ -3046,6 +3150,68 @@ public class ForkJoinPool extends AbstractExecutorService {
         checkPermission();
     }
 
+    /**
+     * Creates a {@code ForkJoinPool} with the given parameters and a
+     * bound on the number of queued external submissions. Once the
+     * bound is reached, submissions from threads that are not workers
+     * of this pool are handled according to the given policy, which
+     * lets a traffic spike slow down producers instead of growing the
+     * submission queues without limit.
+     * 使用给定参数创建一个{@code ForkJoinPool}，并限制排队的外部提交数。
+     * 一旦达到上限，来自非此池工作线程的提交将按照给定策略处理，
+     * 这使得流量高峰会减慢生产者的速度，而不是无限制地增长提交队列。
+     *
+     * @param parallelism the parallelism level
+     * @param factory     the factory for creating new threads
+     * @param handler     the handler for internal worker threads that
+     *                    terminate due to unrecoverable errors, or {@code null}
+     * @param asyncMode   if true, establishes local first-in-first-out
+     *                    scheduling mode for forked tasks that are never joined
+     * @param maxQueuedSubmissions the (approximate) maximum number of
+     *                    queued external submissions
+     * @param policy      the action taken when the bound is reached
+     * @param timeout     the maximum time to wait for space under the
+     *                    {@link SubmissionPolicy#TIMED TIMED} policy; ignored otherwise
+     * @param unit        the time unit of the timeout argument
+     * @throws IllegalArgumentException if parallelism less than or
+     *                                  equal to zero, or greater than implementation limit,
+     *                                  or if maxQueuedSubmissions less than or equal to zero
+     * @throws NullPointerException     if the factory, policy or unit is null
+     * @throws SecurityException        if a security manager exists and
+     *                                  the caller is not permitted to modify threads
+     *                                  because it does not hold {@link
+     *                                  RuntimePermission}{@code ("modifyThread")}
+     */
+    public ForkJoinPool(int parallelism,
+                        ForkJoinWorkerThreadFactory factory,
+                        UncaughtExceptionHandler handler,
+                        boolean asyncMode,
+                        int maxQueuedSubmissions,
+                        SubmissionPolicy policy,
+                        long timeout, TimeUnit unit) {
+        this(checkParallelism(parallelism),
+                checkFactory(factory),
+                handler,
+                asyncMode ? FIFO_QUEUE : LIFO_QUEUE,
+                "ForkJoinPool-" + nextPoolId() + "-worker-",
+                checkSubmissionBound(maxQueuedSubmissions),
+                checkPolicy(policy),
+                Math.max(0L, unit.toNanos(timeout)));
+        checkPermission();
+    }
+
+    private static int checkSubmissionBound(int maxQueuedSubmissions) {
+        if (maxQueuedSubmissions <= 0)
+            throw new IllegalArgumentException();
+        return maxQueuedSubmissions;
+    }
+
+    private static SubmissionPolicy checkPolicy(SubmissionPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException();
+        return policy;
+    }
+
     private static int checkParallelism(int parallelism) {
         if (parallelism <= 0 || parallelism > MAX_CAP)
             throw new IllegalArgumentException();
@@ -3070,10 +3236,31 @@ public class ForkJoinPool extends AbstractExecutorService {
                          UncaughtExceptionHandler handler,
                          int mode,
                          String workerNamePrefix) {
+        this(parallelism, factory, handler, mode, workerNamePrefix,
+                0, null, 0L);
+    }
+
+    /**
+     * Creates a {@code ForkJoinPool} with the given parameters,
+     * including an optional submission bound, without any security
+     * checks or parameter validation.
+     * 使用给定的参数（包括可选的提交上限）创建一个{@code ForkJoinPool}，而无需进行任何安全检查或参数验证。
+     */
+    private ForkJoinPool(int parallelism,
+                         ForkJoinWorkerThreadFactory factory,
+                         UncaughtExceptionHandler handler,
+                         int mode,
+                         String workerNamePrefix,
+                         int submissionBound,
+                         SubmissionPolicy submissionPolicy,
+                         long submissionTimeout) {
         this.workerNamePrefix = workerNamePrefix;
         this.factory = factory;
         this.ueh = handler;
         this.config = (parallelism & SMASK) | mode;
+        this.submissionBound = submissionBound;
+        this.submissionPolicy = submissionPolicy;
+        this.submissionTimeout = submissionTimeout;
         long np = (long) (-parallelism); // offset ctl counts
         this.ctl = ((np << AC_SHIFT) & AC_MASK) | ((np << TC_SHIFT) & TC_MASK);
     }
@@ -3445,6 +3632,17 @@ public class ForkJoinPool extends AbstractExecutorService {
         return count;
     }
 
+    /**
+     * Returns the bound on queued external submissions this pool was
+     * constructed with, or zero if submissions are unbounded.
+     * 返回构造此池时设置的外部提交排队上限，如果提交无上限则返回零。
+     *
+     * @return the submission bound, or zero if none
+     */
+    public int getMaxQueuedSubmissions() {
+        return submissionBound;
+    }
+
     /**
      * Returns {@code true} if there are any tasks submitted to this
      * pool that have not yet begun executing.
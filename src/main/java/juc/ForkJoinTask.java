@@ -35,13 +35,10 @@
 
 package juc;
 
-import juc.locks.ReentrantLock;
 import sun.misc2.Unsafe;
 import unsafeTest.GetUnsafeFromReflect;
 
 import java.io.Serializable;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.util.Collection;
 import java.util.List;
@@ -503,60 +500,44 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
                         externalAwaitDone();
     }
 
-    // Exception table support
+    // Exception support
 
     /**
-     * Table of exceptions thrown by tasks, to enable reporting by
-     * callers. Because exceptions are rare, we don't directly keep
-     * them with task objects, but instead use a weak ref table.  Note
-     * that cancellation exceptions don't appear in the table, but are
+     * Exception thrown by this task, if any, to enable reporting by
+     * callers. Earlier versions kept these in a static weak-ref
+     * table guarded by a single lock, which became a global
+     * bottleneck when many tasks complete exceptionally at once
+     * (for example validation failures across a parallel pipeline):
+     * every recording, lookup and expunge serialized on the same
+     * lock. Holding the node on the task itself costs one reference
+     * field per task, but makes the failure path lock-free and
+     * lets the exception become unreachable together with the task,
+     * so no weak references or expunging are needed.  Note that
+     * cancellation exceptions are still not recorded here, but are
      * instead recorded as status values.
-     * 任务抛出的异常表，以使调用者能够进行报告。
-     * 由于异常很少见，因此我们不直接将它们保留在任务对象中，而是使用弱引用表。
-     * 请注意，取消异常未出现在表中，而是记录为状态值。
-     * <p>
-     * Note: These statics are initialized below in static block.
+     * 任务抛出的异常，以使调用者能够进行报告。
+     * 早期版本将其保存在由单个锁保护的静态弱引用表中，当大量任务同时异常完成时，
+     * 所有的记录、查找和清除都在同一个锁上串行化，成为全局瓶颈。
+     * 将异常节点直接保存在任务上，每个任务只多占用一个引用字段，但失败路径不再需要加锁，
+     * 并且异常随任务一起变为不可达，因此不再需要弱引用和清除操作。
+     * 请注意，取消异常仍不记录在此处，而是记录为状态值。
      */
-    private static final ExceptionNode[] exceptionTable;
-    private static final ReentrantLock exceptionTableLock;
-    private static final ReferenceQueue<Object> exceptionTableRefQueue;
+    private transient volatile ExceptionNode exception;
 
     /**
-     * Fixed capacity for exceptionTable.
+     * Holder for a recorded exception and the id of the thread that
+     * threw it, so that joiners in other threads can decide whether
+     * to wrap it to provide an accurate stack trace.
+     * 保存记录的异常以及抛出该异常的线程id，
+     * 以便其他线程中的合并者判断是否需要包装该异常以提供准确的堆栈跟踪。
      */
-    private static final int EXCEPTION_MAP_CAPACITY = 32;
-
-    /**
-     * Key-value nodes for exception table.  The chained hash table
-     * uses identity comparisons, full locking, and weak references
-     * for keys. The table has a fixed capacity because it only
-     * maintains task exceptions long enough for joiners to access
-     * them, so should never become very large for sustained
-     * periods. However, since we do not know when the last joiner
-     * completes, we must use weak references and expunge them. We do
-     * so on each operation (hence full locking). Also, some thread in
-     * any ForkJoinPool will call helpExpungeStaleExceptions when its
-     * pool becomes isQuiescent.
-     * 异常表的键值节点。
-     * 链式哈希表对键使用身份比较，完全锁定和弱引用。
-     * 该表具有固定的容量，因为它仅将任务异常维护的时间足够长，
-     * 以使合并者可以访问它们，因此该表在持续时间内永远不会变得很大。
-     * 但是，由于我们不知道最后一个合并者何时完成，因此必须使用弱引用并将其删除。
-     * 我们对每个操作都执行此操作（因此完全锁定）。
-     * 另外，任何ForkJoinPool中的某个线程在其池变为isQuiescent时都会调用helpExpungeStaleExceptions。
-     */
-    static final class ExceptionNode extends WeakReference<juc.ForkJoinTask<?>> {
+    static final class ExceptionNode {
         final Throwable ex;
-        ExceptionNode next;
-        final long thrower;  // use id not ref to avoid weak cycles
-        final int hashCode;  // store task hashCode before weak ref disappears
+        final long thrower;  // use id not ref to avoid retaining threads
 
-        ExceptionNode(juc.ForkJoinTask<?> task, Throwable ex, ExceptionNode next) {
-            super(task, exceptionTableRefQueue);
+        ExceptionNode(Throwable ex) {
             this.ex = ex;
-            this.next = next;
             this.thrower = Thread.currentThread().getId();
-            this.hashCode = System.identityHashCode(task);
         }
     }
 
@@ -569,24 +550,9 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     final int recordExceptionalCompletion(Throwable ex) {
         int s;
         if ((s = status) >= 0) {
-            int h = System.identityHashCode(this);
-            final ReentrantLock lock = exceptionTableLock;
-            lock.lock();
-            try {
-                expungeStaleExceptions();
-                ExceptionNode[] t = exceptionTable;
-                int i = h & (t.length - 1);
-                for (ExceptionNode e = t[i]; ; e = e.next) {
-                    if (e == null) {
-                        t[i] = new ExceptionNode(this, ex, t[i]);
-                        break;
-                    }
-                    if (e.get() == this) // already present
-                        break;
-                }
-            } finally {
-                lock.unlock();
-            }
+            if (exception == null) // first recorded exception wins
+                U.compareAndSwapObject(this, EXCEPTION, null,
+                                       new ExceptionNode(ex));
             s = setCompletion(EXCEPTIONAL);
         }
         return s;
@@ -633,34 +599,12 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     }
 
     /**
-     * Removes exception node and clears status.
+     * Removes recorded exception and clears status.
+     * 移除记录的异常并清除状态。
      */
     private void clearExceptionalCompletion() {
-        int h = System.identityHashCode(this);
-        final ReentrantLock lock = exceptionTableLock;
-        lock.lock();
-        try {
-            ExceptionNode[] t = exceptionTable;
-            int i = h & (t.length - 1);
-            ExceptionNode e = t[i];
-            ExceptionNode pred = null;
-            while (e != null) {
-                ExceptionNode next = e.next;
-                if (e.get() == this) {
-                    if (pred == null)
-                        t[i] = next;
-                    else
-                        pred.next = next;
-                    break;
-                }
-                pred = e;
-                e = next;
-            }
-            expungeStaleExceptions();
-            status = 0;
-        } finally {
-            lock.unlock();
-        }
+        exception = null;
+        status = 0;
     }
 
     /**
@@ -680,19 +624,7 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     private Throwable getThrowableException() {
         if ((status & DONE_MASK) != EXCEPTIONAL)
             return null;
-        int h = System.identityHashCode(this);
-        ExceptionNode e;
-        final ReentrantLock lock = exceptionTableLock;
-        lock.lock();
-        try {
-            expungeStaleExceptions();
-            ExceptionNode[] t = exceptionTable;
-            e = t[h & (t.length - 1)];
-            while (e != null && e.get() != this)
-                e = e.next;
-        } finally {
-            lock.unlock();
-        }
+        ExceptionNode e = exception;
         Throwable ex;
         if (e == null || (ex = e.ex) == null)
             return null;
@@ -724,51 +656,6 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
         return ex;
     }
 
-    /**
-     * Poll stale refs and remove them. Call only while holding lock.
-     * 轮询陈旧的ref并将其删除。 仅在持有锁的状态下调用。
-     */
-    private static void expungeStaleExceptions() {
-        for (Object x; (x = exceptionTableRefQueue.poll()) != null; ) {
-            if (x instanceof ExceptionNode) {
-                int hashCode = ((ExceptionNode) x).hashCode;
-                ExceptionNode[] t = exceptionTable;
-                int i = hashCode & (t.length - 1);
-                ExceptionNode e = t[i];
-                ExceptionNode pred = null;
-                while (e != null) {
-                    ExceptionNode next = e.next;
-                    if (e == x) {
-                        if (pred == null)
-                            t[i] = next;
-                        else
-                            pred.next = next;
-                        break;
-                    }
-                    pred = e;
-                    e = next;
-                }
-            }
-        }
-    }
-
-    /**
-     * If lock is available, poll stale refs and remove them.
-     * Called from ForkJoinPool when pools become quiescent.
-     * 如果有锁可用，则轮询过时的引用并删除它们。
-     * 当池变为静态时从ForkJoinPool调用。
-     */
-    static final void helpExpungeStaleExceptions() {
-        final ReentrantLock lock = exceptionTableLock;
-        if (lock.tryLock()) {
-            try {
-                expungeStaleExceptions();
-            } finally {
-                lock.unlock();
-            }
-        }
-    }
-
     /**
      * A version of "sneaky throw" to relay exceptions
      */
@@ -1794,16 +1681,16 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     // Unsafe mechanics
     private static final Unsafe U;
     private static final long STATUS;
+    private static final long EXCEPTION;
 
     static {
-        exceptionTableLock = new ReentrantLock();
-        exceptionTableRefQueue = new ReferenceQueue<Object>();
-        exceptionTable = new ExceptionNode[EXCEPTION_MAP_CAPACITY];
         try {
             U = GetUnsafeFromReflect.getUnsafe();
             Class<?> k = juc.ForkJoinTask.class;
             STATUS = U.objectFieldOffset
                     (k.getDeclaredField("status"));
+            EXCEPTION = U.objectFieldOffset
+                    (k.getDeclaredField("exception"));
         } catch (Exception e) {
             throw new Error(e);
         }
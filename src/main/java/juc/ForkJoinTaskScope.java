@@ -0,0 +1,423 @@
+package juc;
+
+import sun.misc2.Unsafe;
+import unsafeTest.GetUnsafeFromReflect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scope for a fan-out of subtasks in a {@link ForkJoinPool} that
+ * are forked by one owner thread, joined together, and cancelled
+ * together as soon as the outcome of the whole group is known.
+ * 一个{@link ForkJoinPool}中子任务扇出的作用域：子任务由一个所有者线程fork，一起合并，
+ * 并在整组任务的结果确定后立即一起被取消。
+ *
+ * <p>With {@link ForkJoinTask#invokeAll} a failed subtask does not
+ * stop its siblings, which keep running until they are joined. A
+ * scope instead applies a {@link Policy}: with {@link Policy#FAIL_FAST
+ * FAIL_FAST} the first failure, and with {@link Policy#FIRST_SUCCESS
+ * FIRST_SUCCESS} the first success, <em>shuts down</em> the scope.
+ * Shutting down cancels every subtask that has not completed:
+ * subtasks still in the owner's queue are removed with {@link
+ * ForkJoinTask#tryUnfork}, and the others are cancelled so that
+ * workers skip them when they are popped or stolen. Subtasks that are
+ * already running are not interrupted, but may poll {@link
+ * #isShutdown} to stop early; their results are discarded.
+ * 使用{@link ForkJoinTask#invokeAll}时，失败的子任务不会停止其兄弟任务，它们会一直运行直到被合并。
+ * 作用域则应用一个{@link Policy}：在{@link Policy#FAIL_FAST FAIL_FAST}下第一次失败，
+ * 在{@link Policy#FIRST_SUCCESS FIRST_SUCCESS}下第一次成功，会<em>关闭</em>作用域。
+ * 关闭会取消每一个尚未完成的子任务：仍在所有者队列中的子任务通过{@link ForkJoinTask#tryUnfork}移除，
+ * 其他的则被取消，这样工作线程在pop或窃取它们时会跳过它们。
+ * 已经在运行的子任务不会被中断，但可以轮询{@link #isShutdown}以提前停止；它们的结果会被丢弃。
+ *
+ * <p>Sample usage, a speculative search that takes whichever
+ * strategy finds an answer first:
+ * 示例用法，一个推测性搜索，采用最先找到答案的策略：
+ *
+ * <pre> {@code
+ * ForkJoinTaskScope<Plan> scope =
+ *     new ForkJoinTaskScope<>(ForkJoinTaskScope.Policy.FIRST_SUCCESS);
+ * for (Strategy s : strategies)
+ *   scope.fork(() -> s.search(problem, scope));  // s polls scope.isShutdown()
+ * Plan plan = scope.join().result();}</pre>
+ *
+ * <p>{@link #fork} and {@link #join} may only be called by the thread
+ * that created the scope. Subtasks are forked into the current
+ * worker's queue when the owner runs in the scope's pool, and
+ * submitted to the pool otherwise.
+ * {@link #fork}和{@link #join}只能由创建该作用域的线程调用。
+ * 当所有者在作用域的池中运行时，子任务被fork到当前工作线程的队列中，否则被提交到池中。
+ *
+ * @param <T> the result type of the subtasks
+ */
+public class ForkJoinTaskScope<T> implements AutoCloseable {
+
+    /**
+     * When a scope shuts down, and what its result is.
+     * 作用域何时关闭以及其结果是什么。
+     */
+    public enum Policy {
+        /**
+         * Waits for all subtasks; {@link #results} reports the first
+         * failure, if any, once all have completed.
+         * 等待所有子任务；所有子任务完成后，{@link #results}报告第一次失败（如果有）。
+         */
+        JOIN_ALL,
+        /**
+         * Shuts down on the first failure, which {@link #results}
+         * then reports.
+         * 在第一次失败时关闭，然后由{@link #results}报告该失败。
+         */
+        FAIL_FAST,
+        /**
+         * Shuts down on the first success, whose value {@link #result}
+         * returns; reports the first failure if all subtasks fail.
+         * 在第一次成功时关闭，{@link #result}返回其值；如果所有子任务都失败，则报告第一次失败。
+         */
+        FIRST_SUCCESS
+    }
+
+    /*
+     * Completion is tracked by a root CountedCompleter whose pending
+     * count holds one unit per unsettled subtask; as usual for
+     * completers, one more tryComplete than the pending count is
+     * needed, and that one is the owner's, issued by join.
+     *
+     * Each subtask is settled exactly once, either by itself when its
+     * body returns or by shutdown when it is cancelled, using its
+     * ForkJoinTask tag as the settled flag, so a subtask cancelled
+     * while running does not count down twice. Subtasks are linked
+     * newest first through a single-writer list, which is also the
+     * order in which tryUnfork can succeed.
+     *
+     * 完成状态由一个根CountedCompleter跟踪，其挂起计数为每个未结算的子任务计一个单位；
+     * 与completer的通常用法一样，需要比挂起计数多一次tryComplete，多出的这一次属于所有者，由join发出。
+     *
+     * 每个子任务恰好结算一次：要么在其主体返回时由自己结算，要么在被取消时由shutdown结算，
+     * 使用其ForkJoinTask标签作为已结算标志，因此运行中被取消的子任务不会被重复计数。
+     * 子任务通过一个单写者链表以最新优先的顺序链接，这也是tryUnfork可能成功的顺序。
+     */
+
+    /** Tag value marking a subtask as settled */
+    private static final short SETTLED = 1;
+
+    private final Policy policy;
+    private final ForkJoinPool pool;
+    private final Thread owner;
+    private final Root root;
+    private volatile Subtask<T> subtasks;    // newest first
+    private volatile boolean shutdown;
+    private volatile Subtask<T> firstFailed;
+    private volatile Subtask<T> firstSucceeded;
+    private boolean joined;                  // accessed only by owner
+
+    /**
+     * Creates a scope with the given policy, whose subtasks run in the
+     * pool of the current worker thread, or in the common pool if the
+     * current thread is not a worker.
+     * 使用给定策略创建一个作用域，其子任务在当前工作线程的池中运行，
+     * 如果当前线程不是工作线程，则在公共池中运行。
+     *
+     * @param policy the policy
+     * @throws NullPointerException if policy is null
+     */
+    public ForkJoinTaskScope(Policy policy) {
+        this(policy, currentPool());
+    }
+
+    /**
+     * Creates a scope with the given policy whose subtasks run in the
+     * given pool.
+     * 使用给定策略创建一个作用域，其子任务在给定的池中运行。
+     *
+     * @param policy the policy
+     * @param pool the pool to run subtasks in
+     * @throws NullPointerException if policy or pool is null
+     */
+    public ForkJoinTaskScope(Policy policy, ForkJoinPool pool) {
+        if (policy == null || pool == null)
+            throw new NullPointerException();
+        this.policy = policy;
+        this.pool = pool;
+        this.owner = Thread.currentThread();
+        this.root = new Root();
+    }
+
+    private static ForkJoinPool currentPool() {
+        ForkJoinPool p = ForkJoinTask.getPool();
+        return (p != null) ? p : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Starts a subtask running the given callable. If the scope is
+     * already shut down, the returned task is cancelled and never
+     * runs.
+     * 启动一个运行给定callable的子任务。如果作用域已经关闭，返回的任务被取消并且永远不会运行。
+     *
+     * @param callable the subtask body
+     * @return the subtask, which may be used to query its own outcome
+     * @throws NullPointerException if callable is null
+     * @throws IllegalStateException if the caller is not the owner, or
+     *         the scope was already joined
+     */
+    public ForkJoinTask<T> fork(Callable<? extends T> callable) {
+        if (callable == null)
+            throw new NullPointerException();
+        checkOwner();
+        if (joined)
+            throw new IllegalStateException("Scope already joined");
+        Subtask<T> t = new Subtask<T>(this, callable);
+        if (shutdown) {
+            t.cancel(false);
+            return t;
+        }
+        root.addToPendingCount(1);
+        t.next = subtasks;
+        subtasks = t;                // publish before re-checking shutdown
+        if (shutdown)
+            cancel(t);
+        else if (ForkJoinTask.getPool() == pool)
+            t.fork();
+        else
+            pool.execute(t);
+        return t;
+    }
+
+    /**
+     * Waits until all subtasks have completed or the scope has shut
+     * down, helping to run subtasks if called from a worker thread.
+     * Returns immediately if already joined.
+     * 等待直到所有子任务完成或作用域关闭，如果从工作线程调用，则帮助运行子任务。
+     * 如果已经合并过则立即返回。
+     *
+     * @return this scope
+     * @throws IllegalStateException if the caller is not the owner
+     */
+    public ForkJoinTaskScope<T> join() {
+        checkOwner();
+        if (!joined) {
+            joined = true;
+            root.tryComplete();      // release owner's count
+        }
+        root.quietlyJoin();
+        return this;
+    }
+
+    /**
+     * Returns the results of all subtasks in the order they were
+     * forked, for a scope with policy {@link Policy#JOIN_ALL JOIN_ALL}
+     * or {@link Policy#FAIL_FAST FAIL_FAST}. If a subtask failed, its
+     * exception is rethrown instead, in the same manner as {@link
+     * ForkJoinTask#join}. Subtasks cancelled by an explicit {@link
+     * #shutdown} contribute {@code null}.
+     * 对于策略为{@link Policy#JOIN_ALL JOIN_ALL}或{@link Policy#FAIL_FAST FAIL_FAST}的作用域，
+     * 按fork的顺序返回所有子任务的结果。如果有子任务失败，则以与{@link ForkJoinTask#join}相同的方式重新抛出其异常。
+     * 被显式{@link #shutdown}取消的子任务对应{@code null}。
+     *
+     * @return the results
+     * @throws IllegalStateException if the scope has not been joined,
+     *         or has policy {@code FIRST_SUCCESS}
+     */
+    public List<T> results() {
+        checkJoined();
+        if (policy == Policy.FIRST_SUCCESS)
+            throw new IllegalStateException("Use result() with FIRST_SUCCESS");
+        Subtask<T> f = firstFailed;
+        if (f != null)
+            f.join();                // rethrows
+        ArrayList<T> list = new ArrayList<T>();
+        for (Subtask<T> t = subtasks; t != null; t = t.next)
+            list.add(t.getRawResult());
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * Returns the result of the first successful subtask, for a scope
+     * with policy {@link Policy#FIRST_SUCCESS FIRST_SUCCESS}. If all
+     * subtasks failed, the first failure is rethrown instead, in the
+     * same manner as {@link ForkJoinTask#join}.
+     * 对于策略为{@link Policy#FIRST_SUCCESS FIRST_SUCCESS}的作用域，返回第一个成功子任务的结果。
+     * 如果所有子任务都失败，则以与{@link ForkJoinTask#join}相同的方式重新抛出第一次失败。
+     *
+     * @return the first successful result
+     * @throws IllegalStateException if the scope has not been joined,
+     *         has another policy, or had no subtasks
+     */
+    public T result() {
+        checkJoined();
+        if (policy != Policy.FIRST_SUCCESS)
+            throw new IllegalStateException("Use results() with " + policy);
+        Subtask<T> t;
+        if ((t = firstSucceeded) != null || (t = firstFailed) != null)
+            return t.join();         // rethrows if failed
+        throw new IllegalStateException("No subtask completed");
+    }
+
+    /**
+     * Shuts down this scope, cancelling all subtasks that have not
+     * completed and preventing new ones from starting. This method
+     * may be invoked by any thread, including subtasks.
+     * 关闭此作用域，取消所有尚未完成的子任务，并阻止新的子任务启动。
+     * 任何线程（包括子任务）都可以调用此方法。
+     */
+    public void shutdown() {
+        if (!shutdown) {
+            shutdown = true;
+            for (Subtask<T> t = subtasks; t != null; t = t.next)
+                cancel(t);
+        }
+    }
+
+    /**
+     * Returns {@code true} if this scope has shut down. Long-running
+     * subtasks may poll this method to stop early.
+     * 如果此作用域已关闭，则返回{@code true}。长时间运行的子任务可以轮询此方法以提前停止。
+     *
+     * @return {@code true} if this scope has shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Shuts down this scope and, if not yet joined, waits for it.
+     * 关闭此作用域，如果尚未合并则等待它。
+     *
+     * @throws IllegalStateException if the caller is not the owner
+     */
+    public void close() {
+        checkOwner();
+        shutdown();
+        join();
+    }
+
+    /**
+     * Settles and cancels a subtask, if not already settled.
+     */
+    private void cancel(Subtask<T> t) {
+        if (t.compareAndSetForkJoinTaskTag((short) 0, SETTLED)) {
+            if (Thread.currentThread() == owner)
+                t.tryUnfork();       // succeeds only if at top of our queue
+            t.cancel(false);
+            root.tryComplete();
+        }
+    }
+
+    private void onSuccess(Subtask<T> t) {
+        if (policy == Policy.FIRST_SUCCESS && firstSucceeded == null &&
+                U.compareAndSwapObject(this, FIRSTSUCCEEDED, null, t))
+            shutdown();
+    }
+
+    private void onFailure(Subtask<T> t) {
+        if (firstFailed == null)
+            U.compareAndSwapObject(this, FIRSTFAILED, null, t);
+        if (policy == Policy.FAIL_FAST)
+            shutdown();
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner)
+            throw new IllegalStateException("Not the owner of this scope");
+    }
+
+    private void checkJoined() {
+        checkOwner();
+        if (!joined || !root.isDone())
+            throw new IllegalStateException("Scope not joined");
+    }
+
+    /**
+     * Completer tracking unsettled subtasks; never executed itself.
+     */
+    static final class Root extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 5232453952276485070L;
+
+        Root() {
+            super(null, 0);
+        }
+
+        public final void compute() {
+        }
+    }
+
+    /**
+     * A subtask running a callable and reporting its outcome to the
+     * scope.
+     */
+    static final class Subtask<T> extends CountedCompleter<T> {
+        private static final long serialVersionUID = 5232453952276485071L;
+        final ForkJoinTaskScope<T> scope;
+        final Callable<? extends T> callable;
+        Subtask<T> next;             // older sibling
+        T result;
+
+        Subtask(ForkJoinTaskScope<T> scope, Callable<? extends T> callable) {
+            super(scope.root);
+            this.scope = scope;
+            this.callable = callable;
+        }
+
+        public final void compute() {
+            ForkJoinTaskScope<T> s = scope;
+            T v = null;
+            Throwable ex = null;
+            if (s.shutdown)
+                return;              // settled by shutdown
+            try {
+                v = callable.call();
+            } catch (Throwable e) {
+                ex = e;
+            }
+            if (compareAndSetForkJoinTaskTag((short) 0, SETTLED)) {
+                if (ex == null) {
+                    result = v;
+                    quietlyComplete(); // only roots are completed by tryComplete
+                    s.onSuccess(this);
+                } else {
+                    completeExceptionally(ex);
+                    s.onFailure(this);
+                }
+                tryComplete();
+            }
+        }
+
+        /**
+         * Failures are reported through the scope's policy rather
+         * than by completing the root exceptionally.
+         */
+        public final boolean onExceptionalCompletion(Throwable ex,
+                                                     CountedCompleter<?> caller) {
+            return false;
+        }
+
+        public final T getRawResult() {
+            return result;
+        }
+
+        protected final void setRawResult(T t) {
+            result = t;
+        }
+    }
+
+    // Unsafe mechanics
+    private static final Unsafe U;
+    private static final long FIRSTFAILED;
+    private static final long FIRSTSUCCEEDED;
+
+    static {
+        try {
+            U = GetUnsafeFromReflect.getUnsafe();
+            Class<?> k = ForkJoinTaskScope.class;
+            FIRSTFAILED = U.objectFieldOffset
+                    (k.getDeclaredField("firstFailed"));
+            FIRSTSUCCEEDED = U.objectFieldOffset
+                    (k.getDeclaredField("firstSucceeded"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
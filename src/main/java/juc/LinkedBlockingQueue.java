@@ -718,6 +718,73 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * Inserts as many of the elements of the given collection as
+     * there is room for, in the order of its iterator, without
+     * waiting. This is the converse of {@link #drainTo}: the elements
+     * are linked in one acquisition of the put lock, and waiting
+     * takers are signalled once, so inserting a batch costs much less
+     * than offering its elements one by one.
+     * 按照给定集合迭代器的顺序，在不等待的情况下插入该集合中尽可能多的元素（在容量允许的范围内）。
+     * 这是{@link #drainTo}的逆操作：元素在一次获取put锁的过程中被链接，并且等待的获取者只被通知一次，
+     * 因此插入一批元素的开销比逐个offer其元素要小得多。
+     *
+     * @param c the collection of elements to insert
+     * @return the number of elements inserted, which are the first
+     *         that many elements of the collection
+     * @throws NullPointerException     if the collection or any of its
+     *                                  elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this queue
+     */
+    public int offerAll(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        Object[] a = c.toArray();
+        int n = a.length;
+        if (n == 0)
+            return 0;
+        // Link the nodes before locking, as offer allocates its node
+        Node<E> first = null, p = null;
+        for (Object x : a) {
+            if (x == null)
+                throw new NullPointerException();
+            @SuppressWarnings("unchecked")
+            Node<E> q = new Node<E>((E) x);
+            if (p == null)
+                first = q;
+            else
+                p.next = q;
+            p = q;
+        }
+        final AtomicInteger count = this.count;
+        if (count.get() == capacity)
+            return 0;
+        int k = 0, cnt = -1;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            k = Math.min(n, capacity - count.get());
+            if (k > 0) {
+                Node<E> t = first;
+                for (int i = 1; i < k; ++i)
+                    t = t.next;
+                t.next = null;
+                last.next = first;
+                last = t;
+                cnt = count.getAndAdd(k);
+                if (cnt + k < capacity)
+                    notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (cnt == 0)
+            signalNotEmpty();
+        return k;
+    }
+
     /**
      * @throws UnsupportedOperationException {@inheritDoc}
      * @throws ClassCastException            {@inheritDoc}
@@ -0,0 +1,1233 @@
+package juc;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Parallel bulk operations over {@code long[]}, {@code double[]} and
+ * object arrays, built on {@link CountedCompleter} tasks run in the
+ * {@link ForkJoinPool#commonPool() common pool}: merge sort, inclusive
+ * prefix scan, map, reduce, filter, stable partition and histogram.
+ * 基于在公共池中运行的{@link CountedCompleter}任务，对{@code long[]}、{@code double[]}和对象数组
+ * 进行的并行批量操作：归并排序、包含式前缀扫描、映射、归约、过滤、稳定划分和直方图。
+ *
+ * <p>Except for sorting, all operations use the same decomposition:
+ * the array is cut into a small number of contiguous blocks (a few
+ * per worker, and none smaller than {@link #MIN_BLOCK} elements), a
+ * tree of completers visits every block, and anything that depends on
+ * the order of blocks (carry values of a scan, output offsets of a
+ * filter or partition) is resolved by a short sequential pass over
+ * the per-block summaries between two parallel passes. This keeps
+ * allocation per call to one small summary array (plus the output or
+ * workspace array the operation inherently needs) and one task per
+ * block, instead of a task and intermediate result per tree node.
+ * 除排序外，所有操作都使用相同的分解方式：将数组切分为少量连续的块（每个工作线程几个，
+ * 并且每块不少于{@link #MIN_BLOCK}个元素），由一棵completer树访问每个块，
+ * 任何依赖于块顺序的内容（扫描的进位值、过滤或划分的输出偏移）都在两次并行遍历之间，
+ * 通过对每块摘要的一次短的顺序遍历来解决。
+ * 这使得每次调用只分配一个小的摘要数组（外加操作本身所需的输出或工作空间数组）以及每块一个任务，
+ * 而不是每个树节点一个任务和一个中间结果。
+ *
+ * <p>Arrays too small to benefit, or a common pool with parallelism
+ * one, are processed sequentially in the calling thread. Functions
+ * passed to these methods may be invoked concurrently from several
+ * threads and should be free of side effects; the predicates of
+ * {@code filter} and {@code partition} are evaluated twice per
+ * element. Exceptions thrown by them are relayed to the caller.
+ * 太小而无法受益的数组，或者并行度为1的公共池，会在调用线程中顺序处理。
+ * 传递给这些方法的函数可能会被多个线程并发调用，并且应该没有副作用；
+ * {@code filter}和{@code partition}的谓词对每个元素会被求值两次。它们抛出的异常会被传递给调用者。
+ */
+public final class ParallelArrayOps {
+    private ParallelArrayOps() {} // non-instantiable
+
+    /**
+     * The minimum number of elements in a block. Below this the
+     * per-task overhead outweighs the gain from parallelism.
+     * 一个块中的最小元素数。低于此值时，每个任务的开销超过并行带来的收益。
+     */
+    public static final int MIN_BLOCK = 1 << 13;
+
+    /**
+     * The minimum sub-array length handled sequentially by the sort
+     * and its merges; same as {@code Arrays.parallelSort}.
+     * 排序及其归并中顺序处理的最小子数组长度；与{@code Arrays.parallelSort}相同。
+     */
+    private static final int MIN_SORT_GRAN = 1 << 13;
+
+    // Block decomposition
+
+    /**
+     * Returns the number of blocks to cut an array of length n into.
+     */
+    private static int blockCount(int n) {
+        int p = ForkJoinPool.getCommonPoolParallelism();
+        if (n <= MIN_BLOCK || p <= 1)
+            return 1;
+        return Math.min(n / MIN_BLOCK, p << 2);
+    }
+
+    /**
+     * Returns the start index of block b out of nb for length n;
+     * block b covers {@code [blockStart(n, nb, b), blockStart(n, nb, b + 1))}.
+     */
+    private static int blockStart(int n, int nb, int b) {
+        return (int) ((long) n * b / nb);
+    }
+
+    /**
+     * Applies action to every block index in [lo, hi), in parallel
+     * unless there is only one block.
+     */
+    private static void forEachBlock(int lo, int hi, IntConsumer action) {
+        if (hi - lo == 1)
+            action.accept(lo);
+        else if (hi > lo)
+            new BlockTask(null, action, lo, hi).invoke();
+    }
+
+    /**
+     * Visits a range of block indices, forking the upper half of the
+     * range until a single block is left.
+     * 访问一个块索引范围，fork范围的上半部分，直到只剩一个块。
+     */
+    static final class BlockTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = -1643969037151034450L;
+        final IntConsumer action;
+        final int lo, hi;
+
+        BlockTask(CountedCompleter<?> parent, IntConsumer action,
+                  int lo, int hi) {
+            super(parent);
+            this.action = action;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public final void compute() {
+            int l = lo, h = hi;
+            while (h - l >= 2) {
+                int mid = (l + h) >>> 1;
+                addToPendingCount(1);
+                new BlockTask(this, action, mid, h).fork();
+                h = mid;
+            }
+            if (h > l)
+                action.accept(l);
+            propagateCompletion();
+        }
+    }
+
+    // long[] operations
+
+    /**
+     * Sorts the array into ascending numerical order.
+     * 将数组按数值升序排序。
+     *
+     * @param a the array to be sorted
+     */
+    public static void sort(long[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_SORT_GRAN ||
+                (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            Arrays.sort(a);
+        else
+            new LongSorter(null, a, new long[n], 0, n, 0,
+                    ((g = n / (p << 2)) <= MIN_SORT_GRAN) ?
+                            MIN_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Replaces each element with the cumulation of it and all
+     * preceding elements under the given associative function, in
+     * place. For example {@code prefix(a, Long::sum)} turns
+     * {@code [2, 1, 0, 3]} into {@code [2, 3, 3, 6]}.
+     * 使用给定的结合函数，就地将每个元素替换为其与之前所有元素的累积值。
+     * 例如{@code prefix(a, Long::sum)}将{@code [2, 1, 0, 3]}变为{@code [2, 3, 3, 6]}。
+     *
+     * @param a the array
+     * @param op a side-effect-free, associative function
+     */
+    public static void prefix(long[] a, LongBinaryOperator op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        if (n == 0)
+            return;
+        long[] sums = new long[nb];
+        forEachBlock(0, nb, b -> {      // block 0 scans, others fold
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            long acc = a[i];
+            if (b == 0) {
+                while (++i < end)
+                    a[i] = acc = op.applyAsLong(acc, a[i]);
+            } else {
+                while (++i < end)
+                    acc = op.applyAsLong(acc, a[i]);
+            }
+            sums[b] = acc;
+        });
+        for (int b = 1; b < nb; ++b)
+            sums[b] = op.applyAsLong(sums[b - 1], sums[b]);
+        forEachBlock(1, nb, b -> {
+            long acc = sums[b - 1];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = acc = op.applyAsLong(acc, a[i]);
+        });
+    }
+
+    /**
+     * Replaces each element with the result of applying the given
+     * function to it, in place.
+     * 就地将每个元素替换为对其应用给定函数的结果。
+     *
+     * @param a the array
+     * @param f a side-effect-free function
+     */
+    public static void map(long[] a, LongUnaryOperator f) {
+        if (f == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        forEachBlock(0, nb, b -> {
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = f.applyAsLong(a[i]);
+        });
+    }
+
+    /**
+     * Reduces the elements using the given identity and associative
+     * function.
+     * 使用给定的单位元和结合函数归约元素。
+     *
+     * @param a the array
+     * @param identity the identity value for op
+     * @param op a side-effect-free, associative function
+     * @return the result of the reduction, or identity if the array is empty
+     */
+    public static long reduce(long[] a, long identity, LongBinaryOperator op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        long[] partial = new long[nb];
+        forEachBlock(0, nb, b -> {
+            long acc = identity;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                acc = op.applyAsLong(acc, a[i]);
+            partial[b] = acc;
+        });
+        long result = identity;
+        for (long x : partial)
+            result = op.applyAsLong(result, x);
+        return result;
+    }
+
+    /**
+     * Returns a new array holding, in order, the elements that match
+     * the given predicate.
+     * 返回一个新数组，按顺序保存与给定谓词匹配的元素。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @return the matching elements
+     */
+    public static long[] filter(long[] a, LongPredicate p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        long[] r = new long[offsets[nb]];
+        forEachBlock(0, nb, b -> {
+            int k = offsets[b];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    r[k++] = a[i];
+        });
+        return r;
+    }
+
+    /**
+     * Stably rearranges the array so that the elements matching the
+     * given predicate precede those that do not.
+     * 稳定地重新排列数组，使与给定谓词匹配的元素位于不匹配的元素之前。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @return the number of matching elements, which is also the index
+     * of the first non-matching element after partitioning
+     */
+    public static int partition(long[] a, LongPredicate p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        int matched = offsets[nb];
+        long[] w = new long[n];
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            int t = offsets[b], f = matched + i - offsets[b];
+            for (; i < end; ++i) {
+                long x = a[i];
+                if (p.test(x))
+                    w[t++] = x;
+                else
+                    w[f++] = x;
+            }
+        });
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b);
+            System.arraycopy(w, i, a, i, blockStart(n, nb, b + 1) - i);
+        });
+        return matched;
+    }
+
+    /**
+     * Counts the elements falling into each of the given number of
+     * buckets, as determined by the classifier.
+     * 统计落入给定数量的每个桶中的元素数，桶由分类函数确定。
+     *
+     * @param a the array
+     * @param buckets the number of buckets
+     * @param classifier a side-effect-free function returning a bucket
+     *        index in {@code [0, buckets)} for each element
+     * @return the count of elements in each bucket
+     * @throws ArrayIndexOutOfBoundsException if the classifier returns
+     *         an index out of range
+     */
+    public static long[] histogram(long[] a, int buckets,
+                                   LongToIntFunction classifier) {
+        if (classifier == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        long[][] counts = new long[nb][];
+        forEachBlock(0, nb, b -> {
+            long[] c = new long[buckets];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                ++c[classifier.applyAsInt(a[i])];
+            counts[b] = c;
+        });
+        return mergeCounts(counts, buckets);
+    }
+
+    // double[] operations
+
+    /**
+     * Sorts the array into ascending numerical order, using the total
+     * order of {@link Double#compare}, as {@link Arrays#sort(double[])}
+     * does.
+     * 使用{@link Double#compare}的全序将数组按数值升序排序，与{@link Arrays#sort(double[])}相同。
+     *
+     * @param a the array to be sorted
+     */
+    public static void sort(double[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_SORT_GRAN ||
+                (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            Arrays.sort(a);
+        else
+            new DoubleSorter(null, a, new double[n], 0, n, 0,
+                    ((g = n / (p << 2)) <= MIN_SORT_GRAN) ?
+                            MIN_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Replaces each element with the cumulation of it and all
+     * preceding elements under the given associative function, in
+     * place. Because floating-point addition is not exactly
+     * associative, sums may differ slightly from a sequential scan.
+     * 使用给定的结合函数，就地将每个元素替换为其与之前所有元素的累积值。
+     * 由于浮点加法不是严格满足结合律的，求和结果可能与顺序扫描略有不同。
+     *
+     * @param a the array
+     * @param op a side-effect-free, associative function
+     */
+    public static void prefix(double[] a, DoubleBinaryOperator op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        if (n == 0)
+            return;
+        double[] sums = new double[nb];
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            double acc = a[i];
+            if (b == 0) {
+                while (++i < end)
+                    a[i] = acc = op.applyAsDouble(acc, a[i]);
+            } else {
+                while (++i < end)
+                    acc = op.applyAsDouble(acc, a[i]);
+            }
+            sums[b] = acc;
+        });
+        for (int b = 1; b < nb; ++b)
+            sums[b] = op.applyAsDouble(sums[b - 1], sums[b]);
+        forEachBlock(1, nb, b -> {
+            double acc = sums[b - 1];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = acc = op.applyAsDouble(acc, a[i]);
+        });
+    }
+
+    /**
+     * Replaces each element with the result of applying the given
+     * function to it, in place.
+     * 就地将每个元素替换为对其应用给定函数的结果。
+     *
+     * @param a the array
+     * @param f a side-effect-free function
+     */
+    public static void map(double[] a, DoubleUnaryOperator f) {
+        if (f == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        forEachBlock(0, nb, b -> {
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = f.applyAsDouble(a[i]);
+        });
+    }
+
+    /**
+     * Reduces the elements using the given identity and associative
+     * function.
+     * 使用给定的单位元和结合函数归约元素。
+     *
+     * @param a the array
+     * @param identity the identity value for op
+     * @param op a side-effect-free, associative function
+     * @return the result of the reduction, or identity if the array is empty
+     */
+    public static double reduce(double[] a, double identity,
+                                DoubleBinaryOperator op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        double[] partial = new double[nb];
+        forEachBlock(0, nb, b -> {
+            double acc = identity;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                acc = op.applyAsDouble(acc, a[i]);
+            partial[b] = acc;
+        });
+        double result = identity;
+        for (double x : partial)
+            result = op.applyAsDouble(result, x);
+        return result;
+    }
+
+    /**
+     * Returns a new array holding, in order, the elements that match
+     * the given predicate.
+     * 返回一个新数组，按顺序保存与给定谓词匹配的元素。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @return the matching elements
+     */
+    public static double[] filter(double[] a, DoublePredicate p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        double[] r = new double[offsets[nb]];
+        forEachBlock(0, nb, b -> {
+            int k = offsets[b];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    r[k++] = a[i];
+        });
+        return r;
+    }
+
+    /**
+     * Stably rearranges the array so that the elements matching the
+     * given predicate precede those that do not.
+     * 稳定地重新排列数组，使与给定谓词匹配的元素位于不匹配的元素之前。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @return the number of matching elements, which is also the index
+     * of the first non-matching element after partitioning
+     */
+    public static int partition(double[] a, DoublePredicate p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        int matched = offsets[nb];
+        double[] w = new double[n];
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            int t = offsets[b], f = matched + i - offsets[b];
+            for (; i < end; ++i) {
+                double x = a[i];
+                if (p.test(x))
+                    w[t++] = x;
+                else
+                    w[f++] = x;
+            }
+        });
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b);
+            System.arraycopy(w, i, a, i, blockStart(n, nb, b + 1) - i);
+        });
+        return matched;
+    }
+
+    /**
+     * Counts the elements falling into each of the given number of
+     * buckets, as determined by the classifier.
+     * 统计落入给定数量的每个桶中的元素数，桶由分类函数确定。
+     *
+     * @param a the array
+     * @param buckets the number of buckets
+     * @param classifier a side-effect-free function returning a bucket
+     *        index in {@code [0, buckets)} for each element
+     * @return the count of elements in each bucket
+     * @throws ArrayIndexOutOfBoundsException if the classifier returns
+     *         an index out of range
+     */
+    public static long[] histogram(double[] a, int buckets,
+                                   DoubleToIntFunction classifier) {
+        if (classifier == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        long[][] counts = new long[nb][];
+        forEachBlock(0, nb, b -> {
+            long[] c = new long[buckets];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                ++c[classifier.applyAsInt(a[i])];
+            counts[b] = c;
+        });
+        return mergeCounts(counts, buckets);
+    }
+
+    // Object[] operations
+
+    /**
+     * Sorts the array according to the order induced by the given
+     * comparator. The sort is stable.
+     * 根据给定比较器所引入的顺序对数组进行排序。该排序是稳定的。
+     *
+     * @param a the array to be sorted
+     * @param cmp the comparator
+     * @param <T> the class of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void sort(T[] a, Comparator<? super T> cmp) {
+        if (cmp == null)
+            throw new NullPointerException();
+        int n = a.length, p, g;
+        if (n <= MIN_SORT_GRAN ||
+                (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            Arrays.sort(a, cmp);
+        else
+            new ObjectSorter(null, a, new Object[n], 0, n, 0,
+                    ((g = n / (p << 2)) <= MIN_SORT_GRAN) ?
+                            MIN_SORT_GRAN : g,
+                    (Comparator<Object>) cmp).invoke();
+    }
+
+    /**
+     * Replaces each element with the cumulation of it and all
+     * preceding elements under the given associative function, in
+     * place.
+     * 使用给定的结合函数，就地将每个元素替换为其与之前所有元素的累积值。
+     *
+     * @param a the array
+     * @param op a side-effect-free, associative function
+     * @param <T> the class of the elements
+     */
+    public static <T> void prefix(T[] a, BinaryOperator<T> op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        if (n == 0)
+            return;
+        Object[] sums = new Object[nb];
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            T acc = a[i];
+            if (b == 0) {
+                while (++i < end)
+                    a[i] = acc = op.apply(acc, a[i]);
+            } else {
+                while (++i < end)
+                    acc = op.apply(acc, a[i]);
+            }
+            sums[b] = acc;
+        });
+        for (int b = 1; b < nb; ++b)
+            sums[b] = op.apply(ParallelArrayOps.<T>elementAt(sums, b - 1),
+                    ParallelArrayOps.<T>elementAt(sums, b));
+        forEachBlock(1, nb, b -> {
+            T acc = elementAt(sums, b - 1);
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = acc = op.apply(acc, a[i]);
+        });
+    }
+
+    /**
+     * Replaces each element with the result of applying the given
+     * function to it, in place.
+     * 就地将每个元素替换为对其应用给定函数的结果。
+     *
+     * @param a the array
+     * @param f a side-effect-free function
+     * @param <T> the class of the elements
+     */
+    public static <T> void map(T[] a, UnaryOperator<T> f) {
+        if (f == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        forEachBlock(0, nb, b -> {
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                a[i] = f.apply(a[i]);
+        });
+    }
+
+    /**
+     * Reduces the elements using the given identity and associative
+     * function.
+     * 使用给定的单位元和结合函数归约元素。
+     *
+     * @param a the array
+     * @param identity the identity value for op
+     * @param op a side-effect-free, associative function
+     * @param <T> the class of the elements
+     * @return the result of the reduction, or identity if the array is empty
+     */
+    public static <T> T reduce(T[] a, T identity, BinaryOperator<T> op) {
+        if (op == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        Object[] partial = new Object[nb];
+        forEachBlock(0, nb, b -> {
+            T acc = identity;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                acc = op.apply(acc, a[i]);
+            partial[b] = acc;
+        });
+        T result = identity;
+        for (int b = 0; b < nb; ++b)
+            result = op.apply(result, ParallelArrayOps.<T>elementAt(partial, b));
+        return result;
+    }
+
+    /**
+     * Returns a new array of the same runtime type holding, in order,
+     * the elements that match the given predicate.
+     * 返回一个相同运行时类型的新数组，按顺序保存与给定谓词匹配的元素。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @param <T> the class of the elements
+     * @return the matching elements
+     */
+    public static <T> T[] filter(T[] a, Predicate<? super T> p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        T[] r = Arrays.copyOf(a, offsets[nb]);
+        forEachBlock(0, nb, b -> {
+            int k = offsets[b];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    r[k++] = a[i];
+        });
+        return r;
+    }
+
+    /**
+     * Stably rearranges the array so that the elements matching the
+     * given predicate precede those that do not.
+     * 稳定地重新排列数组，使与给定谓词匹配的元素位于不匹配的元素之前。
+     *
+     * @param a the array
+     * @param p a side-effect-free predicate
+     * @param <T> the class of the elements
+     * @return the number of matching elements, which is also the index
+     * of the first non-matching element after partitioning
+     */
+    public static <T> int partition(T[] a, Predicate<? super T> p) {
+        if (p == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        int[] offsets = countMatches(nb, b -> {
+            int c = 0;
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                if (p.test(a[i]))
+                    ++c;
+            return c;
+        });
+        int matched = offsets[nb];
+        Object[] w = new Object[n];
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+            int t = offsets[b], f = matched + i - offsets[b];
+            for (; i < end; ++i) {
+                T x = a[i];
+                if (p.test(x))
+                    w[t++] = x;
+                else
+                    w[f++] = x;
+            }
+        });
+        forEachBlock(0, nb, b -> {
+            int i = blockStart(n, nb, b);
+            System.arraycopy(w, i, a, i, blockStart(n, nb, b + 1) - i);
+        });
+        return matched;
+    }
+
+    /**
+     * Counts the elements falling into each of the given number of
+     * buckets, as determined by the classifier.
+     * 统计落入给定数量的每个桶中的元素数，桶由分类函数确定。
+     *
+     * @param a the array
+     * @param buckets the number of buckets
+     * @param classifier a side-effect-free function returning a bucket
+     *        index in {@code [0, buckets)} for each element
+     * @param <T> the class of the elements
+     * @return the count of elements in each bucket
+     * @throws ArrayIndexOutOfBoundsException if the classifier returns
+     *         an index out of range
+     */
+    public static <T> long[] histogram(T[] a, int buckets,
+                                       ToIntFunction<? super T> classifier) {
+        if (classifier == null)
+            throw new NullPointerException();
+        int n = a.length, nb = blockCount(n);
+        long[][] counts = new long[nb][];
+        forEachBlock(0, nb, b -> {
+            long[] c = new long[buckets];
+            for (int i = blockStart(n, nb, b), end = blockStart(n, nb, b + 1);
+                 i < end; ++i)
+                ++c[classifier.applyAsInt(a[i])];
+            counts[b] = c;
+        });
+        return mergeCounts(counts, buckets);
+    }
+
+    // Shared helpers
+
+    /**
+     * Counts matches per block in parallel, then converts the counts
+     * into an exclusive prefix: element b is the output offset of
+     * block b, element nb the total number of matches.
+     */
+    private static int[] countMatches(int nb, IntUnaryOperator counter) {
+        int[] offsets = new int[nb + 1];
+        forEachBlock(0, nb, b -> offsets[b + 1] = counter.applyAsInt(b));
+        for (int b = 1; b <= nb; ++b)
+            offsets[b] += offsets[b - 1];
+        return offsets;
+    }
+
+    private static long[] mergeCounts(long[][] counts, int buckets) {
+        long[] total = counts[0];
+        for (int b = 1; b < counts.length; ++b) {
+            long[] c = counts[b];
+            for (int k = 0; k < buckets; ++k)
+                total[k] += c[k];
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T elementAt(Object[] a, int i) {
+        return (T) a[i];
+    }
+
+    // Merge sort
+
+    /*
+     * The sorts follow the scheme of java.util.ArraysParallelSortHelpers:
+     * a Sorter splits its range into four quarters, sorts the upper
+     * three in forked subtasks while continuing with the lowest, then
+     * merges quarters pairwise from the array into the workspace and
+     * the two halves back from the workspace into the array, so data
+     * ping-pongs between them without extra copying. Merges are
+     * themselves parallel: a Merger splits the larger run in half,
+     * binary-searches the split point in the smaller one and forks
+     * the upper parts. Relays trigger each merge once both inputs
+     * are sorted; leaves use Arrays.sort.
+     * 排序遵循java.util.ArraysParallelSortHelpers的方案：
+     * Sorter将其范围分为四等份，在fork的子任务中对上面三份排序，同时继续处理最低的一份，
+     * 然后将四份从数组两两归并到工作空间，再将两半从工作空间归并回数组，
+     * 这样数据在两者之间来回传递而无需额外复制。归并本身也是并行的：
+     * Merger将较长的有序段一分为二，在较短的有序段中二分查找分割点，并fork上半部分。
+     * Relay在两个输入都有序后触发每次归并；叶子使用Arrays.sort。
+     */
+
+    /** A placeholder task for Sorters, used for the lowest quartile task */
+    static final class EmptyCompleter extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 4609384914300351510L;
+
+        EmptyCompleter(CountedCompleter<?> p) {
+            super(p);
+        }
+
+        public final void compute() {
+        }
+    }
+
+    /** A trigger for secondary merge of two merges */
+    static final class Relay extends CountedCompleter<Void> {
+        private static final long serialVersionUID = -8811632528990426054L;
+        final CountedCompleter<?> task;
+
+        Relay(CountedCompleter<?> task) {
+            super(null, 1);
+            this.task = task;
+        }
+
+        public final void compute() {
+        }
+
+        public final void onCompletion(CountedCompleter<?> t) {
+            task.compute();
+        }
+
+        /**
+         * Relays have no completer of their own, so a failure in one
+         * of the sorts or merges feeding this relay is forwarded to
+         * the merge it would have started, whose completer chain
+         * leads to the root.
+         */
+        public final boolean onExceptionalCompletion(Throwable ex,
+                                                     CountedCompleter<?> caller) {
+            task.completeExceptionally(ex);
+            return false;
+        }
+    }
+
+    static final class LongSorter extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 4669511339425285497L;
+        final long[] a, w;
+        final int base, size, wbase, gran;
+
+        LongSorter(CountedCompleter<?> par, long[] a, long[] w, int base,
+                   int size, int wbase, int gran) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.base = base;
+            this.size = size;
+            this.wbase = wbase;
+            this.gran = gran;
+        }
+
+        public final void compute() {
+            CountedCompleter<?> s = this;
+            long[] a = this.a, w = this.w; // localize all params
+            int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+            while (n > g) {
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                Relay fc = new Relay(new LongMerger(s, w, a, wb, h,
+                        wb + h, n - h, b, g));
+                Relay rc = new Relay(new LongMerger(fc, a, w, b + h, q,
+                        b + u, n - u, wb + h, g));
+                new LongSorter(rc, a, w, b + u, n - u, wb + u, g).fork();
+                new LongSorter(rc, a, w, b + h, q, wb + h, g).fork();
+                Relay bc = new Relay(new LongMerger(fc, a, w, b, q,
+                        b + q, h - q, wb, g));
+                new LongSorter(bc, a, w, b + q, h - q, wb + q, g).fork();
+                s = new EmptyCompleter(bc);
+                n = q;
+            }
+            Arrays.sort(a, b, b + n);
+            s.tryComplete();
+        }
+    }
+
+    static final class LongMerger extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 7140775334536936904L;
+        final long[] a, w; // main and workspace arrays
+        final int lbase, lsize, rbase, rsize, wbase, gran;
+
+        LongMerger(CountedCompleter<?> par, long[] a, long[] w,
+                   int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.lbase = lbase;
+            this.lsize = lsize;
+            this.rbase = rbase;
+            this.rsize = rsize;
+            this.wbase = wbase;
+            this.gran = gran;
+        }
+
+        public final void compute() {
+            long[] a = this.a, w = this.w; // localize all params
+            int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+            for (int lh, rh; ; ) {  // split larger, find point in smaller
+                if (ln >= rn) {
+                    if (ln <= g)
+                        break;
+                    rh = rn;
+                    long split = a[(lh = ln >>> 1) + lb];
+                    for (int lo = 0; lo < rh; ) {
+                        int rm = (lo + rh) >>> 1;
+                        if (split <= a[rm + rb])
+                            rh = rm;
+                        else
+                            lo = rm + 1;
+                    }
+                } else {
+                    if (rn <= g)
+                        break;
+                    lh = ln;
+                    long split = a[(rh = rn >>> 1) + rb];
+                    for (int lo = 0; lo < lh; ) {
+                        int lm = (lo + lh) >>> 1;
+                        if (split <= a[lm + lb])
+                            lh = lm;
+                        else
+                            lo = lm + 1;
+                    }
+                }
+                LongMerger m = new LongMerger(this, a, w, lb + lh, ln - lh,
+                        rb + rh, rn - rh, k + lh + rh, g);
+                rn = rh;
+                ln = lh;
+                addToPendingCount(1);
+                m.fork();
+            }
+            int lf = lb + ln, rf = rb + rn; // index bounds
+            while (lb < lf && rb < rf) {
+                long t, al, ar;
+                if ((al = a[lb]) <= (ar = a[rb])) {
+                    lb++;
+                    t = al;
+                } else {
+                    rb++;
+                    t = ar;
+                }
+                w[k++] = t;
+            }
+            if (rb < rf)
+                System.arraycopy(a, rb, w, k, rf - rb);
+            else if (lb < lf)
+                System.arraycopy(a, lb, w, k, lf - lb);
+            tryComplete();
+        }
+    }
+
+    static final class DoubleSorter extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1586957744466192907L;
+        final double[] a, w;
+        final int base, size, wbase, gran;
+
+        DoubleSorter(CountedCompleter<?> par, double[] a, double[] w, int base,
+                     int size, int wbase, int gran) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.base = base;
+            this.size = size;
+            this.wbase = wbase;
+            this.gran = gran;
+        }
+
+        public final void compute() {
+            CountedCompleter<?> s = this;
+            double[] a = this.a, w = this.w; // localize all params
+            int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+            while (n > g) {
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                Relay fc = new Relay(new DoubleMerger(s, w, a, wb, h,
+                        wb + h, n - h, b, g));
+                Relay rc = new Relay(new DoubleMerger(fc, a, w, b + h, q,
+                        b + u, n - u, wb + h, g));
+                new DoubleSorter(rc, a, w, b + u, n - u, wb + u, g).fork();
+                new DoubleSorter(rc, a, w, b + h, q, wb + h, g).fork();
+                Relay bc = new Relay(new DoubleMerger(fc, a, w, b, q,
+                        b + q, h - q, wb, g));
+                new DoubleSorter(bc, a, w, b + q, h - q, wb + q, g).fork();
+                s = new EmptyCompleter(bc);
+                n = q;
+            }
+            Arrays.sort(a, b, b + n);
+            s.tryComplete();
+        }
+    }
+
+    /**
+     * Merger for double[]; compares with Double.compare so that
+     * -0.0, 0.0 and NaN end up in the same order as Arrays.sort
+     * leaves them.
+     */
+    static final class DoubleMerger extends CountedCompleter<Void> {
+        private static final long serialVersionUID = -8745535346708804893L;
+        final double[] a, w; // main and workspace arrays
+        final int lbase, lsize, rbase, rsize, wbase, gran;
+
+        DoubleMerger(CountedCompleter<?> par, double[] a, double[] w,
+                     int lbase, int lsize, int rbase,
+                     int rsize, int wbase, int gran) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.lbase = lbase;
+            this.lsize = lsize;
+            this.rbase = rbase;
+            this.rsize = rsize;
+            this.wbase = wbase;
+            this.gran = gran;
+        }
+
+        public final void compute() {
+            double[] a = this.a, w = this.w; // localize all params
+            int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+            for (int lh, rh; ; ) {  // split larger, find point in smaller
+                if (ln >= rn) {
+                    if (ln <= g)
+                        break;
+                    rh = rn;
+                    double split = a[(lh = ln >>> 1) + lb];
+                    for (int lo = 0; lo < rh; ) {
+                        int rm = (lo + rh) >>> 1;
+                        if (Double.compare(split, a[rm + rb]) <= 0)
+                            rh = rm;
+                        else
+                            lo = rm + 1;
+                    }
+                } else {
+                    if (rn <= g)
+                        break;
+                    lh = ln;
+                    double split = a[(rh = rn >>> 1) + rb];
+                    for (int lo = 0; lo < lh; ) {
+                        int lm = (lo + lh) >>> 1;
+                        if (Double.compare(split, a[lm + lb]) <= 0)
+                            lh = lm;
+                        else
+                            lo = lm + 1;
+                    }
+                }
+                DoubleMerger m = new DoubleMerger(this, a, w, lb + lh, ln - lh,
+                        rb + rh, rn - rh, k + lh + rh, g);
+                rn = rh;
+                ln = lh;
+                addToPendingCount(1);
+                m.fork();
+            }
+            int lf = lb + ln, rf = rb + rn; // index bounds
+            while (lb < lf && rb < rf) {
+                double t, al, ar;
+                if (Double.compare(al = a[lb], ar = a[rb]) <= 0) {
+                    lb++;
+                    t = al;
+                } else {
+                    rb++;
+                    t = ar;
+                }
+                w[k++] = t;
+            }
+            if (rb < rf)
+                System.arraycopy(a, rb, w, k, rf - rb);
+            else if (lb < lf)
+                System.arraycopy(a, lb, w, k, lf - lb);
+            tryComplete();
+        }
+    }
+
+    static final class ObjectSorter extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 3747690192592162403L;
+        final Object[] a, w;
+        final int base, size, wbase, gran;
+        final Comparator<Object> comparator;
+
+        ObjectSorter(CountedCompleter<?> par, Object[] a, Object[] w, int base,
+                     int size, int wbase, int gran,
+                     Comparator<Object> comparator) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.base = base;
+            this.size = size;
+            this.wbase = wbase;
+            this.gran = gran;
+            this.comparator = comparator;
+        }
+
+        public final void compute() {
+            CountedCompleter<?> s = this;
+            Comparator<Object> c = this.comparator;
+            Object[] a = this.a, w = this.w; // localize all params
+            int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+            while (n > g) {
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                Relay fc = new Relay(new ObjectMerger(s, w, a, wb, h,
+                        wb + h, n - h, b, g, c));
+                Relay rc = new Relay(new ObjectMerger(fc, a, w, b + h, q,
+                        b + u, n - u, wb + h, g, c));
+                new ObjectSorter(rc, a, w, b + u, n - u, wb + u, g, c).fork();
+                new ObjectSorter(rc, a, w, b + h, q, wb + h, g, c).fork();
+                Relay bc = new Relay(new ObjectMerger(fc, a, w, b, q,
+                        b + q, h - q, wb, g, c));
+                new ObjectSorter(bc, a, w, b + q, h - q, wb + q, g, c).fork();
+                s = new EmptyCompleter(bc);
+                n = q;
+            }
+            Arrays.sort(a, b, b + n, c);
+            s.tryComplete();
+        }
+    }
+
+    /**
+     * Merger for objects. To keep the sort stable, equal elements of
+     * the left run always go before those of the right run: a split
+     * taken from the right run is located in the left run by upper
+     * bound rather than lower bound.
+     */
+    static final class ObjectMerger extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 5245693843822951559L;
+        final Object[] a, w; // main and workspace arrays
+        final int lbase, lsize, rbase, rsize, wbase, gran;
+        final Comparator<Object> comparator;
+
+        ObjectMerger(CountedCompleter<?> par, Object[] a, Object[] w,
+                     int lbase, int lsize, int rbase,
+                     int rsize, int wbase, int gran,
+                     Comparator<Object> comparator) {
+            super(par);
+            this.a = a;
+            this.w = w;
+            this.lbase = lbase;
+            this.lsize = lsize;
+            this.rbase = rbase;
+            this.rsize = rsize;
+            this.wbase = wbase;
+            this.gran = gran;
+            this.comparator = comparator;
+        }
+
+        public final void compute() {
+            Comparator<Object> c = this.comparator;
+            Object[] a = this.a, w = this.w; // localize all params
+            int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+            for (int lh, rh; ; ) {  // split larger, find point in smaller
+                if (ln >= rn) {
+                    if (ln <= g)
+                        break;
+                    rh = rn;
+                    Object split = a[(lh = ln >>> 1) + lb];
+                    for (int lo = 0; lo < rh; ) {
+                        int rm = (lo + rh) >>> 1;
+                        if (c.compare(split, a[rm + rb]) <= 0)
+                            rh = rm;
+                        else
+                            lo = rm + 1;
+                    }
+                } else {
+                    if (rn <= g)
+                        break;
+                    lh = ln;
+                    Object split = a[(rh = rn >>> 1) + rb];
+                    for (int lo = 0; lo < lh; ) {
+                        int lm = (lo + lh) >>> 1;
+                        if (c.compare(split, a[lm + lb]) < 0)
+                            lh = lm;
+                        else
+                            lo = lm + 1;
+                    }
+                }
+                ObjectMerger m = new ObjectMerger(this, a, w, lb + lh, ln - lh,
+                        rb + rh, rn - rh, k + lh + rh, g, c);
+                rn = rh;
+                ln = lh;
+                addToPendingCount(1);
+                m.fork();
+            }
+            int lf = lb + ln, rf = rb + rn; // index bounds
+            while (lb < lf && rb < rf) {
+                Object t, al, ar;
+                if (c.compare(al = a[lb], ar = a[rb]) <= 0) {
+                    lb++;
+                    t = al;
+                } else {
+                    rb++;
+                    t = ar;
+                }
+                w[k++] = t;
+            }
+            if (rb < rf)
+                System.arraycopy(a, rb, w, k, rf - rb);
+            else if (lb < lf)
+                System.arraycopy(a, lb, w, k, lf - lb);
+            tryComplete();
+        }
+    }
+}
@@ -35,6 +35,7 @@
 
 package juc;
 
+import juc.atomic.AtomicInteger;
 import juc.atomic.AtomicLong;
 import juc.locks.Condition;
 import juc.locks.ReentrantLock;
@@ -63,8 +64,10 @@ import static juc.TimeUnit.NANOSECONDS;
  * elapses. While this enables further inspection and monitoring, it
  * may also cause unbounded retention of cancelled tasks. To avoid
  * this, set {@link #setRemoveOnCancelPolicy} to {@code true}, which
- * causes tasks to be immediately removed from the work queue at
- * time of cancellation.
+ * causes cancelled tasks to be removed from the work queue in
+ * batches, whenever they make up a large share of it, so that
+ * cancelling does not contend on the queue's lock and the queue
+ * holds at most a bounded fraction of cancelled tasks.
  *
  * <p>Successive executions of a task scheduled via
  * {@code scheduleAtFixedRate} or
@@ -167,6 +170,11 @@ public class ScheduledThreadPoolExecutor
      */
     private volatile boolean removeOnCancel = false;
 
+    /**
+     * Timer slack in nanoseconds, zero for none.
+     */
+    private volatile long timerSlack;
+
     /**
      * Sequence number to break scheduling ties, and in turn to
      * guarantee FIFO order among tied entries.
@@ -286,8 +294,12 @@ public class ScheduledThreadPoolExecutor
 
         public boolean cancel(boolean mayInterruptIfRunning) {
             boolean cancelled = super.cancel(mayInterruptIfRunning);
-            if (cancelled && removeOnCancel && heapIndex >= 0)
-                remove(this);
+            if (cancelled && removeOnCancel && heapIndex >= 0) {
+                if (isShutdown())
+                    remove(this);   // so that termination need not wait
+                else
+                    tombstone(this);
+            }
             return cancelled;
         }
 
@@ -307,6 +319,25 @@ public class ScheduledThreadPoolExecutor
         }
     }
 
+    /**
+     * Records that a task left in the queue has been cancelled,
+     * under the removeOnCancel policy, so that it is purged later.
+     *
+     * @param task the cancelled task
+     */
+    void tombstone(RunnableScheduledFuture<?> task) {
+        ((DelayedWorkQueue) super.getQueue()).cancelled();
+    }
+
+    /**
+     * Passes a new timer slack on to the work queue.
+     *
+     * @param nanos the timer slack in nanoseconds
+     */
+    void applyTimerSlack(long nanos) {
+        ((DelayedWorkQueue) super.getQueue()).setSlack(nanos);
+    }
+
     /**
      * Returns true if can run a task given current run state
      * and run-after-shutdown parameters.
@@ -495,6 +526,19 @@ public class ScheduledThreadPoolExecutor
                 new DelayedWorkQueue(), threadFactory, handler);
     }
 
+    /**
+     * Creates a new ScheduledThreadPoolExecutor with the given work
+     * queue, which must hold RunnableScheduledFutures in delay order
+     * like a DelayedWorkQueue.
+     */
+    ScheduledThreadPoolExecutor(int corePoolSize,
+                                BlockingQueue<Runnable> workQueue,
+                                ThreadFactory threadFactory,
+                                RejectedExecutionHandler handler) {
+        super(corePoolSize, Integer.MAX_VALUE, 0, NANOSECONDS,
+                workQueue, threadFactory, handler);
+    }
+
     /**
      * Returns the trigger time of a delayed action.
      */
@@ -631,6 +675,26 @@ public class ScheduledThreadPoolExecutor
         schedule(command, 0, NANOSECONDS);
     }
 
+    /**
+     * Executes each of the given tasks with zero required delay, as
+     * {@link #execute} does. Tasks are scheduled one at a time, since
+     * each must be decorated and ordered in the delay queue.
+     *
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    @Override
+    public void executeAll(Collection<? extends Runnable> tasks) {
+        if (tasks == null)
+            throw new NullPointerException();
+        Runnable[] a = tasks.toArray(new Runnable[0]);
+        for (Runnable r : a)
+            if (r == null)
+                throw new NullPointerException();
+        for (Runnable r : a)
+            execute(r);
+    }
+
     // Override AbstractExecutorService methods
 
     /**
@@ -722,9 +786,18 @@ public class ScheduledThreadPoolExecutor
     }
 
     /**
-     * Sets the policy on whether cancelled tasks should be immediately
-     * removed from the work queue at time of cancellation.  This value is
-     * by default {@code false}.
+     * Sets the policy on whether cancelled tasks should be removed
+     * from the work queue, rather than kept until their delay
+     * elapses.  This value is by default {@code false}.
+     *
+     * <p>Removal is deferred: a cancelled task stays in the queue as
+     * a tombstone, and all tombstones are removed together, in one
+     * pass over the queue, once their number reaches half the number
+     * of tasks in the queue, so they never outnumber live tasks by
+     * much. Cancellation thus takes no lock, and removal
+     * costs amortized constant time per task, even when most tasks
+     * are cancelled, as with timeouts. Use {@link #purge} to remove
+     * cancelled tasks at once.
      *
      * @param value if {@code true}, remove on cancellation, else don't
      * @see #getRemoveOnCancelPolicy
@@ -735,12 +808,11 @@ public class ScheduledThreadPoolExecutor
     }
 
     /**
-     * Gets the policy on whether cancelled tasks should be immediately
-     * removed from the work queue at time of cancellation.  This value is
-     * by default {@code false}.
+     * Gets the policy on whether cancelled tasks should be removed
+     * from the work queue, rather than kept until their delay
+     * elapses.  This value is by default {@code false}.
      *
-     * @return {@code true} if cancelled tasks are immediately removed
-     * from the queue
+     * @return {@code true} if cancelled tasks are removed from the queue
      * @see #setRemoveOnCancelPolicy
      * @since 1.7
      */
@@ -748,6 +820,49 @@ public class ScheduledThreadPoolExecutor
         return removeOnCancel;
     }
 
+    /**
+     * Sets the timer slack: the time by which a delayed or periodic
+     * task may be enabled late, so that tasks falling due close
+     * together are enabled by a single wake-up of a pool thread.
+     * With a nonzero slack, a thread waiting for the next task sleeps
+     * until the next multiple of the slack on the {@link
+     * System#nanoTime} scale, and then finds every task due within
+     * that window ready to run, instead of waking once per task.
+     * This value is by default zero, so that tasks are enabled as
+     * soon as their delay elapses.
+     *
+     * <p>The slack delays only when tasks are run, not when they are
+     * due: the next run of a fixed-rate task is still computed from
+     * its previous due time, so its long-term rate is unchanged.
+     * Many periodic tasks with similar periods, such as heartbeats,
+     * are best served by a slack that is a small fraction of their
+     * period.
+     *
+     * @param slack the timer slack, or zero for none
+     * @param unit the time unit of the slack argument
+     * @throws IllegalArgumentException if slack is negative
+     * @throws NullPointerException if unit is null
+     * @see #getTimerSlack
+     */
+    public void setTimerSlack(long slack, TimeUnit unit) {
+        if (slack < 0)
+            throw new IllegalArgumentException();
+        long nanos = unit.toNanos(slack);
+        timerSlack = nanos;
+        applyTimerSlack(nanos);
+    }
+
+    /**
+     * Returns the timer slack.
+     *
+     * @param unit the desired time unit of the result
+     * @return the timer slack, or zero for none
+     * @see #setTimerSlack
+     */
+    public long getTimerSlack(TimeUnit unit) {
+        return unit.convert(timerSlack, NANOSECONDS);
+    }
+
     /**
      * Initiates an orderly shutdown in which previously submitted
      * tasks are executed, but no new tasks will be accepted.
@@ -810,6 +925,17 @@ public class ScheduledThreadPoolExecutor
         return super.getQueue();
     }
 
+    /**
+     * Removes all cancelled tasks from the work queue, in a single
+     * pass that rebuilds the queue's heap, rather than removing them
+     * one at a time.
+     */
+    @Override
+    public void purge() {
+        ((DelayedWorkQueue) super.getQueue()).purgeCancelled();
+        tryTerminate(); // In case SHUTDOWN and now empty
+    }
+
     /**
      * Specialized delay queue. To mesh with TPE declarations, this
      * class must be declared as a BlockingQueue<Runnable> even though
@@ -833,6 +959,28 @@ public class ScheduledThreadPoolExecutor
          * most tasks will not be decorated, and that the faster cases
          * will be much more common.)
          *
+         * Under the removeOnCancel policy, cancel does not remove the
+         * task, which would take the lock and a sift per task, but
+         * counts it in cancelledCount and leaves it in the heap as a
+         * tombstone. Once the count reaches half the number of tasks
+         * in the heap (and at least MIN_PURGE_THRESHOLD), so that
+         * tombstones never outnumber live tasks by much however large
+         * the heap once grew, the cancelling thread removes all
+         * cancelled tasks in one pass and restores heap order
+         * bottom-up, which is O(n) for all of them. The count is only
+         * a hint: it is checked against a racy read of size,
+         * tombstones that reach the head are uncounted as they are
+         * returned to workers, which skip them, and a purge may miss
+         * tasks cancelled while it runs.
+         *
+         * With a timer slack, the leader does not wait for the head's
+         * delay alone, but on to the next multiple of the slack
+         * (coalesce), so that all tasks due by then are ready when it
+         * wakes and are taken without further waits. An offer of a
+         * new head that falls in the same window as the old one does
+         * not signal the leader, which would wake up at the same time
+         * anyway.
+         *
          * All heap operations must record index changes -- mainly
          * within siftUp and siftDown. Upon removal, a task's
          * heapIndex is set to -1. Note that ScheduledFutureTasks can
@@ -847,6 +995,21 @@ public class ScheduledThreadPoolExecutor
         private final ReentrantLock lock = new ReentrantLock();
         private int size = 0;
 
+        /**
+         * Minimum number of cancelled tasks that triggers a purge.
+         */
+        private static final int MIN_PURGE_THRESHOLD = 32;
+
+        /**
+         * Approximate number of cancelled tasks in the heap.
+         */
+        private final AtomicInteger cancelledCount = new AtomicInteger();
+
+        /**
+         * Timer slack in nanoseconds, zero for none.
+         */
+        private volatile long slackNanos;
+
         /**
          * Thread designated to wait for the task at the head of the
          * queue.  This variant of the Leader-Follower pattern
@@ -919,6 +1082,74 @@ public class ScheduledThreadPoolExecutor
             setIndex(key, k);
         }
 
+        /**
+         * Called, holding lock, whenever the head of the queue changes.
+         * A no-op here, but used by DelayedWorkShard.
+         *
+         * @param head the new head, or null if the queue is empty
+         */
+        void headChanged(RunnableScheduledFuture<?> head) {
+        }
+
+        /**
+         * Sets the timer slack, and wakes the leader so that it
+         * recomputes its wait.
+         */
+        void setSlack(long nanos) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                slackNanos = nanos;
+                leader = null;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the time to wait for task f, which is due in the
+         * given delay, lengthened under a timer slack up to the next
+         * multiple of the slack.
+         *
+         * @param f the task, or null to coalesce any wait
+         * @param delay the delay of f
+         */
+        final long coalesce(RunnableScheduledFuture<?> f, long delay) {
+            long slack = slackNanos;
+            if (slack <= 0L || delay == Long.MAX_VALUE)
+                return delay;
+            long extra = Math.floorMod(-deadline(f, delay), slack);
+            return (delay > Long.MAX_VALUE - extra) ? delay : delay + extra;
+        }
+
+        /**
+         * Returns the nanoTime at which task f is due, exactly if it
+         * is a ScheduledFutureTask.
+         */
+        private static long deadline(RunnableScheduledFuture<?> f, long delay) {
+            return (f instanceof ScheduledFutureTask) ?
+                    ((ScheduledFutureTask<?>) f).time :
+                    System.nanoTime() + delay;
+        }
+
+        /**
+         * Returns true if the leader, waiting for task old, also wakes
+         * up in time for task e, which precedes it, under the current
+         * timer slack. Call only when holding lock.
+         */
+        private boolean sameWindow(RunnableScheduledFuture<?> e,
+                                   RunnableScheduledFuture<?> old) {
+            long slack = slackNanos;
+            if (slack <= 0L || leader == null ||
+                    !(e instanceof ScheduledFutureTask) ||
+                    !(old instanceof ScheduledFutureTask))
+                return false;
+            long t = ((ScheduledFutureTask<?>) e).time;
+            long u = ((ScheduledFutureTask<?>) old).time;
+            return t + Math.floorMod(-t, slack) == u + Math.floorMod(-u, slack);
+        }
+
         /**
          * Resizes the heap array.  Call only when holding lock.
          */
@@ -930,6 +1161,61 @@ public class ScheduledThreadPoolExecutor
             queue = Arrays.copyOf(queue, newCapacity);
         }
 
+        /**
+         * Records that a task in the queue has been cancelled, and
+         * purges cancelled tasks if there are enough of them.
+         */
+        void cancelled() {
+            int c = cancelledCount.incrementAndGet();
+            if (c >= MIN_PURGE_THRESHOLD && c >= (size >>> 1))
+                purgeCancelled();
+        }
+
+        /**
+         * Uncounts a cancelled task leaving the queue, never taking
+         * the count below zero, as the task may not have been counted.
+         */
+        private void uncount() {
+            for (int c; (c = cancelledCount.get()) > 0; ) {
+                if (cancelledCount.compareAndSet(c, c - 1))
+                    break;
+            }
+        }
+
+        /**
+         * Removes all cancelled tasks and restores heap order.
+         *
+         * @return the number of tasks removed
+         */
+        int purgeCancelled() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                cancelledCount.set(0);
+                RunnableScheduledFuture<?>[] q = queue;
+                int n = size, k = 0;
+                for (int i = 0; i < n; i++) {
+                    RunnableScheduledFuture<?> t = q[i];
+                    if (t.isCancelled())
+                        setIndex(t, -1);
+                    else {
+                        q[k] = t;
+                        setIndex(t, k++);
+                    }
+                }
+                if (k == n)
+                    return 0;
+                Arrays.fill(q, k, n, null);
+                size = k;
+                for (int i = (k >>> 1) - 1; i >= 0; i--)
+                    siftDown(i, q[i]);
+                headChanged(q[0]);
+                return n - k;
+            } finally {
+                lock.unlock();
+            }
+        }
+
         /**
          * Finds index of given object, or -1 if absent.
          */
@@ -977,6 +1263,8 @@ public class ScheduledThreadPoolExecutor
                     if (queue[i] == replacement)
                         siftUp(i, replacement);
                 }
+                if (i == 0)
+                    headChanged(queue[0]);
                 return true;
             } finally {
                 lock.unlock();
@@ -1022,6 +1310,7 @@ public class ScheduledThreadPoolExecutor
                 if (i >= queue.length)
                     grow();
                 size = i + 1;
+                RunnableScheduledFuture<?> old = queue[0];
                 if (i == 0) {
                     queue[0] = e;
                     setIndex(e, 0);
@@ -1029,8 +1318,11 @@ public class ScheduledThreadPoolExecutor
                     siftUp(i, e);
                 }
                 if (queue[0] == e) {
-                    leader = null;
-                    available.signal();
+                    if (!sameWindow(e, old)) {
+                        leader = null;
+                        available.signal();
+                    }
+                    headChanged(e);
                 }
             } finally {
                 lock.unlock();
@@ -1064,6 +1356,9 @@ public class ScheduledThreadPoolExecutor
             if (s != 0)
                 siftDown(0, x);
             setIndex(f, -1);
+            headChanged(queue[0]);
+            if (f.isCancelled())
+                uncount();
             return f;
         }
 
@@ -1093,6 +1388,7 @@ public class ScheduledThreadPoolExecutor
                         long delay = first.getDelay(NANOSECONDS);
                         if (delay <= 0)
                             return finishPoll(first);
+                        delay = coalesce(first, delay);
                         first = null; // don't retain ref while waiting
                         if (leader != null)
                             available.await();
@@ -1134,6 +1430,7 @@ public class ScheduledThreadPoolExecutor
                             return finishPoll(first);
                         if (nanos <= 0)
                             return null;
+                        delay = coalesce(first, delay);
                         first = null; // don't retain ref while waiting
                         if (nanos < delay || leader != null)
                             nanos = available.awaitNanos(nanos);
@@ -1169,6 +1466,8 @@ public class ScheduledThreadPoolExecutor
                     }
                 }
                 size = 0;
+                cancelledCount.set(0);
+                headChanged(null);
             } finally {
                 lock.unlock();
             }
@@ -1290,4 +1589,114 @@ public class ScheduledThreadPoolExecutor
             }
         }
     }
+
+    /**
+     * One shard of the work queue of a ShardedScheduledThreadPoolExecutor:
+     * a DelayedWorkQueue that publishes its head, so that threads
+     * waiting on other shards can tell when it is due, and counts the
+     * threads waiting on it.
+     */
+    static final class DelayedWorkShard extends DelayedWorkQueue {
+        final int index;
+
+        /**
+         * The head of the heap, written holding lock.
+         */
+        volatile RunnableScheduledFuture<?> head;
+
+        /**
+         * Number of threads in awaitWork, written holding lock.
+         */
+        volatile int waiters;
+
+        DelayedWorkShard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        void headChanged(RunnableScheduledFuture<?> h) {
+            head = h;
+        }
+
+        /**
+         * Returns the delay of the head without locking, or
+         * Long.MAX_VALUE if the shard is empty.
+         */
+        long headDelay() {
+            RunnableScheduledFuture<?> h = head;
+            return (h == null) ? Long.MAX_VALUE : h.getDelay(NANOSECONDS);
+        }
+
+        /**
+         * Waits until the head of this shard is due, for at most the
+         * given time and at most the delay given by the queue for the
+         * other shards, or until signalled. As in take, the thread
+         * waiting for the head is the leader and others wait without
+         * timeout. The other shards' delay is read after counting
+         * this thread as a waiter, so that an offer to another shard
+         * either is seen here or sees the waiter and signals.
+         *
+         * @param owner the sharded queue
+         * @param nanos the longest time to wait, Long.MAX_VALUE for no limit
+         * @return the remaining time to wait
+         */
+        long awaitWork(ShardedScheduledThreadPoolExecutor.ShardedWorkQueue owner,
+                       long nanos) throws InterruptedException {
+            final DelayedWorkQueue q = this;
+            final ReentrantLock lock = q.lock;
+            lock.lockInterruptibly();
+            try {
+                waiters = waiters + 1;
+                try {
+                    RunnableScheduledFuture<?> first = q.queue[0];
+                    long delay = (first == null) ? Long.MAX_VALUE :
+                            first.getDelay(NANOSECONDS);
+                    long wait = Math.min(nanos, owner.otherDelay(this));
+                    if (delay <= 0 || wait <= 0)
+                        return nanos;
+                    Thread thisThread = Thread.currentThread();
+                    if (delay <= wait && q.leader == null) {
+                        q.leader = thisThread;
+                        wait = Math.min(nanos, q.coalesce(first, delay));
+                    } else if (wait < nanos)
+                        wait = Math.min(nanos, q.coalesce(null, wait));
+                    first = null; // don't retain ref while waiting
+                    try {
+                        if (wait == Long.MAX_VALUE) {
+                            q.available.await();
+                            return nanos;
+                        }
+                        long timeLeft = q.available.awaitNanos(wait);
+                        return (nanos == Long.MAX_VALUE) ? nanos :
+                                nanos - (wait - timeLeft);
+                    } finally {
+                        if (q.leader == thisThread)
+                            q.leader = null;
+                    }
+                } finally {
+                    waiters = waiters - 1;
+                    if (q.leader == null && q.queue[0] != null)
+                        q.available.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wakes a thread waiting on this shard, so that it looks at
+         * the other shards again.
+         */
+        void wakeWaiter() {
+            final DelayedWorkQueue q = this;
+            final ReentrantLock lock = q.lock;
+            lock.lock();
+            try {
+                q.leader = null;
+                q.available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
@@ -0,0 +1,384 @@
+package juc;
+
+import juc.atomic.AtomicInteger;
+
+import java.util.*;
+
+/**
+ * A {@link ScheduledThreadPoolExecutor} whose delay queue is split
+ * into several shards, one per core thread by default, so that
+ * threads scheduling tasks and pool threads waiting for them rarely
+ * contend on the same lock. Each task is hashed to a shard, and each
+ * pool thread waits for the tasks of a shard of its own; a thread
+ * whose shard has no task due takes due tasks from the other shards,
+ * and an idle thread keeps watch over shards whose own thread is busy.
+ * 一个{@link ScheduledThreadPoolExecutor}，其延迟队列被拆分为多个分片，默认每个核心线程一个，
+ * 因此调度任务的线程和等待任务的池线程很少在同一个锁上竞争。每个任务被哈希到一个分片，每个池线程等待自己分片的任务；
+ * 自己的分片没有到期任务的线程会从其他分片获取到期任务，而空闲线程会照看那些自己的线程正忙的分片。
+ *
+ * <p>Scheduling semantics are those of a {@code
+ * ScheduledThreadPoolExecutor}: tasks run no sooner than they are
+ * due, successive executions of a periodic task do not overlap and
+ * follow its fixed rate or fixed delay, and shutdown policies,
+ * {@code decorateTask} and the remove-on-cancel policy apply
+ * unchanged. However, tasks due at the same time in different shards
+ * are not run in submission order, and {@link #getQueue} returns a
+ * view of all the shards whose iteration visits them in turn.
+ * 调度语义与{@code ScheduledThreadPoolExecutor}相同：任务不会早于到期时间运行，周期性任务的连续执行不会重叠并遵循其固定速率或固定延迟，
+ * 关闭策略、{@code decorateTask}和取消时移除策略保持不变。但是，不同分片中同时到期的任务不按提交顺序运行，
+ * 并且{@link #getQueue}返回所有分片的视图，其迭代依次访问各个分片。
+ *
+ * <p>This design pays off at high scheduling rates on many cores,
+ * where the single lock and condition of the delay queue limit
+ * throughput. Use as many shards as pool threads: a shard without a
+ * thread of its own is served only by threads idle on other shards.
+ * 这种设计适用于在多核上高调度速率的情况，此时延迟队列的单个锁和条件会限制吞吐量。
+ * 请使用与池线程一样多的分片：没有自己线程的分片只能由在其他分片上空闲的线程来服务。
+ *
+ * @see WorkStealingThreadPoolExecutor
+ */
+public class ShardedScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
+
+    /**
+     * Creates a new {@code ShardedScheduledThreadPoolExecutor} with
+     * the given core pool size and one shard per core thread.
+     * 使用给定的核心线程池大小创建一个新的{@code ShardedScheduledThreadPoolExecutor}，每个核心线程一个分片。
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even
+     *                     if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @throws IllegalArgumentException if {@code corePoolSize < 0}
+     */
+    public ShardedScheduledThreadPoolExecutor(int corePoolSize) {
+        this(corePoolSize, Math.max(1, corePoolSize),
+                Executors.defaultThreadFactory(), new AbortPolicy());
+    }
+
+    /**
+     * Creates a new {@code ShardedScheduledThreadPoolExecutor} with
+     * the given initial parameters and one shard per core thread.
+     * 使用给定的初始参数创建一个新的{@code ShardedScheduledThreadPoolExecutor}，每个核心线程一个分片。
+     *
+     * @param corePoolSize  the number of threads to keep in the pool, even
+     *                      if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param threadFactory the factory to use when the executor
+     *                      creates a new thread
+     * @param handler       the handler to use when execution is blocked
+     *                      because the thread bounds and queue capacities are reached
+     * @throws IllegalArgumentException if {@code corePoolSize < 0}
+     * @throws NullPointerException     if {@code threadFactory} or
+     *                                  {@code handler} is null
+     */
+    public ShardedScheduledThreadPoolExecutor(int corePoolSize,
+                                              ThreadFactory threadFactory,
+                                              RejectedExecutionHandler handler) {
+        this(corePoolSize, Math.max(1, corePoolSize), threadFactory, handler);
+    }
+
+    /**
+     * Creates a new {@code ShardedScheduledThreadPoolExecutor} with
+     * the given initial parameters.
+     * 使用给定的初始参数创建一个新的{@code ShardedScheduledThreadPoolExecutor}。
+     *
+     * @param corePoolSize  the number of threads to keep in the pool, even
+     *                      if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param shards        the number of shards of the delay queue
+     * @param threadFactory the factory to use when the executor
+     *                      creates a new thread
+     * @param handler       the handler to use when execution is blocked
+     *                      because the thread bounds and queue capacities are reached
+     * @throws IllegalArgumentException if {@code corePoolSize < 0} or
+     *                                  {@code shards <= 0}
+     * @throws NullPointerException     if {@code threadFactory} or
+     *                                  {@code handler} is null
+     */
+    public ShardedScheduledThreadPoolExecutor(int corePoolSize,
+                                              int shards,
+                                              ThreadFactory threadFactory,
+                                              RejectedExecutionHandler handler) {
+        super(corePoolSize, new ShardedWorkQueue(shards), threadFactory, handler);
+    }
+
+    /**
+     * Returns the number of shards of the delay queue.
+     * 返回延迟队列的分片数。
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return ((ShardedWorkQueue) super.getQueue()).shards.length;
+    }
+
+    @Override
+    void tombstone(RunnableScheduledFuture<?> task) {
+        ((ShardedWorkQueue) super.getQueue()).cancelled(task);
+    }
+
+    @Override
+    void applyTimerSlack(long nanos) {
+        for (DelayedWorkShard shard : ((ShardedWorkQueue) super.getQueue()).shards)
+            shard.setSlack(nanos);
+    }
+
+    /**
+     * Removes all cancelled tasks from the work queue, one shard at a
+     * time.
+     * 从工作队列中移除所有已取消的任务，每次一个分片。
+     */
+    @Override
+    public void purge() {
+        ((ShardedWorkQueue) super.getQueue()).purgeCancelled();
+        tryTerminate(); // In case SHUTDOWN and now empty
+    }
+
+    /**
+     * The sharded delay queue.
+     *
+     * Tasks are hashed to shards by identity, so that a task is found
+     * again for removal and a periodic task returns to its shard.
+     * Each thread that takes tasks is given a home shard, round-robin,
+     * on its first take. A taker polls its home shard, then the others
+     * for a task that is due, and otherwise waits on its home shard
+     * (see DelayedWorkShard.awaitWork), bounded by the earliest head
+     * among the other shards that have no waiter of their own. Shards
+     * with waiters are left to them, so that one due task does not
+     * wake every idle thread.
+     *
+     * Two wake-ups keep unwatched shards served. An offer that makes
+     * a task the head of a shard with no waiter wakes a waiter on
+     * another shard. A taker leaving its shard with tasks in it and no
+     * other waiter does the same. The woken thread recomputes its
+     * bound, now including that shard, and takes its head when due.
+     */
+    static final class ShardedWorkQueue extends AbstractQueue<Runnable>
+            implements BlockingQueue<Runnable> {
+
+        final DelayedWorkShard[] shards;
+        private final AtomicInteger nextHome = new AtomicInteger();
+        private final ThreadLocal<DelayedWorkShard> home =
+                ThreadLocal.withInitial(this::newHome);
+
+        ShardedWorkQueue(int shards) {
+            if (shards <= 0)
+                throw new IllegalArgumentException();
+            DelayedWorkShard[] ss = new DelayedWorkShard[shards];
+            for (int i = 0; i < shards; ++i)
+                ss[i] = new DelayedWorkShard(i);
+            this.shards = ss;
+        }
+
+        private DelayedWorkShard newHome() {
+            return shards[Math.floorMod(nextHome.getAndIncrement(), shards.length)];
+        }
+
+        private DelayedWorkShard shardFor(Object x) {
+            int h = System.identityHashCode(x);
+            return shards[((h ^ (h >>> 16)) & 0x7fffffff) % shards.length];
+        }
+
+        /**
+         * Returns the smallest delay of the heads of the shards other
+         * than the given one that have no waiters, or Long.MAX_VALUE.
+         */
+        long otherDelay(DelayedWorkShard self) {
+            long min = Long.MAX_VALUE;
+            for (DelayedWorkShard s : shards) {
+                if (s != self && s.waiters == 0) {
+                    long d = s.headDelay();
+                    if (d < min)
+                        min = d;
+                }
+            }
+            return min;
+        }
+
+        /**
+         * Wakes a thread waiting on a shard other than the given one.
+         */
+        private void wakeOther(DelayedWorkShard from) {
+            final DelayedWorkShard[] ss = shards;
+            for (int i = 1, n = ss.length; i < n; ++i) {
+                DelayedWorkShard s = ss[(from.index + i) % n];
+                if (s.waiters != 0) {
+                    s.wakeWaiter();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Polls the given shard, then the others, for a due task.
+         */
+        private RunnableScheduledFuture<?> pollDue(DelayedWorkShard first) {
+            final DelayedWorkShard[] ss = shards;
+            for (int i = 0, n = ss.length; i < n; ++i) {
+                RunnableScheduledFuture<?> r = ss[(first.index + i) % n].poll();
+                if (r != null)
+                    return r;
+            }
+            return null;
+        }
+
+        /**
+         * Hands on the watch over the home shard if it still has tasks.
+         */
+        private RunnableScheduledFuture<?> leaving(DelayedWorkShard h,
+                                                   RunnableScheduledFuture<?> r) {
+            if (h.waiters == 0 && h.head != null)
+                wakeOther(h);
+            return r;
+        }
+
+        public boolean offer(Runnable x) {
+            if (x == null)
+                throw new NullPointerException();
+            DelayedWorkShard s = shardFor(x);
+            s.offer(x);
+            if (s.waiters == 0 && s.head == x)
+                wakeOther(s);
+            return true;
+        }
+
+        public void put(Runnable e) {
+            offer(e);
+        }
+
+        public boolean add(Runnable e) {
+            return offer(e);
+        }
+
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) {
+            return offer(e);
+        }
+
+        public RunnableScheduledFuture<?> poll() {
+            return pollDue(shards[0]);
+        }
+
+        public RunnableScheduledFuture<?> take() throws InterruptedException {
+            DelayedWorkShard h = home.get();
+            for (; ; ) {
+                RunnableScheduledFuture<?> r = pollDue(h);
+                if (r != null)
+                    return leaving(h, r);
+                h.awaitWork(this, Long.MAX_VALUE);
+            }
+        }
+
+        public RunnableScheduledFuture<?> poll(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            DelayedWorkShard h = home.get();
+            for (; ; ) {
+                RunnableScheduledFuture<?> r = pollDue(h);
+                if (r != null)
+                    return leaving(h, r);
+                if (nanos <= 0)
+                    return null;
+                nanos = h.awaitWork(this, nanos);
+            }
+        }
+
+        public RunnableScheduledFuture<?> peek() {
+            RunnableScheduledFuture<?> first = null;
+            for (DelayedWorkShard s : shards) {
+                RunnableScheduledFuture<?> r = s.peek();
+                if (r != null && (first == null || r.compareTo(first) < 0))
+                    first = r;
+            }
+            return first;
+        }
+
+        public boolean remove(Object x) {
+            return x != null && shardFor(x).remove(x);
+        }
+
+        public boolean contains(Object x) {
+            return x != null && shardFor(x).contains(x);
+        }
+
+        public int size() {
+            int n = 0;
+            for (DelayedWorkShard s : shards)
+                n += s.size();
+            return n;
+        }
+
+        public boolean isEmpty() {
+            for (DelayedWorkShard s : shards)
+                if (!s.isEmpty())
+                    return false;
+            return true;
+        }
+
+        public int remainingCapacity() {
+            return Integer.MAX_VALUE;
+        }
+
+        public void clear() {
+            for (DelayedWorkShard s : shards)
+                s.clear();
+        }
+
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            if (c == null)
+                throw new NullPointerException();
+            if (c == this)
+                throw new IllegalArgumentException();
+            int n = 0;
+            for (DelayedWorkShard s : shards) {
+                if (n >= maxElements)
+                    break;
+                n += s.drainTo(c, maxElements - n);
+            }
+            return n;
+        }
+
+        public Object[] toArray() {
+            ArrayList<Object> all = new ArrayList<Object>();
+            for (DelayedWorkShard s : shards)
+                Collections.addAll(all, s.toArray());
+            return all.toArray();
+        }
+
+        public Iterator<Runnable> iterator() {
+            final Object[] array = toArray();
+            return new Iterator<Runnable>() {
+                int cursor = 0;     // index of next element to return
+                int lastRet = -1;   // index of last element, or -1 if no such
+
+                public boolean hasNext() {
+                    return cursor < array.length;
+                }
+
+                public Runnable next() {
+                    if (cursor >= array.length)
+                        throw new NoSuchElementException();
+                    lastRet = cursor;
+                    return (Runnable) array[cursor++];
+                }
+
+                public void remove() {
+                    if (lastRet < 0)
+                        throw new IllegalStateException();
+                    ShardedWorkQueue.this.remove(array[lastRet]);
+                    lastRet = -1;
+                }
+            };
+        }
+
+        void cancelled(RunnableScheduledFuture<?> task) {
+            shardFor(task).cancelled();
+        }
+
+        int purgeCancelled() {
+            int n = 0;
+            for (DelayedWorkShard s : shards)
+                n += s.purgeCancelled();
+            return n;
+        }
+    }
+}
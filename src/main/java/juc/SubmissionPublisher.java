@@ -0,0 +1,1412 @@
+package juc;
+
+import juc.Flow.Publisher;
+import juc.Flow.Subscriber;
+import juc.Flow.Subscription;
+import juc.locks.LockSupport;
+import juc.locks.ReentrantLock;
+import sun.misc2.Unsafe;
+import unsafeTest.GetUnsafeFromReflect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Flow.Publisher} that asynchronously issues submitted
+ * (non-null) items to current subscribers until it is closed. Each
+ * current subscriber receives newly submitted items in the same order
+ * unless drops or exceptions are encountered. Using a
+ * SubmissionPublisher allows item generators to act as compliant
+ * <a href="http://www.reactive-streams.org/"> reactive-streams</a>
+ * Publishers relying on drop handling and/or blocking for flow
+ * control.
+ * 一个{@link Flow.Publisher}，它异步地将提交的（非null）元素发布给当前的订阅者，直到它被关闭。
+ * 除非遇到丢弃或异常，每个当前订阅者都以相同的顺序接收新提交的元素。
+ * 使用SubmissionPublisher可以让元素生成器作为依赖丢弃处理和/或阻塞来实现流控的、符合规范的reactive-streams Publisher。
+ *
+ * <p>A SubmissionPublisher uses the {@link Executor} supplied in its
+ * constructor for delivery to subscribers. The best choice of
+ * Executor depends on expected usage. If the generator(s) of
+ * submitted items run in separate threads, and the number of
+ * subscribers can be estimated, consider using a {@link
+ * Executors#newFixedThreadPool}. Otherwise consider using the
+ * default, normally the {@link ForkJoinPool#commonPool}.
+ * SubmissionPublisher使用其构造器中提供的{@link Executor}向订阅者交付元素。Executor的最佳选择取决于预期的用法。
+ * 如果提交元素的生成器运行在单独的线程中，并且订阅者的数量可以估计，可以考虑使用{@link Executors#newFixedThreadPool}。
+ * 否则考虑使用默认值，通常是{@link ForkJoinPool#commonPool}。
+ *
+ * <p>Buffering allows producers and consumers to transiently operate
+ * at different rates. Each subscriber uses an independent ring
+ * buffer, created upon subscription with a small capacity and grown
+ * as needed up to the given maximum, rounded to a power of two.
+ * Items are sent to a subscriber only as it requests them, so a slow
+ * subscriber fills its own buffer without holding back the others
+ * until that buffer is full. Then {@link #submit} blocks until space
+ * is available, while the {@code offer} methods drop the item for
+ * that subscriber (optionally after a timeout), giving the caller a
+ * chance to retry.
+ * 缓冲允许生产者和消费者暂时以不同的速率运行。每个订阅者使用一个独立的环形缓冲区，它在订阅时以较小的容量创建，
+ * 并根据需要增长到给定的最大值（向上取整到2的幂）。元素仅在订阅者请求时才发送给它，因此慢的订阅者填满自己的缓冲区，
+ * 在该缓冲区满之前不会拖慢其他订阅者。缓冲区满时，{@link #submit}阻塞直到有可用空间，
+ * 而{@code offer}方法为该订阅者丢弃元素（可选地在超时之后），并给调用者重试的机会。
+ *
+ * <p>Publication methods serialize producers: items submitted
+ * concurrently by several threads are delivered in some order, the
+ * same for every subscriber, except that an item that had to wait
+ * for space in a full buffer may reach that subscriber after items
+ * published later by other threads. Each subscriber's methods are
+ * invoked by at most one executor task at a time, in the order
+ * required by {@link Flow.Subscriber}.
+ * 发布方法使生产者串行化：多个线程并发提交的元素以某种顺序交付，且对每个订阅者都相同，
+ * 只是一个需要等待满缓冲区腾出空间的元素，可能晚于其他线程之后发布的元素到达该订阅者。
+ * 每个订阅者的方法一次至多由一个执行器任务调用，并遵循{@link Flow.Subscriber}要求的顺序。
+ *
+ * <p>If any Subscriber method throws an exception, its subscription
+ * is cancelled. If a handler is supplied as a constructor argument,
+ * it is invoked before cancellation upon an exception in method
+ * {@link Flow.Subscriber#onNext onNext}.
+ * 如果任何Subscriber方法抛出异常，其订阅会被取消。如果构造器参数中提供了处理器，
+ * 则在方法{@link Flow.Subscriber#onNext onNext}抛出异常时，在取消之前调用该处理器。
+ *
+ * @param <T> the published item type
+ */
+public class SubmissionPublisher<T> implements Publisher<T>, AutoCloseable {
+    /*
+     * Implementation overview:
+     *
+     * Each subscriber is handled by a BufferedSubscription holding a
+     * single-producer, single-consumer ring buffer. The producer side
+     * is serialized by the publisher's lock, which also guards the
+     * linked list of subscriptions. A producer holds the lock only
+     * to offer the item once to every subscription; it waits for
+     * space in saturated ones, and invokes drop handlers, after
+     * releasing it (retryOffer), so that one slow subscriber holds
+     * back neither the other producers nor a subscriber calling
+     * into the publisher. Each retried offer re-takes the lock, and
+     * producers waiting on the same subscription take turns on its
+     * spaceLock, since a subscription records a single waiter.
+     * The consumer side is a task that
+     * runs in the executor only while there is something to do:
+     * items and demand, or a pending control signal. Bit ACTIVE in
+     * field ctl is owned by whichever thread will run (or is running)
+     * the consumer; other threads set a signal bit together with
+     * ACTIVE and start a task only if ACTIVE was clear. A consumer
+     * that runs out of work clears ACTIVE and then rechecks for items
+     * and demand, reacquiring ACTIVE if there are some, so that a
+     * producer or requester that saw ACTIVE set is never ignored.
+     *
+     * Positions are int counters, masked by the (power of two) array
+     * length, so that tail - head is the number of buffered items
+     * even across overflow. The producer publishes each item with a
+     * volatile write of tail. The consumer nulls out each slot and
+     * advances head with an ordered write; a producer blocked for
+     * space sets WAITING in ctl, which the consumer checks after
+     * every item and again, by CAS, before going idle.
+     *
+     * The producer grows a full array up to the maximum capacity by
+     * copying it and publishing the copy before any new item. A
+     * consumer still reading the old array finds the items it
+     * expects there, but slots it clears in the old array stay set
+     * in the new one until overwritten, so a grown buffer may retain
+     * up to its former capacity of consumed items for a while.
+     *
+     * Consumer tasks are ForkJoinTasks whose exec() never reports
+     * completion, so that one task per subscription can be executed
+     * over and over.
+     */
+
+    /**
+     * The largest possible power of two array size.
+     */
+    static final int BUFFER_CAPACITY_LIMIT = 1 << 30;
+
+    /**
+     * Initial buffer capacity used when maxBufferCapacity is
+     * greater. Must be a power of two.
+     */
+    static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * Round capacity to power of 2, most likely to be used with the
+     * default buffer size.
+     */
+    static final int roundCapacity(int cap) {
+        int n = cap - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n <= 0) ? 1 : // at least 1
+                (n >= BUFFER_CAPACITY_LIMIT) ? BUFFER_CAPACITY_LIMIT : n + 1;
+    }
+
+    /**
+     * Default executor -- ForkJoinPool.commonPool() unless it cannot
+     * support parallelism.
+     */
+    private static final Executor ASYNC_POOL =
+            (ForkJoinPool.getCommonPoolParallelism() > 1) ?
+                    ForkJoinPool.commonPool() :
+                    new CompletableFuture.ThreadPerTaskExecutor();
+
+    /**
+     * Clients (BufferedSubscriptions) are maintained in a linked list
+     * (via their "next" fields), guarded by lock.
+     */
+    BufferedSubscription<T> clients;
+
+    /**
+     * Serializes producers and guards clients.
+     */
+    final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Run status, updated only within locks
+     */
+    volatile boolean closed;
+    /**
+     * If non-null, the exception in closeExceptionally
+     */
+    volatile Throwable closedException;
+
+    // Parameters for constructing BufferedSubscriptions
+    final Executor executor;
+    final BiConsumer<? super Subscriber<? super T>, ? super Throwable> onNextHandler;
+    final int maxBufferCapacity;
+
+    /**
+     * Creates a new SubmissionPublisher using the given Executor for
+     * async delivery to subscribers, with the given maximum buffer size
+     * for each subscriber, and, if non-null, the given handler invoked
+     * when any Subscriber throws an exception in method {@link
+     * Flow.Subscriber#onNext(Object) onNext}.
+     * 创建一个新的SubmissionPublisher，使用给定的Executor向订阅者异步交付，每个订阅者使用给定的最大缓冲区大小，
+     * 并且（如果非null）在任何Subscriber的{@link Flow.Subscriber#onNext(Object) onNext}方法抛出异常时调用给定的处理器。
+     *
+     * @param executor          the executor to use for async delivery,
+     *                          supporting creation of at least one independent thread
+     * @param maxBufferCapacity the maximum capacity for each
+     *                          subscriber's buffer (the enforced capacity may be rounded up to
+     *                          the nearest power of two and/or bounded by the largest value
+     *                          supported by this implementation; method {@link #getMaxBufferCapacity}
+     *                          returns the actual value)
+     * @param handler           if non-null, procedure to invoke upon exception
+     *                          thrown in method {@code onNext}
+     * @throws NullPointerException     if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity not
+     *                                  positive
+     */
+    public SubmissionPublisher(Executor executor, int maxBufferCapacity,
+                               BiConsumer<? super Subscriber<? super T>, ? super Throwable> handler) {
+        if (executor == null)
+            throw new NullPointerException();
+        if (maxBufferCapacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.executor = (executor == ForkJoinPool.commonPool()) ?
+                ASYNC_POOL : executor;
+        this.onNextHandler = handler;
+        this.maxBufferCapacity = roundCapacity(maxBufferCapacity);
+    }
+
+    /**
+     * Creates a new SubmissionPublisher using the given Executor for
+     * async delivery to subscribers, with the given maximum buffer size
+     * for each subscriber, and no handler for Subscriber exceptions in
+     * method {@link Flow.Subscriber#onNext(Object) onNext}.
+     * 创建一个新的SubmissionPublisher，使用给定的Executor向订阅者异步交付，每个订阅者使用给定的最大缓冲区大小，
+     * 并且没有针对Subscriber的{@link Flow.Subscriber#onNext(Object) onNext}方法异常的处理器。
+     *
+     * @param executor          the executor to use for async delivery,
+     *                          supporting creation of at least one independent thread
+     * @param maxBufferCapacity the maximum capacity for each
+     *                          subscriber's buffer (the enforced capacity may be rounded up to
+     *                          the nearest power of two and/or bounded by the largest value
+     *                          supported by this implementation; method {@link #getMaxBufferCapacity}
+     *                          returns the actual value)
+     * @throws NullPointerException     if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity not
+     *                                  positive
+     */
+    public SubmissionPublisher(Executor executor, int maxBufferCapacity) {
+        this(executor, maxBufferCapacity, null);
+    }
+
+    /**
+     * Creates a new SubmissionPublisher using the {@link
+     * ForkJoinPool#commonPool()} for async delivery to subscribers
+     * (unless it does not support a parallelism level of at least two,
+     * in which case, a new Thread is created to run each task), with
+     * maximum buffer capacity of {@link Flow#defaultBufferSize}, and no
+     * handler for Subscriber exceptions in method {@link
+     * Flow.Subscriber#onNext(Object) onNext}.
+     * 创建一个新的SubmissionPublisher，使用{@link ForkJoinPool#commonPool()}向订阅者异步交付
+     * （除非它不支持至少为2的并行度，这种情况下为每个任务创建一个新线程），最大缓冲区容量为{@link Flow#defaultBufferSize}，
+     * 并且没有针对Subscriber的{@link Flow.Subscriber#onNext(Object) onNext}方法异常的处理器。
+     */
+    public SubmissionPublisher() {
+        this(ASYNC_POOL, Flow.defaultBufferSize(), null);
+    }
+
+    /**
+     * Adds the given Subscriber unless already subscribed.  If already
+     * subscribed, the Subscriber's {@link
+     * Flow.Subscriber#onError(Throwable) onError} method is invoked on
+     * the existing subscription with an {@link IllegalStateException}.
+     * Otherwise, upon success, the Subscriber's {@link
+     * Flow.Subscriber#onSubscribe onSubscribe} method is invoked
+     * asynchronously with a new {@link Flow.Subscription}.  If {@link
+     * Flow.Subscriber#onSubscribe onSubscribe} throws an exception, the
+     * subscription is cancelled. Otherwise, if this SubmissionPublisher
+     * was closed exceptionally, then the subscriber's {@link
+     * Flow.Subscriber#onError onError} method is invoked with the
+     * corresponding exception, or if closed without exception, the
+     * subscriber's {@link Flow.Subscriber#onComplete() onComplete}
+     * method is invoked.  Subscribers may enable receiving items by
+     * invoking the {@link Flow.Subscription#request(long) request}
+     * method of the new Subscription, and may unsubscribe by invoking
+     * its {@link Flow.Subscription#cancel() cancel} method.
+     * 除非已经订阅，否则添加给定的Subscriber。如果已经订阅，则在现有订阅上以{@link IllegalStateException}
+     * 调用该Subscriber的{@link Flow.Subscriber#onError(Throwable) onError}方法。
+     * 否则，成功时以一个新的{@link Flow.Subscription}异步调用Subscriber的{@link Flow.Subscriber#onSubscribe onSubscribe}方法。
+     * 如果{@link Flow.Subscriber#onSubscribe onSubscribe}抛出异常，订阅会被取消。否则，如果此SubmissionPublisher
+     * 已异常关闭，则以相应的异常调用订阅者的{@link Flow.Subscriber#onError onError}方法；如果正常关闭，
+     * 则调用订阅者的{@link Flow.Subscriber#onComplete() onComplete}方法。订阅者可以通过调用新Subscription的
+     * {@link Flow.Subscription#request(long) request}方法来开始接收元素，并可以通过调用其{@link Flow.Subscription#cancel() cancel}方法来取消订阅。
+     *
+     * @param subscriber the subscriber
+     * @throws NullPointerException if subscriber is null
+     */
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        int max = maxBufferCapacity;
+        Object[] array = new Object[(max < INITIAL_CAPACITY) ? max : INITIAL_CAPACITY];
+        BufferedSubscription<T> subscription =
+                new BufferedSubscription<T>(subscriber, executor, onNextHandler,
+                        array, max);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (BufferedSubscription<T> b = clients, pred = null; ; ) {
+                if (b == null) {
+                    Throwable ex;
+                    subscription.onSubscribe();
+                    if ((ex = closedException) != null)
+                        subscription.onError(ex);
+                    else if (closed)
+                        subscription.onComplete();
+                    else if (pred == null)
+                        clients = subscription;
+                    else
+                        pred.next = subscription;
+                    break;
+                }
+                BufferedSubscription<T> next = b.next;
+                if (b.isClosed()) {   // remove
+                    b.next = null;    // detach
+                    if (pred == null)
+                        clients = next;
+                    else
+                        pred.next = next;
+                } else if (subscriber.equals(b.subscriber)) {
+                    b.onError(new IllegalStateException("Duplicate subscribe"));
+                    break;
+                } else
+                    pred = b;
+                b = next;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Common implementation for all three forms of submit and offer.
+     * Acts as submit if nanos == Long.MAX_VALUE, else offer.
+     */
+    private int doOffer(T item, long nanos,
+                        BiPredicate<? super Subscriber<? super T>, ? super T> onDrop) {
+        if (item == null) throw new NullPointerException();
+        int lag = 0;
+        boolean complete;
+        List<BufferedSubscription<T>> retries = null;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            BufferedSubscription<T> b = clients, pred = null;
+            if (!(complete = closed)) {
+                while (b != null) {
+                    BufferedSubscription<T> next = b.next;
+                    int stat = b.offer(item);
+                    if (stat == 0) { // saturated: retry after unlocking
+                        if (retries == null)
+                            retries = new ArrayList<BufferedSubscription<T>>();
+                        retries.add(b);
+                    } else if (stat < 0) { // closed or cancelled: remove
+                        b.next = null;
+                        if (pred == null)
+                            clients = next;
+                        else
+                            pred.next = next;
+                        b = next;
+                        continue;
+                    } else if (stat > lag)
+                        lag = stat;
+                    pred = b;
+                    b = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (complete)
+            throw new IllegalStateException("Closed");
+        else if (retries == null)
+            return lag;
+        else
+            return retryOffer(item, nanos, onDrop, retries, lag);
+    }
+
+    /**
+     * Waits for space in the given saturated subscriptions, and
+     * invokes onDrop for those still saturated, without holding lock,
+     * which is re-taken only for each offer and to unlink closed
+     * subscriptions.
+     *
+     * @return the (negative) number of drops, if any, else the lag
+     */
+    private int retryOffer(T item, long nanos,
+                           BiPredicate<? super Subscriber<? super T>, ? super T> onDrop,
+                           List<BufferedSubscription<T>> retries, int lag) {
+        long deadline = 0L; // untimed
+        if (nanos != Long.MAX_VALUE && nanos > 0L &&
+                (deadline = System.nanoTime() + nanos) == 0L)
+            deadline = 1L;  // avoid untimed sentinel
+        int drops = 0;
+        boolean cleanMe = false;
+        for (BufferedSubscription<T> b : retries) {
+            int stat = 0;
+            while (stat == 0 && nanos > 0L && b.awaitSpace(deadline))
+                stat = lockedOffer(b, item);
+            if (stat == 0 && onDrop != null && onDrop.test(b.subscriber, item))
+                stat = lockedOffer(b, item); // retry once
+            if (stat == 0)
+                ++drops;
+            else if (stat < 0)
+                cleanMe = true;
+            else if (stat > lag)
+                lag = stat;
+        }
+        if (cleanMe) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                cleanAndCount();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return (drops > 0) ? -drops : lag;
+    }
+
+    /**
+     * Offers item to b holding lock, so that b's buffer keeps a
+     * single producer at a time.
+     */
+    private int lockedOffer(BufferedSubscription<T> b, T item) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return b.offer(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the given item to each current subscriber by
+     * asynchronously invoking its {@link Flow.Subscriber#onNext(Object)
+     * onNext} method, blocking uninterruptibly while resources for any
+     * subscriber are unavailable. This method returns an estimate of
+     * the maximum lag (number of items submitted but not yet consumed)
+     * among all current subscribers. This value is at least one
+     * (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     * 通过异步调用每个当前订阅者的{@link Flow.Subscriber#onNext(Object) onNext}方法将给定元素发布给它，
+     * 在任何订阅者的资源不可用时不可中断地阻塞。此方法返回所有当前订阅者中最大滞后（已提交但尚未消费的元素数量）的估计值。
+     * 如果有任何订阅者，该值至少为1（计入此次提交的元素），否则为0。
+     *
+     * <p>If the Executor for this publisher throws a
+     * RejectedExecutionException (or any other RuntimeException or
+     * Error) when attempting to asynchronously notify subscribers,
+     * then the subscriber's {@link Flow.Subscriber#onError onError}
+     * method is invoked with this exception in the calling thread.
+     * 如果此发布者的Executor在尝试异步通知订阅者时抛出RejectedExecutionException（或任何其他RuntimeException或Error），
+     * 则在调用线程中以该异常调用订阅者的{@link Flow.Subscriber#onError onError}方法。
+     *
+     * @param item the (non-null) item to publish
+     * @return the estimated maximum lag among subscribers
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException  if item is null
+     */
+    public int submit(T item) {
+        return doOffer(item, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Publishes the given item, if possible, to each current subscriber
+     * by asynchronously invoking its {@link
+     * Flow.Subscriber#onNext(Object) onNext} method. The item may be
+     * dropped by one or more subscribers if resource limits are
+     * exceeded, in which case the given handler (if non-null) is
+     * invoked, and if it returns true, retried once.  The handler is
+     * invoked without holding the publisher's lock, so other threads
+     * may publish meanwhile.  Unless recovery is assured, options are
+     * usually limited to logging the error and/or issuing an {@link
+     * Flow.Subscriber#onError(Throwable) onError} signal to the
+     * subscriber.
+     * 如果可能，通过异步调用每个当前订阅者的{@link Flow.Subscriber#onNext(Object) onNext}方法将给定元素发布给它。
+     * 如果超出资源限制，一个或多个订阅者可能丢弃该元素，这种情况下调用给定的处理器（如果非null），
+     * 如果它返回true，则重试一次。调用处理器时不持有发布者的锁，因此其他线程在此期间仍可以发布。
+     * 除非能够确保恢复，否则通常只能记录错误和/或向订阅者发出{@link Flow.Subscriber#onError(Throwable) onError}信号。
+     *
+     * <p>This method returns a status indicator: If negative, it
+     * represents the (negative) number of drops (failed attempts to
+     * issue the item to a subscriber). Otherwise it is an estimate of
+     * the maximum lag (number of items submitted but not yet
+     * consumed) among all current subscribers. This value is at least
+     * one (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     * 此方法返回一个状态指示值：如果为负，它表示丢弃次数（向订阅者发布元素失败的尝试次数）的相反数。
+     * 否则它是所有当前订阅者中最大滞后（已提交但尚未消费的元素数量）的估计值。
+     * 如果有任何订阅者，该值至少为1（计入此次提交的元素），否则为0。
+     *
+     * @param item   the (non-null) item to publish
+     * @param onDrop if non-null, the handler invoked upon a drop to a
+     *               subscriber, with arguments of the subscriber and item; if it
+     *               returns true, an offer is re-attempted (once)
+     * @return if negative, the (negative) number of drops; otherwise
+     * an estimate of maximum lag
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException  if item is null
+     */
+    public int offer(T item,
+                     BiPredicate<? super Subscriber<? super T>, ? super T> onDrop) {
+        return doOffer(item, 0L, onDrop);
+    }
+
+    /**
+     * Publishes the given item, if possible, to each current subscriber
+     * by asynchronously invoking its {@link
+     * Flow.Subscriber#onNext(Object) onNext} method, blocking while
+     * resources for any subscription are unavailable, up to the
+     * specified timeout or until the caller thread is interrupted, at
+     * which point the given handler (if non-null) is invoked, and if it
+     * returns true, retried once. (The drop handler may distinguish
+     * timeouts from interrupts by checking whether the current thread
+     * is interrupted.)  Neither the wait nor the handler holds the
+     * publisher's lock, so other threads may publish meanwhile.
+     * 如果可能，通过异步调用每个当前订阅者的{@link Flow.Subscriber#onNext(Object) onNext}方法将给定元素发布给它，
+     * 在任何订阅的资源不可用时阻塞，直到指定的超时或调用线程被中断，此时调用给定的处理器（如果非null），
+     * 如果它返回true，则重试一次。（丢弃处理器可以通过检查当前线程是否被中断来区分超时和中断。）
+     * 等待和调用处理器时都不持有发布者的锁，因此其他线程在此期间仍可以发布。
+     *
+     * <p>This method returns a status indicator: If negative, it
+     * represents the (negative) number of drops (failed attempts to
+     * issue the item to a subscriber). Otherwise it is an estimate of
+     * the maximum lag (number of items submitted but not yet
+     * consumed) among all current subscribers. This value is at least
+     * one (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     * 此方法返回一个状态指示值：如果为负，它表示丢弃次数的相反数。否则它是所有当前订阅者中最大滞后的估计值。
+     *
+     * @param item    the (non-null) item to publish
+     * @param timeout how long to wait for resources for any subscriber
+     *                before giving up, in units of {@code unit}
+     * @param unit    a {@code TimeUnit} determining how to interpret the
+     *                {@code timeout} parameter
+     * @param onDrop  if non-null, the handler invoked upon a drop to a
+     *                subscriber, with arguments of the subscriber and item; if it
+     *                returns true, an offer is re-attempted (once)
+     * @return if negative, the (negative) number of drops; otherwise
+     * an estimate of maximum lag
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException  if item is null
+     */
+    public int offer(T item, long timeout, TimeUnit unit,
+                     BiPredicate<? super Subscriber<? super T>, ? super T> onDrop) {
+        long nanos = unit.toNanos(timeout);
+        // distinguishes from untimed (only wrt interrupt policy)
+        if (nanos == Long.MAX_VALUE) --nanos;
+        return doOffer(item, nanos, onDrop);
+    }
+
+    /**
+     * Unless already closed, issues {@link
+     * Flow.Subscriber#onComplete() onComplete} signals to current
+     * subscribers, and disallows subsequent attempts to publish.
+     * Upon return, this method does <em>NOT</em> guarantee that all
+     * subscribers have yet completed.
+     * 除非已经关闭，否则向当前订阅者发出{@link Flow.Subscriber#onComplete() onComplete}信号，并禁止后续的发布尝试。
+     * 返回时，此方法<em>不</em>保证所有订阅者都已完成。
+     */
+    public void close() {
+        if (!closed) {
+            BufferedSubscription<T> b;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                b = clients;
+                clients = null;
+                closed = true;
+            } finally {
+                lock.unlock();
+            }
+            while (b != null) {
+                BufferedSubscription<T> next = b.next;
+                b.next = null;
+                b.onComplete();
+                b = next;
+            }
+        }
+    }
+
+    /**
+     * Unless already closed, issues {@link
+     * Flow.Subscriber#onError(Throwable) onError} signals to current
+     * subscribers with the given error, and disallows subsequent
+     * attempts to publish.  Future subscribers also receive the given
+     * error. Upon return, this method does <em>NOT</em> guarantee
+     * that all subscribers have yet completed.
+     * 除非已经关闭，否则以给定的错误向当前订阅者发出{@link Flow.Subscriber#onError(Throwable) onError}信号，
+     * 并禁止后续的发布尝试。将来的订阅者也会收到给定的错误。返回时，此方法<em>不</em>保证所有订阅者都已完成。
+     *
+     * @param error the {@code onError} argument sent to subscribers
+     * @throws NullPointerException if error is null
+     */
+    public void closeExceptionally(Throwable error) {
+        if (error == null)
+            throw new NullPointerException();
+        if (!closed) {
+            BufferedSubscription<T> b = null;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (!closed) {
+                    b = clients;
+                    clients = null;
+                    closedException = error;
+                    closed = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            while (b != null) {
+                BufferedSubscription<T> next = b.next;
+                b.next = null;
+                b.onError(error);
+                b = next;
+            }
+        }
+    }
+
+    /**
+     * Returns true if this publisher is not accepting submissions.
+     * 如果此发布者不再接受提交，则返回true。
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the exception associated with {@link
+     * #closeExceptionally(Throwable) closeExceptionally}, or null if
+     * not closed or if closed normally.
+     * 返回与{@link #closeExceptionally(Throwable) closeExceptionally}关联的异常，如果未关闭或正常关闭则返回null。
+     *
+     * @return the exception, or null if none
+     */
+    public Throwable getClosedException() {
+        return closedException;
+    }
+
+    /**
+     * Returns true if this publisher has any subscribers.
+     * 如果此发布者有任何订阅者，则返回true。
+     *
+     * @return true if this publisher has any subscribers
+     */
+    public boolean hasSubscribers() {
+        boolean nonEmpty = false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (BufferedSubscription<T> b = clients; b != null; ) {
+                BufferedSubscription<T> next = b.next;
+                if (b.isClosed()) {
+                    b.next = null;
+                    b = clients = next;
+                } else {
+                    nonEmpty = true;
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     * 返回当前订阅者的数量。
+     *
+     * @return the number of current subscribers
+     */
+    public int getNumberOfSubscribers() {
+        int n;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            n = cleanAndCount();
+        } finally {
+            lock.unlock();
+        }
+        return n;
+    }
+
+    /**
+     * Returns the Executor used for asynchronous delivery.
+     * 返回用于异步交付的Executor。
+     *
+     * @return the Executor used for asynchronous delivery
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the maximum per-subscriber buffer capacity.
+     * 返回每个订阅者的最大缓冲区容量。
+     *
+     * @return the maximum per-subscriber buffer capacity
+     */
+    public int getMaxBufferCapacity() {
+        return maxBufferCapacity;
+    }
+
+    /**
+     * Returns a list of current subscribers for monitoring and
+     * tracking purposes, not for invoking {@link Flow.Subscriber}
+     * methods on the subscribers.
+     * 返回当前订阅者的列表，用于监视和跟踪，而不是用于调用订阅者的{@link Flow.Subscriber}方法。
+     *
+     * @return list of current subscribers
+     */
+    public List<Subscriber<? super T>> getSubscribers() {
+        ArrayList<Subscriber<? super T>> subs = new ArrayList<>();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            BufferedSubscription<T> pred = null, next;
+            for (BufferedSubscription<T> b = clients; b != null; b = next) {
+                next = b.next;
+                if (b.isClosed()) {
+                    b.next = null;
+                    if (pred == null)
+                        clients = next;
+                    else
+                        pred.next = next;
+                } else {
+                    subs.add(b.subscriber);
+                    pred = b;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return subs;
+    }
+
+    /**
+     * Returns true if the given Subscriber is currently subscribed.
+     * 如果给定的Subscriber当前已订阅，则返回true。
+     *
+     * @param subscriber the subscriber
+     * @return true if currently subscribed
+     * @throws NullPointerException if subscriber is null
+     */
+    public boolean isSubscribed(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        if (!closed) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                BufferedSubscription<T> pred = null, next;
+                for (BufferedSubscription<T> b = clients; b != null; b = next) {
+                    next = b.next;
+                    if (b.isClosed()) {
+                        b.next = null;
+                        if (pred == null)
+                            clients = next;
+                        else
+                            pred.next = next;
+                    } else if (subscriber.equals(b.subscriber))
+                        return true;
+                    else
+                        pred = b;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an estimate of the minimum number of items requested
+     * (via {@link Flow.Subscription#request(long) request}) but not
+     * yet produced, among all current subscribers.
+     * 返回所有当前订阅者中已请求（通过{@link Flow.Subscription#request(long) request}）但尚未生产的元素数量的最小估计值。
+     *
+     * @return the estimate, or zero if no subscribers
+     */
+    public long estimateMinimumDemand() {
+        long min = Long.MAX_VALUE;
+        boolean nonEmpty = false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            BufferedSubscription<T> pred = null, next;
+            for (BufferedSubscription<T> b = clients; b != null; b = next) {
+                int n;
+                long d;
+                next = b.next;
+                if ((n = b.estimateLag()) < 0) {
+                    b.next = null;
+                    if (pred == null)
+                        clients = next;
+                    else
+                        pred.next = next;
+                } else {
+                    if ((d = b.demand - n) < min)
+                        min = d;
+                    nonEmpty = true;
+                    pred = b;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return nonEmpty ? min : 0;
+    }
+
+    /**
+     * Returns an estimate of the maximum number of items produced but
+     * not yet consumed among all current subscribers.
+     * 返回所有当前订阅者中已生产但尚未消费的元素数量的最大估计值。
+     *
+     * @return the estimate
+     */
+    public int estimateMaximumLag() {
+        int max = 0;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            BufferedSubscription<T> pred = null, next;
+            for (BufferedSubscription<T> b = clients; b != null; b = next) {
+                int n;
+                next = b.next;
+                if ((n = b.estimateLag()) < 0) {
+                    b.next = null;
+                    if (pred == null)
+                        clients = next;
+                    else
+                        pred.next = next;
+                } else {
+                    if (n > max)
+                        max = n;
+                    pred = b;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return max;
+    }
+
+    /**
+     * Processes all published items using the given Consumer function.
+     * Returns a CompletableFuture that is completed normally when this
+     * publisher signals {@link Flow.Subscriber#onComplete()
+     * onComplete}, or completed exceptionally upon any error, or an
+     * exception is thrown by the Consumer, or the returned
+     * CompletableFuture is cancelled, in which case no further items
+     * are processed.
+     * 使用给定的Consumer函数处理所有已发布的元素。返回一个CompletableFuture，它在此发布者发出
+     * {@link Flow.Subscriber#onComplete() onComplete}信号时正常完成，或者在发生任何错误、Consumer抛出异常时异常完成，
+     * 或者返回的CompletableFuture被取消（此时不再处理后续元素）。
+     *
+     * @param consumer the function applied to each onNext item
+     * @return a CompletableFuture that is completed normally
+     * when the publisher signals onComplete, and exceptionally
+     * upon any error or cancellation
+     * @throws NullPointerException if consumer is null
+     */
+    public CompletableFuture<Void> consume(Consumer<? super T> consumer) {
+        if (consumer == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> status = new CompletableFuture<>();
+        subscribe(new ConsumerSubscriber<T>(status, consumer));
+        return status;
+    }
+
+    /**
+     * Unlinks closed subscriptions and returns the number of open
+     * ones. Call only when holding lock.
+     */
+    private int cleanAndCount() {
+        int count = 0;
+        BufferedSubscription<T> pred = null, next;
+        for (BufferedSubscription<T> b = clients; b != null; b = next) {
+            next = b.next;
+            if (b.isClosed()) {
+                b.next = null;
+                if (pred == null)
+                    clients = next;
+                else
+                    pred.next = next;
+            } else {
+                pred = b;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Subscriber for method consume
+     */
+    static final class ConsumerSubscriber<T> implements Subscriber<T> {
+        final CompletableFuture<Void> status;
+        final Consumer<? super T> consumer;
+        Subscription subscription;
+
+        ConsumerSubscriber(CompletableFuture<Void> status,
+                           Consumer<? super T> consumer) {
+            this.status = status;
+            this.consumer = consumer;
+        }
+
+        public final void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            status.whenComplete((v, e) -> subscription.cancel());
+            if (!status.isDone())
+                subscription.request(Long.MAX_VALUE);
+        }
+
+        public final void onError(Throwable ex) {
+            status.completeExceptionally(ex);
+        }
+
+        public final void onComplete() {
+            status.complete(null);
+        }
+
+        public final void onNext(T item) {
+            try {
+                consumer.accept(item);
+            } catch (Throwable ex) {
+                subscription.cancel();
+                status.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * A task for consuming buffer items and signals, created and
+     * executed whenever they become available. Since exec() never
+     * reports completion, the same task is executed again each time.
+     */
+    @SuppressWarnings("serial")
+    static final class ConsumerTask<T> extends ForkJoinTask<Void>
+            implements Runnable, CompletableFuture.AsynchronousCompletionTask {
+        final BufferedSubscription<T> consumer;
+
+        ConsumerTask(BufferedSubscription<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        public final Void getRawResult() {
+            return null;
+        }
+
+        public final void setRawResult(Void v) {
+        }
+
+        public final boolean exec() {
+            consumer.consume();
+            return false;
+        }
+
+        public final void run() {
+            consumer.consume();
+        }
+    }
+
+    /**
+     * A bounded (ring) buffer with integrated control to start a
+     * consumer task whenever items are available.
+     */
+    static final class BufferedSubscription<T>
+            implements Subscription, ForkJoinPool.ManagedBlocker {
+        volatile int head;                   // next position to take
+        volatile int tail;                   // next position to put
+        volatile long demand;                // # unfilled requests
+        volatile int ctl;                    // run status flags
+        volatile Object[] array;             // buffer; null when closed
+        final int maxCapacity;               // max buffer size
+        final Executor executor;             // null if disabled
+        Subscriber<? super T> subscriber;    // null if disabled
+        BiConsumer<? super Subscriber<? super T>, ? super Throwable> onNextHandler;
+        Throwable pendingError;              // holds until onError issued
+        ConsumerTask<T> taskref;             // reused consumer task
+        volatile Thread waiter;              // blocked producer thread
+        long deadline;                       // blocked producer timeout, 0 if untimed
+        boolean timedOut, interrupted;       // blocked producer status
+        BufferedSubscription<T> next;        // used only by publisher
+        final ReentrantLock spaceLock = new ReentrantLock(); // held by awaitSpace
+
+        // ctl bit values
+        static final int ACTIVE    = 0x01;   // consumer task owned
+        static final int SUBSCRIBE = 0x02;   // onSubscribe pending
+        static final int COMPLETE  = 0x04;   // onComplete pending when drained
+        static final int ERROR     = 0x08;   // onError pending
+        static final int CANCELLED = 0x10;   // cancel pending
+        static final int CLOSED    = 0x20;   // terminated
+        static final int WAITING   = 0x40;   // producer blocked for space
+
+        BufferedSubscription(Subscriber<? super T> subscriber,
+                             Executor executor,
+                             BiConsumer<? super Subscriber<? super T>,
+                                     ? super Throwable> onNextHandler,
+                             Object[] array,
+                             int maxBufferCapacity) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.onNextHandler = onNextHandler;
+            this.array = array;
+            this.maxCapacity = maxBufferCapacity;
+        }
+
+        final boolean casCtl(int cmp, int val) {
+            return U.compareAndSwapInt(this, CTL, cmp, val);
+        }
+
+        final boolean isClosed() {
+            return (ctl & CLOSED) != 0;
+        }
+
+        /**
+         * Returns estimated number of buffered items, or negative if
+         * closed.
+         */
+        final int estimateLag() {
+            int c = ctl, n = tail - head;
+            return ((c & CLOSED) != 0) ? -1 : (n < 0) ? 0 : n;
+        }
+
+        // Methods for submitting items
+
+        /**
+         * Tries to add item and start consumer task if necessary.
+         *
+         * @return negative if closed, 0 if saturated, else estimated lag
+         */
+        final int offer(T item) {
+            Object[] a;
+            int c = ctl, t = tail, size = t - head, n;
+            if ((c & (CLOSED | CANCELLED | ERROR)) != 0 || (a = array) == null)
+                return -1;
+            if (size >= (n = a.length)) {
+                if (n >= maxCapacity)
+                    return 0;
+                a = growArray(a, t - size, t);
+                n = a.length;
+            }
+            a[t & (n - 1)] = item;
+            tail = t + 1;
+            if ((ctl & ACTIVE) == 0 && demand != 0L)
+                startOnSignal(0);
+            return size + 1;
+        }
+
+        /**
+         * Returns a copy of the array holding items h (inclusive)
+         * through t (exclusive), at twice the capacity, after
+         * publishing it.
+         */
+        private Object[] growArray(Object[] a, int h, int t) {
+            int n = a.length, m = n << 1;
+            Object[] b = new Object[m];
+            for (int i = h; i != t; ++i)
+                b[i & (m - 1)] = a[i & (n - 1)];
+            array = b;
+            return b;
+        }
+
+        /**
+         * Blocks until there may be space, the deadline (if nonzero)
+         * passes, or the subscription closes. Returns false if the
+         * caller should give up. Producers waiting at the same time
+         * take turns, holding spaceLock.
+         */
+        final boolean awaitSpace(long deadline) {
+            final ReentrantLock spaceLock = this.spaceLock;
+            if (deadline == 0L)
+                spaceLock.lock();
+            else {
+                try {
+                    if (!spaceLock.tryLock(deadline - System.nanoTime(),
+                                           java.util.concurrent.TimeUnit.NANOSECONDS))
+                        return false;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            try {
+                return awaitSpaceLocked(deadline);
+            } finally {
+                spaceLock.unlock();
+            }
+        }
+
+        /**
+         * Body of awaitSpace. Call only when holding spaceLock.
+         */
+        private boolean awaitSpaceLocked(long deadline) {
+            int c;
+            do {
+                if (((c = ctl) & CLOSED) != 0)
+                    return true; // offer will report closed
+            } while (!casCtl(c, c | WAITING));
+            this.deadline = deadline;
+            timedOut = false;
+            waiter = Thread.currentThread();
+            try {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+            waiter = null;
+            if (interrupted) {
+                interrupted = false;
+                Thread.currentThread().interrupt();
+                if (deadline != 0L)
+                    return false;
+            }
+            return !timedOut;
+        }
+
+        public final boolean isReleasable() {
+            Object[] a;
+            return (ctl & (WAITING | CLOSED)) != WAITING ||
+                    (a = array) == null || tail - head < a.length ||
+                    timedOut || (interrupted && deadline != 0L);
+        }
+
+        public final boolean block() {
+            long d = deadline;
+            while (!isReleasable()) {
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    if (d != 0L)
+                        break;
+                } else if (d == 0L)
+                    LockSupport.park(this);
+                else {
+                    long nanos = d - System.nanoTime();
+                    if (nanos <= 0L) {
+                        timedOut = true;
+                        break;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Clears WAITING and wakes up the blocked producer, if any.
+         */
+        final void signalWaiter() {
+            int c;
+            Thread w;
+            while (((c = ctl) & WAITING) != 0) {
+                if (casCtl(c, c & ~WAITING)) {
+                    if ((w = waiter) != null)
+                        LockSupport.unpark(w);
+                    break;
+                }
+            }
+        }
+
+        // Signals from publisher and subscriber
+
+        /**
+         * Sets the given control bits, starting task if not running
+         * or closed.
+         */
+        final void startOnSignal(int bits) {
+            int c;
+            for (; ; ) {
+                if (((c = ctl) & CLOSED) != 0)
+                    return;
+                if (casCtl(c, c | bits | ACTIVE)) {
+                    if ((c & ACTIVE) == 0)
+                        tryStart();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Runs the consumer task, which this thread now owns. If the
+         * executor rejects it, closes with the rejection in the
+         * current thread.
+         */
+        final void tryStart() {
+            ConsumerTask<T> task;
+            if ((task = taskref) == null)
+                taskref = task = new ConsumerTask<T>(this);
+            try {
+                executor.execute(task);
+            } catch (RuntimeException | Error ex) {
+                int c;
+                if (pendingError == null)
+                    pendingError = ex;
+                do {
+                } while (!casCtl(c = ctl, c | ERROR));
+                consume();
+            }
+        }
+
+        final void onSubscribe() {
+            startOnSignal(SUBSCRIBE);
+        }
+
+        final void onComplete() {
+            startOnSignal(COMPLETE);
+        }
+
+        final void onError(Throwable ex) {
+            if (ex != null && pendingError == null)
+                pendingError = ex;
+            startOnSignal(ERROR);
+        }
+
+        public final void cancel() {
+            startOnSignal(CANCELLED);
+        }
+
+        public final void request(long n) {
+            if (n > 0L) {
+                for (; ; ) {
+                    long p = demand, d = p + n;  // saturate
+                    if (d < p)
+                        d = Long.MAX_VALUE;
+                    if (U.compareAndSwapLong(this, DEMAND, p, d))
+                        break;
+                }
+                if ((ctl & ACTIVE) == 0)
+                    startOnSignal(0);
+            } else
+                onError(new IllegalArgumentException(
+                        "non-positive subscription request"));
+        }
+
+        // Consumer methods
+
+        /**
+         * Consumer loop, called from ConsumerTask, or indirectly
+         * when the executor rejected it.
+         */
+        final void consume() {
+            Subscriber<? super T> s;
+            if ((s = subscriber) == null)
+                return;
+            for (; ; ) {
+                int c = ctl, h, t;
+                long d;
+                if ((c & CLOSED) != 0)
+                    break;
+                else if ((c & SUBSCRIBE) != 0) {
+                    if (casCtl(c, c & ~SUBSCRIBE)) {
+                        try {
+                            s.onSubscribe(this);
+                        } catch (Throwable ex) {
+                            closeOnError(s, ex);
+                            break;
+                        }
+                    }
+                } else if ((c & ERROR) != 0) {
+                    closeOnError(s, null);
+                    break;
+                } else if ((c & CANCELLED) != 0) {
+                    detach();
+                    break;
+                } else if ((c & WAITING) != 0)
+                    signalWaiter();
+                else if ((h = head) != (t = tail) && (d = demand) != 0L) {
+                    if (!takeItems(s, h, t, d))
+                        break;
+                } else if (h == t && (c & COMPLETE) != 0) {
+                    closeOnComplete(s);
+                    break;
+                } else if (casCtl(c, c & ~ACTIVE)) {
+                    // recheck for items signalled while ACTIVE was set
+                    if (head == tail || demand == 0L || !reacquire())
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Tries to set ACTIVE after clearing it. Fails if another
+         * thread has set it (and so started a new task) or closed.
+         */
+        private boolean reacquire() {
+            int c;
+            for (; ; ) {
+                if (((c = ctl) & (ACTIVE | CLOSED)) != 0)
+                    return false;
+                if (casCtl(c, c | ACTIVE))
+                    return true;
+            }
+        }
+
+        /**
+         * Delivers up to d items starting at h, stopping early when a
+         * control signal arrives. Returns false if closed by an
+         * exception in onNext.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean takeItems(Subscriber<? super T> s, int h, int t, long d) {
+            Object[] a = array;  // read after tail
+            int n = a.length;
+            long taken = 0L;
+            boolean ok = true;
+            while (h != t && taken < d) {
+                int i = h & (n - 1);
+                T x = (T) a[i];
+                a[i] = null;
+                U.putOrderedInt(this, HEAD, ++h);
+                ++taken;
+                try {
+                    s.onNext(x);
+                } catch (Throwable ex) {
+                    handleOnNext(s, ex);
+                    ok = false;
+                    break;
+                }
+                if ((ctl & (WAITING | ERROR | CANCELLED)) != 0)
+                    break;
+            }
+            if (d != Long.MAX_VALUE)
+                U.getAndAddLong(this, DEMAND, -taken);
+            return ok;
+        }
+
+        /**
+         * Processes exception in Subscriber.onNext.
+         */
+        final void handleOnNext(Subscriber<? super T> s, Throwable ex) {
+            BiConsumer<? super Subscriber<? super T>, ? super Throwable> h;
+            try {
+                if ((h = onNextHandler) != null)
+                    h.accept(s, ex);
+            } catch (Throwable ignore) {
+            }
+            closeOnError(s, ex);
+        }
+
+        /**
+         * Sets CLOSED, returning true if this call did, and releases
+         * resources and any blocked producer.
+         */
+        final boolean close() {
+            int c;
+            do {
+                if (((c = ctl) & CLOSED) != 0)
+                    return false;
+            } while (!casCtl(c, (c | CLOSED) & ~WAITING));
+            Thread w;
+            array = null;
+            subscriber = null;
+            onNextHandler = null;
+            if ((w = waiter) != null)
+                LockSupport.unpark(w);
+            return true;
+        }
+
+        /**
+         * Issues subscriber.onComplete.
+         */
+        final void closeOnComplete(Subscriber<? super T> s) {
+            if (close()) {
+                try {
+                    s.onComplete();
+                } catch (Throwable ignore) {
+                }
+            }
+        }
+
+        /**
+         * Issues subscriber.onError, and unblocks producer if needed.
+         */
+        final void closeOnError(Subscriber<? super T> s, Throwable ex) {
+            if (ex == null)
+                ex = pendingError;
+            pendingError = null;
+            if (close() && ex != null) {
+                try {
+                    s.onError(ex);
+                } catch (Throwable ignore) {
+                }
+            }
+        }
+
+        /**
+         * Causes consumer task to exit if active (without reporting
+         * onError unless there is already a pending error), and
+         * disables.
+         */
+        final void detach() {
+            pendingError = null;
+            close();
+        }
+
+        // Unsafe mechanics
+        private static final Unsafe U;
+        private static final long CTL;
+        private static final long HEAD;
+        private static final long DEMAND;
+
+        static {
+            try {
+                U = GetUnsafeFromReflect.getUnsafe();
+                Class<?> k = BufferedSubscription.class;
+                CTL = U.objectFieldOffset(k.getDeclaredField("ctl"));
+                HEAD = U.objectFieldOffset(k.getDeclaredField("head"));
+                DEMAND = U.objectFieldOffset(k.getDeclaredField("demand"));
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+}
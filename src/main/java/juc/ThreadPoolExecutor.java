@@ -38,7 +38,10 @@ import juc.locks.AbstractQueuedSynchronizer;
 import juc.locks.Condition;
 import juc.locks.ReentrantLock;
 import juc.atomic.AtomicInteger;
+import juc.atomic.LongAccumulator;
+import juc.atomic.LongAdder;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**一个ExecutorService，它可能使用几个池化线程中的一个线程，来执行每个提交的任务，通常用Executors工厂方法进行来配置它。
 
@@ -107,6 +110,12 @@ import java.util.*;
  如果任务频繁阻塞（例如，如果它们受I/O限制），则系统为你提供的线程调度时间可能会超出你允许的范围。
  使用小队列通常需要更大的线程池大小，这会使CPU繁忙，但可能会遇到不可接受的调度开销，这也会降低吞吐量。
 
+ 急切增长线程 Eager thread growth.
+ 设置setEagerThreadGrowth（true）后，当corePoolSize或更多线程正在运行、但没有空闲线程可以取走新任务时，
+ Executor会先创建新线程（直到maximumPoolSize），然后才对任务进行排队，就像Tomcat等服务器的执行器那样。
+ 这样即使使用无界队列，线程池也会在负载突发时增长到maximumPoolSize，多出的线程在空闲keepAliveTime后终止；
+ 只有当线程数已达到maximumPoolSize时，任务才会在队列中等待。
+
  被拒绝的任务Rejected tasks
  当Executor关闭时，并且在Executor对最大线程和工作队列容量使用有限范围时，Executor将关闭在方法execute（Runnable）中提交的新任务。
  无论哪种情况，execute方法都会调用其RejectedExecutionHandler的RejectedExecutionHandler.rejectedExecution（Runnable，ThreadPoolExecutor）方法。
@@ -344,32 +353,38 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     private final BlockingQueue<Runnable> workQueue;
 
     /**
-     * Lock held on access to workers set and related bookkeeping.
-     * While we could use a concurrent set of some sort, it turns out
-     * to be generally preferable to use a lock. Among the reasons is
-     * that this serializes interruptIdleWorkers, which avoids
-     * unnecessary interrupt storms, especially during shutdown.
-     * Otherwise exiting threads would concurrently interrupt those
-     * that have not yet interrupted. It also simplifies some of the
-     * associated statistics bookkeeping of largestPoolSize etc. We
-     * also hold mainLock on shutdown and shutdownNow, for the sake of
-     * ensuring workers set is stable while separately checking
-     * permission to interrupt and actually interrupting.
-     * 当访问工作线和相关簿记时候需要持有该锁。
-     * 虽然我们可以使用某种并发集，但事实证明，通常最好使用锁。
-     * 原因之一是它可以对interruptIdleWorkers进行串行化，从而避免了不必要的中断风暴，尤其是在shutdown期间。
+     * Lock held when interrupting workers, on shutdown and
+     * shutdownNow, and on termination. The workers set itself is a
+     * concurrent set, so that pools that start and retire many
+     * threads (for example with allowCoreThreadTimeOut) and callers
+     * of the statistics methods do not serialize on this lock; but
+     * interruptIdleWorkers still holds it, which avoids unnecessary
+     * interrupt storms, especially during shutdown. Otherwise exiting
+     * threads would concurrently interrupt those that have not yet
+     * interrupted.
+     * 在中断工作线程、shutdown和shutdownNow以及终止时持有该锁。
+     * 工作线程集合本身是一个并发集合，因此启动和退出大量线程的线程池（例如设置了allowCoreThreadTimeOut）以及统计方法的调用者不会在此锁上串行化；
+     * 但interruptIdleWorkers仍然持有它，从而避免了不必要的中断风暴，尤其是在shutdown期间。
      * 否则，退出线程将并发中断那些尚未中断的线程。
-     * 它还简化了一些相关数据统计，如largePoolSize等。
-     * 我们还在shutdown和shutdownNow上持有mainLock，以确保在单独检查中断和实际中断的权限时，工作集是稳定的。
      *
+     * <p>Since addWorker does not hold this lock, a worker may be
+     * added while shutdown is interrupting the others. addWorker
+     * therefore publishes the worker in the set before rechecking
+     * the run state: either the interrupting thread sees the new
+     * worker, or addWorker sees the new state and backs out (or, in
+     * SHUTDOWN, starts a thread that will find the new state in
+     * getTask).
+     * 由于addWorker不持有此锁，因此在shutdown中断其他工作线程时可能会添加新的工作线程。
+     * 因此，addWorker在重新检查运行状态之前先将工作线程发布到集合中：要么中断线程看到新的工作线程，
+     * 要么addWorker看到新的状态并回滚（或者在SHUTDOWN状态下，启动一个将在getTask中发现新状态的线程）。
      */
     private final ReentrantLock mainLock = new ReentrantLock();
 
     /**
      * 保存所有池中工作者线程的集合。
-     * 当持有mainLock时才可以被访问
+     * 并发集合，无需持有mainLock即可访问
      */
-    private final HashSet<Worker> workers = new HashSet<Worker>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
 
     /**
      * 支持awaitTermination的等待条件
@@ -377,20 +392,32 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     private final Condition termination = mainLock.newCondition();
 
     /**
-     * Tracks largest attained pool size. Accessed only under
-     * mainLock.
-     * 追踪最大的已获取的池大小。 当持有mainLock时才可以被访问
+     * Tracks largest attained pool size.
+     * 追踪最大的已获取的池大小。
      */
-    private int largestPoolSize;
+    private final AtomicInteger largestPoolSize = new AtomicInteger();
 
     /**
      * Counter for completed tasks. Updated only on termination of
-     * worker threads. Accessed only under mainLock.
+     * worker threads, after clearing the worker's own count, so that
+     * readers that sum this before the workers' counts may miss a
+     * dying worker's tasks but never count them twice.
      * 已完成任务计数器。
-     * 仅在工作线程终止时更新。
-     * 当持有mainLock时才可以被访问
+     * 仅在工作线程终止时、清零该工作线程自己的计数之后更新，
+     * 因此先读取此计数器再累加各工作线程计数的读取者可能会漏掉正在退出的工作线程的任务，但绝不会重复计数。
      */
-    private long completedTaskCount;
+    private final LongAdder completedTaskCount = new LongAdder();
+
+    /**
+     * Largest completed task count seen by getCompletedTaskCount and
+     * getTaskCount, which hides the transient undercounts described
+     * above, so that the task count is never below a completed count
+     * returned earlier.
+     * getCompletedTaskCount和getTaskCount见过的最大已完成任务数，用于掩盖上述暂时的少计，
+     * 使任务总数永远不低于之前返回的已完成任务数。
+     */
+    private final LongAccumulator completedTaskHighWater =
+        new LongAccumulator(Math::max, 0L);
 
     /*
      * All user control parameters are declared as volatiles so that
@@ -435,6 +462,20 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile boolean allowCoreThreadTimeOut;
 
+    /**
+     * If true, execute starts a new thread, up to maximumPoolSize,
+     * rather than queuing a task while no worker is idle or tasks
+     * are already waiting.
+     */
+    private volatile boolean eagerThreadGrowth;
+
+    /**
+     * Number of workers waiting for a task in getTask, counted only
+     * while eagerThreadGrowth is set. Approximate: a worker counts as
+     * idle from just before it polls the queue until the poll returns.
+     */
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
     /**
      * Core pool size is the minimum number of workers to keep alive
      * (and not allow to time out etc) unless allowCoreThreadTimeOut
@@ -448,6 +489,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile int maximumPoolSize;
 
+    /**
+     * Metrics recorded by workers, or null until enableMetrics is
+     * called. Set once, under mainLock.
+     */
+    private volatile Metrics metrics;
+
     /**
      * The default rejected execution handler
      */
@@ -744,6 +791,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
+        Metrics m = metrics;
+        if (m != null)
+            m.recordRejection(isRunning(ctl.get()));
         handler.rejectedExecution(command, this);
     }
 
@@ -782,6 +832,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     taskList.add(r);
             }
         }
+        if (metrics != null)
+            taskList.replaceAll(QueuedTask::unwrap);
         return taskList;
     }
 
@@ -839,26 +891,21 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             w = new Worker(firstTask);
             final Thread t = w.thread;
             if (t != null) {
-                final ReentrantLock mainLock = this.mainLock;
-                mainLock.lock();
-                try {
-                    // Recheck while holding lock.
-                    // Back out on ThreadFactory failure or if
-                    // shut down before lock acquired.
-                    int rs = runStateOf(ctl.get());
-
-                    if (rs < SHUTDOWN ||
-                        (rs == SHUTDOWN && firstTask == null)) {
-                        if (t.isAlive()) // precheck that t is startable
-                            throw new IllegalThreadStateException();
-                        workers.add(w);
-                        int s = workers.size();
-                        if (s > largestPoolSize)
-                            largestPoolSize = s;
-                        workerAdded = true;
-                    }
-                } finally {
-                    mainLock.unlock();
+                if (t.isAlive()) // precheck that t is startable
+                    throw new IllegalThreadStateException();
+                // Publish, then recheck (see mainLock).
+                // Back out on ThreadFactory failure or if
+                // shut down meanwhile.
+                workers.add(w);
+                int rs = runStateOf(ctl.get());
+
+                if (rs < SHUTDOWN ||
+                    (rs == SHUTDOWN && firstTask == null)) {
+                    int s = workers.size(), ls;
+                    while ((ls = largestPoolSize.get()) < s &&
+                           !largestPoolSize.compareAndSet(ls, s))
+                        ;
+                    workerAdded = true;
                 }
                 if (workerAdded) {
                     t.start();
@@ -880,16 +927,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      *   worker was holding up termination
      */
     private void addWorkerFailed(Worker w) {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            if (w != null)
-                workers.remove(w);
-            decrementWorkerCount();
-            tryTerminate();
-        } finally {
-            mainLock.unlock();
-        }
+        if (w != null)
+            workers.remove(w);
+        decrementWorkerCount();
+        tryTerminate();
     }
 
     /**
@@ -909,14 +950,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         if (completedAbruptly) // If abrupt, then workerCount wasn't adjusted
             decrementWorkerCount();
 
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            completedTaskCount += w.completedTasks;
-            workers.remove(w);
-        } finally {
-            mainLock.unlock();
-        }
+        long n = w.completedTasks;
+        w.completedTasks = 0L; // before adding; see completedTaskCount
+        completedTaskCount.add(n);
+        workers.remove(w);
 
         tryTerminate();
 
@@ -985,6 +1022,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 continue;
             }
 
+            boolean idle = eagerThreadGrowth;
+            if (idle)
+                idleWorkers.getAndIncrement();
             try {
                 //正常情况：从workQueue中获取task
                 Runnable r = timed ?
@@ -996,6 +1036,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 timedOut = true;
             } catch (InterruptedException retry) {
                 timedOut = false;
+            } finally {
+                if (idle)
+                    idleWorkers.getAndDecrement();
             }
         }
     }
@@ -1067,12 +1110,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     final void runWorker(Worker w) {
         Thread wt = Thread.currentThread();
         Runnable task = w.firstTask;
+        boolean handedOff = (task != null); // task did not wait in queue
         w.firstTask = null;
         w.unlock(); // allow interrupts
         boolean completedAbruptly = true;
         try {
             while (task != null || (task = getTask()) != null) {
                 w.lock();
+                Metrics m = metrics;
+                if (m != null)
+                    task = m.recordDequeue(task, handedOff);
+                handedOff = false;
                 // If pool is stopping, ensure thread is interrupted;
                 // if not, ensure thread is not interrupted.  This
                 // requires a recheck in second case to deal with
@@ -1089,6 +1137,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     //回调方法beforeExecute
                     beforeExecute(wt, task);
                     Throwable thrown = null;
+                    long start = (m == null) ? 0L : m.recordStart();
                     try {
                         task.run();
                     } catch (RuntimeException x) {
@@ -1098,6 +1147,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     } catch (Throwable x) {
                         thrown = x; throw new Error(x);
                     } finally {
+                        if (m != null)
+                            m.recordEnd(start, thrown);
                         //回调方法afterExecute
                         afterExecute(task, thrown);
                     }
@@ -1293,6 +1344,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
          * 因此，我们重新检查状态，并如果线程池被终止，在必要时回滚入队；或者在没有线程的情况下启动新线程。
          *
          * 3.如果我们无法将任务排队，则尝试添加一个新线程。如果失败，则表明Executor已被关闭或已饱和，因此拒绝该任务。
+         *
+         * 在急切增长模式下，第2步之前，如果没有空闲线程，或者队列中已有任务在等待（即空闲线程来不及取走此任务），
+         * 则先尝试启动一个非核心线程；失败（例如已达到maximumPoolSize）时照常排队。
          */
         int c = ctl.get();
         //第1步
@@ -1301,10 +1355,18 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 return;
             c = ctl.get();
         }
+        if (eagerThreadGrowth && isRunning(c) &&
+            workerCountOf(c) < maximumPoolSize &&
+            (idleWorkers.get() == 0 || !workQueue.isEmpty())) {//急切增长：没有空闲线程，或已有任务在排队等待
+            if (addWorker(command, false))
+                return;
+            c = ctl.get();
+        }
         //第2步
-        if (isRunning(c) && workQueue.offer(command)) {//如果任务可以成功排队
+        Runnable queued = queuedForm(command);
+        if (isRunning(c) && workQueue.offer(queued)) {//如果任务可以成功排队
             int recheck = ctl.get();
-            if (! isRunning(recheck) && remove(command))//如果Executor被关闭了，则需要将之前的入队的command回滚，并执行reject
+            if (! isRunning(recheck) && remove(queued))//如果Executor被关闭了，则需要将之前的入队的command回滚，并执行reject
                 reject(command);
             else if (workerCountOf(recheck) == 0) //如果Executor没被关闭，但是现有工作线程自上次检查后都已死亡，添加一个非核心线程
                 addWorker(null, false);
@@ -1315,6 +1377,134 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             reject(command);
     }
 
+    /**
+     * Returns the command as execute queues it: wrapped with the time
+     * it is queued if metrics time queue waits, else itself.
+     */
+    final Runnable queuedForm(Runnable command) {
+        Metrics m = metrics;
+        return (m == null || !m.timesQueue) ? command :
+            new QueuedTask(command, System.nanoTime());
+    }
+
+    /**
+     * Queues the command as step 2 of execute does, without trying to
+     * start a thread or rejecting it if the queue is full. Used by
+     * PrioritySheddingPolicy once it has made room in the queue.
+     *
+     * @return true if the command was queued, or rejected because
+     *         the pool was shut down meanwhile
+     */
+    final boolean tryQueue(Runnable command) {
+        Runnable queued = queuedForm(command);
+        if (!isRunning(ctl.get()) || !workQueue.offer(queued))
+            return false;
+        int recheck = ctl.get();
+        if (! isRunning(recheck) && remove(queued))
+            reject(command);
+        else if (workerCountOf(recheck) == 0)
+            addWorker(null, false);
+        return true;
+    }
+
+    /**
+     * Executes the given tasks, with the same effect as calling
+     * {@link #execute} for each in turn, but queuing them in a batch.
+     * Tasks are first used to start threads up to the core pool size,
+     * as {@code execute} would; the rest are then inserted into the
+     * work queue together, which for a {@link LinkedBlockingQueue} or
+     * {@link ArrayBlockingQueue} takes a single acquisition of its
+     * lock (see {@link LinkedBlockingQueue#offerAll}) instead of one
+     * per task; other queues, including subclasses of those two, are
+     * offered the tasks one by one. Tasks that do not fit in the queue are passed to
+     * {@code execute} one by one, so they may start threads up to the
+     * maximum pool size or be rejected. While {@linkplain
+     * #setEagerThreadGrowth eager thread growth} is enabled, tasks
+     * beyond the core pool size are all passed to {@code execute}.
+     * 执行给定的任务，效果与依次对每个任务调用{@link #execute}相同，但会批量排队。
+     * 首先像{@code execute}那样，使用任务启动线程直到核心线程池大小；然后将其余任务一起插入工作队列，
+     * 对于{@link LinkedBlockingQueue}或{@link ArrayBlockingQueue}，这只需获取一次其锁（参见{@link LinkedBlockingQueue#offerAll}），而不是每个任务一次；
+     * 其他队列（包括这两者的子类）则逐个提供任务。
+     * 队列中放不下的任务逐个传递给{@code execute}，因此它们可能启动线程直到最大线程池大小或被拒绝。
+     * 在启用{@linkplain #setEagerThreadGrowth 急切增长线程}时，超出核心线程池大小的任务全部传递给{@code execute}。
+     *
+     * <p>If the {@code RejectedExecutionHandler} throws an exception
+     * for a task, later tasks are not executed, as with a loop over
+     * {@code execute}.
+     * 如果{@code RejectedExecutionHandler}为某个任务抛出异常，则与循环调用{@code execute}一样，后面的任务不会被执行。
+     *
+     * @param tasks the tasks to execute
+     * @throws RejectedExecutionException at discretion of
+     *         {@code RejectedExecutionHandler}, if a task
+     *         cannot be accepted for execution
+     * @throws NullPointerException if {@code tasks} or any of its
+     *         elements is null, in which case no task is executed
+     */
+    public void executeAll(Collection<? extends Runnable> tasks) {
+        if (tasks == null)
+            throw new NullPointerException();
+        Runnable[] a = tasks.toArray(new Runnable[0]);
+        for (Runnable r : a)
+            if (r == null)
+                throw new NullPointerException();
+        int n = a.length, i = 0;
+        // Start core threads, as in step 1 of execute
+        while (i < n && workerCountOf(ctl.get()) < corePoolSize &&
+               addWorker(a[i], true))
+            ++i;
+        if (i < n && !eagerThreadGrowth && isRunning(ctl.get())) {
+            // Queue the rest in one batch, then recheck as in step 2
+            Metrics m = metrics;
+            Runnable[] queued = a;
+            if (m != null && m.timesQueue) {
+                queued = new Runnable[n];
+                long now = System.nanoTime();
+                for (int j = i; j < n; ++j)
+                    queued[j] = new QueuedTask(a[j], now);
+            }
+            int k = offerAll(queued, i, n);
+            int recheck = ctl.get();
+            if (! isRunning(recheck)) {
+                // Remove the whole batch before rejecting any, since
+                // the handler may throw
+                boolean[] removed = new boolean[k];
+                for (int j = 0; j < k; ++j)
+                    removed[j] = remove(queued[i + j]);
+                for (int j = 0; j < k; ++j)
+                    if (removed[j])
+                        reject(a[i + j]);
+            }
+            else if (k > 0 && workerCountOf(recheck) == 0)
+                addWorker(null, false);
+            i += k;
+        }
+        // Whatever did not fit goes through execute
+        for (; i < n; ++i)
+            execute(a[i]);
+    }
+
+    /**
+     * Offers a[from..to) to the work queue, in one batch if the queue
+     * supports it, and returns how many (a prefix) were accepted.
+     * Subclasses of the batching queues may override offer, for
+     * example to refuse tasks so that threads are added, so only the
+     * exact classes are batched.
+     */
+    private int offerAll(Runnable[] a, int from, int to) {
+        BlockingQueue<Runnable> q = workQueue;
+        Class<?> c = q.getClass();
+        if (c == LinkedBlockingQueue.class)
+            return ((LinkedBlockingQueue<Runnable>) q)
+                .offerAll(Arrays.asList(a).subList(from, to));
+        if (c == ArrayBlockingQueue.class)
+            return ((ArrayBlockingQueue<Runnable>) q)
+                .offerAll(Arrays.asList(a).subList(from, to));
+        int k = from;
+        while (k < to && q.offer(a[k]))
+            ++k;
+        return k - from;
+    }
+
     /**
      * Initiates an orderly shutdown in which previously submitted
      * tasks are executed, but no new tasks will be accepted.
@@ -1593,6 +1783,58 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         }
     }
 
+    /**
+     * Returns true if this pool starts new threads, up to the maximum
+     * pool size, before queuing tasks while no thread is idle.
+     * 如果此线程池在没有空闲线程时先启动新线程（直到最大线程池大小）而不是对任务排队，则返回true。
+     *
+     * @return {@code true} if threads grow eagerly, else {@code false}
+     * @see #setEagerThreadGrowth
+     */
+    public boolean isEagerThreadGrowth() {
+        return eagerThreadGrowth;
+    }
+
+    /**
+     * Sets the policy governing whether {@link #execute} queues a task
+     * or starts a new thread for it when at least the core pool size
+     * of threads are running. When false (the default), new threads
+     * are started only if the work queue rejects the task, so a pool
+     * with an unbounded queue never grows beyond its core size. When
+     * true, a new thread is started, up to the maximum pool size,
+     * whenever no thread is idle or tasks are already waiting in the
+     * queue, so bursts of load are met by growing the pool rather
+     * than by queuing; tasks queue only once the maximum is reached. Threads
+     * beyond the core pool size still terminate after being idle for
+     * the keep-alive time.
+     * 设置当至少有核心线程池大小个线程在运行时，{@link #execute}是对任务排队还是为其启动新线程的策略。
+     * 为false（默认值）时，只有在工作队列拒绝任务时才启动新线程，因此使用无界队列的线程池永远不会增长到超过其核心大小。
+     * 为true时，只要没有空闲线程或者队列中已有任务在等待，就启动一个新线程（直到最大线程池大小），
+     * 因此负载突发时线程池会增长而不是排队；只有达到最大值后任务才会排队。超过核心线程池大小的线程在空闲保活时间后仍会终止。
+     *
+     * <p>Idle threads are counted approximately, so a task may
+     * occasionally be queued while a new thread could have been
+     * started, or the reverse. The check calls the queue's {@code
+     * isEmpty} method, not {@code size}, on every {@code execute},
+     * since {@code size} is not a constant-time operation for queues
+     * such as {@link LinkedTransferQueue}. This policy has no effect
+     * with a {@link SynchronousQueue}, which never holds tasks.
+     * 空闲线程的计数是近似的，因此偶尔可能在本可以启动新线程时对任务进行排队，反之亦然。
+     * 该检查在每次{@code execute}时调用队列的{@code isEmpty}方法而不是{@code size}，
+     * 因为对于{@link LinkedTransferQueue}等队列，{@code size}不是常数时间操作。
+     * 此策略对从不保存任务的{@link SynchronousQueue}没有影响。
+     *
+     * @param value {@code true} if threads should grow eagerly,
+     *        else {@code false}
+     */
+    public void setEagerThreadGrowth(boolean value) {
+        if (value != eagerThreadGrowth) {
+            eagerThreadGrowth = value;
+            if (value)
+                interruptIdleWorkers(); // so waiting workers are counted
+        }
+    }
+
     /**
      * Sets the maximum allowed number of threads. This overrides any
      * value set in the constructor. If the new value is smaller than
@@ -1668,7 +1910,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Returns the task queue used by this executor. Access to the
      * task queue is intended primarily for debugging and monitoring.
      * This queue may be in active use.  Retrieving the task queue
-     * does not prevent queued tasks from executing.
+     * does not prevent queued tasks from executing. While {@linkplain
+     * #enableMetrics metrics} are enabled, tasks queued by {@code
+     * execute} may appear in it wrapped in another Runnable.
+     * 返回此执行器使用的任务队列。访问任务队列主要用于调试和监视。此队列可能正在被使用。获取任务队列不会阻止已入队的任务执行。
+     * 在启用{@linkplain #enableMetrics 指标}期间，由{@code execute}入队的任务在其中可能被包装在另一个Runnable中。
      *
      * @return the task queue
      */
@@ -1699,6 +1945,13 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     public boolean remove(Runnable task) {
         boolean removed = workQueue.remove(task);
+        if (!removed && metrics != null && task != null) {
+            for (Object r : workQueue.toArray()) {
+                if (r instanceof QueuedTask && ((QueuedTask) r).task == task &&
+                    (removed = workQueue.remove(r)))
+                    break;
+            }
+        }
         tryTerminate(); // In case SHUTDOWN and now empty
         return removed;
     }
@@ -1723,7 +1976,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         try {
             Iterator<Runnable> it = q.iterator();
             while (it.hasNext()) {
-                Runnable r = it.next();
+                Runnable r = QueuedTask.unwrap(it.next());
                 if (r instanceof Future<?> && ((Future<?>)r).isCancelled())
                     it.remove();
             }
@@ -1731,9 +1984,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             // Take slow path if we encounter interference during traversal.
             // Make copy for traversal and call remove for cancelled entries.
             // The slow path is more likely to be O(N*N).
-            for (Object r : q.toArray())
-                if (r instanceof Future<?> && ((Future<?>)r).isCancelled())
+            for (Object r : q.toArray()) {
+                Object t = (r instanceof QueuedTask) ? ((QueuedTask) r).task : r;
+                if (t instanceof Future<?> && ((Future<?>)t).isCancelled())
                     q.remove(r);
+            }
         }
 
         tryTerminate(); // In case SHUTDOWN and now empty
@@ -1747,16 +2002,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of threads
      */
     public int getPoolSize() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            // Remove rare and surprising possibility of
-            // isTerminated() && getPoolSize() > 0
-            return runStateAtLeast(ctl.get(), TIDYING) ? 0
-                : workers.size();
-        } finally {
-            mainLock.unlock();
-        }
+        // Remove rare and surprising possibility of
+        // isTerminated() && getPoolSize() > 0
+        return runStateAtLeast(ctl.get(), TIDYING) ? 0
+            : workers.size();
     }
 
     /**
@@ -1766,17 +2015,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of threads
      */
     public int getActiveCount() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            int n = 0;
-            for (Worker w : workers)
-                if (w.isLocked())
-                    ++n;
-            return n;
-        } finally {
-            mainLock.unlock();
-        }
+        int n = 0;
+        for (Worker w : workers)
+            if (w.isLocked())
+                ++n;
+        return n;
     }
 
     /**
@@ -1786,13 +2029,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of threads
      */
     public int getLargestPoolSize() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            return largestPoolSize;
-        } finally {
-            mainLock.unlock();
-        }
+        return largestPoolSize.get();
     }
 
     /**
@@ -1804,19 +2041,14 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of tasks
      */
     public long getTaskCount() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            long n = completedTaskCount;
-            for (Worker w : workers) {
-                n += w.completedTasks;
-                if (w.isLocked())
-                    ++n;
-            }
-            return n + workQueue.size();
-        } finally {
-            mainLock.unlock();
+        long n = completedTaskCount.sum(), active = 0L;
+        for (Worker w : workers) {
+            n += w.completedTasks;
+            if (w.isLocked())
+                ++active;
         }
+        completedTaskHighWater.accumulate(n);
+        return completedTaskHighWater.get() + active + workQueue.size();
     }
 
     /**
@@ -1829,16 +2061,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of tasks
      */
     public long getCompletedTaskCount() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            long n = completedTaskCount;
-            for (Worker w : workers)
-                n += w.completedTasks;
-            return n;
-        } finally {
-            mainLock.unlock();
-        }
+        long n = completedTaskCount.sum();
+        for (Worker w : workers)
+            n += w.completedTasks;
+        completedTaskHighWater.accumulate(n);
+        return completedTaskHighWater.get();
     }
 
     /**
@@ -1849,21 +2076,13 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return a string identifying this pool, as well as its state
      */
     public String toString() {
-        long ncompleted;
-        int nworkers, nactive;
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            ncompleted = completedTaskCount;
-            nactive = 0;
-            nworkers = workers.size();
-            for (Worker w : workers) {
-                ncompleted += w.completedTasks;
-                if (w.isLocked())
-                    ++nactive;
-            }
-        } finally {
-            mainLock.unlock();
+        long ncompleted = completedTaskCount.sum();
+        int nworkers = 0, nactive = 0;
+        for (Worker w : workers) {
+            ++nworkers;
+            ncompleted += w.completedTasks;
+            if (w.isLocked())
+                ++nactive;
         }
         int c = ctl.get();
         String rs = (runStateLessThan(c, SHUTDOWN) ? "Running" :
@@ -1878,6 +2097,420 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             "]";
     }
 
+    /* Metrics */
+
+    /**
+     * Enables recording of per-task metrics, if not already enabled,
+     * and returns them. Once enabled, each worker records how long
+     * every task waited in the queue and how long it ran, along with
+     * counts of completed, failed and rejected tasks, using only
+     * {@link LongAdder}-based counters, so that reading the metrics
+     * costs the same however many threads the pool has, unlike the
+     * other statistics methods of this class, which visit every
+     * worker. Recording
+     * costs a few calls to {@link System#nanoTime} per task, and, for
+     * tasks that {@code execute} puts on the queue, one small wrapper
+     * object. Metrics cannot be disabled.
+     * 如果尚未启用，则启用每个任务的指标记录，并返回这些指标。启用后，每个工作线程记录每个任务在队列中等待了多长时间以及运行了多长时间，
+     * 以及已完成、失败和被拒绝的任务数，只使用基于{@link LongAdder}的计数器，因此无论线程池有多少线程，读取指标的开销都相同，这与此类中访问每个工作线程的其他统计方法不同。
+     * 记录的代价是每个任务调用几次{@link System#nanoTime}，对于{@code execute}放入队列的任务，还有一个小的包装对象。指标不能被禁用。
+     *
+     * <p>Queue wait is measured from {@code execute} to the start of
+     * {@link #beforeExecute}; tasks handed to a new thread directly
+     * record a wait of zero. For {@link Delayed} tasks, such as those
+     * of a {@link ScheduledThreadPoolExecutor}, it is instead the
+     * time since the task became due. Queued tasks are wrapped only
+     * when the work queue is a {@link LinkedBlockingQueue}, {@link
+     * ArrayBlockingQueue}, {@link LinkedBlockingDeque}, {@link
+     * LinkedTransferQueue} or {@link SynchronousQueue} (not a
+     * subclass), or the queue of a {@link
+     * WorkStealingThreadPoolExecutor}. Tasks in any other queue, which
+     * may order its elements or expect them to be of its own type,
+     * such as a {@link PriorityBlockingQueue}, are not wrapped, and
+     * record no queue wait.
+     * 队列等待时间从{@code execute}测量到{@link #beforeExecute}开始；直接交给新线程的任务记录的等待时间为零。
+     * 对于{@link Delayed}任务（例如{@link ScheduledThreadPoolExecutor}的任务），它是自任务到期以来的时间。
+     * 只有当工作队列是{@link LinkedBlockingQueue}、{@link ArrayBlockingQueue}、{@link LinkedBlockingDeque}、
+     * {@link LinkedTransferQueue}或{@link SynchronousQueue}（而不是其子类），或者是{@link WorkStealingThreadPoolExecutor}的队列时，
+     * 排队的任务才会被包装。其他队列（可能对元素排序或要求元素为其自身类型，例如{@link PriorityBlockingQueue}）中的任务不会被包装，也不记录队列等待时间。
+     *
+     * @return the metrics of this pool
+     */
+    public Metrics enableMetrics() {
+        Metrics m;
+        if ((m = metrics) == null) {
+            final ReentrantLock mainLock = this.mainLock;
+            mainLock.lock();
+            try {
+                if ((m = metrics) == null)
+                    metrics = m = new Metrics(this, isFifoQueue(workQueue));
+            } finally {
+                mainLock.unlock();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns true if q is known to hold tasks in insertion order
+     * without looking at them, so that tasks may be wrapped in
+     * QueuedTasks. Subclasses are excluded, as they may order or
+     * cast their elements.
+     */
+    private static boolean isFifoQueue(BlockingQueue<Runnable> q) {
+        Class<?> c = q.getClass();
+        return c == LinkedBlockingQueue.class ||
+            c == ArrayBlockingQueue.class ||
+            c == LinkedBlockingDeque.class ||
+            c == LinkedTransferQueue.class ||
+            c == SynchronousQueue.class ||
+            c == WorkStealingThreadPoolExecutor.StealingQueue.class;
+    }
+
+    /**
+     * Returns the metrics of this pool, or {@code null} if they have
+     * not been {@linkplain #enableMetrics enabled}.
+     * 返回此线程池的指标，如果尚未{@linkplain #enableMetrics 启用}则返回{@code null}。
+     *
+     * @return the metrics, or {@code null}
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * A task queued by execute while metrics are enabled, with the
+     * time it was queued. Unwrapped by the worker that takes it, and
+     * wherever queued tasks are handed back to users.
+     */
+    static final class QueuedTask implements Runnable {
+        final Runnable task;
+        final long queuedNanos;
+
+        QueuedTask(Runnable task, long queuedNanos) {
+            this.task = task;
+            this.queuedNanos = queuedNanos;
+        }
+
+        public void run() {
+            task.run();
+        }
+
+        static Runnable unwrap(Runnable r) {
+            return (r instanceof QueuedTask) ? ((QueuedTask) r).task : r;
+        }
+    }
+
+    /**
+     * Per-task metrics of a {@code ThreadPoolExecutor}, recorded by
+     * its workers once {@linkplain ThreadPoolExecutor#enableMetrics
+     * enabled}. All methods are lock-free and may be called at any
+     * time from any thread; since tasks are running concurrently,
+     * values read together are not an atomic snapshot.
+     * {@code ThreadPoolExecutor}的每任务指标，在{@linkplain ThreadPoolExecutor#enableMetrics 启用}后由其工作线程记录。
+     * 所有方法都是无锁的，可以随时从任何线程调用；由于任务在并发运行，一起读取的值并不是原子快照。
+     */
+    public static final class Metrics {
+        private final ThreadPoolExecutor pool;
+        final boolean timesQueue;
+        private final Histogram queueWait = new Histogram();
+        private final Histogram execution = new Histogram();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder rejectedAfterShutdown = new LongAdder();
+        private final LongAdder active = new LongAdder();
+
+        Metrics(ThreadPoolExecutor pool, boolean timesQueue) {
+            this.pool = pool;
+            this.timesQueue = timesQueue;
+        }
+
+        /**
+         * Records the queue wait of a task taken by a worker, and
+         * returns the task to run.
+         */
+        Runnable recordDequeue(Runnable task, boolean handedOff) {
+            if (task instanceof QueuedTask) {
+                QueuedTask q = (QueuedTask) task;
+                queueWait.record(System.nanoTime() - q.queuedNanos);
+                return q.task;
+            }
+            if (handedOff)
+                queueWait.record(0L);
+            else if (task instanceof Delayed)
+                queueWait.record(-((Delayed) task).getDelay(TimeUnit.NANOSECONDS));
+            return task;
+        }
+
+        long recordStart() {
+            active.increment();
+            return System.nanoTime();
+        }
+
+        void recordEnd(long start, Throwable thrown) {
+            execution.record(System.nanoTime() - start);
+            active.decrement();
+            if (thrown == null)
+                completed.increment();
+            else
+                failed.increment();
+        }
+
+        void recordRejection(boolean running) {
+            if (running)
+                rejected.increment();
+            else
+                rejectedAfterShutdown.increment();
+        }
+
+        /**
+         * Returns the distribution of the time tasks spent in the
+         * queue before a worker started them.
+         * 返回任务在工作线程开始执行它们之前在队列中花费的时间的分布。
+         *
+         * @return the queue wait histogram
+         */
+        public Histogram getQueueWait() {
+            return queueWait;
+        }
+
+        /**
+         * Returns the distribution of the time tasks took to run,
+         * excluding the {@code beforeExecute} and {@code afterExecute}
+         * hooks.
+         * 返回任务运行所花费时间的分布，不包括{@code beforeExecute}和{@code afterExecute}钩子。
+         *
+         * @return the execution time histogram
+         */
+        public Histogram getExecution() {
+            return execution;
+        }
+
+        /**
+         * Returns the number of tasks that ran to completion without
+         * throwing an exception.
+         * 返回运行完成且没有抛出异常的任务数。
+         *
+         * @return the number of completed tasks
+         */
+        public long getCompletedCount() {
+            return completed.sum();
+        }
+
+        /**
+         * Returns the number of tasks whose {@code run} method threw
+         * an exception. (Tasks created by {@code submit} catch their
+         * exceptions, and so count as completed.)
+         * 返回其{@code run}方法抛出异常的任务数。（由{@code submit}创建的任务会捕获其异常，因此计为已完成。）
+         *
+         * @return the number of failed tasks
+         */
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        /**
+         * Returns the number of tasks passed to the rejected execution
+         * handler while the pool was running, that is, because it was
+         * saturated.
+         * 返回在线程池运行时（即由于线程池已饱和）传递给拒绝执行处理器的任务数。
+         *
+         * @return the number of tasks rejected while running
+         */
+        public long getRejectedCount() {
+            return rejected.sum();
+        }
+
+        /**
+         * Returns the number of tasks passed to the rejected execution
+         * handler after the pool was shut down.
+         * 返回线程池关闭后传递给拒绝执行处理器的任务数。
+         *
+         * @return the number of tasks rejected after shutdown
+         */
+        public long getRejectedAfterShutdownCount() {
+            return rejectedAfterShutdown.sum();
+        }
+
+        /**
+         * Returns the approximate number of threads that are running
+         * tasks.
+         * 返回正在运行任务的线程的近似数量。
+         *
+         * @return the number of active threads
+         */
+        public int getActiveCount() {
+            return (int) Math.max(0L, active.sum());
+        }
+
+        /**
+         * Returns the number of threads that have been permitted to
+         * start and not yet stopped, which may differ transiently from
+         * {@link ThreadPoolExecutor#getPoolSize}.
+         * 返回已被允许启动且尚未停止的线程数，它可能与{@link ThreadPoolExecutor#getPoolSize}暂时不同。
+         *
+         * @return the number of worker threads
+         */
+        public int getPoolSize() {
+            return workerCountOf(pool.ctl.get());
+        }
+
+        /**
+         * Returns the number of tasks in the work queue, as reported
+         * by its {@code size} method.
+         * 返回工作队列中的任务数，由其{@code size}方法报告。
+         *
+         * @return the queue length
+         */
+        public int getQueueSize() {
+            return pool.workQueue.size();
+        }
+
+        /**
+         * Resets all counts and histograms to zero. Not atomic with
+         * respect to concurrent recording.
+         * 将所有计数和直方图重置为零。对于并发的记录不是原子的。
+         */
+        public void reset() {
+            queueWait.reset();
+            execution.reset();
+            completed.reset();
+            failed.reset();
+            rejected.reset();
+            rejectedAfterShutdown.reset();
+        }
+
+        public String toString() {
+            return super.toString() +
+                "[completed = " + getCompletedCount() +
+                ", failed = " + getFailedCount() +
+                ", rejected = " + getRejectedCount() +
+                ", queue wait p50/p99 = " +
+                queueWait.getPercentile(0.50, TimeUnit.MICROSECONDS) + "/" +
+                queueWait.getPercentile(0.99, TimeUnit.MICROSECONDS) + "us" +
+                ", execution p50/p99 = " +
+                execution.getPercentile(0.50, TimeUnit.MICROSECONDS) + "/" +
+                execution.getPercentile(0.99, TimeUnit.MICROSECONDS) + "us" +
+                "]";
+        }
+
+        /**
+         * A concurrent histogram of durations in nanoseconds, with
+         * one bucket per power of two. Bucket {@code i} counts
+         * durations {@code d} with {@code 2^(i-1) <= d < 2^i}, and
+         * bucket 0 counts zero durations, so values are accurate to
+         * within a factor of two.
+         * 一个以纳秒为单位的并发持续时间直方图，每个2的幂一个桶。桶{@code i}统计满足{@code 2^(i-1) <= d < 2^i}的持续时间{@code d}，
+         * 桶0统计为零的持续时间，因此值的精度在两倍以内。
+         */
+        public static final class Histogram {
+            /** Number of buckets: one for zero, one per bit of a positive long. */
+            static final int BUCKETS = 64;
+
+            private final LongAdder[] buckets = new LongAdder[BUCKETS];
+            private final LongAdder total = new LongAdder();
+            private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+            Histogram() {
+                for (int i = 0; i < BUCKETS; ++i)
+                    buckets[i] = new LongAdder();
+            }
+
+            void record(long nanos) {
+                if (nanos < 0L)
+                    nanos = 0L;
+                buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)].increment();
+                total.add(nanos);
+                max.accumulate(nanos);
+            }
+
+            void reset() {
+                for (LongAdder b : buckets)
+                    b.reset();
+                total.reset();
+                max.reset();
+            }
+
+            /**
+             * Returns the number of recorded durations.
+             * 返回已记录的持续时间的数量。
+             *
+             * @return the count
+             */
+            public long getCount() {
+                long n = 0L;
+                for (LongAdder b : buckets)
+                    n += b.sum();
+                return n;
+            }
+
+            /**
+             * Returns the sum of recorded durations.
+             * 返回已记录的持续时间之和。
+             *
+             * @param unit the unit of the result
+             * @return the total
+             */
+            public long getTotal(TimeUnit unit) {
+                return unit.convert(total.sum(), TimeUnit.NANOSECONDS);
+            }
+
+            /**
+             * Returns the longest recorded duration.
+             * 返回已记录的最长持续时间。
+             *
+             * @param unit the unit of the result
+             * @return the maximum, or zero if none
+             */
+            public long getMax(TimeUnit unit) {
+                return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+            }
+
+            /**
+             * Returns an upper bound for the given percentile of the
+             * recorded durations: the top of the bucket holding it.
+             * 返回已记录的持续时间的给定百分位的上界：即包含它的桶的上限。
+             *
+             * @param p    the percentile, between 0.0 and 1.0
+             * @param unit the unit of the result
+             * @return the percentile bound, or zero if none
+             * @throws IllegalArgumentException if p is not between 0.0 and 1.0
+             */
+            public long getPercentile(double p, TimeUnit unit) {
+                if (!(p >= 0.0 && p <= 1.0))
+                    throw new IllegalArgumentException();
+                long[] counts = getBucketCounts();
+                long n = 0L;
+                for (long c : counts)
+                    n += c;
+                if (n == 0L)
+                    return 0L;
+                long rank = Math.max(1L, (long) Math.ceil(p * n)), seen = 0L;
+                int i = 0;
+                while (i < BUCKETS - 1 && (seen += counts[i]) < rank)
+                    ++i;
+                long bound = (i == 0) ? 0L : (i == BUCKETS - 1) ?
+                    Long.MAX_VALUE : (1L << i) - 1L;
+                return unit.convert(Math.min(bound, max.get()), TimeUnit.NANOSECONDS);
+            }
+
+            /**
+             * Returns a snapshot of the bucket counts, indexed as
+             * described in the class documentation.
+             * 返回桶计数的快照，按类文档中描述的方式索引。
+             *
+             * @return a new array of the counts
+             */
+            public long[] getBucketCounts() {
+                long[] counts = new long[BUCKETS];
+                for (int i = 0; i < BUCKETS; ++i)
+                    counts[i] = buckets[i].sum();
+                return counts;
+            }
+        }
+    }
+
     /* Extension hooks */
 
     /**
@@ -2051,4 +2684,199 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             }
         }
     }
+
+    /**
+     * A handler for rejected tasks that blocks the submitting thread
+     * until there is room in the work queue, for at most a given
+     * time, and then throws a {@code RejectedExecutionException}.
+     * This gives producers backpressure: they are slowed down to the
+     * rate at which the pool completes tasks, rather than running
+     * tasks themselves as with {@link CallerRunsPolicy}. Tasks are
+     * always rejected once the executor is shut down. Use this policy
+     * with a bounded queue, since tasks are only rejected, and so
+     * only blocked, when the queue is full.
+     * 一个被拒绝任务的处理器，它阻塞提交线程直到工作队列中有空间，最多阻塞给定的时间，然后抛出{@code RejectedExecutionException}。
+     * 这为生产者提供了背压：它们被减慢到线程池完成任务的速率，而不是像{@link CallerRunsPolicy}那样自己运行任务。
+     * 一旦执行器关闭，任务总是会被拒绝。请将此策略与有界队列一起使用，因为只有在队列已满时任务才会被拒绝，从而被阻塞。
+     */
+    public static class BlockingPolicy implements RejectedExecutionHandler {
+        private final long timeoutNanos;
+
+        /**
+         * Creates a {@code BlockingPolicy} that waits without a time
+         * limit.
+         * 创建一个无时间限制等待的{@code BlockingPolicy}。
+         */
+        public BlockingPolicy() {
+            this.timeoutNanos = Long.MAX_VALUE;
+        }
+
+        /**
+         * Creates a {@code BlockingPolicy} that waits for at most the
+         * given time.
+         * 创建一个最多等待给定时间的{@code BlockingPolicy}。
+         *
+         * @param timeout how long to wait for room in the queue
+         * @param unit    the time unit of the timeout argument
+         * @throws NullPointerException     if unit is null
+         * @throws IllegalArgumentException if timeout is negative
+         */
+        public BlockingPolicy(long timeout, TimeUnit unit) {
+            if (unit == null)
+                throw new NullPointerException();
+            if (timeout < 0L)
+                throw new IllegalArgumentException();
+            this.timeoutNanos = unit.toNanos(timeout);
+        }
+
+        /**
+         * Waits for room in the executor's queue and inserts task r,
+         * unless the executor is shut down.
+         *
+         * @param r the runnable task requested to be executed
+         * @param e the executor attempting to execute this task
+         * @throws RejectedExecutionException if the executor is shut
+         *         down, the wait times out or the thread is interrupted
+         *         while waiting, in which case its interrupt status is set
+         */
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            if (e.isShutdown())
+                throw new RejectedExecutionException("Task " + r.toString() +
+                                                     " rejected from " +
+                                                     e.toString());
+            BlockingQueue<Runnable> q = e.getQueue();
+            Runnable task = e.queuedForm(r); // so its queue wait is recorded
+            boolean queued;
+            try {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    q.put(task);
+                    queued = true;
+                } else
+                    queued = q.offer(task, timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to queue task " +
+                                                     r.toString(), ie);
+            }
+            if (!queued)
+                throw new RejectedExecutionException("Timed out waiting to queue task " +
+                                                     r.toString() + " in " + e.toString());
+            // Recheck as execute does after queuing
+            if (e.isShutdown() && e.remove(r))
+                throw new RejectedExecutionException("Task " + r.toString() +
+                                                     " rejected from " +
+                                                     e.toString());
+            e.ensurePrestart();
+        }
+    }
+
+    /**
+     * A handler for rejected tasks that sheds load by priority: if the
+     * work queue holds a task of lower priority than the rejected
+     * one, the oldest such task with the lowest priority is removed
+     * from the queue and shed, and {@code execute} is retried;
+     * otherwise the rejected task itself is shed. Priorities are
+     * given by a function of the task, higher values being more
+     * important; for tasks created by {@code submit}, the function is
+     * applied to the {@link FutureTask} wrapping the caller's task.
+     * Shed tasks are passed to a second handler, which by default
+     * cancels tasks that are {@link Future}s and discards the others.
+     * Tasks are shed without looking at the queue once the executor is
+     * shut down. If room made by shedding a queued task is taken by
+     * another thread first, the policy tries again a few times before
+     * shedding the rejected task itself.
+     * 一个按优先级削减负载的被拒绝任务处理器：如果工作队列中有优先级低于被拒绝任务的任务，则从队列中移除并削减优先级最低的最老的这样的任务，
+     * 然后重试{@code execute}；否则削减被拒绝的任务本身。优先级由任务的函数给出，值越高越重要；
+     * 对于由{@code submit}创建的任务，该函数应用于包装调用者任务的{@link FutureTask}。
+     * 被削减的任务被传递给第二个处理器，默认情况下，它会取消属于{@link Future}的任务并丢弃其他任务。
+     * 一旦执行器关闭，任务就会被直接削减而不查看队列。
+     * 如果削减排队任务腾出的空间先被其他线程占用，此策略会再尝试几次，然后削减被拒绝的任务本身。
+     *
+     * <p>The rejected task is queued before the task it displaces is
+     * passed to the second handler, so if that handler throws, the
+     * exception propagates to the caller of {@code execute} but the
+     * rejected task stays queued.
+     * 被拒绝的任务会在它所取代的任务被传递给第二个处理器之前入队，因此如果该处理器抛出异常，
+     * 异常会传播给{@code execute}的调用者，但被拒绝的任务仍留在队列中。
+     *
+     * <p>Finding the task to shed takes a scan of the queue, so this
+     * policy suits bounded queues of moderate capacity.
+     * 查找要削减的任务需要扫描队列，因此此策略适合中等容量的有界队列。
+     */
+    public static class PrioritySheddingPolicy implements RejectedExecutionHandler {
+        /**
+         * Number of queued tasks shed, at most, to make room for one
+         * rejected task.
+         */
+        private static final int MAX_SHED_RETRIES = 4;
+
+        private final ToIntFunction<? super Runnable> priority;
+        private final RejectedExecutionHandler shedHandler;
+
+        /**
+         * Creates a {@code PrioritySheddingPolicy} that cancels or
+         * discards the tasks it sheds.
+         * 创建一个取消或丢弃其削减的任务的{@code PrioritySheddingPolicy}。
+         *
+         * @param priority the function giving the priority of a task
+         * @throws NullPointerException if priority is null
+         */
+        public PrioritySheddingPolicy(ToIntFunction<? super Runnable> priority) {
+            this(priority, (r, e) -> {
+                if (r instanceof Future<?>)
+                    ((Future<?>) r).cancel(false);
+            });
+        }
+
+        /**
+         * Creates a {@code PrioritySheddingPolicy} that passes the
+         * tasks it sheds to the given handler.
+         * 创建一个将其削减的任务传递给给定处理器的{@code PrioritySheddingPolicy}。
+         *
+         * @param priority    the function giving the priority of a task
+         * @param shedHandler the handler for shed tasks
+         * @throws NullPointerException if priority or shedHandler is null
+         */
+        public PrioritySheddingPolicy(ToIntFunction<? super Runnable> priority,
+                                      RejectedExecutionHandler shedHandler) {
+            if (priority == null || shedHandler == null)
+                throw new NullPointerException();
+            this.priority = priority;
+            this.shedHandler = shedHandler;
+        }
+
+        /**
+         * Sheds the oldest queued task of lowest priority and queues
+         * task r in its place if that task's priority is lower than
+         * that of r, and otherwise sheds task r.
+         *
+         * @param r the runnable task requested to be executed
+         * @param e the executor attempting to execute this task
+         */
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            BlockingQueue<Runnable> q = e.getQueue();
+            int p = priority.applyAsInt(r);
+            for (int retries = 0;
+                 retries < MAX_SHED_RETRIES && !e.isShutdown();
+                 ++retries) {
+                Object victim = null;
+                int min = p;
+                for (Object x : q.toArray()) {
+                    int px = priority.applyAsInt(QueuedTask.unwrap((Runnable) x));
+                    if (px < min) {
+                        min = px;
+                        victim = x;
+                    }
+                }
+                if (victim == null || !q.remove(victim))
+                    break;      // nothing to shed, or a worker took it
+                boolean queued = e.tryQueue(r);
+                shedHandler.rejectedExecution(
+                    QueuedTask.unwrap((Runnable) victim), e);
+                if (queued)
+                    return;
+            }
+            shedHandler.rejectedExecution(r, e);
+        }
+    }
 }
@@ -0,0 +1,298 @@
+package juc;
+
+import juc.locks.ReentrantLock;
+
+/**
+ * Adjusts the size of a {@link ThreadPoolExecutor} to its load.
+ * Each time it {@linkplain #run runs}, normally {@linkplain #start
+ * periodically}, a controller samples the pool's throughput, queue
+ * length and utilization, and sets its core (and if need be maximum)
+ * pool size within given bounds.
+ * 根据负载调整{@link ThreadPoolExecutor}的大小。控制器每次{@linkplain #run 运行}时（通常是{@linkplain #start 周期性地}），
+ * 都会对线程池的吞吐量、队列长度和利用率进行采样，并在给定范围内设置其核心（必要时还有最大）线程池大小。
+ *
+ * <p>While tasks are queued, the pool is running at capacity, and
+ * the controller searches for the size with the highest throughput
+ * by hill climbing, as the .NET thread pool does: it moves the size
+ * a step at a time, keeps moving in the same direction while
+ * throughput improves, and turns back, with a smaller step, when it
+ * gets worse. When throughput does not change noticeably, it prefers
+ * fewer threads, so the pool settles near the smallest size that
+ * reaches the highest throughput, for example the number of
+ * connections a downstream service accepts at once, rather than
+ * growing because tasks are waiting. While the queue is empty,
+ * throughput just follows the arrival rate, so the controller
+ * instead shrinks a pool whose threads are mostly idle.
+ * 当有任务在排队时，线程池正在满负荷运行，控制器像.NET线程池那样通过爬山法寻找吞吐量最高的大小：
+ * 它每次将大小移动一步，在吞吐量提高时继续沿同一方向移动，在吞吐量变差时以更小的步长折返。
+ * 当吞吐量没有明显变化时，它倾向于更少的线程，因此线程池会稳定在达到最高吞吐量的最小大小附近，
+ * 例如下游服务同时接受的连接数，而不是因为有任务在等待而增长。
+ * 当队列为空时，吞吐量只是跟随到达速率，因此控制器转而缩小线程大多空闲的线程池。
+ *
+ * <p>Guard rails: the size always stays between the given minimum
+ * and maximum, changes by at most the given step per run, and is
+ * never lowered while tasks are queued unless fewer threads proved
+ * as fast. The maximum pool size is raised only as far as the core
+ * size requires, and restored as the pool shrinks. A controller
+ * stops when its pool is shut down.
+ * 防护措施：大小始终保持在给定的最小值和最大值之间，每次运行最多改变给定的步长，
+ * 并且在有任务排队时，除非证明更少的线程同样快，否则不会降低大小。最大线程池大小只会提高到核心大小所需的程度，
+ * 并在线程池缩小时恢复。当线程池关闭时，控制器停止。
+ *
+ * <p>The controller works best with an unbounded queue and with
+ * {@code run} called at intervals long enough for each to see many
+ * task completions, typically a few hundred milliseconds to a few
+ * seconds.
+ * 控制器最适合与无界队列一起使用，并且{@code run}的调用间隔要足够长，使每次都能看到许多任务完成，通常为几百毫秒到几秒。
+ *
+ * <pre> {@code
+ * ThreadPoolExecutor pool = new ThreadPoolExecutor(8, 8, 30, SECONDS,
+ *     new LinkedBlockingQueue<>());
+ * new ThreadPoolSizeController(pool, 2, 64).start(scheduler, 500, MILLISECONDS);
+ * }</pre>
+ */
+public class ThreadPoolSizeController implements Runnable {
+
+    /**
+     * Relative change in throughput below which a step is taken to
+     * have made no difference.
+     */
+    static final double NOISE = 0.05;
+
+    /**
+     * Utilization of an unqueued pool below which it is shrunk.
+     */
+    static final double SHRINK_UTILIZATION = 0.5;
+
+    /**
+     * Utilization that shrinking aims for.
+     */
+    static final double TARGET_UTILIZATION = 0.75;
+
+    private final ThreadPoolExecutor pool;
+    private final int minThreads;
+    private final int maxThreads;
+    private final int maxStep;
+    private final int initialMaximumPoolSize;
+
+    /** Serializes runs; a run that finds it held is skipped. */
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    // State of the last run, guarded by runLock
+    private long lastNanos;          // time of last sample, 0 if none
+    private long lastCompleted;      // completed task count then
+    private double utilization;      // smoothed fraction of busy threads
+    private double lastThroughput = -1.0; // while climbing, else -1
+    private int direction = 1;       // of the last step, +1 or -1
+    private int step;                // size of the next step
+
+    private volatile double throughput;
+    private volatile ScheduledFuture<?> future;
+
+    /**
+     * Creates a controller for the given pool that keeps its size
+     * between the given bounds, changing it by at most a sixteenth of
+     * the maximum at a time.
+     * 为给定的线程池创建一个控制器，它将线程池大小保持在给定范围内，每次最多改变最大值的十六分之一。
+     *
+     * @param pool       the pool
+     * @param minThreads the smallest core pool size to set
+     * @param maxThreads the largest core pool size to set
+     * @throws NullPointerException     if pool is null
+     * @throws IllegalArgumentException if {@code minThreads < 1} or
+     *                                  {@code maxThreads < minThreads}
+     */
+    public ThreadPoolSizeController(ThreadPoolExecutor pool,
+                                    int minThreads, int maxThreads) {
+        this(pool, minThreads, maxThreads, Math.max(1, maxThreads >>> 4));
+    }
+
+    /**
+     * Creates a controller for the given pool that keeps its size
+     * between the given bounds, changing it by at most the given step
+     * at a time.
+     * 为给定的线程池创建一个控制器，它将线程池大小保持在给定范围内，每次最多改变给定的步长。
+     *
+     * @param pool       the pool
+     * @param minThreads the smallest core pool size to set
+     * @param maxThreads the largest core pool size to set
+     * @param maxStep    the largest change in size per run
+     * @throws NullPointerException     if pool is null
+     * @throws IllegalArgumentException if {@code minThreads < 1},
+     *                                  {@code maxThreads < minThreads} or {@code maxStep < 1}
+     */
+    public ThreadPoolSizeController(ThreadPoolExecutor pool,
+                                    int minThreads, int maxThreads,
+                                    int maxStep) {
+        if (pool == null)
+            throw new NullPointerException();
+        if (minThreads < 1 || maxThreads < minThreads || maxStep < 1)
+            throw new IllegalArgumentException();
+        this.pool = pool;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.maxStep = maxStep;
+        this.step = maxStep;
+        this.initialMaximumPoolSize = pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Runs this controller with the given scheduler every
+     * {@code period}, until {@link #stop} is called or the pool is
+     * shut down.
+     * 使用给定的调度器每隔{@code period}运行此控制器，直到调用{@link #stop}或线程池被关闭。
+     *
+     * @param scheduler the scheduler
+     * @param period    the time between runs
+     * @param unit      the time unit of the period
+     * @return the future of the periodic task
+     * @throws NullPointerException       if scheduler or unit is null
+     * @throws IllegalArgumentException   if period is not positive
+     * @throws IllegalStateException      if already started
+     * @throws RejectedExecutionException if the scheduler rejects the task
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService scheduler,
+                                    long period, TimeUnit unit) {
+        if (scheduler == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0L)
+            throw new IllegalArgumentException();
+        runLock.lock();
+        try {
+            if (future != null)
+                throw new IllegalStateException("Already started");
+            return future = scheduler.scheduleWithFixedDelay(this, period, period, unit);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Cancels periodic runs of this controller, if started. The pool
+     * keeps the size last set.
+     * 如果已启动，则取消此控制器的周期性运行。线程池保持最后设置的大小。
+     */
+    public void stop() {
+        ScheduledFuture<?> f = future;
+        if (f != null)
+            f.cancel(false);
+    }
+
+    /**
+     * Returns the pool this controller sizes.
+     * 返回此控制器调整大小的线程池。
+     *
+     * @return the pool
+     */
+    public ThreadPoolExecutor getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the throughput measured by the last run, in tasks per
+     * second, or zero before the second run.
+     * 返回上次运行测量的吞吐量（以每秒任务数为单位），在第二次运行之前为零。
+     *
+     * @return the last throughput
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Samples the pool and adjusts its size. Each run compares the
+     * pool with the previous run, so the first run only takes a
+     * sample. Runs that overlap another are skipped.
+     * 对线程池进行采样并调整其大小。每次运行都将线程池与上一次运行进行比较，因此第一次运行只进行采样。与其他运行重叠的运行将被跳过。
+     */
+    public void run() {
+        if (!runLock.tryLock())
+            return;
+        try {
+            if (pool.isShutdown()) {
+                stop();
+                return;
+            }
+            long now = System.nanoTime();
+            long completed = pool.getCompletedTaskCount();
+            int threads = pool.getPoolSize();
+            double busy = (threads == 0) ? 0.0 :
+                Math.min(1.0, (double) pool.getActiveCount() / threads);
+            int queued = pool.getQueue().size();
+            int size = pool.getCorePoolSize();
+            if (lastNanos == 0L) {
+                utilization = busy;
+                lastNanos = now;
+                lastCompleted = completed;
+                if (size < minThreads || size > maxThreads)
+                    resize(size, Math.max(minThreads, Math.min(maxThreads, size)));
+                return;
+            }
+            utilization = 0.5 * utilization + 0.5 * busy;
+            double tput = (completed - lastCompleted) * 1e9 / Math.max(1L, now - lastNanos);
+            throughput = tput;
+            lastNanos = now;
+            lastCompleted = completed;
+
+            int target;
+            if (queued == 0) {
+                // Below capacity: throughput is the arrival rate
+                lastThroughput = -1.0;
+                direction = 1;
+                step = maxStep;
+                int needed = (int) Math.ceil(threads * utilization / TARGET_UTILIZATION);
+                target = (utilization < SHRINK_UTILIZATION) ?
+                    Math.min(size, Math.max(size - maxStep, needed)) : size;
+            } else if (lastThroughput < 0.0) {
+                // Start climbing
+                lastThroughput = tput;
+                direction = 1;
+                target = size + step;
+            } else {
+                double gain = (lastThroughput > 0.0) ? tput / lastThroughput - 1.0 :
+                    (tput > 0.0) ? 1.0 : 0.0;
+                int d = (gain > NOISE) ? direction :
+                    (gain < -NOISE) ? -direction : -1;
+                if (d != direction)
+                    step = Math.max(1, step >>> 1);
+                direction = d;
+                lastThroughput = tput;
+                target = size + d * step;
+            }
+            resize(size, Math.max(minThreads, Math.min(maxThreads, target)));
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the core pool size, adjusting the maximum pool size first
+     * when growing and after when shrinking, so that the core size
+     * never exceeds it.
+     */
+    private void resize(int size, int target) {
+        if (target > size) {
+            if (target > pool.getMaximumPoolSize())
+                pool.setMaximumPoolSize(target);
+            pool.setCorePoolSize(target);
+        } else if (target < size) {
+            pool.setCorePoolSize(target);
+            int max = Math.max(target, initialMaximumPoolSize);
+            if (max < pool.getMaximumPoolSize())
+                pool.setMaximumPoolSize(max);
+        }
+    }
+
+    /**
+     * Returns a string identifying this controller, its pool's core
+     * pool size, and the last measured throughput.
+     *
+     * @return a string identifying this controller
+     */
+    public String toString() {
+        return super.toString() +
+            "[pool size = " + pool.getCorePoolSize() +
+            ", bounds = " + minThreads + ".." + maxThreads +
+            ", throughput = " + (long) throughput + "/s]";
+    }
+}
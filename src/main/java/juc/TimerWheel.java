@@ -0,0 +1,336 @@
+package juc;
+
+import juc.locks.LockSupport;
+import sun.misc2.Unsafe;
+import unsafeTest.GetUnsafeFromReflect;
+
+/**
+ * A hashed timer wheel that runs short actions after a delay, using a
+ * single background thread however many timers are pending. Each
+ * timer is hashed by its expiry tick into one of a fixed number of
+ * buckets; the thread advances one bucket per tick and runs the timers
+ * that are due. Scheduling and cancelling are O(1) and never block,
+ * unlike a {@link DelayQueue} or the heap of a
+ * {@link ScheduledThreadPoolExecutor}, at the price of firing up to
+ * one tick late.
+ * 一个哈希时间轮，在延迟之后运行简短的操作，无论有多少个待处理的定时器，都只使用一个后台线程。
+ * 每个定时器按其到期的tick被哈希到固定数量的桶之一；线程每个tick前进一个桶，并运行到期的定时器。
+ * 与{@link DelayQueue}或{@link ScheduledThreadPoolExecutor}的堆不同，调度和取消都是O(1)且从不阻塞的，
+ * 代价是最多可能晚一个tick触发。
+ *
+ * <p>Actions run on the timer thread, so they must be quick: typically
+ * completing a future or handing a task to an {@link Executor}.
+ * 操作在定时器线程上运行，因此必须很快：通常是完成一个future或将任务交给一个{@link Executor}。
+ */
+final class TimerWheel {
+    /*
+     * Implementation overview:
+     *
+     * Only the timer thread touches the buckets, so they are plain
+     * doubly-linked lists. Other threads hand new timers over through
+     * a Treiber stack ("pending"), which the timer thread swaps out
+     * once per tick and sorts into buckets. Cancellation CASes the
+     * timer's state and pushes it onto a second stack ("cancelled") so
+     * that the timer thread unlinks it at the next tick, releasing the
+     * action (and whatever it references) long before the timer would
+     * have expired. This matters when most timers are cancelled, as
+     * with request timeouts.
+     *
+     * A timer whose deadline is more than one revolution away carries
+     * the number of remaining rounds and is skipped (and decremented)
+     * each time its bucket comes around.
+     *
+     * The thread is started on first use and parks without a timeout
+     * while no timers are pending, so an idle wheel costs nothing.
+     * Scheduling a timer onto an idle wheel unparks it.
+     */
+
+    /**
+     * Timer states.
+     */
+    static final int PENDING = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    /**
+     * A scheduled action, returned by {@link #schedule} so that it can
+     * be cancelled.
+     * 一个已调度的操作，由{@link #schedule}返回以便可以被取消。
+     */
+    static final class Timer {
+        final TimerWheel wheel;
+        final long deadline;         // nanos since wheel.startTime
+        Runnable action;             // null when done
+        volatile int state;
+        Timer nextPending;           // link in pending stack
+        Timer nextCancelled;         // link in cancelled stack
+        Timer prev, next;            // bucket links, timer thread only
+        Bucket bucket;               // null unless linked
+        long remainingRounds;
+
+        Timer(TimerWheel wheel, Runnable action, long deadline) {
+            this.wheel = wheel;
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the action from running, if it has not already
+         * started.
+         * 如果操作尚未开始，则阻止其运行。
+         *
+         * @return true if this call cancelled the timer
+         */
+        boolean cancel() {
+            if (state != PENDING ||
+                    !U.compareAndSwapInt(this, STATE, PENDING, CANCELLED))
+                return false;
+            wheel.pushCancelled(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state == CANCELLED;
+        }
+    }
+
+    /**
+     * The timers hashed to one slot of the wheel.
+     */
+    static final class Bucket {
+        Timer head, tail;
+
+        void add(Timer t) {
+            t.bucket = this;
+            if (tail == null)
+                head = tail = t;
+            else {
+                tail.next = t;
+                t.prev = tail;
+                tail = t;
+            }
+        }
+
+        void remove(Timer t) {
+            Timer p = t.prev, n = t.next;
+            if (p == null)
+                head = n;
+            else
+                p.next = n;
+            if (n == null)
+                tail = p;
+            else
+                n.prev = p;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] buckets;
+    private final long startTime;
+    private final String threadName;
+
+    private volatile Timer pending;
+    private volatile Timer cancelled;
+    private volatile Thread thread;   // null until started
+    private volatile int started;
+    private volatile boolean idle;    // timer thread is parked without deadline
+
+    /**
+     * Creates a wheel. The thread is not started until the first timer
+     * is scheduled.
+     * 创建一个时间轮。直到第一个定时器被调度时才会启动线程。
+     *
+     * @param tickNanos  the duration of one tick, in nanoseconds
+     * @param wheelSize  the number of buckets, rounded up to a power of two
+     * @param threadName the name of the timer thread
+     * @throws IllegalArgumentException if tickNanos or wheelSize is
+     *                                  not positive
+     */
+    TimerWheel(long tickNanos, int wheelSize, String threadName) {
+        if (tickNanos <= 0L || wheelSize <= 0 || wheelSize > (1 << 30))
+            throw new IllegalArgumentException();
+        int n = 1;
+        while (n < wheelSize)
+            n <<= 1;
+        this.tickNanos = tickNanos;
+        this.mask = n - 1;
+        this.buckets = new Bucket[n];
+        for (int i = 0; i < n; ++i)
+            buckets[i] = new Bucket();
+        this.startTime = System.nanoTime();
+        this.threadName = threadName;
+    }
+
+    /**
+     * Arranges for the action to run on the timer thread after the
+     * given delay.
+     * 安排操作在给定延迟之后在定时器线程上运行。
+     *
+     * @param action the action
+     * @param delay  the delay, in nanoseconds; values {@code <= 0} run
+     *               the action at the next tick
+     * @return a handle to cancel the action
+     * @throws NullPointerException if action is null
+     */
+    Timer schedule(Runnable action, long delay) {
+        if (action == null)
+            throw new NullPointerException();
+        long now = System.nanoTime() - startTime;
+        long deadline = (delay <= 0L) ? now :
+                (now + delay < 0L) ? Long.MAX_VALUE : now + delay;
+        Timer t = new Timer(this, action, deadline);
+        Timer h;
+        do {
+            t.nextPending = h = pending;
+        } while (!U.compareAndSwapObject(this, PENDING_STACK, h, t));
+        if (started == 0)
+            startThread();
+        else if (idle)
+            LockSupport.unpark(thread);
+        return t;
+    }
+
+    final void pushCancelled(Timer t) {
+        Timer h;
+        do {
+            t.nextCancelled = h = cancelled;
+        } while (!U.compareAndSwapObject(this, CANCELLED_STACK, h, t));
+    }
+
+    private void startThread() {
+        if (U.compareAndSwapInt(this, STARTED, 0, 1)) {
+            Thread t = new Thread(new Worker(), threadName);
+            t.setDaemon(true);
+            thread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * The timer thread's loop.
+     */
+    final class Worker implements Runnable {
+        private long tick;           // last tick processed
+        private int count;           // timers linked into buckets
+
+        public void run() {
+            for (; ; ) {
+                long now = System.nanoTime() - startTime;
+                long current = now / tickNanos;
+                if (count == 0 && pending == null) {
+                    // nothing to do: skip ahead and park until scheduled
+                    tick = current;
+                    drainCancelled();
+                    idle = true;
+                    if (pending == null)
+                        LockSupport.park(this);
+                    idle = false;
+                    continue;
+                }
+                if (current <= tick) {
+                    LockSupport.parkNanos(this, (tick + 1) * tickNanos - now);
+                    continue;
+                }
+                while (tick < current) {
+                    ++tick;
+                    transferPending();
+                    drainCancelled();
+                    expire(buckets[(int) tick & mask]);
+                }
+            }
+        }
+
+        /**
+         * Moves newly scheduled timers into their buckets.
+         */
+        private void transferPending() {
+            Timer t = (Timer) U.getAndSetObject(TimerWheel.this, PENDING_STACK, null);
+            while (t != null) {
+                Timer n = t.nextPending;
+                t.nextPending = null;
+                if (t.state == PENDING) {
+                    long due = t.deadline / tickNanos + 1; // never early
+                    if (due < tick)
+                        due = tick;                         // already late
+                    t.remainingRounds = (due - tick) >>> Integer.numberOfTrailingZeros(mask + 1);
+                    buckets[(int) due & mask].add(t);
+                    ++count;
+                }
+                t = n;
+            }
+        }
+
+        /**
+         * Unlinks cancelled timers so their actions can be collected.
+         */
+        private void drainCancelled() {
+            Timer t = (Timer) U.getAndSetObject(TimerWheel.this, CANCELLED_STACK, null);
+            while (t != null) {
+                Timer n = t.nextCancelled;
+                t.nextCancelled = null;
+                t.action = null;
+                Bucket b = t.bucket;
+                if (b != null) {
+                    b.remove(t);
+                    --count;
+                }
+                t = n;
+            }
+        }
+
+        /**
+         * Runs the due timers of a bucket.
+         */
+        private void expire(Bucket b) {
+            Timer t = b.head;
+            while (t != null) {
+                Timer n = t.next;
+                if (t.remainingRounds > 0L)
+                    --t.remainingRounds;
+                else {
+                    b.remove(t);
+                    --count;
+                    Runnable a = t.action;
+                    t.action = null;
+                    if (U.compareAndSwapInt(t, STATE, PENDING, EXPIRED) &&
+                            a != null) {
+                        try {
+                            a.run();
+                        } catch (Throwable ex) {
+                            // keep the wheel alive; report like an uncaught exception
+                            Thread w = Thread.currentThread();
+                            Thread.UncaughtExceptionHandler h =
+                                    w.getUncaughtExceptionHandler();
+                            if (h != null)
+                                h.uncaughtException(w, ex);
+                        }
+                    }
+                }
+                t = n;
+            }
+        }
+    }
+
+    // Unsafe mechanics
+    private static final Unsafe U;
+    private static final long PENDING_STACK;
+    private static final long CANCELLED_STACK;
+    private static final long STARTED;
+    private static final long STATE;
+
+    static {
+        try {
+            U = GetUnsafeFromReflect.getUnsafe();
+            Class<?> k = TimerWheel.class;
+            PENDING_STACK = U.objectFieldOffset(k.getDeclaredField("pending"));
+            CANCELLED_STACK = U.objectFieldOffset(k.getDeclaredField("cancelled"));
+            STARTED = U.objectFieldOffset(k.getDeclaredField("started"));
+            STATE = U.objectFieldOffset(Timer.class.getDeclaredField("state"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,757 @@
+package juc;
+
+import juc.atomic.AtomicInteger;
+import juc.atomic.AtomicLong;
+import juc.locks.LockSupport;
+import juc.locks.ReentrantLock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static juc.TimeUnit.NANOSECONDS;
+
+/**
+ * A {@link ThreadPoolExecutor} that schedules delayed and periodic
+ * tasks on a hierarchical hashed timing wheel instead of the binary
+ * heap of a {@link ScheduledThreadPoolExecutor}. Scheduling and
+ * cancelling a task take constant time and lock only the one wheel
+ * bucket the task is hashed to, so threads scheduling and cancelling
+ * many timeouts at once, most of which never fire, do not contend on
+ * a single queue lock. Cancelled tasks are always removed at once.
+ * 一个{@link ThreadPoolExecutor}，它在分层哈希时间轮上调度延迟和周期性任务，而不是使用
+ * {@link ScheduledThreadPoolExecutor}的二叉堆。调度和取消任务只需常数时间，并且只锁定任务被哈希到的那一个时间轮桶，
+ * 因此同时调度和取消大量超时（其中大多数从不触发）的线程不会在单个队列锁上竞争。被取消的任务总是立即被移除。
+ *
+ * <p>Time advances in ticks of a fixed duration, one millisecond by
+ * default, counted by a timer thread obtained from the executor's
+ * {@link ThreadFactory} when the first task is scheduled. A task runs
+ * no sooner than its delay, but may be enabled up to one tick late;
+ * once enabled it is handed to the pool's threads through an
+ * unbounded queue, as with {@link #execute}, which this class does
+ * not delay. Tasks enabled in the same tick are not ordered by their
+ * delays.
+ * 时间以固定时长的tick前进，默认为一毫秒，由一个定时器线程计数，该线程在第一个任务被调度时从执行器的{@link ThreadFactory}获得。
+ * 任务不会早于其延迟运行，但可能最多晚一个tick被启用；一旦启用，它就会像{@link #execute}一样通过无界队列交给线程池的线程，
+ * 此类不会延迟{@link #execute}。在同一个tick中启用的任务不按其延迟排序。
+ *
+ * <p>Unlike a {@code ScheduledThreadPoolExecutor}, this executor
+ * cancels all delayed and periodic tasks that are not yet enabled
+ * when it is shut down; tasks already enabled still run. As there,
+ * successive executions of a periodic task do not overlap, and
+ * {@code corePoolSize} threads run all tasks, so adjusting
+ * {@code maximumPoolSize} has no useful effect.
+ * 与{@code ScheduledThreadPoolExecutor}不同，此执行器在关闭时会取消所有尚未启用的延迟和周期性任务；已启用的任务仍会运行。
+ * 与那里一样，周期性任务的连续执行不会重叠，并且由{@code corePoolSize}个线程运行所有任务，因此调整{@code maximumPoolSize}没有用处。
+ *
+ * @see TimeUnit
+ */
+public class TimingWheelScheduledExecutor
+        extends ThreadPoolExecutor
+        implements ScheduledExecutorService {
+
+    /*
+     * Implementation overview:
+     *
+     * Ticks are numbered from the executor's creation. A task's
+     * deadline is rounded up to a tick, so it never runs early. The
+     * wheel has LEVELS levels of WHEEL_SIZE buckets; a bucket at
+     * level L spans WHEEL_SIZE^L ticks. A task with deadline tick d
+     * is placed relative to the last processed tick t at the level of
+     * the highest base-WHEEL_SIZE digit in which d and t differ, in
+     * the bucket given by d's digit at that level. That bucket is next
+     * processed at tick d with its lower digits cleared, when its tasks
+     * are placed again, now at lower levels, and so cascade down
+     * until they are due. Eleven levels of 64 cover every long tick,
+     * so unlike TimerWheel there are no rounds to count.
+     *
+     * Each bucket is its own lock, guarding a doubly-linked list of
+     * tasks, so that scheduling and cancelling lock a single bucket.
+     * A task's bucket field is set while it is linked; cancel reads
+     * it, locks that bucket and unlinks the task if it is still
+     * there. The timer thread processes a bucket by detaching its
+     * whole list under the lock and recording the tick ("drained");
+     * it then runs or places the tasks without the lock, skipping
+     * those cancelled meanwhile.
+     *
+     * The timer thread publishes tick t before processing tick t's
+     * buckets, and a bucket is only processed at the ticks computed
+     * above, so a thread placing a task after reading tick t finds
+     * its bucket's drained tick below the one it expects unless the
+     * timer thread has since gone past it, in which case it places
+     * the task again against the newer tick.
+     *
+     * The count of tasks in the wheel is raised before a task is
+     * placed. While it is zero the timer thread skips ahead to the
+     * current tick and parks without a timeout. A skip changes the
+     * tick without draining, so it is done inside a seqlock ("epoch"
+     * odd while skipping) and abandoned if a task is being placed; a
+     * placing thread that sees the epoch change checks its placement
+     * again.
+     *
+     * The timer thread may still find itself many ticks behind: when
+     * woken by the first task after an idle park, when started long
+     * after the executor was created, or after a long pause. Rather
+     * than processing every tick it missed, when it is more ticks
+     * behind than the wheel has buckets it jumps: inside the seqlock
+     * it detaches every bucket and moves the tick to the current one,
+     * then places the detached tasks again, as expire does, so those
+     * already due are dispatched at once. Placing threads that linked
+     * a task against the old tick see the epoch change and place it
+     * again themselves.
+     */
+
+    /**
+     * log2 of the number of buckets per level.
+     */
+    private static final int SHIFT = 6;
+
+    private static final int WHEEL_SIZE = 1 << SHIFT;
+
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    /**
+     * Number of levels, enough for SHIFT * LEVELS to cover 63 bits.
+     */
+    private static final int LEVELS = (63 + SHIFT - 1) / SHIFT;
+
+    /**
+     * The default tick duration, in nanoseconds.
+     */
+    private static final long DEFAULT_TICK_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(1L);
+
+    /**
+     * Sequence number to break scheduling ties in compareTo.
+     */
+    private static final AtomicLong sequencer = new AtomicLong();
+
+    /**
+     * Buckets of all levels, level by level.
+     */
+    private final Bucket[] wheel;
+    private final long tickNanos;
+    private final long startTime;
+
+    /**
+     * Number of tasks in the wheel or being placed in it.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Last tick processed, written only by the timer thread.
+     */
+    private volatile long tick;
+
+    /**
+     * Odd while the timer thread skips ticks, incremented twice per skip.
+     */
+    private volatile long epoch;
+
+    private final AtomicInteger started = new AtomicInteger();
+    private volatile Thread timerThread;
+    private volatile boolean idle;   // timer thread is parked without deadline
+
+    /**
+     * A bucket of the wheel, locking the tasks linked in it.
+     */
+    @SuppressWarnings("serial")
+    static final class Bucket extends ReentrantLock {
+        WheelTask<?> head, tail;
+        long drained;                // last tick processed, guarded by lock
+
+        void add(WheelTask<?> t) {
+            if (tail == null)
+                head = tail = t;
+            else {
+                tail.next = t;
+                t.prev = tail;
+                tail = t;
+            }
+            t.bucket = this;
+        }
+
+        void remove(WheelTask<?> t) {
+            WheelTask<?> p = t.prev, n = t.next;
+            if (p == null)
+                head = n;
+            else
+                p.next = n;
+            if (n == null)
+                tail = p;
+            else
+                n.prev = p;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        /**
+         * Unlinks and returns all tasks, as a list linked by next.
+         */
+        WheelTask<?> detach() {
+            WheelTask<?> h = head;
+            for (WheelTask<?> t = h; t != null; t = t.next)
+                t.bucket = null;
+            head = tail = null;
+            return h;
+        }
+    }
+
+    final class WheelTask<V>
+            extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        /**
+         * Sequence number to break ties FIFO
+         */
+        private final long sequenceNumber;
+
+        /**
+         * The time the task is enabled to execute in nanoTime units
+         */
+        private long time;
+
+        /**
+         * Period in nanoseconds for repeating tasks, as in
+         * ScheduledThreadPoolExecutor: positive for fixed-rate,
+         * negative for fixed-delay, 0 for one-shot.
+         */
+        private final long period;
+
+        /**
+         * The bucket the task is linked in, or null.
+         */
+        volatile Bucket bucket;
+
+        WheelTask<?> prev, next;     // guarded by bucket, or owned by timer thread
+
+        WheelTask(Runnable r, V result, long ns, long period) {
+            super(r, result);
+            this.time = ns;
+            this.period = period;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        WheelTask(Callable<V> callable, long ns) {
+            super(callable);
+            this.time = ns;
+            this.period = 0;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        /**
+         * Returns the tick at which the task is due.
+         */
+        long deadlineTick() {
+            long d = time - startTime;
+            if (d <= 0L)
+                return 0L;
+            long t = d / tickNanos;
+            return (t * tickNanos == d) ? t : t + 1;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) // compare zero if same object
+                return 0;
+            if (other instanceof WheelTask) {
+                WheelTask<?> x = (WheelTask<?>) other;
+                long diff = time - x.time;
+                if (diff < 0)
+                    return -1;
+                else if (diff > 0)
+                    return 1;
+                else if (sequenceNumber < x.sequenceNumber)
+                    return -1;
+                else
+                    return 1;
+            }
+            long diff = getDelay(NANOSECONDS) - other.getDelay(NANOSECONDS);
+            return (diff < 0) ? -1 : (diff > 0) ? 1 : 0;
+        }
+
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && unlink(this))
+                count.decrementAndGet();
+            return cancelled;
+        }
+
+        /**
+         * Overrides FutureTask version so as to reset and place in
+         * the wheel again if periodic.
+         */
+        public void run() {
+            if (!isPeriodic())
+                super.run();
+            else if (isShutdown())
+                cancel(false);
+            else if (super.runAndReset()) {
+                long p = period;
+                time = (p > 0) ? time + p : triggerTime(-p);
+                addToWheel(this);
+            }
+        }
+    }
+
+    /**
+     * Creates a new {@code TimingWheelScheduledExecutor} with the
+     * given core pool size and a tick of one millisecond.
+     * 使用给定的核心线程池大小和一毫秒的tick创建一个新的{@code TimingWheelScheduledExecutor}。
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even
+     *                     if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @throws IllegalArgumentException if {@code corePoolSize < 0}
+     */
+    public TimingWheelScheduledExecutor(int corePoolSize) {
+        this(corePoolSize, DEFAULT_TICK_NANOS, NANOSECONDS,
+                Executors.defaultThreadFactory(), new AbortPolicy());
+    }
+
+    /**
+     * Creates a new {@code TimingWheelScheduledExecutor} with the
+     * given core pool size and tick duration.
+     * 使用给定的核心线程池大小和tick时长创建一个新的{@code TimingWheelScheduledExecutor}。
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even
+     *                     if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param tickDuration the precision of delays
+     * @param unit         the time unit of the tickDuration argument
+     * @throws IllegalArgumentException if {@code corePoolSize < 0} or
+     *                                  {@code tickDuration} is not positive
+     * @throws NullPointerException     if {@code unit} is null
+     */
+    public TimingWheelScheduledExecutor(int corePoolSize,
+                                        long tickDuration, TimeUnit unit) {
+        this(corePoolSize, tickDuration, unit,
+                Executors.defaultThreadFactory(), new AbortPolicy());
+    }
+
+    /**
+     * Creates a new {@code TimingWheelScheduledExecutor} with the
+     * given initial parameters.
+     * 使用给定的初始参数创建一个新的{@code TimingWheelScheduledExecutor}。
+     *
+     * @param corePoolSize  the number of threads to keep in the pool, even
+     *                      if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param tickDuration  the precision of delays
+     * @param unit          the time unit of the tickDuration argument
+     * @param threadFactory the factory to use when the executor
+     *                      creates a new thread, including the timer thread
+     * @param handler       the handler to use when execution is blocked
+     *                      because the executor has been shut down
+     * @throws IllegalArgumentException if {@code corePoolSize < 0} or
+     *                                  {@code tickDuration} is not positive
+     * @throws NullPointerException     if {@code unit}, {@code threadFactory}
+     *                                  or {@code handler} is null
+     */
+    public TimingWheelScheduledExecutor(int corePoolSize,
+                                        long tickDuration, TimeUnit unit,
+                                        ThreadFactory threadFactory,
+                                        RejectedExecutionHandler handler) {
+        super(corePoolSize, Integer.MAX_VALUE, 0, NANOSECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory, handler);
+        if (tickDuration <= 0L)
+            throw new IllegalArgumentException();
+        this.tickNanos = unit.toNanos(tickDuration);
+        Bucket[] w = new Bucket[LEVELS << SHIFT];
+        for (int i = 0; i < w.length; ++i)
+            w[i] = new Bucket();
+        this.wheel = w;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the tick duration, the precision of delays.
+     * 返回tick时长，即延迟的精度。
+     *
+     * @param unit the desired time unit
+     * @return the tick duration
+     */
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, NANOSECONDS);
+    }
+
+    /**
+     * Returns the trigger time of a delayed action.
+     */
+    private long triggerTime(long delay, TimeUnit unit) {
+        return triggerTime(unit.toNanos((delay < 0) ? 0 : delay));
+    }
+
+    /**
+     * Returns the trigger time of a delayed action. Delays are
+     * capped at Long.MAX_VALUE >> 1 so that times never overflow.
+     */
+    long triggerTime(long delay) {
+        return System.nanoTime() + Math.min(delay, Long.MAX_VALUE >> 1);
+    }
+
+    /**
+     * Main execution method for delayed or periodic tasks. If the
+     * pool is shut down, rejects the task; otherwise places it in the
+     * wheel, cancelling it again if the pool is shut down meanwhile.
+     */
+    private void delayedExecute(WheelTask<?> task) {
+        if (isShutdown()) {
+            reject(task);
+            return;
+        }
+        if (started.get() == 0)
+            startTimer();
+        addToWheel(task);
+    }
+
+    /**
+     * Places a task in the wheel, waking the timer thread if idle,
+     * unless the pool is shut down meanwhile, in which case the task
+     * is cancelled.
+     */
+    void addToWheel(WheelTask<?> task) {
+        count.incrementAndGet();
+        place(task);
+        if (isShutdown() && unlink(task)) {
+            count.decrementAndGet();
+            task.cancel(false);
+        } else if (idle)
+            LockSupport.unpark(timerThread);
+    }
+
+    private void startTimer() {
+        if (started.compareAndSet(0, 1)) {
+            Thread t = getThreadFactory().newThread(new Ticker());
+            if (t == null) {
+                started.set(0);
+                throw new RejectedExecutionException("Ticker thread not created");
+            }
+            timerThread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * Links a counted task into the bucket it is due from, or hands
+     * it to the pool if it is due now.
+     */
+    void place(WheelTask<?> task) {
+        long d = task.deadlineTick();
+        for (; ; ) {
+            long e = epoch;
+            if ((e & 1L) != 0L) {     // timer thread is skipping ahead
+                Thread.yield();
+                continue;
+            }
+            long t = tick;
+            if (d <= t) {
+                count.decrementAndGet();
+                dispatch(task);
+                return;
+            }
+            int level = (63 - Long.numberOfLeadingZeros(d ^ t)) / SHIFT;
+            int shift = level * SHIFT;
+            long drainAt = (d >>> shift) << shift;
+            Bucket b = wheel[(level << SHIFT) | ((int) (d >>> shift) & MASK)];
+            b.lock();
+            try {
+                if (b.drained >= drainAt)
+                    continue;         // timer thread went past; read tick again
+                b.add(task);
+            } finally {
+                b.unlock();
+            }
+            if (epoch != e && unlink(task))
+                continue;             // skipped past; place again
+            if (task.isCancelled() && unlink(task))
+                count.decrementAndGet();
+            return;
+        }
+    }
+
+    /**
+     * Unlinks the task from its bucket.
+     *
+     * @return true if the task was linked
+     */
+    boolean unlink(WheelTask<?> task) {
+        Bucket b;
+        while ((b = task.bucket) != null) {
+            b.lock();
+            try {
+                if (task.bucket == b) {
+                    b.remove(task);
+                    return true;
+                }
+            } finally {
+                b.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands a due task to the pool's threads.
+     */
+    private void dispatch(WheelTask<?> task) {
+        if (task.isCancelled())
+            return;
+        if (isShutdown())
+            task.cancel(false);
+        else {
+            try {
+                super.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The timer thread's loop.
+     */
+    final class Ticker implements Runnable {
+        public void run() {
+            while (!isShutdown()) {
+                long now = System.nanoTime() - startTime;
+                long current = now / tickNanos;
+                if (count.get() == 0) {
+                    // nothing to do: skip ahead and park until scheduled
+                    skipTo(current);
+                    idle = true;
+                    if (count.get() == 0 && !isShutdown())
+                        LockSupport.park(this);
+                    idle = false;
+                    continue;
+                }
+                long t = tick;
+                if (current <= t) {
+                    LockSupport.parkNanos(this, (t + 1) * tickNanos - now);
+                    continue;
+                }
+                if (current - t > wheel.length) {
+                    // far behind: cheaper to place every task again
+                    jumpTo(current);
+                    continue;
+                }
+                while (t < current && !isShutdown())
+                    advance(++t);
+            }
+            // expire may have placed a detached task back after
+            // shutdown cleared the wheel
+            for (Runnable r : clearWheel())
+                ((WheelTask<?>) r).cancel(false);
+        }
+
+        /**
+         * Moves the tick forward without processing buckets, unless
+         * a task is being placed.
+         */
+        private void skipTo(long current) {
+            if (current <= tick)
+                return;
+            epoch = epoch + 1;
+            if (count.get() == 0)
+                tick = current;
+            epoch = epoch + 1;
+        }
+
+        /**
+         * Moves the tick forward to current without processing the
+         * ticks in between, placing every task in the wheel again
+         * against the new tick.
+         */
+        private void jumpTo(long current) {
+            WheelTask<?> h = null;
+            epoch = epoch + 1;
+            try {
+                for (Bucket b : wheel) {
+                    WheelTask<?> l;
+                    b.lock();
+                    try {
+                        l = b.detach();
+                    } finally {
+                        b.unlock();
+                    }
+                    if (l != null) {
+                        WheelTask<?> p = l;
+                        while (p.next != null)
+                            p = p.next;
+                        p.next = h;
+                        h = l;
+                    }
+                }
+                tick = current;
+            } finally {
+                epoch = epoch + 1;
+            }
+            while (h != null) {
+                WheelTask<?> n = h.next;
+                h.prev = h.next = null;
+                if (h.isCancelled())
+                    count.decrementAndGet();
+                else
+                    place(h);         // due tasks are dispatched
+                h = n;
+            }
+        }
+
+        /**
+         * Processes tick t: cascades the higher-level buckets whose
+         * span starts at t, then runs the tasks due at t.
+         */
+        private void advance(long t) {
+            tick = t;
+            for (int level = LEVELS - 1; level > 0; --level) {
+                int shift = level * SHIFT;
+                if ((t & ((1L << shift) - 1L)) == 0L)
+                    expire(wheel[(level << SHIFT) | ((int) (t >>> shift) & MASK)], t);
+            }
+            expire(wheel[(int) t & MASK], t);
+        }
+
+        private void expire(Bucket b, long t) {
+            WheelTask<?> h;
+            b.lock();
+            try {
+                b.drained = t;
+                h = b.detach();
+            } finally {
+                b.unlock();
+            }
+            while (h != null) {
+                WheelTask<?> n = h.next;
+                h.prev = h.next = null;
+                if (h.isCancelled())
+                    count.decrementAndGet();
+                else
+                    place(h);         // due tasks are dispatched
+                h = n;
+            }
+        }
+    }
+
+    /**
+     * Removes all tasks from the wheel.
+     */
+    private List<Runnable> clearWheel() {
+        ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        for (Bucket b : wheel) {
+            WheelTask<?> h;
+            b.lock();
+            try {
+                h = b.detach();
+            } finally {
+                b.unlock();
+            }
+            while (h != null) {
+                WheelTask<?> n = h.next;
+                h.prev = h.next = null;
+                count.decrementAndGet();
+                tasks.add(h);
+                h = n;
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Cancels the tasks in the wheel. Invoked within super.shutdown.
+     */
+    @Override
+    void onShutdown() {
+        for (Runnable r : clearWheel())
+            ((WheelTask<?>) r).cancel(false);
+        LockSupport.unpark(timerThread);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public ScheduledFuture<?> schedule(Runnable command,
+                                       long delay,
+                                       TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<Void> t = new WheelTask<Void>(command, null,
+                triggerTime(delay, unit), 0L);
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable,
+                                           long delay,
+                                           TimeUnit unit) {
+        if (callable == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<V> t = new WheelTask<V>(callable,
+                triggerTime(delay, unit));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+                                                  long initialDelay,
+                                                  long period,
+                                                  TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t = new WheelTask<Void>(command, null,
+                triggerTime(initialDelay, unit), unit.toNanos(period));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+                                                     long initialDelay,
+                                                     long delay,
+                                                     TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (delay <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t = new WheelTask<Void>(command, null,
+                triggerTime(initialDelay, unit), unit.toNanos(-delay));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * Attempts to stop all actively executing tasks, halts the
+     * processing of waiting tasks, and returns a list of the tasks
+     * that were awaiting execution, both those already enabled and
+     * those still in the wheel. A task that the timer thread is
+     * moving between buckets at that moment is cancelled instead.
+     * 尝试停止所有正在执行的任务，停止处理等待中的任务，并返回等待执行的任务列表，包括已启用的任务和仍在时间轮中的任务。
+     * 此时正被计时线程在桶之间移动的任务则会被取消。
+     *
+     * @return list of tasks that never commenced execution
+     * @throws SecurityException {@inheritDoc}
+     */
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        tasks.addAll(clearWheel());
+        LockSupport.unpark(timerThread);
+        return tasks;
+    }
+}
@@ -0,0 +1,487 @@
+package juc;
+
+import juc.atomic.AtomicInteger;
+import juc.atomic.LongAdder;
+import juc.locks.Condition;
+import juc.locks.ReentrantLock;
+
+import java.util.*;
+
+/**
+ * A {@link ThreadPoolExecutor} whose work queue is split into several
+ * lanes, so that threads submitting and taking tasks rarely contend on
+ * the same queue. Each pool thread takes tasks from a lane of its own
+ * first, and steals from the other lanes when that lane is empty.
+ * Tasks submitted from a pool thread, such as subtasks, go to that
+ * thread's lane; tasks submitted from other threads are spread across
+ * the lanes in turn.
+ * 一个{@link ThreadPoolExecutor}，其工作队列被拆分为多个通道，因此提交和获取任务的线程很少在同一个队列上竞争。
+ * 每个池线程首先从自己的通道获取任务，当该通道为空时从其他通道窃取任务。
+ * 从池线程提交的任务（例如子任务）进入该线程的通道；从其他线程提交的任务轮流分散到各个通道。
+ *
+ * <p>Everything else is inherited: the pool's lifecycle, its {@link
+ * RejectedExecutionHandler}, the {@link #beforeExecute beforeExecute}
+ * and {@link #afterExecute afterExecute} hooks, and its statistics.
+ * The queue is unbounded, so, as with an unbounded {@link
+ * LinkedBlockingQueue}, the pool does not grow beyond its core size
+ * unless {@linkplain #setEagerThreadGrowth eager thread growth} is
+ * enabled, and tasks are rejected only after shutdown. Tasks are not
+ * taken in strict submission order, though each pool thread
+ * occasionally starts its search at another lane, so that no lane
+ * waits indefinitely behind a busy thread's own tasks.
+ * 其他一切都是继承的：线程池的生命周期、其{@link RejectedExecutionHandler}、{@link #beforeExecute beforeExecute}
+ * 和{@link #afterExecute afterExecute}钩子以及其统计信息。队列是无界的，因此与无界的{@link LinkedBlockingQueue}一样，
+ * 除非启用了{@linkplain #setEagerThreadGrowth 急切增长线程}，否则线程池不会增长到超过其核心大小，并且只有在关闭后才会拒绝任务。
+ * 任务并不严格按照提交顺序获取，但每个池线程偶尔会从另一个通道开始查找，因此没有哪个通道会无限期地等待在繁忙线程自己的任务之后。
+ *
+ * <p>This design pays off for large numbers of short tasks on many
+ * cores, where the single lock pair of a shared queue limits
+ * throughput. For longer tasks a plain {@code ThreadPoolExecutor}
+ * behaves the same and orders tasks fairly.
+ * 这种设计适用于在多核上运行大量短任务的情况，此时共享队列的单个锁对会限制吞吐量。
+ * 对于较长的任务，普通的{@code ThreadPoolExecutor}表现相同，并且会公平地对任务排序。
+ *
+ * @see ForkJoinPool
+ */
+public class WorkStealingThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Creates a new {@code WorkStealingThreadPoolExecutor} with the
+     * given number of threads, all kept alive, and one lane per
+     * thread.
+     * 创建一个具有给定线程数（全部保持存活）且每个线程一个通道的{@code WorkStealingThreadPoolExecutor}。
+     *
+     * @param nThreads the number of threads in the pool
+     * @throws IllegalArgumentException if {@code nThreads <= 0}
+     */
+    public WorkStealingThreadPoolExecutor(int nThreads) {
+        this(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new {@code WorkStealingThreadPoolExecutor} with the
+     * given initial parameters, the default thread factory and the
+     * default rejected execution handler, and one lane per core
+     * thread.
+     * 使用给定的初始参数、默认线程工厂和默认拒绝执行处理器创建一个新的{@code WorkStealingThreadPoolExecutor}，每个核心线程一个通道。
+     *
+     * @param corePoolSize    the number of threads to keep in the pool, even
+     *                        if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize the maximum number of threads to allow in the
+     *                        pool
+     * @param keepAliveTime   when the number of threads is greater than
+     *                        the core, this is the maximum time that excess idle threads
+     *                        will wait for new tasks before terminating.
+     * @param unit            the time unit for the {@code keepAliveTime} argument
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *                                  {@code corePoolSize < 0}<br>
+     *                                  {@code keepAliveTime < 0}<br>
+     *                                  {@code maximumPoolSize <= 0}<br>
+     *                                  {@code maximumPoolSize < corePoolSize}
+     */
+    public WorkStealingThreadPoolExecutor(int corePoolSize,
+                                          int maximumPoolSize,
+                                          long keepAliveTime,
+                                          TimeUnit unit) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+              new StealingQueue(Math.max(1, corePoolSize)));
+    }
+
+    /**
+     * Creates a new {@code WorkStealingThreadPoolExecutor} with the
+     * given initial parameters and one lane per core thread.
+     * 使用给定的初始参数创建一个新的{@code WorkStealingThreadPoolExecutor}，每个核心线程一个通道。
+     *
+     * @param corePoolSize    the number of threads to keep in the pool, even
+     *                        if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize the maximum number of threads to allow in the
+     *                        pool
+     * @param keepAliveTime   when the number of threads is greater than
+     *                        the core, this is the maximum time that excess idle threads
+     *                        will wait for new tasks before terminating.
+     * @param unit            the time unit for the {@code keepAliveTime} argument
+     * @param threadFactory   the factory to use when the executor
+     *                        creates a new thread
+     * @param handler         the handler to use when execution is blocked
+     *                        because the executor has been shut down
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *                                  {@code corePoolSize < 0}<br>
+     *                                  {@code keepAliveTime < 0}<br>
+     *                                  {@code maximumPoolSize <= 0}<br>
+     *                                  {@code maximumPoolSize < corePoolSize}
+     * @throws NullPointerException     if {@code threadFactory} or
+     *                                  {@code handler} is null
+     */
+    public WorkStealingThreadPoolExecutor(int corePoolSize,
+                                          int maximumPoolSize,
+                                          long keepAliveTime,
+                                          TimeUnit unit,
+                                          ThreadFactory threadFactory,
+                                          RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+             Math.max(1, corePoolSize), threadFactory, handler);
+    }
+
+    /**
+     * Creates a new {@code WorkStealingThreadPoolExecutor} with the
+     * given initial parameters and number of lanes. More lanes than
+     * threads reduce contention between submitting threads; fewer
+     * make stealing cheaper.
+     * 使用给定的初始参数和通道数创建一个新的{@code WorkStealingThreadPoolExecutor}。
+     * 通道多于线程可以减少提交线程之间的竞争；通道较少则使窃取的开销更低。
+     *
+     * @param corePoolSize    the number of threads to keep in the pool, even
+     *                        if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize the maximum number of threads to allow in the
+     *                        pool
+     * @param keepAliveTime   when the number of threads is greater than
+     *                        the core, this is the maximum time that excess idle threads
+     *                        will wait for new tasks before terminating.
+     * @param unit            the time unit for the {@code keepAliveTime} argument
+     * @param lanes           the number of lanes, rounded up to a power of two
+     * @param threadFactory   the factory to use when the executor
+     *                        creates a new thread
+     * @param handler         the handler to use when execution is blocked
+     *                        because the executor has been shut down
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *                                  {@code corePoolSize < 0}<br>
+     *                                  {@code keepAliveTime < 0}<br>
+     *                                  {@code maximumPoolSize <= 0}<br>
+     *                                  {@code maximumPoolSize < corePoolSize}<br>
+     *                                  {@code lanes <= 0}
+     * @throws NullPointerException     if {@code threadFactory} or
+     *                                  {@code handler} is null
+     */
+    public WorkStealingThreadPoolExecutor(int corePoolSize,
+                                          int maximumPoolSize,
+                                          long keepAliveTime,
+                                          TimeUnit unit,
+                                          int lanes,
+                                          ThreadFactory threadFactory,
+                                          RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+              new StealingQueue(lanes), threadFactory, handler);
+    }
+
+    /**
+     * Returns the number of lanes the work queue is split into.
+     * 返回工作队列被拆分成的通道数。
+     *
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+        return ((StealingQueue) getQueue()).lanes.length;
+    }
+
+    /**
+     * Returns the task queue used by this executor. Its iterator
+     * visits the lanes in turn. Its {@code size} method reads a
+     * striped counter rather than traversing the lanes, so it does
+     * not grow with the number of queued tasks, but is only
+     * approximate while tasks are being added or taken.
+     * 返回此执行器使用的任务队列。其迭代器依次访问各个通道。其{@code size}方法读取一个分段计数器而不是遍历各个通道，
+     * 因此其开销不随排队任务数增长，但在任务被添加或取走期间只是近似值。
+     *
+     * @return the task queue
+     */
+    public BlockingQueue<Runnable> getQueue() {
+        return super.getQueue();
+    }
+
+    /**
+     * Striped work queue. Each lane is a ConcurrentLinkedQueue, so
+     * offers and polls on different lanes never touch the same
+     * memory, and those on the same lane do not block. Each thread
+     * that uses the queue is given a home lane on first use, handed
+     * out in turn. A thread that has ever blocked in take or timed
+     * poll (a pool thread) offers to its home lane; other threads
+     * offer to successive lanes starting from theirs. All threads
+     * poll their home lane first.
+     *
+     * Threads with nothing to take block on a Condition, as in
+     * LinkedBlockingQueue, but offers touch the lock only when the
+     * waiters count shows that a thread is blocked. A taker
+     * increments waiters and rescans the lanes before awaiting, and
+     * an offerer reads waiters after adding to a lane, so either the
+     * rescan sees the task or the offerer sees the waiter; since the
+     * taker holds the lock from the rescan until it awaits, the
+     * offerer's signal cannot arrive in between.
+     *
+     * The number of queued tasks is kept in a LongAdder, so that
+     * size, which ThreadPoolExecutor calls on every execute under
+     * eager thread growth, does not walk the lanes, and counting
+     * adds no shared contention point. It is incremented before a
+     * task is added and decremented after one is removed, so it may
+     * briefly over-count but is never negative.
+     */
+    static final class StealingQueue extends AbstractQueue<Runnable>
+        implements BlockingQueue<Runnable> {
+
+        /**
+         * Polls between searches that start at another lane than the
+         * home one, so that tasks stuck behind a thread's own never
+         * starve. Must be a power of two.
+         */
+        static final int FAIRNESS_PERIOD = 64;
+
+        /** Largest number of lanes. */
+        static final int MAX_LANES = 1 << 16;
+
+        final ConcurrentLinkedQueue<Runnable>[] lanes;
+        private final int mask;
+        private final AtomicInteger nextHome = new AtomicInteger();
+        private final ThreadLocal<Home> home =
+            ThreadLocal.withInitial(this::newHome);
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final LongAdder count = new LongAdder();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+
+        /** Per-thread state: home lane, and whether it is a taker. */
+        static final class Home {
+            final int index;
+            boolean taker;
+            int ticks;    // offers or polls so far; picks a lane
+
+            Home(int index) {
+                this.index = index;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        StealingQueue(int lanes) {
+            if (lanes <= 0)
+                throw new IllegalArgumentException();
+            int n = 1;
+            while (n < lanes && n < MAX_LANES)
+                n <<= 1;
+            ConcurrentLinkedQueue<Runnable>[] ls =
+                (ConcurrentLinkedQueue<Runnable>[]) new ConcurrentLinkedQueue<?>[n];
+            for (int i = 0; i < n; ++i)
+                ls[i] = new ConcurrentLinkedQueue<Runnable>();
+            this.lanes = ls;
+            this.mask = n - 1;
+        }
+
+        private Home newHome() {
+            return new Home(nextHome.getAndIncrement() & mask);
+        }
+
+        public boolean offer(Runnable x) {
+            if (x == null)
+                throw new NullPointerException();
+            Home h = home.get();
+            int i = h.taker ? h.index : (h.index + h.ticks++) & mask;
+            count.increment();
+            lanes[i].offer(x);
+            if (waiters.get() != 0)
+                signalNotEmpty();
+            return true;
+        }
+
+        private void signalNotEmpty() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void put(Runnable e) {
+            offer(e);
+        }
+
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) {
+            return offer(e);
+        }
+
+        public Runnable poll() {
+            return poll(home.get());
+        }
+
+        /**
+         * Polls the lanes, starting at the given home lane, or now
+         * and then at another lane.
+         */
+        private Runnable poll(Home h) {
+            int start = ((++h.ticks & (FAIRNESS_PERIOD - 1)) == 0) ?
+                h.index + (h.ticks / FAIRNESS_PERIOD) : h.index;
+            final ConcurrentLinkedQueue<Runnable>[] ls = lanes;
+            for (int i = 0, n = ls.length; i < n; ++i) {
+                Runnable x = ls[(start + i) & mask].poll();
+                if (x != null) {
+                    count.decrement();
+                    return x;
+                }
+            }
+            return null;
+        }
+
+        public Runnable take() throws InterruptedException {
+            Home h = home.get();
+            h.taker = true;
+            for (;;) {
+                Runnable x = poll(h);
+                if (x != null)
+                    return x;
+                final ReentrantLock lock = this.lock;
+                lock.lockInterruptibly();
+                try {
+                    waiters.getAndIncrement();
+                    try {
+                        if ((x = poll(h)) != null)
+                            return x;
+                        notEmpty.await();
+                    } finally {
+                        waiters.getAndDecrement();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        public Runnable poll(long timeout, TimeUnit unit)
+            throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            Home h = home.get();
+            h.taker = true;
+            for (;;) {
+                Runnable x = poll(h);
+                if (x != null)
+                    return x;
+                if (nanos <= 0L)
+                    return null;
+                final ReentrantLock lock = this.lock;
+                lock.lockInterruptibly();
+                try {
+                    waiters.getAndIncrement();
+                    try {
+                        if ((x = poll(h)) != null)
+                            return x;
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } finally {
+                        waiters.getAndDecrement();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        public Runnable peek() {
+            for (ConcurrentLinkedQueue<Runnable> q : lanes) {
+                Runnable x = q.peek();
+                if (x != null)
+                    return x;
+            }
+            return null;
+        }
+
+        public boolean isEmpty() {
+            for (ConcurrentLinkedQueue<Runnable> q : lanes)
+                if (!q.isEmpty())
+                    return false;
+            return true;
+        }
+
+        public int size() {
+            return (int) Math.min(count.sum(), Integer.MAX_VALUE);
+        }
+
+        public int remainingCapacity() {
+            return Integer.MAX_VALUE;
+        }
+
+        public boolean remove(Object o) {
+            if (o != null) {
+                for (ConcurrentLinkedQueue<Runnable> q : lanes)
+                    if (q.remove(o)) {
+                        count.decrement();
+                        return true;
+                    }
+            }
+            return false;
+        }
+
+        public boolean contains(Object o) {
+            if (o != null) {
+                for (ConcurrentLinkedQueue<Runnable> q : lanes)
+                    if (q.contains(o))
+                        return true;
+            }
+            return false;
+        }
+
+        public void clear() {
+            for (ConcurrentLinkedQueue<Runnable> q : lanes) {
+                while (q.poll() != null)
+                    count.decrement();
+            }
+        }
+
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            if (c == null)
+                throw new NullPointerException();
+            if (c == this)
+                throw new IllegalArgumentException();
+            int n = 0;
+            for (ConcurrentLinkedQueue<Runnable> q : lanes) {
+                Runnable x;
+                while (n < maxElements && (x = q.poll()) != null) {
+                    count.decrement();
+                    c.add(x);
+                    ++n;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Returns a weakly consistent iterator over the lanes in
+         * turn. Its remove method removes from the lane the last
+         * element came from.
+         */
+        public Iterator<Runnable> iterator() {
+            return new Itr();
+        }
+
+        private class Itr implements Iterator<Runnable> {
+            int lane;                    // index of lane of it
+            Iterator<Runnable> it = lanes[0].iterator();
+            Runnable lastRet;            // last element returned
+            int lastLane;                // index of its lane
+
+            public boolean hasNext() {
+                while (!it.hasNext()) {
+                    if (++lane >= lanes.length)
+                        return false;
+                    it = lanes[lane].iterator();
+                }
+                return true;
+            }
+
+            public Runnable next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                lastLane = lane;
+                return lastRet = it.next();
+            }
+
+            public void remove() {
+                Runnable x = lastRet;
+                if (x == null)
+                    throw new IllegalStateException();
+                lastRet = null;
+                if (lanes[lastLane].remove(x))
+                    count.decrement();
+            }
+        }
+    }
+}
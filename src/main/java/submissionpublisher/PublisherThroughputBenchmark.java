@@ -0,0 +1,145 @@
+package submissionpublisher;
+
+import juc.CountDownLatch;
+import juc.ExecutorService;
+import juc.Executors;
+import juc.Flow;
+import juc.ForkJoinPool;
+import juc.LinkedBlockingQueue;
+import juc.SubmissionPublisher;
+
+/**
+ * Messages/sec from one producer to 1, 4 and 16 subscribers: SubmissionPublisher on a
+ * fixed pool and on the default executor, each subscriber requesting 64 items at a time,
+ * against the blocking-queue glue it replaces (one bounded LinkedBlockingQueue and one
+ * consumer thread per subscriber). Reports deliveries per second, i.e. messages times
+ * subscribers, for the best of a few rounds. The default executor is only measured when
+ * the common pool has parallelism, as on a single core it falls back to a thread per task.
+ */
+public class PublisherThroughputBenchmark {
+    private static final int MESSAGES = 1_000_000;
+    private static final int[] SUBSCRIBERS = {1, 4, 16};
+    private static final int ROUNDS = 3;
+    private static final int BUFFER = 256;
+    private static final long REQUEST = 64;
+
+    static volatile long sink;
+
+    interface Run {
+        long deliver(int subscribers) throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int n : SUBSCRIBERS) {
+                System.out.println("subscribers = " + n);
+                run("queues + threads", n, PublisherThroughputBenchmark::queues);
+                run("publisher (pool)", n, s -> publisher(new SubmissionPublisher<>(pool, BUFFER), s));
+                if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+                    run("publisher (default)", n, s -> publisher(new SubmissionPublisher<>(), s));
+                } else {
+                    // the default executor would start a thread per delivery burst
+                    System.out.println("  publisher (default)  skipped: common pool has no parallelism");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(String name, int subscribers, Run run) throws InterruptedException {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r <= ROUNDS; r++) { // first round is warm-up
+            long nanos = run.deliver(subscribers);
+            if (r > 0) {
+                best = Math.min(best, nanos);
+            }
+        }
+        System.out.printf("  %-20s %8.2f M deliveries/s%n",
+                name, (double) MESSAGES * subscribers / best * 1e3);
+    }
+
+    private static long publisher(SubmissionPublisher<Integer> publisher, int subscribers)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            publisher.subscribe(new Summing(done));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            publisher.submit(i);
+        }
+        publisher.close();
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    private static long queues(int subscribers) throws InterruptedException {
+        @SuppressWarnings("unchecked")
+        LinkedBlockingQueue<Integer>[] queues = (LinkedBlockingQueue<Integer>[]) new LinkedBlockingQueue<?>[subscribers];
+        Thread[] consumers = new Thread[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            LinkedBlockingQueue<Integer> q = queues[i] = new LinkedBlockingQueue<>(BUFFER);
+            consumers[i] = new Thread(() -> {
+                long sum = 0;
+                try {
+                    for (int x; (x = q.take()) >= 0; ) {
+                        sum += x;
+                    }
+                } catch (InterruptedException ignore) {
+                }
+                sink += sum;
+            });
+            consumers[i].start();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            for (LinkedBlockingQueue<Integer> q : queues) {
+                q.put(i);
+            }
+        }
+        for (LinkedBlockingQueue<Integer> q : queues) {
+            q.put(-1); // end of stream
+        }
+        for (Thread t : consumers) {
+            t.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    static final class Summing implements Flow.Subscriber<Integer> {
+        private final CountDownLatch done;
+        private Flow.Subscription subscription;
+        private long remaining;
+        private long sum;
+
+        Summing(CountDownLatch done) {
+            this.done = done;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            remaining = REQUEST;
+            subscription.request(REQUEST);
+        }
+
+        public void onNext(Integer item) {
+            sum += item;
+            if (--remaining == 0) {
+                remaining = REQUEST;
+                subscription.request(REQUEST);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+            done.countDown();
+        }
+
+        public void onComplete() {
+            sink += sum;
+            done.countDown();
+        }
+    }
+}
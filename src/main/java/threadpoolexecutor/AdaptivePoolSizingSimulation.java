@@ -0,0 +1,93 @@
+package threadpoolexecutor;
+
+import juc.LinkedBlockingQueue;
+import juc.Semaphore;
+import juc.ThreadPoolExecutor;
+import juc.ThreadPoolSizeController;
+import juc.TimeUnit;
+
+/**
+ * Convergence of ThreadPoolSizeController on a simulated service. Each task holds one of
+ * a limited number of downstream "connections" (a Semaphore) for TASK_MS, so throughput
+ * grows with the pool size up to the number of connections and is flat beyond it. A
+ * producer keeps the queue full while the connection limit changes from 16 to 6, then
+ * switches to a light arrival rate. The controller starts from a pool of 2 threads and
+ * runs every TICK_MS; each tick prints the pool size it chose and the measured
+ * throughput, which should settle near the connection limit under load and shrink when
+ * the load drops.
+ */
+public class AdaptivePoolSizingSimulation {
+    private static final long TASK_MS = 2;
+    private static final long TICK_MS = 200;
+    private static final int BACKLOG = 500;
+    private static final long LIGHT_GAP_MS = 2; // one task per gap
+
+    private static volatile Semaphore connections;
+    private static volatile boolean light;
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 100, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        ThreadPoolSizeController controller = new ThreadPoolSizeController(pool, 1, 64, 4);
+        Runnable task = () -> {
+            Semaphore s = connections;
+            try {
+                s.acquire();
+                try {
+                    Thread.sleep(TASK_MS);
+                } finally {
+                    s.release();
+                }
+            } catch (InterruptedException ignore) {
+            }
+        };
+        Thread producer = new Thread(() -> {
+            try {
+                while (running) {
+                    if (light) {
+                        pool.execute(task);
+                        Thread.sleep(LIGHT_GAP_MS);
+                    } else if (pool.getQueue().size() < BACKLOG) {
+                        pool.execute(task);
+                    } else {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+        connections = new Semaphore(16);
+        producer.start();
+        phase("16 connections", controller, 40);
+        connections = new Semaphore(6);
+        phase("6 connections", controller, 40);
+        light = true;
+        phase("light load", controller, 25);
+        running = false;
+        producer.join();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static void phase(String name, ThreadPoolSizeController controller, int ticks)
+            throws InterruptedException {
+        System.out.println("-- " + name + " (ideal " + (name.startsWith("light")
+                ? "~" + Math.max(1, TASK_MS / LIGHT_GAP_MS)
+                : name.substring(0, name.indexOf(' '))) + " threads)");
+        StringBuilder line = new StringBuilder();
+        for (int t = 0; t < ticks; t++) {
+            Thread.sleep(TICK_MS);
+            controller.run();
+            line.append(String.format("%3d:%-5d", controller.getPool().getCorePoolSize(),
+                    (long) controller.getThroughput()));
+            if (t % 8 == 7) {
+                System.out.println(line);
+                line.setLength(0);
+            }
+        }
+        if (line.length() > 0) {
+            System.out.println(line);
+        }
+    }
+}
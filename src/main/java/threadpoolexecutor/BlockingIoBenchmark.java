@@ -0,0 +1,54 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.ExecutorService;
+import juc.Executors;
+import juc.LinkedBlockingQueue;
+import juc.ThreadPoolExecutor;
+import juc.TimeUnit;
+
+/**
+ * Throughput of tasks that block, as on a remote call, comparing a ThreadPoolExecutor of
+ * POOL_SIZE threads, a thread per task with platform threads, and
+ * Executors.newVirtualThreadPerTaskExecutor, which starts a virtual thread per task on
+ * Java 21 and later and is a cached thread pool before. TASKS tasks each block for
+ * IO_MS milliseconds. Prints tasks per second. The fixed pool is bounded by
+ * POOL_SIZE * 1000 / IO_MS tasks per second, whatever the number of cores.
+ */
+public class BlockingIoBenchmark {
+    private static final int TASKS = 20_000;
+    private static final long IO_MS = 50;
+    private static final int POOL_SIZE = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("virtual threads: " + Executors.hasVirtualThreads());
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            run("fixed pool", new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()));
+            run("platform per task", Executors.newThreadPerTaskExecutor(Thread::new));
+            run("virtual per task", Executors.newVirtualThreadPerTaskExecutor());
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, ExecutorService executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        Runnable io = () -> {
+            try {
+                Thread.sleep(IO_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            executor.execute(io);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("%-18s %,10d tasks/s%n", name, (long) (TASKS * 1e9 / elapsed));
+    }
+}
@@ -0,0 +1,79 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.ScheduledFuture;
+import juc.ScheduledThreadPoolExecutor;
+import juc.ThreadLocalRandom;
+import juc.TimeUnit;
+
+/**
+ * ScheduledThreadPoolExecutor with request timeouts of which CANCEL_PERCENT are cancelled,
+ * comparing three ways of handling cancelled tasks: keeping them until their delay elapses
+ * (the default policy), removing each one from the heap as it is cancelled, under the
+ * queue lock (cancel followed by remove, which is what remove-on-cancel used to do), and
+ * the remove-on-cancel policy, which leaves tombstones and purges them in batches. THREADS
+ * threads each keep WINDOW timeouts of TIMEOUT_S seconds pending and replace the oldest on
+ * every operation. Prints operations per second and the queue length at the end.
+ */
+public class CancelledTimeoutsBenchmark {
+    private static final int THREADS = 4;
+    private static final int WINDOW = 20_000;
+    private static final int OPS = 500_000;
+    private static final int CANCEL_PERCENT = 90;
+    private static final long TIMEOUT_S = 30;
+
+    private enum Mode { KEEP, REMOVE_EACH, BATCHED }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            for (Mode mode : Mode.values()) {
+                run(mode);
+            }
+            System.out.println();
+        }
+    }
+
+    private static void run(Mode mode) throws InterruptedException {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(mode == Mode.BATCHED);
+        Runnable timeout = () -> {
+        };
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ScheduledFuture<?>[] window = new ScheduledFuture<?>[WINDOW];
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPS; i++) {
+                    int slot = i % WINDOW;
+                    ScheduledFuture<?> f = window[slot];
+                    if (f != null && random.nextInt(100) < CANCEL_PERCENT) {
+                        f.cancel(false);
+                        if (mode == Mode.REMOVE_EACH) {
+                            scheduler.remove((Runnable) f);
+                        }
+                    }
+                    window[slot] = scheduler.schedule(timeout, TIMEOUT_S, TimeUnit.SECONDS);
+                }
+                done.countDown();
+            }).start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        int queued = scheduler.getQueue().size();
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("%-12s %,12d ops/s  queue %,9d%n", mode,
+                (long) (THREADS * (double) OPS * 1e9 / elapsed), queued);
+    }
+}
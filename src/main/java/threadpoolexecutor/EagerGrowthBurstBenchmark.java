@@ -0,0 +1,69 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.LinkedBlockingQueue;
+import juc.ThreadPoolExecutor;
+import juc.TimeUnit;
+
+/**
+ * Queueing latency of a ThreadPoolExecutor with an unbounded LinkedBlockingQueue under
+ * bursty load, with and without eager thread growth. Every BURST_INTERVAL_MS a burst of
+ * BURST tasks arrives, each blocking for TASK_MS as if waiting on I/O. The default pool
+ * never grows past its core size, so bursts queue behind CORE threads; the eager pool
+ * grows toward MAX and lets the extra threads time out between bursts. Prints queue wait
+ * percentiles (from the pool's Metrics) and the largest pool size reached.
+ */
+public class EagerGrowthBurstBenchmark {
+    private static final int CORE = 4;
+    private static final int MAX = 32;
+    private static final int BURST = 64;
+    private static final int BURSTS = 40;
+    private static final long BURST_INTERVAL_MS = 50;
+    private static final long TASK_MS = 2;
+    private static final long KEEP_ALIVE_MS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            run("default", false);
+            run("eager", true);
+        }
+    }
+
+    private static void run(String name, boolean eager) throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(CORE, MAX, KEEP_ALIVE_MS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        pool.setEagerThreadGrowth(eager);
+        ThreadPoolExecutor.Metrics metrics = pool.enableMetrics();
+        long start = System.nanoTime();
+        for (int b = 0; b < BURSTS; b++) {
+            long due = start + TimeUnit.MILLISECONDS.toNanos(b * BURST_INTERVAL_MS);
+            long delay = due - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            CountDownLatch done = new CountDownLatch(BURST);
+            for (int i = 0; i < BURST; i++) {
+                pool.execute(() -> {
+                    try {
+                        Thread.sleep(TASK_MS);
+                    } catch (InterruptedException ignore) {
+                    }
+                    done.countDown();
+                });
+            }
+            if (b == BURSTS - 1) {
+                done.await();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        ThreadPoolExecutor.Metrics.Histogram wait = metrics.getQueueWait();
+        System.out.printf("%-8s wait p50<=%5dus p90<=%6dus p99<=%6dus max=%6dus  largest pool %2d  %5dms%n",
+                name, wait.getPercentile(0.50, TimeUnit.MICROSECONDS),
+                wait.getPercentile(0.90, TimeUnit.MICROSECONDS),
+                wait.getPercentile(0.99, TimeUnit.MICROSECONDS),
+                wait.getMax(TimeUnit.MICROSECONDS), pool.getLargestPoolSize(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+}
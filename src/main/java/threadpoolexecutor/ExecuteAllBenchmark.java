@@ -0,0 +1,84 @@
+package threadpoolexecutor;
+
+import juc.ArrayBlockingQueue;
+import juc.BlockingQueue;
+import juc.CountDownLatch;
+import juc.LinkedBlockingQueue;
+import juc.ThreadPoolExecutor;
+import juc.TimeUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Submission cost of batches of tiny tasks, comparing a loop over execute with one call
+ * to executeAll, which queues each batch under a single acquisition of the queue's lock.
+ * PRODUCERS threads each submit BATCHES batches of BATCH tasks to a pool of WORKERS
+ * threads, first with an unbounded LinkedBlockingQueue, then with a bounded
+ * ArrayBlockingQueue and BlockingPolicy, where producers are held back to the rate at
+ * which workers drain the queue instead of being rejected. Prints tasks per second.
+ */
+public class ExecuteAllBenchmark {
+    private static final int WORKERS = 4;
+    private static final int PRODUCERS = 4;
+    private static final int BATCH = 64;
+    private static final int BATCHES = 4_000;
+    private static final int BOUND = 1_024;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            run("unbounded execute", false, false);
+            run("unbounded executeAll", false, true);
+            run("blocking execute", true, false);
+            run("blocking executeAll", true, true);
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, boolean bounded, boolean batch)
+            throws InterruptedException {
+        BlockingQueue<Runnable> queue = bounded ?
+                new ArrayBlockingQueue<Runnable>(BOUND) : new LinkedBlockingQueue<Runnable>();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(WORKERS, WORKERS, 0L,
+                TimeUnit.MILLISECONDS, queue, new ThreadPoolExecutor.BlockingPolicy());
+        pool.prestartAllCoreThreads();
+        CountDownLatch done = new CountDownLatch(PRODUCERS * BATCHES * BATCH);
+        Runnable task = done::countDown;
+        List<Runnable> tasks = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            tasks.add(task);
+        }
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            producers[p] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int b = 0; b < BATCHES; b++) {
+                    if (batch) {
+                        pool.executeAll(tasks);
+                    } else {
+                        for (Runnable r : tasks) {
+                            pool.execute(r);
+                        }
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        for (Thread t : producers) {
+            t.join();
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("%-22s %,12d tasks/s%n", name,
+                (long) (PRODUCERS * BATCHES * BATCH * 1e9 / elapsed));
+    }
+}
@@ -0,0 +1,108 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.LinkedBlockingQueue;
+import juc.Semaphore;
+import juc.ThreadPoolExecutor;
+import juc.TimeUnit;
+import juc.locks.LockSupport;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Cost of monitoring a busy ThreadPoolExecutor: a pool runs a stream of short tasks, at
+ * most IN_FLIGHT queued at a time, while a few "dashboard" threads poll its statistics
+ * every few microseconds, either through the getters that visit every worker
+ * (getActiveCount, getCompletedTaskCount, getLargestPoolSize) or through Metrics. Prints
+ * task throughput for each case, alongside unmonitored and unpolled baselines and the
+ * queue wait/execution percentiles recorded. Pollers need spare cores for the difference
+ * to show as contention rather than as time slices taken from the workers.
+ */
+public class MetricsPollingBenchmark {
+    private static final int THREADS = 4;
+    private static final int TASKS = 2_000_000;
+    private static final int POLLERS = 2;
+    private static final long POLL_INTERVAL_NANOS = 10_000;
+    private static final int WORK = 256; // a microsecond or so per task
+    private static final int IN_FLIGHT = 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            run("baseline", false, null);
+            run("pool getters", false, p -> p.getActiveCount() + p.getCompletedTaskCount()
+                    + p.getLargestPoolSize());
+            run("metrics only", true, null);
+            run("metrics", true, p -> {
+                ThreadPoolExecutor.Metrics m = p.getMetrics();
+                return m.getActiveCount() + m.getCompletedCount() + m.getPoolSize();
+            });
+        }
+    }
+
+    private static void run(String name, boolean metrics, ToLongFunction<ThreadPoolExecutor> poll)
+            throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        pool.prestartAllCoreThreads();
+        if (metrics) {
+            pool.enableMetrics();
+        }
+        Thread[] pollers = new Thread[poll == null ? 0 : POLLERS];
+        long[] polls = new long[pollers.length];
+        for (int i = 0; i < pollers.length; i++) {
+            int k = i;
+            pollers[i] = new Thread(() -> {
+                long sink = 0;
+                while (!pool.isShutdown()) {
+                    sink += poll.applyAsLong(pool);
+                    polls[k]++;
+                    LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+                }
+                if (sink == 42) {
+                    System.out.print("");
+                }
+            });
+            pollers[i].start();
+        }
+        CountDownLatch done = new CountDownLatch(TASKS);
+        Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            int seed = i;
+            inFlight.acquire();
+            pool.execute(() -> {
+                work(seed);
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        long totalPolls = 0;
+        for (int i = 0; i < pollers.length; i++) {
+            pollers[i].join();
+            totalPolls += polls[i];
+        }
+        System.out.printf("%-15s %8.0f tasks/ms  %10d polls%n", name,
+                TASKS / (elapsed / 1e6), totalPolls);
+        if (metrics) {
+            System.out.println("                " + pool.getMetrics());
+        }
+    }
+
+    private static volatile int sink;
+
+    private static void work(int seed) {
+        int x = seed | 1;
+        for (int i = 0; i < WORK; i++) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+        }
+        if (x == 0) {
+            sink = x;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.ScheduledThreadPoolExecutor;
+import juc.ShardedScheduledThreadPoolExecutor;
+import juc.ThreadLocalRandom;
+import juc.TimeUnit;
+
+/**
+ * Throughput of short delayed tasks at a high scheduling rate, comparing the single
+ * DelayedWorkQueue of ScheduledThreadPoolExecutor, whose lock and condition are shared by
+ * every scheduling thread and every worker, with ShardedScheduledThreadPoolExecutor and one
+ * shard per worker. PRODUCERS threads each schedule TASKS tasks with random delays below
+ * MAX_DELAY_US microseconds on a pool of WORKERS threads. Prints tasks per second, from the
+ * first schedule to the last completion. Run on a machine with at least
+ * PRODUCERS + WORKERS cores to see the contention.
+ */
+public class ShardedSchedulerBenchmark {
+    private static final int WORKERS = 4;
+    private static final int PRODUCERS = 4;
+    private static final int TASKS = 250_000;
+    private static final int MAX_DELAY_US = 1_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            run("DelayedWorkQueue", new ScheduledThreadPoolExecutor(WORKERS));
+            run("sharded", new ShardedScheduledThreadPoolExecutor(WORKERS));
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, ScheduledThreadPoolExecutor scheduler)
+            throws InterruptedException {
+        scheduler.prestartAllCoreThreads();
+        CountDownLatch done = new CountDownLatch(PRODUCERS * TASKS);
+        Runnable task = done::countDown;
+        CountDownLatch go = new CountDownLatch(1);
+        for (int p = 0; p < PRODUCERS; p++) {
+            new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TASKS; i++) {
+                    scheduler.schedule(task, random.nextInt(MAX_DELAY_US), TimeUnit.MICROSECONDS);
+                }
+            }).start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("%-17s %,12d tasks/s%n", name,
+                (long) (PRODUCERS * (double) TASKS * 1e9 / elapsed));
+    }
+}
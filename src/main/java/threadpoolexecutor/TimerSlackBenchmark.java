@@ -0,0 +1,100 @@
+package threadpoolexecutor;
+
+import juc.ScheduledThreadPoolExecutor;
+import juc.ThreadLocalRandom;
+import juc.TimeUnit;
+import juc.atomic.LongAdder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Many fixed-rate tasks with the same period, like heartbeats, on a mostly idle
+ * ScheduledThreadPoolExecutor, with and without timer slack. TASKS tasks with random
+ * initial delays each run every PERIOD_MS milliseconds, for RUN_S seconds. Prints the
+ * number of runs, the CPU time of the process and its context switches (read from
+ * /proc, so on Linux only) per second, and the mean lateness of a run.
+ */
+public class TimerSlackBenchmark {
+    private static final int THREADS = 2;
+    private static final int TASKS = 20_000;
+    private static final long PERIOD_MS = 100;
+    private static final long RUN_S = 3;
+    private static final long[] SLACK_US = {0, 1_000, 5_000};
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            for (long slack : SLACK_US) {
+                run(slack);
+            }
+            System.out.println();
+        }
+    }
+
+    private static void run(long slackMicros) throws InterruptedException {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(THREADS);
+        scheduler.setTimerSlack(slackMicros, TimeUnit.MICROSECONDS);
+        scheduler.prestartAllCoreThreads();
+        LongAdder runs = new LongAdder();
+        LongAdder lateness = new LongAdder();
+        long period = TimeUnit.MILLISECONDS.toNanos(PERIOD_MS);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            long delay = random.nextLong(period);
+            long first = start + delay;
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                long due = first;
+
+                public void run() {
+                    lateness.add(System.nanoTime() - due);
+                    runs.increment();
+                    due += period;
+                }
+            }, delay, period, TimeUnit.NANOSECONDS);
+        }
+        Thread.sleep(PERIOD_MS); // let every task run once
+        runs.reset();
+        lateness.reset();
+        long cpu = cpuTime();
+        long switches = contextSwitches();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(RUN_S));
+        long n = runs.sum();
+        long late = lateness.sum();
+        cpu = cpuTime() - cpu;
+        switches = contextSwitches() - switches;
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("slack %,6d us  %,10d runs  cpu %,6d ms/s  %,8d switches/s  lateness %,6d us%n",
+                slackMicros, n, cpu / RUN_S / 1_000_000, switches / RUN_S,
+                n == 0 ? 0 : late / n / 1_000);
+    }
+
+    private static long cpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean)
+                ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    /**
+     * Sums the voluntary and involuntary context switches of all live threads of this process.
+     */
+    private static long contextSwitches() {
+        long total = 0;
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(Paths.get("/proc/self/task"))) {
+            for (Path task : tasks) {
+                for (String line : Files.readAllLines(task.resolve("status"))) {
+                    if (line.contains("ctxt_switches:")) {
+                        total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,42 @@
+package threadpoolexecutor;
+
+import juc.ExecutionException;
+import juc.ScheduledFuture;
+import juc.TimeUnit;
+import juc.TimingWheelScheduledExecutor;
+
+/**
+ * Lateness of a task scheduled on a TimingWheelScheduledExecutor after an idle gap, when the
+ * timer thread is millions of ticks behind: a one microsecond tick, and IDLE_MS milliseconds
+ * without tasks, first before the timer thread has started and then after it has parked
+ * on an empty wheel. The timer thread jumps to the current tick instead of working through
+ * the ticks it missed, so a task should run within about a tick of its delay, plus thread
+ * start-up the first time. Prints how late each DELAY_MS task ran.
+ */
+public class TimingWheelIdleGapBenchmark {
+    private static final long IDLE_MS = 5_000;
+    private static final long DELAY_MS = 1;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        TimingWheelScheduledExecutor scheduler =
+                new TimingWheelScheduledExecutor(1, 1, TimeUnit.MICROSECONDS);
+        try {
+            Thread.sleep(IDLE_MS);
+            run("before timer start", scheduler);
+            for (int round = 0; round < 3; round++) {
+                Thread.sleep(IDLE_MS);
+                run("after idle park", scheduler);
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void run(String name, TimingWheelScheduledExecutor scheduler)
+            throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        ScheduledFuture<Long> f = scheduler.schedule(System::nanoTime, DELAY_MS, TimeUnit.MILLISECONDS);
+        long lateMicros = TimeUnit.NANOSECONDS.toMicros(f.get() - start - TimeUnit.MILLISECONDS.toNanos(DELAY_MS));
+        System.out.printf("%-20s %,9d us late%n", name, lateMicros);
+    }
+}
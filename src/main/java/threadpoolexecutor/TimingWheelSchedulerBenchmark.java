@@ -0,0 +1,74 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.ScheduledExecutorService;
+import juc.ScheduledFuture;
+import juc.ScheduledThreadPoolExecutor;
+import juc.TimeUnit;
+import juc.TimingWheelScheduledExecutor;
+
+/**
+ * Cost of scheduling and cancelling request timeouts that almost never fire, comparing the
+ * DelayedWorkQueue heap of ScheduledThreadPoolExecutor (with remove-on-cancel, so that
+ * cancelled timeouts do not pile up) with the hierarchical timing wheel of
+ * TimingWheelScheduledExecutor. THREADS threads each keep WINDOW timeouts of TIMEOUT_S
+ * seconds pending, like connections with requests in flight: every operation schedules a
+ * new timeout and cancels the oldest. Prints schedule+cancel pairs per second.
+ */
+public class TimingWheelSchedulerBenchmark {
+    private static final int THREADS = 4;
+    private static final int WINDOW = 50_000;
+    private static final int OPS = 1_000_000;
+    private static final long TIMEOUT_S = 30;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) { // first round is warm-up
+            ScheduledThreadPoolExecutor heap = new ScheduledThreadPoolExecutor(1);
+            heap.setRemoveOnCancelPolicy(true);
+            run("DelayedWorkQueue", heap);
+            run("timing wheel", new TimingWheelScheduledExecutor(1));
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, ScheduledExecutorService scheduler)
+            throws InterruptedException {
+        Runnable timeout = () -> {
+            throw new AssertionError("timeout fired");
+        };
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ScheduledFuture<?>[] window = new ScheduledFuture<?>[WINDOW];
+                for (int i = 0; i < WINDOW; i++) {
+                    window[i] = scheduler.schedule(timeout, TIMEOUT_S, TimeUnit.SECONDS);
+                }
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < OPS; i++) {
+                    int slot = i % WINDOW;
+                    window[slot].cancel(false);
+                    window[slot] = scheduler.schedule(timeout, TIMEOUT_S, TimeUnit.SECONDS);
+                }
+                for (ScheduledFuture<?> f : window) {
+                    f.cancel(false);
+                }
+                done.countDown();
+            }).start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("%-17s %,12d ops/s%n", name, (long) (THREADS * (double) OPS * 1e9 / elapsed));
+    }
+}
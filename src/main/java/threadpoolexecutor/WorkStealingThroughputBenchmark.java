@@ -0,0 +1,104 @@
+package threadpoolexecutor;
+
+import juc.CountDownLatch;
+import juc.LinkedBlockingQueue;
+import juc.ThreadPoolExecutor;
+import juc.TimeUnit;
+import juc.WorkStealingThreadPoolExecutor;
+
+import java.util.function.IntFunction;
+
+/**
+ * Microtask throughput of ThreadPoolExecutor with a shared LinkedBlockingQueue versus
+ * WorkStealingThreadPoolExecutor, with one thread per core. Two loads: PRODUCERS external
+ * threads each submitting TASKS / PRODUCERS empty tasks, and a binary tree of tasks of
+ * depth FAN_DEPTH in which every task submits its two children from a pool thread.
+ * Prints tasks per millisecond, best of ROUNDS. The shared queue's take and put locks
+ * only become the bottleneck with many cores; on a few cores both designs are close.
+ */
+public class WorkStealingThroughputBenchmark {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int PRODUCERS = Math.max(2, THREADS / 2);
+    private static final int TASKS = 2_000_000;
+    private static final int FAN_DEPTH = 20;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println(THREADS + " threads, " + PRODUCERS + " producers");
+        IntFunction<ThreadPoolExecutor> shared = n -> new ThreadPoolExecutor(n, n, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        IntFunction<ThreadPoolExecutor> stealing = WorkStealingThreadPoolExecutor::new;
+        report("shared queue   producers", best(shared, false));
+        report("work stealing  producers", best(stealing, false));
+        report("shared queue   fan-out  ", best(shared, true));
+        report("work stealing  fan-out  ", best(stealing, true));
+    }
+
+    private static void report(String name, double tasksPerMs) {
+        System.out.printf("%s %8.0f tasks/ms%n", name, tasksPerMs);
+    }
+
+    private static double best(IntFunction<ThreadPoolExecutor> factory, boolean fanOut)
+            throws InterruptedException {
+        double best = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            ThreadPoolExecutor pool = factory.apply(THREADS);
+            pool.prestartAllCoreThreads();
+            best = Math.max(best, fanOut ? fanOut(pool) : producers(pool));
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        return best;
+    }
+
+    private static double producers(ThreadPoolExecutor pool) throws InterruptedException {
+        int perProducer = TASKS / PRODUCERS;
+        CountDownLatch done = new CountDownLatch(perProducer * PRODUCERS);
+        Runnable task = done::countDown;
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int i = 0; i < PRODUCERS; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < perProducer; j++) {
+                    pool.execute(task);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread p : producers) {
+            p.start();
+        }
+        done.await();
+        return (double) perProducer * PRODUCERS * 1e6 / (System.nanoTime() - start);
+    }
+
+    private static double fanOut(ThreadPoolExecutor pool) throws InterruptedException {
+        CountDownLatch leaves = new CountDownLatch(1 << FAN_DEPTH);
+        long start = System.nanoTime();
+        pool.execute(new Node(pool, leaves, FAN_DEPTH));
+        leaves.await();
+        long tasks = (2L << FAN_DEPTH) - 1;
+        return tasks * 1e6 / (System.nanoTime() - start);
+    }
+
+    private static final class Node implements Runnable {
+        private final ThreadPoolExecutor pool;
+        private final CountDownLatch leaves;
+        private final int depth;
+
+        Node(ThreadPoolExecutor pool, CountDownLatch leaves, int depth) {
+            this.pool = pool;
+            this.leaves = leaves;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            if (depth == 0) {
+                leaves.countDown();
+            } else {
+                pool.execute(new Node(pool, leaves, depth - 1));
+                pool.execute(new Node(pool, leaves, depth - 1));
+            }
+        }
+    }
+}